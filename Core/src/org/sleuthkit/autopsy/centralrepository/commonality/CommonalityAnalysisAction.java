@@ -0,0 +1,68 @@
+/*
+ * Autopsy Forensic Browser
+ *
+ * Copyright 2017 Basis Technology Corp.
+ * Contact: carrier <at> sleuthkit <dot> org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sleuthkit.autopsy.centralrepository.commonality;
+
+import org.openide.awt.ActionID;
+import org.openide.awt.ActionReference;
+import org.openide.awt.ActionRegistration;
+import org.openide.util.HelpCtx;
+import org.openide.util.NbBundle;
+import org.openide.util.actions.CallableSystemAction;
+import org.sleuthkit.autopsy.centralrepository.datamodel.EamDb;
+
+/**
+ * The action associated with the Tools/Cross-Case Commonality menu item. It
+ * opens a dialog that runs a commonality analysis over cases in the central
+ * repository and pages through its results.
+ *
+ * This action should only be invoked in the event dispatch thread (EDT).
+ */
+@ActionID(category = "Tools", id = "org.sleuthkit.autopsy.centralrepository.commonality.CommonalityAnalysisAction")
+@ActionRegistration(displayName = "#CTL_CommonalityAnalysisAction", lazy = false)
+@ActionReference(path = "Menu/Tools", position = 106)
+@NbBundle.Messages("CTL_CommonalityAnalysisAction=Cross-Case Commonality")
+public final class CommonalityAnalysisAction extends CallableSystemAction {
+
+    private static final long serialVersionUID = 1L;
+
+    @Override
+    public void performAction() {
+        new CommonalityAnalysisDialog().display();
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return EamDb.isEnabled();
+    }
+
+    @Override
+    public String getName() {
+        return Bundle.CTL_CommonalityAnalysisAction();
+    }
+
+    @Override
+    public HelpCtx getHelpCtx() {
+        return HelpCtx.DEFAULT_HELP;
+    }
+
+    @Override
+    public boolean asynchronous() {
+        return false;
+    }
+}
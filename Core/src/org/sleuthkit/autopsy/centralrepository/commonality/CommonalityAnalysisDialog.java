@@ -0,0 +1,437 @@
+/*
+ * Autopsy Forensic Browser
+ *
+ * Copyright 2017 Basis Technology Corp.
+ * Contact: carrier <at> sleuthkit <dot> org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sleuthkit.autopsy.centralrepository.commonality;
+
+import java.awt.BorderLayout;
+import java.awt.Component;
+import java.awt.Dimension;
+import java.awt.FlowLayout;
+import java.awt.GridLayout;
+import java.awt.event.KeyEvent;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.logging.Level;
+import javax.swing.BorderFactory;
+import javax.swing.DefaultListCellRenderer;
+import javax.swing.JButton;
+import javax.swing.JComponent;
+import javax.swing.JDialog;
+import javax.swing.JLabel;
+import javax.swing.JList;
+import javax.swing.JOptionPane;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.JSpinner;
+import javax.swing.JTable;
+import javax.swing.KeyStroke;
+import javax.swing.ListSelectionModel;
+import javax.swing.SpinnerNumberModel;
+import javax.swing.SwingWorker;
+import javax.swing.table.AbstractTableModel;
+import org.openide.util.NbBundle;
+import org.openide.windows.WindowManager;
+import org.sleuthkit.autopsy.centralrepository.datamodel.CommonalityResult;
+import org.sleuthkit.autopsy.centralrepository.datamodel.CorrelationAttribute;
+import org.sleuthkit.autopsy.centralrepository.datamodel.CorrelationCase;
+import org.sleuthkit.autopsy.centralrepository.datamodel.EamDb;
+import org.sleuthkit.autopsy.centralrepository.datamodel.EamDbException;
+import org.sleuthkit.autopsy.coreutils.Logger;
+
+/**
+ * A dialog that runs a cross-case commonality analysis over the cases and
+ * correlation types selected by the user, and pages through the stored
+ * results. Each page is read by seeking past the last result of the previous
+ * one, so paging stays fast however many results there are. The analysis is
+ * deleted when a new one is run or the dialog is closed.
+ */
+@NbBundle.Messages({
+    "CommonalityAnalysisDialog.casesLabel.text=Cases:",
+    "CommonalityAnalysisDialog.typesLabel.text=Correlation types:",
+    "CommonalityAnalysisDialog.minimumCaseCountLabel.text=Minimum number of cases:",
+    "CommonalityAnalysisDialog.runButton.text=Run Analysis",
+    "CommonalityAnalysisDialog.previousButton.text=< Previous",
+    "CommonalityAnalysisDialog.nextButton.text=Next >",
+    "CommonalityAnalysisDialog.closeButton.text=Close",
+    "CommonalityAnalysisDialog.typeColumn.text=Type",
+    "CommonalityAnalysisDialog.valueColumn.text=Value",
+    "CommonalityAnalysisDialog.caseCountColumn.text=Cases",
+    "CommonalityAnalysisDialog.instanceCountColumn.text=Instances",
+    "CommonalityAnalysisDialog.noResults.text=No results",
+    "CommonalityAnalysisDialog.running.text=Running analysis...",
+    "# {0} - first result", "# {1} - last result", "# {2} - result count",
+    "CommonalityAnalysisDialog.pageLabel.text=Results {0} to {1} of {2}",
+    "CommonalityAnalysisDialog.noSelection.message=Select at least one case and one correlation type.",
+    "CommonalityAnalysisDialog.loadFailed.message=Failed to read the cases and correlation types from the central repository.",
+    "CommonalityAnalysisDialog.analysisFailed.message=Failed to run the commonality analysis.",
+    "CommonalityAnalysisDialog.pageFailed.message=Failed to read the commonality results."
+})
+final class CommonalityAnalysisDialog extends JDialog {
+
+    private static final long serialVersionUID = 1L;
+    private static final Logger LOGGER = Logger.getLogger(CommonalityAnalysisDialog.class.getName());
+    private static final int PAGE_SIZE = 100;
+
+    private final JList<CorrelationCase> casesList = new JList<>();
+    private final JList<CorrelationAttribute.Type> typesList = new JList<>();
+    private final JSpinner minimumCaseCountSpinner = new JSpinner(new SpinnerNumberModel(2, 1, Integer.MAX_VALUE, 1));
+    private final JButton runButton = new JButton(Bundle.CommonalityAnalysisDialog_runButton_text());
+    private final JButton previousButton = new JButton(Bundle.CommonalityAnalysisDialog_previousButton_text());
+    private final JButton nextButton = new JButton(Bundle.CommonalityAnalysisDialog_nextButton_text());
+    private final JLabel pageLabel = new JLabel(" ");
+    private final ResultsTableModel resultsModel = new ResultsTableModel();
+
+    // The analysis being shown, or null if there is none
+    private Integer analysisID = null;
+    private long resultCount = 0;
+    // The result the current page was read after, null for the first page,
+    // and the ones the pages before it were read after, for going back
+    private CommonalityResult pageKey = null;
+    private final List<CommonalityResult> previousPageKeys = new ArrayList<>();
+    private int firstResultNumber = 1;
+    private boolean hasNextPage = false;
+
+    /**
+     * Constructs a non-modal commonality analysis dialog owned by the main
+     * window.
+     */
+    CommonalityAnalysisDialog() {
+        super(WindowManager.getDefault().getMainWindow(), Bundle.CTL_CommonalityAnalysisAction(), ModalityType.MODELESS);
+        initComponents();
+    }
+
+    private void initComponents() {
+        casesList.setSelectionMode(ListSelectionModel.MULTIPLE_INTERVAL_SELECTION);
+        casesList.setCellRenderer(new DefaultListCellRenderer() {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            public Component getListCellRendererComponent(JList<?> list, Object value, int index, boolean isSelected, boolean cellHasFocus) {
+                return super.getListCellRendererComponent(list, ((CorrelationCase) value).getDisplayName(), index, isSelected, cellHasFocus);
+            }
+        });
+        typesList.setSelectionMode(ListSelectionModel.MULTIPLE_INTERVAL_SELECTION);
+        typesList.setCellRenderer(new DefaultListCellRenderer() {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            public Component getListCellRendererComponent(JList<?> list, Object value, int index, boolean isSelected, boolean cellHasFocus) {
+                return super.getListCellRendererComponent(list, ((CorrelationAttribute.Type) value).getDisplayName(), index, isSelected, cellHasFocus);
+            }
+        });
+
+        JPanel casesPanel = new JPanel(new BorderLayout());
+        casesPanel.add(new JLabel(Bundle.CommonalityAnalysisDialog_casesLabel_text()), BorderLayout.NORTH);
+        casesPanel.add(new JScrollPane(casesList), BorderLayout.CENTER);
+        JPanel typesPanel = new JPanel(new BorderLayout());
+        typesPanel.add(new JLabel(Bundle.CommonalityAnalysisDialog_typesLabel_text()), BorderLayout.NORTH);
+        typesPanel.add(new JScrollPane(typesList), BorderLayout.CENTER);
+        JPanel selectionPanel = new JPanel(new GridLayout(1, 2, 10, 0));
+        selectionPanel.add(casesPanel);
+        selectionPanel.add(typesPanel);
+        selectionPanel.setPreferredSize(new Dimension(700, 150));
+
+        JPanel runPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        runPanel.add(new JLabel(Bundle.CommonalityAnalysisDialog_minimumCaseCountLabel_text()));
+        runPanel.add(minimumCaseCountSpinner);
+        runPanel.add(runButton);
+
+        JPanel criteriaPanel = new JPanel(new BorderLayout());
+        criteriaPanel.setBorder(BorderFactory.createEmptyBorder(10, 10, 0, 10));
+        criteriaPanel.add(selectionPanel, BorderLayout.CENTER);
+        criteriaPanel.add(runPanel, BorderLayout.SOUTH);
+
+        JTable resultsTable = new JTable(resultsModel);
+        JScrollPane resultsScrollPane = new JScrollPane(resultsTable);
+        resultsScrollPane.setPreferredSize(new Dimension(700, 350));
+        resultsScrollPane.setBorder(BorderFactory.createCompoundBorder(
+                BorderFactory.createEmptyBorder(0, 10, 0, 10), resultsScrollPane.getBorder()));
+
+        JButton closeButton = new JButton(Bundle.CommonalityAnalysisDialog_closeButton_text());
+        JPanel pagingPanel = new JPanel(new FlowLayout(FlowLayout.RIGHT));
+        pagingPanel.add(pageLabel);
+        pagingPanel.add(previousButton);
+        pagingPanel.add(nextButton);
+        pagingPanel.add(closeButton);
+
+        getContentPane().add(criteriaPanel, BorderLayout.NORTH);
+        getContentPane().add(resultsScrollPane, BorderLayout.CENTER);
+        getContentPane().add(pagingPanel, BorderLayout.SOUTH);
+
+        runButton.addActionListener(evt -> runAnalysis());
+        previousButton.addActionListener(evt -> showPreviousPage());
+        nextButton.addActionListener(evt -> showNextPage());
+        closeButton.addActionListener(evt -> dispose());
+        previousButton.setEnabled(false);
+        nextButton.setEnabled(false);
+
+        getRootPane().registerKeyboardAction(e -> dispose(),
+                KeyStroke.getKeyStroke(KeyEvent.VK_ESCAPE, 0), JComponent.WHEN_IN_FOCUSED_WINDOW);
+        setDefaultCloseOperation(JDialog.DISPOSE_ON_CLOSE);
+        addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosed(WindowEvent e) {
+                deleteAnalysis();
+            }
+        });
+    }
+
+    /**
+     * Load the cases and enabled correlation types and show the dialog.
+     */
+    void display() {
+        try {
+            EamDb dbManager = EamDb.getInstance();
+            casesList.setListData(dbManager.getCases().toArray(new CorrelationCase[0]));
+            typesList.setListData(dbManager.getEnabledCorrelationTypes().toArray(new CorrelationAttribute.Type[0]));
+        } catch (EamDbException ex) {
+            LOGGER.log(Level.SEVERE, "Error getting cases and correlation types from the central repository", ex); // NON-NLS
+            JOptionPane.showMessageDialog(WindowManager.getDefault().getMainWindow(),
+                    Bundle.CommonalityAnalysisDialog_loadFailed_message(),
+                    Bundle.CTL_CommonalityAnalysisAction(), JOptionPane.ERROR_MESSAGE);
+            dispose();
+            return;
+        }
+        pack();
+        setLocationRelativeTo(WindowManager.getDefault().getMainWindow());
+        setVisible(true);
+    }
+
+    /**
+     * Run a new analysis over the selected cases and types, replacing the one
+     * being shown, and show the first page of its results.
+     */
+    private void runAnalysis() {
+        List<CorrelationCase> cases = casesList.getSelectedValuesList();
+        List<CorrelationAttribute.Type> types = typesList.getSelectedValuesList();
+        if (cases.isEmpty() || types.isEmpty()) {
+            JOptionPane.showMessageDialog(this, Bundle.CommonalityAnalysisDialog_noSelection_message(),
+                    Bundle.CTL_CommonalityAnalysisAction(), JOptionPane.WARNING_MESSAGE);
+            return;
+        }
+        int minimumCaseCount = (Integer) minimumCaseCountSpinner.getValue();
+
+        deleteAnalysis();
+        resultsModel.setResults(Collections.emptyList());
+        pageKey = null;
+        previousPageKeys.clear();
+        firstResultNumber = 1;
+        pageLabel.setText(Bundle.CommonalityAnalysisDialog_running_text());
+        setControlsEnabled(false);
+        new SwingWorker<Integer, Void>() {
+            private long count;
+
+            @Override
+            protected Integer doInBackground() throws Exception {
+                EamDb dbManager = EamDb.getInstance();
+                int id = dbManager.newCommonalityAnalysis(cases, types, minimumCaseCount);
+                count = dbManager.getCountCommonalityResults(id);
+                return id;
+            }
+
+            @Override
+            protected void done() {
+                try {
+                    analysisID = get();
+                    resultCount = count;
+                } catch (InterruptedException | ExecutionException ex) {
+                    LOGGER.log(Level.SEVERE, "Error running commonality analysis", ex); // NON-NLS
+                    pageLabel.setText(" ");
+                    setControlsEnabled(true);
+                    JOptionPane.showMessageDialog(CommonalityAnalysisDialog.this, Bundle.CommonalityAnalysisDialog_analysisFailed_message(),
+                            Bundle.CTL_CommonalityAnalysisAction(), JOptionPane.ERROR_MESSAGE);
+                    return;
+                }
+                if (!isDisplayable()) {
+                    // closed while the analysis was running
+                    deleteAnalysis();
+                    return;
+                }
+                readPage();
+            }
+        }.execute();
+    }
+
+    private void showNextPage() {
+        List<CommonalityResult> page = resultsModel.getResults();
+        if (page.isEmpty()) {
+            return;
+        }
+        previousPageKeys.add(pageKey);
+        pageKey = page.get(page.size() - 1);
+        firstResultNumber += page.size();
+        readPage();
+    }
+
+    private void showPreviousPage() {
+        if (previousPageKeys.isEmpty()) {
+            return;
+        }
+        // the pages before the current one are all full
+        pageKey = previousPageKeys.remove(previousPageKeys.size() - 1);
+        firstResultNumber = Math.max(1, firstResultNumber - PAGE_SIZE);
+        readPage();
+    }
+
+    /**
+     * Read the page of results after the page key in the background and show
+     * it. One result more than a page is read, to tell whether there is a next
+     * page.
+     */
+    private void readPage() {
+        final int id = analysisID;
+        final CommonalityResult after = pageKey;
+        setControlsEnabled(false);
+        new SwingWorker<List<CommonalityResult>, Void>() {
+            @Override
+            protected List<CommonalityResult> doInBackground() throws Exception {
+                return EamDb.getInstance().getCommonalityResults(id, after, PAGE_SIZE + 1);
+            }
+
+            @Override
+            protected void done() {
+                List<CommonalityResult> results;
+                try {
+                    results = get();
+                } catch (InterruptedException | ExecutionException ex) {
+                    LOGGER.log(Level.SEVERE, "Error getting commonality results", ex); // NON-NLS
+                    results = Collections.emptyList();
+                    JOptionPane.showMessageDialog(CommonalityAnalysisDialog.this, Bundle.CommonalityAnalysisDialog_pageFailed_message(),
+                            Bundle.CTL_CommonalityAnalysisAction(), JOptionPane.ERROR_MESSAGE);
+                }
+                hasNextPage = results.size() > PAGE_SIZE;
+                List<CommonalityResult> page = hasNextPage ? results.subList(0, PAGE_SIZE) : results;
+                resultsModel.setResults(page);
+                if (page.isEmpty()) {
+                    pageLabel.setText(Bundle.CommonalityAnalysisDialog_noResults_text());
+                } else {
+                    pageLabel.setText(Bundle.CommonalityAnalysisDialog_pageLabel_text(
+                            firstResultNumber, firstResultNumber + page.size() - 1, resultCount));
+                }
+                setControlsEnabled(true);
+            }
+        }.execute();
+    }
+
+    private void setControlsEnabled(boolean enabled) {
+        runButton.setEnabled(enabled);
+        previousButton.setEnabled(enabled && !previousPageKeys.isEmpty());
+        nextButton.setEnabled(enabled && hasNextPage);
+    }
+
+    /**
+     * Delete the stored results of the analysis being shown, if any, in the
+     * background.
+     */
+    private void deleteAnalysis() {
+        if (analysisID == null) {
+            return;
+        }
+        final int id = analysisID;
+        analysisID = null;
+        hasNextPage = false;
+        new SwingWorker<Void, Void>() {
+            @Override
+            protected Void doInBackground() throws Exception {
+                EamDb.getInstance().deleteCommonalityAnalysis(id);
+                return null;
+            }
+
+            @Override
+            protected void done() {
+                try {
+                    get();
+                } catch (InterruptedException | ExecutionException ex) {
+                    LOGGER.log(Level.WARNING, String.format("Error deleting commonality analysis %d", id), ex); // NON-NLS
+                }
+            }
+        }.execute();
+    }
+
+    /**
+     * The results on the current page.
+     */
+    private static final class ResultsTableModel extends AbstractTableModel {
+
+        private static final long serialVersionUID = 1L;
+        private static final String[] COLUMN_NAMES = {
+            Bundle.CommonalityAnalysisDialog_typeColumn_text(),
+            Bundle.CommonalityAnalysisDialog_valueColumn_text(),
+            Bundle.CommonalityAnalysisDialog_caseCountColumn_text(),
+            Bundle.CommonalityAnalysisDialog_instanceCountColumn_text()};
+        private List<CommonalityResult> results = new ArrayList<>();
+
+        List<CommonalityResult> getResults() {
+            return results;
+        }
+
+        void setResults(List<CommonalityResult> results) {
+            this.results = new ArrayList<>(results);
+            fireTableDataChanged();
+        }
+
+        @Override
+        public int getRowCount() {
+            return results.size();
+        }
+
+        @Override
+        public int getColumnCount() {
+            return COLUMN_NAMES.length;
+        }
+
+        @Override
+        public String getColumnName(int column) {
+            return COLUMN_NAMES[column];
+        }
+
+        @Override
+        public Class<?> getColumnClass(int column) {
+            switch (column) {
+                case 2:
+                    return Integer.class;
+                case 3:
+                    return Long.class;
+                default:
+                    return String.class;
+            }
+        }
+
+        @Override
+        public Object getValueAt(int row, int column) {
+            CommonalityResult result = results.get(row);
+            switch (column) {
+                case 0:
+                    CorrelationAttribute.Type type = result.getCorrelationType();
+                    return type == null ? "" : type.getDisplayName();
+                case 1:
+                    return result.getValue();
+                case 2:
+                    return result.getCaseCount();
+                case 3:
+                    return result.getInstanceCount();
+                default:
+                    return null;
+            }
+        }
+    }
+}
@@ -2394,6 +2394,235 @@ private EamGlobalFileInstance getEamGlobalFileInstanceFromResultSet(ResultSet re
         return eamGlobalFileInstance;
     }
 
+    /**
+     * Find every value of the given correlation types that appears in at least
+     * the given number of the given cases, and store the results in the
+     * materialized commonality results table.
+     *
+     * @param cases            Cases to compare
+     * @param correlationTypes Correlation types to compare
+     * @param minimumCaseCount Minimum number of cases a value must appear in
+     *
+     * @return The id of the new analysis
+     *
+     * @throws EamDbException
+     */
+    @Override
+    public int newCommonalityAnalysis(List<CorrelationCase> cases, List<CorrelationAttribute.Type> correlationTypes, int minimumCaseCount) throws EamDbException {
+        if (cases == null || cases.isEmpty()) {
+            throw new EamDbException("No cases to compare"); // NON-NLS
+        }
+        if (correlationTypes == null || correlationTypes.isEmpty()) {
+            throw new EamDbException("No correlation types to compare"); // NON-NLS
+        }
+        if (minimumCaseCount < 1) {
+            throw new EamDbException("Minimum case count must be at least 1"); // NON-NLS
+        }
+
+        // Ids are integers from the database, so they can be inlined safely
+        String caseIds = cases.stream().map(c -> Integer.toString(c.getID())).collect(Collectors.joining(","));
+        String typeIds = correlationTypes.stream().map(t -> Integer.toString(t.getId())).collect(Collectors.joining(","));
+
+        // One grouped select per instance table, combined so the whole
+        // analysis runs as a single statement
+        StringBuilder sql = new StringBuilder();
+        sql.append("INSERT INTO commonality_results(analysis_id, type_id, value, case_count, instance_count) ");
+        sql.append("SELECT ?, type_id, value, case_count, instance_count FROM (");
+        for (int i = 0; i < correlationTypes.size(); i++) {
+            CorrelationAttribute.Type type = correlationTypes.get(i);
+            if (i > 0) {
+                sql.append(" UNION ALL ");
+            }
+            sql.append("SELECT ").append(type.getId()).append(" AS type_id, value, ");
+            sql.append("COUNT(DISTINCT case_id) AS case_count, COUNT(*) AS instance_count FROM ");
+            sql.append(EamDbUtil.correlationTypeToInstanceTableName(type));
+            sql.append(" WHERE case_id IN (").append(caseIds).append(")");
+            sql.append(" GROUP BY value HAVING COUNT(DISTINCT case_id) >= ?");
+        }
+        sql.append(") AS commonality");
+
+        Connection conn = connect();
+        PreparedStatement preparedAnalysis = null;
+        PreparedStatement preparedResults = null;
+        ResultSet generatedKeys = null;
+        try {
+            conn.setAutoCommit(false);
+
+            preparedAnalysis = conn.prepareStatement("INSERT INTO commonality_analyses(min_case_count, case_ids, type_ids) VALUES (?, ?, ?)",
+                    Statement.RETURN_GENERATED_KEYS);
+            preparedAnalysis.setInt(1, minimumCaseCount);
+            preparedAnalysis.setString(2, caseIds);
+            preparedAnalysis.setString(3, typeIds);
+            preparedAnalysis.executeUpdate();
+            generatedKeys = preparedAnalysis.getGeneratedKeys();
+            if (!generatedKeys.next()) {
+                throw new SQLException("Creating commonality analysis failed, no ID obtained.");
+            }
+            int analysisID = generatedKeys.getInt(1);
+
+            preparedResults = conn.prepareStatement(sql.toString());
+            preparedResults.setInt(1, analysisID);
+            for (int i = 0; i < correlationTypes.size(); i++) {
+                preparedResults.setInt(i + 2, minimumCaseCount);
+            }
+            preparedResults.executeUpdate();
+
+            conn.commit();
+            return analysisID;
+        } catch (SQLException ex) {
+            try {
+                conn.rollback();
+            } catch (SQLException ex2) {
+                LOGGER.log(Level.SEVERE, "Database rollback failed", ex2); // NON-NLS
+            }
+            throw new EamDbException("Error running commonality analysis.", ex); // NON-NLS
+        } finally {
+            EamDbUtil.closePreparedStatement(preparedAnalysis);
+            EamDbUtil.closePreparedStatement(preparedResults);
+            EamDbUtil.closeResultSet(generatedKeys);
+            EamDbUtil.closeConnection(conn);
+        }
+    }
+
+    /**
+     * Get the number of results stored for a commonality analysis.
+     *
+     * @param analysisID Id of the analysis
+     *
+     * @return Number of stored results
+     *
+     * @throws EamDbException
+     */
+    @Override
+    public Long getCountCommonalityResults(int analysisID) throws EamDbException {
+        Connection conn = connect();
+
+        Long resultCount = 0L;
+        PreparedStatement preparedStatement = null;
+        ResultSet resultSet = null;
+        String sql = "SELECT count(*) FROM commonality_results WHERE analysis_id=?";
+
+        try {
+            preparedStatement = conn.prepareStatement(sql);
+            preparedStatement.setInt(1, analysisID);
+            resultSet = preparedStatement.executeQuery();
+            resultSet.next();
+            resultCount = resultSet.getLong(1);
+        } catch (SQLException ex) {
+            throw new EamDbException("Error counting commonality results.", ex); // NON-NLS
+        } finally {
+            EamDbUtil.closePreparedStatement(preparedStatement);
+            EamDbUtil.closeResultSet(resultSet);
+            EamDbUtil.closeConnection(conn);
+        }
+
+        return resultCount;
+    }
+
+    /**
+     * Get one page of the results of a commonality analysis, ordered by
+     * descending case count, then by correlation type and value.
+     *
+     * @param analysisID Id of the analysis
+     * @param after      Last result of the previous page, or null for the
+     *                   first page
+     * @param pageSize   Maximum number of results to return
+     *
+     * @return The page of results
+     *
+     * @throws EamDbException
+     */
+    @Override
+    public List<CommonalityResult> getCommonalityResults(int analysisID, CommonalityResult after, int pageSize) throws EamDbException {
+        // Look the types up first so a second connection is not needed while
+        // reading the results
+        Map<Integer, CorrelationAttribute.Type> typesById = new HashMap<>();
+        for (CorrelationAttribute.Type type : getDefinedCorrelationTypes()) {
+            typesById.put(type.getId(), type);
+        }
+
+        Connection conn = connect();
+
+        List<CommonalityResult> results = new ArrayList<>();
+        PreparedStatement preparedStatement = null;
+        ResultSet resultSet = null;
+        // Seek past the previous page on the sort key rather than skipping
+        // rows with OFFSET, so every page is a range scan of the index.
+        // (type_id, value) is unique within an analysis.
+        StringBuilder sql = new StringBuilder();
+        sql.append("SELECT type_id, value, case_count, instance_count FROM commonality_results WHERE analysis_id=?");
+        if (after != null) {
+            sql.append(" AND (case_count < ? OR (case_count = ? AND (type_id > ? OR (type_id = ? AND value > ?))))");
+        }
+        sql.append(" ORDER BY case_count DESC, type_id, value LIMIT ?");
+
+        try {
+            preparedStatement = conn.prepareStatement(sql.toString());
+            int param = 1;
+            preparedStatement.setInt(param++, analysisID);
+            if (after != null) {
+                preparedStatement.setInt(param++, after.getCaseCount());
+                preparedStatement.setInt(param++, after.getCaseCount());
+                preparedStatement.setInt(param++, after.getCorrelationType().getId());
+                preparedStatement.setInt(param++, after.getCorrelationType().getId());
+                preparedStatement.setString(param++, after.getValue());
+            }
+            preparedStatement.setInt(param, pageSize);
+            resultSet = preparedStatement.executeQuery();
+            while (resultSet.next()) {
+                results.add(new CommonalityResult(analysisID,
+                        typesById.get(resultSet.getInt("type_id")),
+                        resultSet.getString("value"),
+                        resultSet.getInt("case_count"),
+                        resultSet.getLong("instance_count")));
+            }
+        } catch (SQLException ex) {
+            throw new EamDbException("Error getting commonality results.", ex); // NON-NLS
+        } finally {
+            EamDbUtil.closePreparedStatement(preparedStatement);
+            EamDbUtil.closeResultSet(resultSet);
+            EamDbUtil.closeConnection(conn);
+        }
+
+        return results;
+    }
+
+    /**
+     * Remove a commonality analysis and its stored results.
+     *
+     * @param analysisID Id of the analysis
+     *
+     * @throws EamDbException
+     */
+    @Override
+    public void deleteCommonalityAnalysis(int analysisID) throws EamDbException {
+        Connection conn = connect();
+
+        PreparedStatement deleteResults = null;
+        PreparedStatement deleteAnalysis = null;
+        try {
+            conn.setAutoCommit(false);
+            deleteResults = conn.prepareStatement("DELETE FROM commonality_results WHERE analysis_id=?");
+            deleteResults.setInt(1, analysisID);
+            deleteResults.executeUpdate();
+            deleteAnalysis = conn.prepareStatement("DELETE FROM commonality_analyses WHERE id=?");
+            deleteAnalysis.setInt(1, analysisID);
+            deleteAnalysis.executeUpdate();
+            conn.commit();
+        } catch (SQLException ex) {
+            try {
+                conn.rollback();
+            } catch (SQLException ex2) {
+                LOGGER.log(Level.SEVERE, "Database rollback failed", ex2); // NON-NLS
+            }
+            throw new EamDbException("Error deleting commonality analysis " + analysisID, ex); // NON-NLS
+        } finally {
+            EamDbUtil.closePreparedStatement(deleteResults);
+            EamDbUtil.closePreparedStatement(deleteAnalysis);
+            EamDbUtil.closeConnection(conn);
+        }
+    }
+
     /**
      * Upgrade the schema of the database (if needed)
      *
@@ -2451,6 +2680,30 @@ public void upgradeSchema() throws EamDbException, SQLException {
                 EamDbUtil.insertDefaultOrganization(conn);
             }
 
+            // Update from 1.1 to 1.2
+            if (dbSchemaVersion.compareTo(new CaseDbSchemaVersionNumber(1, 2)) < 0) {
+                // Covering index for the count and known bad queries. Building
+                // it inside this transaction would lock large PostgreSQL
+                // instance tables, so there it is built without blocking
+                // writes by PostgresInstanceTablePartitioner instead, from the
+                // central repository options panel.
+                if (EamDbPlatformEnum.getSelectedPlatform() == EamDbPlatformEnum.SQLITE) {
+                    for (CorrelationAttribute.Type type : DEFAULT_CORRELATION_TYPES) {
+                        String instance_type_dbname = EamDbUtil.correlationTypeToInstanceTableName(type);
+                        statement.execute(EamDbUtil.getCoveringInstanceIndexSql(instance_type_dbname, instance_type_dbname, false));
+                    }
+                } else {
+                    LOGGER.log(Level.INFO, "Instance table covering indexes are not built during the upgrade, use Optimize Instance Tables in the central repository options"); // NON-NLS
+                }
+            }
+
+            // Update from 1.2 to 1.3
+            if (dbSchemaVersion.compareTo(new CaseDbSchemaVersionNumber(1, 3)) < 0) {
+                for (String createSql : EamDbUtil.getCommonalityTableSql(EamDbPlatformEnum.getSelectedPlatform())) {
+                    statement.execute(createSql);
+                }
+            }
+
             if (!updateSchemaVersion(conn)) {
                 throw new EamDbException("Error updating schema version");
             }
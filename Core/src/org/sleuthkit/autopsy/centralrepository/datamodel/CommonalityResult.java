@@ -0,0 +1,96 @@
+/*
+ * Central Repository
+ *
+ * Copyright 2017 Basis Technology Corp.
+ * Contact: carrier <at> sleuthkit <dot> org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sleuthkit.autopsy.centralrepository.datamodel;
+
+import java.io.Serializable;
+
+/**
+ * A value shared by several cases, as stored in the materialized results of a
+ * cross-case commonality analysis.
+ */
+public class CommonalityResult implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int analysisID;
+    private final CorrelationAttribute.Type correlationType;
+    private final String value;
+    private final int caseCount;
+    private final long instanceCount;
+
+    CommonalityResult(int analysisID,
+            CorrelationAttribute.Type correlationType,
+            String value,
+            int caseCount,
+            long instanceCount) {
+        this.analysisID = analysisID;
+        this.correlationType = correlationType;
+        this.value = value;
+        this.caseCount = caseCount;
+        this.instanceCount = instanceCount;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder str = new StringBuilder();
+        str.append("(");
+        str.append("analysisID=").append(Integer.toString(getAnalysisID()));
+        str.append(",correlationType=").append(getCorrelationType().toString());
+        str.append(",value=").append(getValue());
+        str.append(",caseCount=").append(Integer.toString(getCaseCount()));
+        str.append(",instanceCount=").append(Long.toString(getInstanceCount()));
+        str.append(")");
+        return str.toString();
+    }
+
+    /**
+     * @return the id of the analysis that produced this result
+     */
+    public int getAnalysisID() {
+        return analysisID;
+    }
+
+    /**
+     * @return the correlation type of the value
+     */
+    public CorrelationAttribute.Type getCorrelationType() {
+        return correlationType;
+    }
+
+    /**
+     * @return the shared value
+     */
+    public String getValue() {
+        return value;
+    }
+
+    /**
+     * @return the number of analyzed cases the value appears in
+     */
+    public int getCaseCount() {
+        return caseCount;
+    }
+
+    /**
+     * @return the number of instances of the value in the analyzed cases
+     */
+    public long getInstanceCount() {
+        return instanceCount;
+    }
+}
@@ -33,7 +33,7 @@ public interface EamDb {
 
     public static final int SCHEMA_VERSION = 1;
     public static final CaseDbSchemaVersionNumber CURRENT_DB_SCHEMA_VERSION
-            = new CaseDbSchemaVersionNumber(1, 1);
+            = new CaseDbSchemaVersionNumber(1, 3);
 
     /**
      * Get the instance
@@ -606,6 +606,58 @@ static boolean isEnabled() {
      */
     public CorrelationAttribute.Type getCorrelationTypeById(int typeId) throws EamDbException;
 
+    /**
+     * Find every value of the given correlation types that appears in at least
+     * the given number of the given cases, and store the results in the
+     * materialized commonality results table. The work is done in a single
+     * set-based query over the instance tables.
+     *
+     * @param cases            Cases to compare
+     * @param correlationTypes Correlation types to compare
+     * @param minimumCaseCount Minimum number of cases a value must appear in
+     *
+     * @return The id of the new analysis, used to page through its results
+     *
+     * @throws EamDbException
+     */
+    public int newCommonalityAnalysis(List<CorrelationCase> cases, List<CorrelationAttribute.Type> correlationTypes, int minimumCaseCount) throws EamDbException;
+
+    /**
+     * Get the number of results stored for a commonality analysis.
+     *
+     * @param analysisID Id of the analysis
+     *
+     * @return Number of stored results
+     *
+     * @throws EamDbException
+     */
+    public Long getCountCommonalityResults(int analysisID) throws EamDbException;
+
+    /**
+     * Get one page of the results of a commonality analysis, ordered by
+     * descending case count, then by correlation type and value. Pages are
+     * read by passing the last result of one page to get the next.
+     *
+     * @param analysisID Id of the analysis
+     * @param after      Last result of the previous page, or null for the
+     *                   first page
+     * @param pageSize   Maximum number of results to return
+     *
+     * @return The page of results
+     *
+     * @throws EamDbException
+     */
+    public List<CommonalityResult> getCommonalityResults(int analysisID, CommonalityResult after, int pageSize) throws EamDbException;
+
+    /**
+     * Remove a commonality analysis and its stored results.
+     *
+     * @param analysisID Id of the analysis
+     *
+     * @throws EamDbException
+     */
+    public void deleteCommonalityAnalysis(int analysisID) throws EamDbException;
+
     /**
      * Upgrade the schema of the database (if needed)
      *
@@ -0,0 +1,434 @@
+/*
+ * Central Repository
+ *
+ * Copyright 2017 Basis Technology Corp.
+ * Contact: carrier <at> sleuthkit <dot> org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sleuthkit.autopsy.centralrepository.datamodel;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.logging.Level;
+import java.util.regex.Pattern;
+import org.apache.commons.dbcp2.BasicDataSource;
+import org.sleuthkit.autopsy.coreutils.Logger;
+import org.sleuthkit.autopsy.coreutils.ModuleSettings;
+
+/**
+ * Collects timing statistics for the connections handed out by the central
+ * repository database implementations.
+ *
+ * Connections are wrapped in dynamic proxies that time each statement
+ * execution and key the timings by SQL template. Executions slower than a
+ * configurable threshold are logged along with the types of their
+ * parameters (never the values). Connection pool usage is sampled from the
+ * registered pools and written to the log periodically.
+ */
+public final class EamDbStatistics {
+
+    private final static Logger LOGGER = Logger.getLogger(EamDbStatistics.class.getName());
+    private static final String SLOW_QUERY_THRESHOLD_KEY = "db.slowQueryThresholdMs"; // NON-NLS
+    private static final long DEFAULT_SLOW_QUERY_THRESHOLD_MS = 500;
+    private static final long LOG_INTERVAL_MINUTES = 5;
+    private static final int MAX_TEMPLATES = 500;
+    private static final int LOG_TOP_TEMPLATES = 5;
+    private static final String OTHER_TEMPLATE = "<other>"; // NON-NLS
+    private static final Pattern NUMERIC_LITERAL = Pattern.compile("\\b\\d+\\b");
+
+    /*
+     * Histogram bucket i counts executions taking less than 2^i milliseconds;
+     * the last bucket counts everything slower.
+     */
+    private static final int HISTOGRAM_BUCKETS = 16;
+
+    private static final Map<String, TemplateStatistics> templates = new ConcurrentHashMap<>();
+    private static final Map<String, BasicDataSource> pools = new ConcurrentHashMap<>();
+    private static final AtomicInteger waitingForConnection = new AtomicInteger();
+    private static final AtomicLong connectionWaits = new AtomicLong();
+    private static final AtomicLong connectionWaitNanos = new AtomicLong();
+    private static volatile long slowQueryThresholdNanos = TimeUnit.MILLISECONDS.toNanos(loadSlowQueryThreshold());
+    private static ScheduledThreadPoolExecutor logExecutor;
+
+    private EamDbStatistics() {
+    }
+
+    /**
+     * Register a connection pool so its usage is reported.
+     *
+     * @param name Name used in reports
+     * @param pool The pool
+     */
+    static synchronized void registerPool(String name, BasicDataSource pool) {
+        pools.put(name, pool);
+        if (null == logExecutor) {
+            logExecutor = new ScheduledThreadPoolExecutor(1, new ThreadFactoryBuilder().setNameFormat("EamDb-statistics-%d").setDaemon(true).build()); // NON-NLS
+            logExecutor.scheduleAtFixedRate(() -> LOGGER.log(Level.INFO, getSummaryLine()), LOG_INTERVAL_MINUTES, LOG_INTERVAL_MINUTES, TimeUnit.MINUTES);
+        }
+    }
+
+    /**
+     * Stop reporting on a connection pool that has been closed.
+     *
+     * @param name Name the pool was registered with
+     */
+    static void unregisterPool(String name) {
+        pools.remove(name);
+    }
+
+    /**
+     * Get a connection from a pool, recording how long the caller waited, and
+     * wrap it so its statements are timed.
+     *
+     * @param pool The pool
+     *
+     * @return The instrumented connection
+     *
+     * @throws SQLException
+     */
+    static Connection getConnection(BasicDataSource pool) throws SQLException {
+        long start = System.nanoTime();
+        waitingForConnection.incrementAndGet();
+        Connection conn;
+        try {
+            conn = pool.getConnection();
+        } finally {
+            waitingForConnection.decrementAndGet();
+            connectionWaits.incrementAndGet();
+            connectionWaitNanos.addAndGet(System.nanoTime() - start);
+        }
+        return wrap(conn);
+    }
+
+    /**
+     * Wrap a connection so its statements are timed.
+     *
+     * @param conn The connection
+     *
+     * @return The instrumented connection
+     */
+    static Connection wrap(Connection conn) {
+        return (Connection) Proxy.newProxyInstance(EamDbStatistics.class.getClassLoader(),
+                new Class<?>[]{Connection.class}, new ConnectionHandler(conn));
+    }
+
+    /**
+     * Set the threshold above which statements are logged as slow, and save it.
+     *
+     * @param thresholdMs Threshold in milliseconds
+     */
+    public static void setSlowQueryThreshold(long thresholdMs) {
+        slowQueryThresholdNanos = TimeUnit.MILLISECONDS.toNanos(thresholdMs);
+        ModuleSettings.setConfigSetting("CentralRepository", SLOW_QUERY_THRESHOLD_KEY, Long.toString(thresholdMs)); // NON-NLS
+    }
+
+    /**
+     * @return the slow statement threshold in milliseconds
+     */
+    public static long getSlowQueryThreshold() {
+        return TimeUnit.NANOSECONDS.toMillis(slowQueryThresholdNanos);
+    }
+
+    /**
+     * Discard all collected statement timings.
+     */
+    public static void reset() {
+        templates.clear();
+        connectionWaits.set(0);
+        connectionWaitNanos.set(0);
+    }
+
+    /**
+     * Get a one line summary of pool usage and the most expensive statements,
+     * as written to the log periodically.
+     *
+     * @return The summary
+     */
+    public static String getSummaryLine() {
+        StringBuilder line = new StringBuilder("Central repository statistics: "); // NON-NLS
+        appendPoolStatistics(line, "; "); // NON-NLS
+        List<TemplateStatistics> top = getTemplatesByTotalTime();
+        for (int i = 0; i < Math.min(LOG_TOP_TEMPLATES, top.size()); i++) {
+            TemplateStatistics stats = top.get(i);
+            line.append("; [").append(stats.template).append("] count=").append(stats.count.get())
+                    .append(" totalMs=").append(TimeUnit.NANOSECONDS.toMillis(stats.totalNanos.get()));
+        }
+        return line.toString();
+    }
+
+    /**
+     * Get a multi-line report of pool usage and the latency histogram of every
+     * statement template, most expensive first.
+     *
+     * @return The report
+     */
+    public static String getReport() {
+        StringBuilder report = new StringBuilder();
+        report.append("Slow statement threshold: ").append(getSlowQueryThreshold()).append(" ms\n"); // NON-NLS
+        appendPoolStatistics(report, "\n"); // NON-NLS
+        report.append("\n");
+        for (TemplateStatistics stats : getTemplatesByTotalTime()) {
+            long count = stats.count.get();
+            report.append(stats.template).append("\n");
+            report.append("    count=").append(count) // NON-NLS
+                    .append(" totalMs=").append(TimeUnit.NANOSECONDS.toMillis(stats.totalNanos.get())) // NON-NLS
+                    .append(" meanMs=").append(count == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(stats.totalNanos.get() / count)) // NON-NLS
+                    .append(" maxMs=").append(TimeUnit.NANOSECONDS.toMillis(stats.maxNanos.get())) // NON-NLS
+                    .append(" errors=").append(stats.errors.get()).append("\n"); // NON-NLS
+            report.append("    histogram:"); // NON-NLS
+            for (int i = 0; i < HISTOGRAM_BUCKETS; i++) {
+                long bucketCount = stats.histogram.get(i);
+                if (bucketCount > 0) {
+                    report.append(i == HISTOGRAM_BUCKETS - 1 ? " >=" : " <").append(1L << Math.min(i, HISTOGRAM_BUCKETS - 2))
+                            .append("ms:").append(bucketCount);
+                }
+            }
+            report.append("\n");
+        }
+        return report.toString();
+    }
+
+    private static void appendPoolStatistics(StringBuilder builder, String separator) {
+        for (Map.Entry<String, BasicDataSource> entry : pools.entrySet()) {
+            BasicDataSource pool = entry.getValue();
+            builder.append("Pool ").append(entry.getKey()) // NON-NLS
+                    .append(": active=").append(pool.getNumActive()) // NON-NLS
+                    .append(" idle=").append(pool.getNumIdle()) // NON-NLS
+                    .append(" maxTotal=").append(pool.getMaxTotal()) // NON-NLS
+                    .append(separator);
+        }
+        long waits = connectionWaits.get();
+        builder.append("Connection requests: waiting=").append(waitingForConnection.get()) // NON-NLS
+                .append(" total=").append(waits) // NON-NLS
+                .append(" meanWaitMs=").append(waits == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(connectionWaitNanos.get() / waits)); // NON-NLS
+    }
+
+    private static List<TemplateStatistics> getTemplatesByTotalTime() {
+        List<TemplateStatistics> sorted = new ArrayList<>(templates.values());
+        sorted.sort(Comparator.comparingLong((TemplateStatistics stats) -> stats.totalNanos.get()).reversed());
+        return sorted;
+    }
+
+    private static long loadSlowQueryThreshold() {
+        String thresholdString = ModuleSettings.getConfigSetting("CentralRepository", SLOW_QUERY_THRESHOLD_KEY); // NON-NLS
+        if (thresholdString == null || thresholdString.isEmpty()) {
+            return DEFAULT_SLOW_QUERY_THRESHOLD_MS;
+        }
+        try {
+            return Long.parseLong(thresholdString);
+        } catch (NumberFormatException ex) {
+            return DEFAULT_SLOW_QUERY_THRESHOLD_MS;
+        }
+    }
+
+    /**
+     * Reduce a SQL string to a template by replacing numeric literals, so
+     * statements built with inlined ids share one entry.
+     */
+    private static TemplateStatistics getTemplateStatistics(String sql) {
+        String template = NUMERIC_LITERAL.matcher(sql).replaceAll("?");
+        TemplateStatistics stats = templates.get(template);
+        if (null == stats) {
+            if (templates.size() >= MAX_TEMPLATES) {
+                template = OTHER_TEMPLATE;
+            }
+            stats = templates.computeIfAbsent(template, TemplateStatistics::new);
+        }
+        return stats;
+    }
+
+    /**
+     * Record one statement execution.
+     *
+     * @param sql             The SQL executed
+     * @param parameterShape  Parameter types, or null for plain statements
+     * @param elapsedNanos    Time taken
+     * @param failed          Whether the execution threw
+     */
+    private static void record(String sql, String parameterShape, long elapsedNanos, boolean failed) {
+        TemplateStatistics stats = getTemplateStatistics(sql);
+        stats.count.incrementAndGet();
+        stats.totalNanos.addAndGet(elapsedNanos);
+        stats.maxNanos.accumulateAndGet(elapsedNanos, Math::max);
+        if (failed) {
+            stats.errors.incrementAndGet();
+        }
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(elapsedNanos);
+        int bucket = (elapsedMs == 0) ? 0 : 64 - Long.numberOfLeadingZeros(elapsedMs);
+        stats.histogram.incrementAndGet(Math.min(bucket, HISTOGRAM_BUCKETS - 1));
+
+        if (elapsedNanos > slowQueryThresholdNanos) {
+            LOGGER.log(Level.WARNING, "Slow central repository statement ({0} ms, parameters {1}): {2}", // NON-NLS
+                    new Object[]{elapsedMs, parameterShape == null ? "none" : parameterShape, sql}); // NON-NLS
+        }
+    }
+
+    /**
+     * Invoke a method on the wrapped object, unwrapping reflection exceptions.
+     */
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException ex) {
+            throw ex.getCause();
+        }
+    }
+
+    private static boolean isExecute(Method method) {
+        return method.getName().startsWith("execute"); // NON-NLS
+    }
+
+    /**
+     * Timings for one SQL template.
+     */
+    private static final class TemplateStatistics {
+
+        private final String template;
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong totalNanos = new AtomicLong();
+        private final AtomicLong maxNanos = new AtomicLong();
+        private final AtomicLong errors = new AtomicLong();
+        private final AtomicLongArray histogram = new AtomicLongArray(HISTOGRAM_BUCKETS);
+
+        private TemplateStatistics(String template) {
+            this.template = template;
+        }
+    }
+
+    /**
+     * Wraps the statements created by a connection.
+     */
+    private static final class ConnectionHandler implements InvocationHandler {
+
+        private final Connection conn;
+
+        private ConnectionHandler(Connection conn) {
+            this.conn = conn;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            Object result = EamDbStatistics.invoke(conn, method, args);
+            if ("prepareStatement".equals(method.getName())) { // NON-NLS
+                return Proxy.newProxyInstance(EamDbStatistics.class.getClassLoader(),
+                        new Class<?>[]{PreparedStatement.class}, new PreparedStatementHandler((PreparedStatement) result, (String) args[0]));
+            } else if ("createStatement".equals(method.getName())) { // NON-NLS
+                return Proxy.newProxyInstance(EamDbStatistics.class.getClassLoader(),
+                        new Class<?>[]{Statement.class}, new StatementHandler((Statement) result));
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Times plain statements, keyed by the SQL passed to each execute call.
+     */
+    private static final class StatementHandler implements InvocationHandler {
+
+        private final Statement statement;
+        private final List<String> batch = new ArrayList<>();
+
+        private StatementHandler(Statement statement) {
+            this.statement = statement;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if ("addBatch".equals(method.getName()) && args != null && args[0] instanceof String) { // NON-NLS
+                batch.add((String) args[0]);
+            }
+            if (!isExecute(method)) {
+                return EamDbStatistics.invoke(statement, method, args);
+            }
+            String sql = (args != null && args.length > 0 && args[0] instanceof String)
+                    ? (String) args[0]
+                    : (batch.isEmpty() ? "<batch>" : batch.get(0)); // NON-NLS
+            batch.clear();
+            long start = System.nanoTime();
+            boolean failed = true;
+            try {
+                Object result = EamDbStatistics.invoke(statement, method, args);
+                failed = false;
+                return result;
+            } finally {
+                record(sql, null, System.nanoTime() - start, failed);
+            }
+        }
+    }
+
+    /**
+     * Times prepared statements, keyed by their SQL, and tracks the types of
+     * the parameters set since the last execution.
+     */
+    private static final class PreparedStatementHandler implements InvocationHandler {
+
+        private final PreparedStatement statement;
+        private final String sql;
+        private final List<String> parameterTypes = new ArrayList<>();
+        private int batchSize = 0;
+
+        private PreparedStatementHandler(PreparedStatement statement, String sql) {
+            this.statement = statement;
+            this.sql = sql;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if (name.startsWith("set") && args != null && args.length >= 2 && args[0] instanceof Integer) { // NON-NLS
+                int index = (Integer) args[0];
+                while (parameterTypes.size() < index) {
+                    parameterTypes.add("?");
+                }
+                parameterTypes.set(index - 1, args[1] == null ? "null" : args[1].getClass().getSimpleName()); // NON-NLS
+            } else if ("clearParameters".equals(name)) { // NON-NLS
+                parameterTypes.clear();
+            } else if ("addBatch".equals(name)) { // NON-NLS
+                batchSize++;
+            }
+            if (!isExecute(method)) {
+                return EamDbStatistics.invoke(statement, method, args);
+            }
+
+            String shape = parameterTypes.toString() + (batchSize > 0 ? " x" + batchSize : "");
+            batchSize = 0;
+            long start = System.nanoTime();
+            boolean failed = true;
+            try {
+                Object result = EamDbStatistics.invoke(statement, method, args);
+                failed = false;
+                return result;
+            } finally {
+                record(sql, shape, System.nanoTime() - start, failed);
+            }
+        }
+    }
+}
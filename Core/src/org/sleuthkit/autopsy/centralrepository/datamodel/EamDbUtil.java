@@ -23,6 +23,7 @@
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.Arrays;
 import java.util.List;
 import java.util.logging.Level;
 import static org.sleuthkit.autopsy.centralrepository.datamodel.EamDb.CURRENT_DB_SCHEMA_VERSION;
@@ -361,4 +362,60 @@ public static String correlationTypeToReferenceTableName(CorrelationAttribute.Ty
         return "reference_" + type.getDbTableName();
     }
 
+    /**
+     * Get the statement that creates the covering index used by the count and
+     * known bad instance queries, so that they do not need to visit the
+     * instance rows.
+     *
+     * @param indexPrefix  Prefix of the index name
+     * @param tableName    Instance table name
+     * @param concurrently True to build the index without blocking writes to
+     *                     the table. PostgreSQL only, and not allowed inside a
+     *                     transaction.
+     *
+     * @return CREATE INDEX statement
+     */
+    static String getCoveringInstanceIndexSql(String indexPrefix, String tableName, boolean concurrently) {
+        return String.format("CREATE INDEX %sIF NOT EXISTS %s_value_known_status_case_ds ON %s (value, known_status, case_id, data_source_id)",
+                concurrently ? "CONCURRENTLY " : "", indexPrefix, tableName);
+    }
+
+    /**
+     * Get the statements that create the tables holding materialized
+     * commonality analysis results.
+     *
+     * @param platform The database platform
+     *
+     * @return CREATE statements, in execution order
+     */
+    static List<String> getCommonalityTableSql(EamDbPlatformEnum platform) {
+        String idColumn = (platform == EamDbPlatformEnum.POSTGRESQL)
+                ? "id SERIAL PRIMARY KEY,"
+                : "id integer primary key autoincrement NOT NULL,";
+
+        StringBuilder createAnalysesTable = new StringBuilder();
+        createAnalysesTable.append("CREATE TABLE IF NOT EXISTS commonality_analyses (");
+        createAnalysesTable.append(idColumn);
+        createAnalysesTable.append("min_case_count integer NOT NULL,");
+        createAnalysesTable.append("case_ids text NOT NULL,");
+        createAnalysesTable.append("type_ids text NOT NULL");
+        createAnalysesTable.append(")");
+
+        StringBuilder createResultsTable = new StringBuilder();
+        createResultsTable.append("CREATE TABLE IF NOT EXISTS commonality_results (");
+        createResultsTable.append(idColumn);
+        createResultsTable.append("analysis_id integer NOT NULL,");
+        createResultsTable.append("type_id integer NOT NULL,");
+        createResultsTable.append("value text NOT NULL,");
+        createResultsTable.append("case_count integer NOT NULL,");
+        createResultsTable.append("instance_count bigint NOT NULL,");
+        createResultsTable.append("foreign key (analysis_id) references commonality_analyses(id) ON UPDATE SET NULL ON DELETE CASCADE");
+        createResultsTable.append(")");
+
+        // Results are paged by seeking on this key within an analysis
+        String resultsIdx1 = "CREATE INDEX IF NOT EXISTS commonality_results_analysis_key ON commonality_results (analysis_id, case_count DESC, type_id, value)";
+
+        return Arrays.asList(createAnalysesTable.toString(), createResultsTable.toString(), resultsIdx1);
+    }
+
 }
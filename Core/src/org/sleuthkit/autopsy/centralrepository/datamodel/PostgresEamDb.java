@@ -43,6 +43,7 @@ public class PostgresEamDb extends AbstractSqlEamDb {
     private static PostgresEamDb instance;
 
     private static final int CONN_POOL_SIZE = 10;
+    private static final String POOL_NAME = "PostgreSQL"; // NON-NLS
     private BasicDataSource connectionPool = null;
 
     private final PostgresEamDbSettings dbSettings;
@@ -79,6 +80,7 @@ public void shutdownConnections() throws EamDbException {
                 if(connectionPool != null){
                     connectionPool.close();
                     connectionPool = null; // force it to be re-created on next connect()
+                    EamDbStatistics.unregisterPool(POOL_NAME);
                 }
             }
         } catch (SQLException ex) {
@@ -113,6 +115,7 @@ public void reset() throws EamDbException {
             dropContent.executeUpdate("TRUNCATE TABLE reference_sets RESTART IDENTITY CASCADE");
             dropContent.executeUpdate("TRUNCATE TABLE correlation_types RESTART IDENTITY CASCADE");
             dropContent.executeUpdate("TRUNCATE TABLE db_info RESTART IDENTITY CASCADE");
+            dropContent.executeUpdate("TRUNCATE TABLE commonality_analyses RESTART IDENTITY CASCADE");
 
             String instancesTemplate = "TRUNCATE TABLE %s_instances RESTART IDENTITY CASCADE";
             String referencesTemplate = "TRUNCATE TABLE reference_%s RESTART IDENTITY CASCADE";
@@ -158,6 +161,7 @@ private void setupConnectionPool() throws EamDbException {
         connectionPool.setInitialSize(5); // start with 5 connections
         connectionPool.setMaxIdle(CONN_POOL_SIZE); // max of 10 idle connections
         connectionPool.setValidationQuery(dbSettings.getValidationQuery());
+        EamDbStatistics.registerPool(POOL_NAME, connectionPool);
     }
 
     /**
@@ -180,7 +184,7 @@ protected Connection connect() throws EamDbException {
         }
 
         try {
-            return connectionPool.getConnection();
+            return EamDbStatistics.getConnection(connectionPool);
         } catch (SQLException ex) {
             throw new EamDbException("Error getting connection from connection pool.", ex); // NON-NLS
         }
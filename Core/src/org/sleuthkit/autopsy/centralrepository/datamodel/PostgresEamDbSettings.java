@@ -444,20 +444,34 @@ public boolean initializeDatabaseSchema() {
 
             stmt.execute(createDbInfoTable.toString());
 
+            for (String createSql : EamDbUtil.getCommonalityTableSql(EamDbPlatformEnum.POSTGRESQL)) {
+                stmt.execute(createSql);
+            }
+
             // Create a separate instance and reference table for each correlation type
             List<CorrelationAttribute.Type> DEFAULT_CORRELATION_TYPES = CorrelationAttribute.getDefaultCorrelationTypes();
             
+            // Servers that support hash partitioning get instance tables
+            // partitioned by value
+            boolean partitionInstances = PostgresInstanceTablePartitioner.isPartitioningSupported(conn);
+
             String reference_type_dbname;
             String instance_type_dbname;
             for (CorrelationAttribute.Type type : DEFAULT_CORRELATION_TYPES) {
                 reference_type_dbname = EamDbUtil.correlationTypeToReferenceTableName(type);
                 instance_type_dbname = EamDbUtil.correlationTypeToInstanceTableName(type);
                 
-                stmt.execute(String.format(createArtifactInstancesTableTemplate.toString(), instance_type_dbname, instance_type_dbname));
-                stmt.execute(String.format(instancesIdx1, instance_type_dbname, instance_type_dbname));
-                stmt.execute(String.format(instancesIdx2, instance_type_dbname, instance_type_dbname));
-                stmt.execute(String.format(instancesIdx3, instance_type_dbname, instance_type_dbname));
-                stmt.execute(String.format(instancesIdx4, instance_type_dbname, instance_type_dbname));
+                if (partitionInstances) {
+                    PostgresInstanceTablePartitioner.createPartitionedInstanceTable(stmt, instance_type_dbname, instance_type_dbname, null,
+                            PostgresInstanceTablePartitioner.DEFAULT_PARTITION_COUNT);
+                } else {
+                    stmt.execute(String.format(createArtifactInstancesTableTemplate.toString(), instance_type_dbname, instance_type_dbname));
+                    stmt.execute(String.format(instancesIdx1, instance_type_dbname, instance_type_dbname));
+                    stmt.execute(String.format(instancesIdx2, instance_type_dbname, instance_type_dbname));
+                    stmt.execute(String.format(instancesIdx3, instance_type_dbname, instance_type_dbname));
+                    stmt.execute(String.format(instancesIdx4, instance_type_dbname, instance_type_dbname));
+                    stmt.execute(EamDbUtil.getCoveringInstanceIndexSql(instance_type_dbname, instance_type_dbname, false));
+                }
 
                 // FUTURE: allow more than the FILES type
                 if (type.getId() == CorrelationAttribute.FILES_TYPE_ID) {
@@ -0,0 +1,405 @@
+/*
+ * Central Repository
+ *
+ * Copyright 2017 Basis Technology Corp.
+ * Contact: carrier <at> sleuthkit <dot> org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sleuthkit.autopsy.centralrepository.datamodel;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import org.openide.util.NbBundle.Messages;
+import org.sleuthkit.autopsy.coreutils.Logger;
+import org.sleuthkit.autopsy.progress.ProgressIndicator;
+
+/**
+ * Creates and migrates PostgreSQL correlation instance tables that are
+ * partitioned by a hash of the correlation value.
+ *
+ * Nearly every instance query filters on value, so hash partitioning keeps
+ * each lookup inside one partition, and the covering index on (value,
+ * known_status, case_id, data_source_id) lets the count and known bad
+ * queries be answered from the index alone. Hash partitioning requires
+ * PostgreSQL 11 or later; on older servers only the covering index is added.
+ */
+public final class PostgresInstanceTablePartitioner {
+
+    private final static Logger LOGGER = Logger.getLogger(PostgresInstanceTablePartitioner.class.getName());
+
+    public static final int DEFAULT_PARTITION_COUNT = 16;
+    public static final int DEFAULT_BATCH_SIZE = 50000;
+    private static final int MIN_SERVER_MAJOR_VERSION = 11;
+
+    private final PostgresEamDb dbManager;
+    private final int partitionCount;
+    private final int batchSize;
+    private volatile boolean cancelled = false;
+
+    /**
+     * Create a partitioner for the current PostgreSQL central repository
+     * using the default partition count and batch size.
+     *
+     * @throws EamDbException
+     */
+    public PostgresInstanceTablePartitioner() throws EamDbException {
+        this(DEFAULT_PARTITION_COUNT, DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * Create a partitioner for the current PostgreSQL central repository.
+     *
+     * @param partitionCount Number of hash partitions per instance table
+     * @param batchSize      Number of rows copied per transaction during
+     *                       migration
+     *
+     * @throws EamDbException
+     */
+    public PostgresInstanceTablePartitioner(int partitionCount, int batchSize) throws EamDbException {
+        if (partitionCount < 1 || batchSize < 1) {
+            throw new EamDbException("Partition count and batch size must be positive"); // NON-NLS
+        }
+        this.dbManager = PostgresEamDb.getInstance();
+        this.partitionCount = partitionCount;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Check whether the server behind the connection supports hash
+     * partitioning.
+     *
+     * @param conn An open connection
+     *
+     * @return true if partitioned instance tables can be created
+     *
+     * @throws SQLException
+     */
+    static boolean isPartitioningSupported(Connection conn) throws SQLException {
+        return conn.getMetaData().getDatabaseMajorVersion() >= MIN_SERVER_MAJOR_VERSION;
+    }
+
+    /**
+     * Create an empty partitioned instance table along with its partitions and
+     * indexes.
+     *
+     * @param stmt           Statement to execute the DDL with
+     * @param tableName      Name of the new table
+     * @param namePrefix     Prefix for the names of the partitions, indexes
+     *                       and constraints. This is the name the table will
+     *                       have once in use, so that a migrated table does not
+     *                       need its dependent objects renamed.
+     * @param idDefault      SQL default expression for the id column, or null
+     *                       to create a new serial sequence
+     * @param partitionCount Number of hash partitions
+     *
+     * @throws SQLException
+     */
+    static void createPartitionedInstanceTable(Statement stmt, String tableName, String namePrefix, String idDefault, int partitionCount) throws SQLException {
+        StringBuilder createTable = new StringBuilder();
+        createTable.append("CREATE TABLE IF NOT EXISTS ").append(tableName).append(" (");
+        if (null == idDefault) {
+            createTable.append("id SERIAL,");
+        } else {
+            createTable.append("id integer NOT NULL DEFAULT ").append(idDefault).append(",");
+        }
+        createTable.append("case_id integer NOT NULL,");
+        createTable.append("data_source_id integer NOT NULL,");
+        createTable.append("value text NOT NULL,");
+        createTable.append("file_path text NOT NULL,");
+        createTable.append("known_status integer NOT NULL,");
+        createTable.append("comment text,");
+        // The partition key must be part of every unique constraint
+        createTable.append("CONSTRAINT ").append(namePrefix).append("_pt_pkey PRIMARY KEY (id, value),");
+        createTable.append("CONSTRAINT ").append(namePrefix).append("_pt_multi_unique UNIQUE (data_source_id, value, file_path),");
+        createTable.append("CONSTRAINT ").append(namePrefix).append("_pt_case_id_fkey foreign key (case_id) references cases(id) ON UPDATE SET NULL ON DELETE SET NULL,");
+        createTable.append("CONSTRAINT ").append(namePrefix).append("_pt_data_source_id_fkey foreign key (data_source_id) references data_sources(id) ON UPDATE SET NULL ON DELETE SET NULL");
+        createTable.append(") PARTITION BY HASH (value)");
+        stmt.execute(createTable.toString());
+
+        String partitionTemplate = "CREATE TABLE IF NOT EXISTS %s_p%d PARTITION OF %s FOR VALUES WITH (MODULUS %d, REMAINDER %d)";
+        for (int i = 0; i < partitionCount; i++) {
+            stmt.execute(String.format(partitionTemplate, namePrefix, i, tableName, partitionCount, i));
+        }
+
+        stmt.execute(String.format("CREATE INDEX IF NOT EXISTS %s_pt_case_id ON %s (case_id)", namePrefix, tableName));
+        stmt.execute(String.format("CREATE INDEX IF NOT EXISTS %s_pt_data_source_id ON %s (data_source_id)", namePrefix, tableName));
+        stmt.execute(EamDbUtil.getCoveringInstanceIndexSql(namePrefix + "_pt", tableName, false));
+    }
+
+    /**
+     * Request that a running migration stop after the current batch. Tables
+     * that have not been swapped yet are left unchanged.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * Bring every instance table up to the current layout while the database
+     * remains in use.
+     *
+     * On PostgreSQL 11 and later each unpartitioned table is copied into a
+     * partitioned table, then the tables are swapped. Rows are copied in
+     * batches of committed transactions; writes are only blocked for the final
+     * catch-up copy and swap of each table. On older servers the covering
+     * index is built on each table without blocking writes.
+     *
+     * @param progress Progress indicator, counting copied batches or indexed
+     *                 tables
+     *
+     * @return true if all tables were migrated, false if cancelled
+     *
+     * @throws EamDbException
+     */
+    @Messages({"PostgresInstanceTablePartitioner.partitioning.title=Partitioning correlation instance tables",
+        "# {0} - table name", "# {1} - rows copied", "# {2} - rows to copy",
+        "PostgresInstanceTablePartitioner.partitioning.progress={0}: {1} of {2}",
+        "PostgresInstanceTablePartitioner.indexing.title=Indexing correlation instance tables",
+        "# {0} - table name",
+        "PostgresInstanceTablePartitioner.indexing.progress=Indexing {0}"})
+    public boolean migrate(ProgressIndicator progress) throws EamDbException {
+        Connection conn = dbManager.connect();
+        try {
+            conn.setAutoCommit(true);
+            List<String> tableNames = new ArrayList<>();
+            for (CorrelationAttribute.Type type : dbManager.getDefinedCorrelationTypes()) {
+                tableNames.add(EamDbUtil.correlationTypeToInstanceTableName(type));
+            }
+
+            if (!isPartitioningSupported(conn)) {
+                progress.start(Bundle.PostgresInstanceTablePartitioner_indexing_title(), Math.max(tableNames.size(), 1));
+                int tablesDone = 0;
+                for (String tableName : tableNames) {
+                    if (cancelled) {
+                        break;
+                    }
+                    progress.progress(Bundle.PostgresInstanceTablePartitioner_indexing_progress(tableName), tablesDone);
+                    createCoveringIndexConcurrently(conn, tableName);
+                    progress.progress(++tablesDone);
+                }
+                progress.finish();
+                return !cancelled;
+            }
+
+            List<String> unpartitioned = new ArrayList<>();
+            for (String tableName : tableNames) {
+                if (!isPartitioned(conn, tableName)) {
+                    unpartitioned.add(tableName);
+                }
+            }
+
+            int totalBatches = 0;
+            for (String tableName : unpartitioned) {
+                totalBatches += countBatches(conn, tableName);
+            }
+            progress.start(Bundle.PostgresInstanceTablePartitioner_partitioning_title(), Math.max(totalBatches, 1));
+
+            int batchesDone = 0;
+            for (String tableName : unpartitioned) {
+                if (cancelled) {
+                    break;
+                }
+                batchesDone = migrateTable(conn, tableName, progress, batchesDone);
+            }
+            progress.finish();
+            return !cancelled;
+        } catch (SQLException ex) {
+            throw new EamDbException("Error migrating correlation instance tables.", ex); // NON-NLS
+        } finally {
+            EamDbUtil.closeConnection(conn);
+        }
+    }
+
+    /**
+     * Build the covering index on an unpartitioned table without blocking
+     * writes. The connection must be in auto commit mode. An invalid index
+     * left behind by an interrupted build is dropped and built again.
+     *
+     * @param conn      The connection to use
+     * @param tableName Instance table to index
+     *
+     * @throws SQLException
+     */
+    private static void createCoveringIndexConcurrently(Connection conn, String tableName) throws SQLException {
+        String indexName = tableName + "_value_known_status_case_ds";
+        try (Statement stmt = conn.createStatement()) {
+            try (PreparedStatement ps = conn.prepareStatement("SELECT i.indisvalid FROM pg_class c JOIN pg_index i ON i.indexrelid=c.oid WHERE c.relname=?")) {
+                ps.setString(1, indexName);
+                try (ResultSet rs = ps.executeQuery()) {
+                    if (rs.next() && !rs.getBoolean(1)) {
+                        stmt.execute("DROP INDEX CONCURRENTLY IF EXISTS " + indexName);
+                    }
+                }
+            }
+            stmt.execute(EamDbUtil.getCoveringInstanceIndexSql(tableName, tableName, true));
+        }
+    }
+
+    /**
+     * Migrate one instance table.
+     *
+     * A trigger on the old table records the ids of rows that are updated or
+     * deleted while the copy runs, so that the final catch-up can replace or
+     * remove them in the new table. If the migration is cancelled or fails,
+     * the new table and the change tracking objects are dropped.
+     *
+     * @param conn        The connection to use, in auto commit mode
+     * @param tableName   Instance table to migrate
+     * @param progress    Progress indicator
+     * @param batchesDone Batches completed before this table
+     *
+     * @return Batches completed including this table
+     *
+     * @throws SQLException
+     */
+    private int migrateTable(Connection conn, String tableName, ProgressIndicator progress, int batchesDone) throws SQLException {
+        String newTableName = tableName + "_partitioned";
+        String changesTableName = tableName + "_migration_changes";
+        String triggerName = tableName + "_migration_log";
+        String sequenceName = tableName + "_id_seq";
+        String columns = "id, case_id, data_source_id, value, file_path, known_status, comment";
+        String copySql = String.format("INSERT INTO %s (%s) SELECT %s FROM %s WHERE id > ? AND id <= ? "
+                + "ON CONFLICT DO NOTHING", newTableName, columns, columns, tableName);
+
+        // Start from a clean slate in case an earlier attempt was interrupted
+        dropMigrationObjects(conn, tableName);
+        boolean swapped = false;
+        try {
+            try (Statement stmt = conn.createStatement()) {
+                createPartitionedInstanceTable(stmt, newTableName, tableName, "nextval('" + sequenceName + "')", partitionCount);
+                stmt.execute(String.format("CREATE TABLE %s (id integer NOT NULL)", changesTableName));
+                stmt.execute(String.format("CREATE FUNCTION %s() RETURNS trigger AS $$ BEGIN "
+                        + "INSERT INTO %s (id) VALUES (OLD.id); RETURN NULL; END; $$ LANGUAGE plpgsql", triggerName, changesTableName));
+                stmt.execute(String.format("CREATE TRIGGER %s AFTER UPDATE OR DELETE ON %s FOR EACH ROW EXECUTE PROCEDURE %s()",
+                        triggerName, tableName, triggerName));
+            }
+
+            // Copy everything present now in committed batches. Rows written by
+            // ingest in the meantime are picked up in the final catch-up.
+            long copiedThrough = 0;
+            long highWatermark = getMaxId(conn, tableName);
+            try (PreparedStatement copy = conn.prepareStatement(copySql)) {
+                while (copiedThrough < highWatermark) {
+                    if (cancelled) {
+                        return batchesDone;
+                    }
+                    long upper = Math.min(copiedThrough + batchSize, highWatermark);
+                    copy.setLong(1, copiedThrough);
+                    copy.setLong(2, upper);
+                    copy.executeUpdate();
+                    copiedThrough = upper;
+                    progress.progress(Bundle.PostgresInstanceTablePartitioner_partitioning_progress(tableName, copiedThrough, highWatermark), ++batchesDone);
+                }
+
+                // Block writers, catch up on new, changed and deleted rows,
+                // and swap tables
+                conn.setAutoCommit(false);
+                try (Statement stmt = conn.createStatement()) {
+                    stmt.execute("LOCK TABLE " + tableName + " IN EXCLUSIVE MODE");
+                    stmt.executeUpdate(String.format("DELETE FROM %s WHERE id IN (SELECT id FROM %s)", newTableName, changesTableName));
+                    stmt.executeUpdate(String.format("INSERT INTO %s (%s) SELECT %s FROM %s WHERE id <= %d AND id IN (SELECT id FROM %s) "
+                            + "ON CONFLICT DO NOTHING", newTableName, columns, columns, tableName, copiedThrough, changesTableName));
+                    copy.setLong(1, copiedThrough);
+                    copy.setLong(2, Long.MAX_VALUE);
+                    copy.executeUpdate();
+                    stmt.execute(String.format("ALTER TABLE %s RENAME TO %s_legacy", tableName, tableName));
+                    stmt.execute(String.format("ALTER TABLE %s RENAME TO %s", newTableName, tableName));
+                    // Keep the sequence alive when the legacy table is dropped
+                    stmt.execute(String.format("ALTER SEQUENCE %s OWNED BY %s.id", sequenceName, tableName));
+                    // Dropping the legacy table also drops the trigger
+                    stmt.execute(String.format("DROP TABLE %s_legacy", tableName));
+                    stmt.execute(String.format("DROP FUNCTION %s()", triggerName));
+                    stmt.execute(String.format("DROP TABLE %s", changesTableName));
+                    conn.commit();
+                    swapped = true;
+                } catch (SQLException ex) {
+                    try {
+                        conn.rollback();
+                    } catch (SQLException ex2) {
+                        LOGGER.log(Level.SEVERE, "Database rollback failed", ex2); // NON-NLS
+                    }
+                    throw ex;
+                } finally {
+                    conn.setAutoCommit(true);
+                }
+            }
+        } finally {
+            if (!swapped) {
+                try {
+                    dropMigrationObjects(conn, tableName);
+                } catch (SQLException ex) {
+                    LOGGER.log(Level.SEVERE, "Error cleaning up after partitioning " + tableName, ex); // NON-NLS
+                }
+            }
+        }
+
+        LOGGER.log(Level.INFO, "Partitioned correlation instance table {0}", tableName); // NON-NLS
+        return batchesDone;
+    }
+
+    /**
+     * Drop the partitioned copy and the change tracking objects of an
+     * unfinished migration. The connection must be in auto commit mode.
+     *
+     * @param conn      The connection to use
+     * @param tableName Instance table being migrated
+     *
+     * @throws SQLException
+     */
+    private static void dropMigrationObjects(Connection conn, String tableName) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute(String.format("DROP TRIGGER IF EXISTS %s_migration_log ON %s", tableName, tableName));
+            stmt.execute(String.format("DROP FUNCTION IF EXISTS %s_migration_log()", tableName));
+            stmt.execute(String.format("DROP TABLE IF EXISTS %s_migration_changes", tableName));
+            stmt.execute(String.format("DROP TABLE IF EXISTS %s_partitioned", tableName));
+        }
+    }
+
+    /**
+     * Check whether a table is already a partitioned table.
+     *
+     * @param conn      The connection to use
+     * @param tableName The table name
+     *
+     * @return true if partitioned
+     *
+     * @throws SQLException
+     */
+    private static boolean isPartitioned(Connection conn, String tableName) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement("SELECT relkind FROM pg_class WHERE relname=?")) {
+            ps.setString(1, tableName);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() && "p".equals(rs.getString(1));
+            }
+        }
+    }
+
+    private static long getMaxId(Connection conn, String tableName) throws SQLException {
+        try (Statement stmt = conn.createStatement();
+                ResultSet rs = stmt.executeQuery("SELECT COALESCE(max(id), 0) FROM " + tableName)) {
+            rs.next();
+            return rs.getLong(1);
+        }
+    }
+
+    private int countBatches(Connection conn, String tableName) throws SQLException {
+        return (int) ((getMaxId(conn, tableName) + batchSize - 1) / batchSize);
+    }
+}
@@ -19,6 +19,10 @@
 package org.sleuthkit.autopsy.centralrepository.datamodel;
 
 import java.io.File;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
 import java.sql.Connection;
 import java.sql.SQLException;
 import java.sql.Statement;
@@ -37,6 +41,13 @@
  * Sqlite implementation of the Central Repository database.
  * All methods in AbstractSqlEamDb that read or write to the database should
  * be overriden here and use appropriate locking.
+ *
+ * When the read pool size setting is non-zero the database runs in WAL mode
+ * with a single dedicated writer connection and a small pool of read-only
+ * connections. Writers queue on the exclusive lock for the writer connection,
+ * while readers use their own connections and never wait for a write to commit.
+ * The split is off by default because WAL mode does not work for a database on
+ * a network share.
  */
 public class SqliteEamDb extends AbstractSqlEamDb {
 
@@ -44,14 +55,35 @@ public class SqliteEamDb extends AbstractSqlEamDb {
 
     private static SqliteEamDb instance;
 
+    private static final String POOL_NAME = "SQLite"; // NON-NLS
+    private static final String READ_POOL_NAME = "SQLite read-only"; // NON-NLS
+
     private BasicDataSource connectionPool = null;
 
+    // Read-only connections, only used when readers and writers are split
+    private BasicDataSource readConnectionPool = null;
+
     private final SqliteEamDbSettings dbSettings;
     
     // While the Sqlite database should only be used for single users, it is still
     // possible for multiple threads to attempt to write to the database simultaneously. 
     private final ReentrantReadWriteLock rwLock = new ReentrantReadWriteLock(true);
 
+    // Fixed for the life of the instance since the locking scheme depends on it
+    private final boolean splitReadersAndWriters;
+
+    // The writer connection checked out by the current thread, if any. A read
+    // or write nested inside a write (e.g. setArtifactInstanceKnownStatus
+    // calling newCase) reuses it rather than waiting forever for the pool's
+    // only connection, which the same thread already holds, and sees the rows
+    // the outer write has not committed yet.
+    private final ThreadLocal<HeldConnection> heldWriterConnection = new ThreadLocal<>();
+
+    // The reader connection checked out by the current thread, if any. A read
+    // nested inside another read reuses it, so a thread never holds more than
+    // one connection from the bounded read pool.
+    private final ThreadLocal<HeldConnection> heldReaderConnection = new ThreadLocal<>();
+
     /**
      * Get the singleton instance of SqliteEamDb
      * 
@@ -75,6 +107,7 @@ public synchronized static SqliteEamDb getInstance() throws EamDbException {
     private SqliteEamDb() throws EamDbException {
         dbSettings = new SqliteEamDbSettings();
         bulkArtifactsThreshold = dbSettings.getBulkThreshold();
+        splitReadersAndWriters = dbSettings.getReadPoolSize() > 0;
     }
 
     @Override
@@ -84,6 +117,12 @@ public void shutdownConnections() throws EamDbException {
                 if (null != connectionPool) {
                     connectionPool.close();
                     connectionPool = null; // force it to be re-created on next connect()
+                    EamDbStatistics.unregisterPool(POOL_NAME);
+                }
+                if (null != readConnectionPool) {
+                    readConnectionPool.close();
+                    readConnectionPool = null;
+                    EamDbStatistics.unregisterPool(READ_POOL_NAME);
                 }
             }
         } catch (SQLException ex) {
@@ -122,6 +161,8 @@ public void reset() throws EamDbException {
                 dropContent.executeUpdate("DELETE FROM reference_sets");
                 dropContent.executeUpdate("DELETE FROM artifact_types");
                 dropContent.executeUpdate("DELETE FROM db_info");
+                dropContent.executeUpdate("DELETE FROM commonality_results");
+                dropContent.executeUpdate("DELETE FROM commonality_analyses");
 
                 String instancesTemplate = "DELETE FROM %s_instances";
                 String referencesTemplate = "DELETE FROM global_files";
@@ -160,24 +201,68 @@ private void setupConnectionPool() throws EamDbException {
         connectionPool.setDriverClassName(dbSettings.getDriver());
         connectionPool.setUrl(dbSettings.getConnectionURL());
 
-        // tweak pool configuration
-        connectionPool.setInitialSize(50);
-        connectionPool.setMaxTotal(-1);
-        connectionPool.setMaxIdle(-1);
-        connectionPool.setMaxWaitMillis(1000);
+        if (!splitReadersAndWriters) {
+            // tweak pool configuration
+            connectionPool.setInitialSize(50);
+            connectionPool.setMaxTotal(-1);
+            connectionPool.setMaxIdle(-1);
+            connectionPool.setMaxWaitMillis(1000);
+            connectionPool.setValidationQuery(dbSettings.getValidationQuery());
+            connectionPool.setConnectionInitSqls(Arrays.asList("PRAGMA foreign_keys = ON"));
+            EamDbStatistics.registerPool(POOL_NAME, connectionPool);
+            return;
+        }
+
+        // A single writer connection. Writers are serialized by the exclusive
+        // lock, so they never wait on the pool itself.
+        connectionPool.setInitialSize(1);
+        connectionPool.setMaxTotal(1);
+        connectionPool.setMaxIdle(1);
+        connectionPool.setMaxWaitMillis(-1);
         connectionPool.setValidationQuery(dbSettings.getValidationQuery());
-        connectionPool.setConnectionInitSqls(Arrays.asList("PRAGMA foreign_keys = ON"));
+        connectionPool.setConnectionInitSqls(Arrays.asList(
+                "PRAGMA journal_mode = WAL",
+                "PRAGMA synchronous = NORMAL",
+                "PRAGMA foreign_keys = ON"));
+
+        // Read-only connections. WAL lets these read the last committed state
+        // while the writer has a transaction open. Each thread holds at most
+        // one of them, and never while waiting for another, so readers can
+        // wait for a free connection without deadlocking.
+        int readPoolSize = dbSettings.getReadPoolSize();
+        readConnectionPool = new BasicDataSource();
+        readConnectionPool.setDriverClassName(dbSettings.getDriver());
+        readConnectionPool.setUrl(dbSettings.getConnectionURL());
+        readConnectionPool.setInitialSize(readPoolSize);
+        readConnectionPool.setMaxTotal(readPoolSize);
+        readConnectionPool.setMaxIdle(readPoolSize);
+        readConnectionPool.setMaxWaitMillis(-1);
+        readConnectionPool.setValidationQuery(dbSettings.getValidationQuery());
+        readConnectionPool.setConnectionInitSqls(Arrays.asList(
+                "PRAGMA foreign_keys = ON",
+                "PRAGMA query_only = ON"));
+
+        EamDbStatistics.registerPool(POOL_NAME, connectionPool);
+        EamDbStatistics.registerPool(READ_POOL_NAME, readConnectionPool);
     }
 
     /**
      * Lazily setup Singleton connection on first request.
      *
+     * When readers and writers are split, a thread holding the exclusive lock,
+     * or already holding the writer connection, gets the writer connection for
+     * reads as well as writes. Everything else gets a read-only connection.
+     * Both are re-entrant: a thread that already has one checked out gets it
+     * again, and it goes back to its pool when the outermost caller closes it.
+     *
      * @return A connection from the connection pool.
      *
      * @throws EamDbException
      */
     @Override
     protected Connection connect() throws EamDbException {
+        BasicDataSource pool;
+        ThreadLocal<HeldConnection> heldConnection;
         synchronized (this) {
             if (!EamDb.isEnabled()) {
                 throw new EamDbException("Central Repository module is not enabled"); // NON-NLS
@@ -187,11 +272,32 @@ protected Connection connect() throws EamDbException {
                 setupConnectionPool();
             }
 
-            try {
-                return connectionPool.getConnection();
-            } catch (SQLException ex) {
-                throw new EamDbException("Error getting connection from connection pool.", ex); // NON-NLS
+            if (!splitReadersAndWriters) {
+                pool = connectionPool;
+                heldConnection = null;
+            } else if (rwLock.isWriteLockedByCurrentThread() || heldWriterConnection.get() != null) {
+                pool = connectionPool;
+                heldConnection = heldWriterConnection;
+            } else {
+                pool = readConnectionPool;
+                heldConnection = heldReaderConnection;
+            }
+        }
+
+        // Get the connection outside of the monitor so that a reader is not
+        // held up by a writer waiting for the writer connection.
+        try {
+            if (heldConnection != null) {
+                HeldConnection held = heldConnection.get();
+                if (held == null) {
+                    held = new HeldConnection(EamDbStatistics.getConnection(pool), heldConnection);
+                    heldConnection.set(held);
+                }
+                return held.checkOut();
             }
+            return EamDbStatistics.getConnection(pool);
+        } catch (SQLException ex) {
+            throw new EamDbException("Error getting connection from connection pool.", ex); // NON-NLS
         }
     }
 
@@ -995,6 +1101,87 @@ public CorrelationAttribute.Type getCorrelationTypeById(int typeId) throws EamDb
         }  
     }   
     
+    /**
+     * Find every value of the given correlation types that appears in at least
+     * the given number of the given cases, and store the results in the
+     * materialized commonality results table.
+     *
+     * @param cases            Cases to compare
+     * @param correlationTypes Correlation types to compare
+     * @param minimumCaseCount Minimum number of cases a value must appear in
+     *
+     * @return The id of the new analysis
+     *
+     * @throws EamDbException
+     */
+    @Override
+    public int newCommonalityAnalysis(List<CorrelationCase> cases, List<CorrelationAttribute.Type> correlationTypes, int minimumCaseCount) throws EamDbException {
+        try{
+            acquireExclusiveLock();
+            return super.newCommonalityAnalysis(cases, correlationTypes, minimumCaseCount);
+        } finally {
+            releaseExclusiveLock();
+        }
+    }
+
+    /**
+     * Get the number of results stored for a commonality analysis.
+     *
+     * @param analysisID Id of the analysis
+     *
+     * @return Number of stored results
+     *
+     * @throws EamDbException
+     */
+    @Override
+    public Long getCountCommonalityResults(int analysisID) throws EamDbException {
+        try{
+            acquireSharedLock();
+            return super.getCountCommonalityResults(analysisID);
+        } finally {
+            releaseSharedLock();
+        }
+    }
+
+    /**
+     * Get one page of the results of a commonality analysis.
+     *
+     * @param analysisID Id of the analysis
+     * @param after      Last result of the previous page, or null for the
+     *                   first page
+     * @param pageSize   Maximum number of results to return
+     *
+     * @return The page of results
+     *
+     * @throws EamDbException
+     */
+    @Override
+    public List<CommonalityResult> getCommonalityResults(int analysisID, CommonalityResult after, int pageSize) throws EamDbException {
+        try{
+            acquireSharedLock();
+            return super.getCommonalityResults(analysisID, after, pageSize);
+        } finally {
+            releaseSharedLock();
+        }
+    }
+
+    /**
+     * Remove a commonality analysis and its stored results.
+     *
+     * @param analysisID Id of the analysis
+     *
+     * @throws EamDbException
+     */
+    @Override
+    public void deleteCommonalityAnalysis(int analysisID) throws EamDbException {
+        try{
+            acquireExclusiveLock();
+            super.deleteCommonalityAnalysis(analysisID);
+        } finally {
+            releaseExclusiveLock();
+        }
+    }
+
     /**
      * Upgrade the schema of the database (if needed)
      * @throws EamDbException 
@@ -1045,9 +1232,14 @@ private void releaseExclusiveLock() {
      * Acquire the lock that provides shared access to the case database.
      * Call this method in a try block with a call to the
      * lock release method in an associated finally block.
+     *
+     * When readers and writers are split no lock is taken, since WAL mode
+     * gives each read-only connection a consistent snapshot.
      */
     private void acquireSharedLock() {
-        rwLock.readLock().lock();
+        if (!splitReadersAndWriters) {
+            rwLock.readLock().lock();
+        }
     }
 
     /**
@@ -1056,7 +1248,81 @@ private void acquireSharedLock() {
      * of a try block in which the lock was acquired.
      */
     private void releaseSharedLock() {
-        rwLock.readLock().unlock();
+        if (!splitReadersAndWriters) {
+            rwLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * A writer or reader connection as checked out by one thread, with the
+     * number of times it has been handed out and not yet closed. Only used by
+     * the thread that checked it out.
+     */
+    private static final class HeldConnection {
+
+        private final Connection conn;
+        private final ThreadLocal<HeldConnection> owner;
+        private int holdCount = 0;
+
+        /**
+         * @param conn  The connection from the pool
+         * @param owner The thread-local that holds the connection for the
+         *              current thread until it goes back to the pool
+         */
+        private HeldConnection(Connection conn, ThreadLocal<HeldConnection> owner) {
+            this.conn = conn;
+            this.owner = owner;
+        }
+
+        /**
+         * Hand out the connection again. Closing what is returned releases
+         * this hold only; the connection itself is returned to the pool when
+         * the last hold is released.
+         *
+         * @return A connection sharing the held connection
+         */
+        private Connection checkOut() {
+            holdCount++;
+            return (Connection) Proxy.newProxyInstance(SqliteEamDb.class.getClassLoader(),
+                    new Class<?>[]{Connection.class}, new InvocationHandler() {
+                private boolean closed = false;
+
+                @Override
+                public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                    switch (method.getName()) {
+                        case "close": // NON-NLS
+                            if (!closed) {
+                                closed = true;
+                                release();
+                            }
+                            return null;
+                        case "isClosed": // NON-NLS
+                            if (closed) {
+                                return true;
+                            }
+                            break;
+                        default:
+                            if (closed) {
+                                throw new SQLException("Connection is closed"); // NON-NLS
+                            }
+                            break;
+                    }
+                    try {
+                        return method.invoke(conn, args);
+                    } catch (InvocationTargetException ex) {
+                        throw ex.getCause();
+                    }
+                }
+            });
+        }
+
+        private void release() throws SQLException {
+            holdCount--;
+            if (holdCount == 0) {
+                owner.remove();
+                conn.close();
+            }
+        }
     }
 
 }
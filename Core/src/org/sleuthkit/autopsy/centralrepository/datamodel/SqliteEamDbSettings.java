@@ -42,6 +42,7 @@ public final class SqliteEamDbSettings {
     private final String DEFAULT_DBNAME = "central_repository.db"; // NON-NLS
     private final String DEFAULT_DBDIRECTORY = PlatformUtil.getUserDirectory() + File.separator + "central_repository"; // NON-NLS
     private final int DEFAULT_BULK_THRESHHOLD = 1000;
+    private final int DEFAULT_READ_POOL_SIZE = 0;
     private final String JDBC_DRIVER = "org.sqlite.JDBC"; // NON-NLS
     private final String JDBC_BASE_URI = "jdbc:sqlite:"; // NON-NLS
     private final String VALIDATION_QUERY = "SELECT count(*) from sqlite_master"; // NON-NLS
@@ -56,6 +57,7 @@ public final class SqliteEamDbSettings {
     private String dbName;
     private String dbDirectory;
     private int bulkThreshold;
+    private int readPoolSize;
 
     public SqliteEamDbSettings() {
         loadSettings();
@@ -85,6 +87,20 @@ public void loadSettings() {
         } catch (NumberFormatException ex) {
             this.bulkThreshold = DEFAULT_BULK_THRESHHOLD;
         }
+
+        try {
+            String readPoolSizeString = ModuleSettings.getConfigSetting("CentralRepository", "db.sqlite.readPoolSize"); // NON-NLS
+            if (readPoolSizeString == null || readPoolSizeString.isEmpty()) {
+                this.readPoolSize = DEFAULT_READ_POOL_SIZE;
+            } else {
+                this.readPoolSize = Integer.parseInt(readPoolSizeString);
+                if (getReadPoolSize() < 0) {
+                    this.readPoolSize = DEFAULT_READ_POOL_SIZE;
+                }
+            }
+        } catch (NumberFormatException ex) {
+            this.readPoolSize = DEFAULT_READ_POOL_SIZE;
+        }
     }
 
     public void saveSettings() {
@@ -93,6 +109,7 @@ public void saveSettings() {
         ModuleSettings.setConfigSetting("CentralRepository", "db.sqlite.dbName", getDbName()); // NON-NLS
         ModuleSettings.setConfigSetting("CentralRepository", "db.sqlite.dbDirectory", getDbDirectory()); // NON-NLS
         ModuleSettings.setConfigSetting("CentralRepository", "db.sqlite.bulkThreshold", Integer.toString(getBulkThreshold())); // NON-NLS
+        ModuleSettings.setConfigSetting("CentralRepository", "db.sqlite.readPoolSize", Integer.toString(getReadPoolSize())); // NON-NLS
     }
     
     /**
@@ -352,7 +369,6 @@ public boolean initializeDatabaseSchema() {
         String instancesIdx2 = "CREATE INDEX IF NOT EXISTS %s_data_source_id ON %s (data_source_id)";
         String instancesIdx3 = "CREATE INDEX IF NOT EXISTS %s_value ON %s (value)";
         String instancesIdx4 = "CREATE INDEX IF NOT EXISTS %s_value_known_status ON %s (value, known_status)";
-
         StringBuilder createDbInfoTable = new StringBuilder();
         createDbInfoTable.append("CREATE TABLE IF NOT EXISTS db_info (");
         createDbInfoTable.append("id integer primary key NOT NULL,");
@@ -392,6 +408,10 @@ public boolean initializeDatabaseSchema() {
 
             stmt.execute(createDbInfoTable.toString());
 
+            for (String createSql : EamDbUtil.getCommonalityTableSql(EamDbPlatformEnum.SQLITE)) {
+                stmt.execute(createSql);
+            }
+
             // Create a separate instance and reference table for each artifact type
             List<CorrelationAttribute.Type> DEFAULT_CORRELATION_TYPES = CorrelationAttribute.getDefaultCorrelationTypes();
 
@@ -406,6 +426,7 @@ public boolean initializeDatabaseSchema() {
                 stmt.execute(String.format(instancesIdx2, instance_type_dbname, instance_type_dbname));
                 stmt.execute(String.format(instancesIdx3, instance_type_dbname, instance_type_dbname));
                 stmt.execute(String.format(instancesIdx4, instance_type_dbname, instance_type_dbname));
+                stmt.execute(EamDbUtil.getCoveringInstanceIndexSql(instance_type_dbname, instance_type_dbname, false));
 
                 // FUTURE: allow more than the FILES type
                 if (type.getId() == CorrelationAttribute.FILES_TYPE_ID) {
@@ -489,6 +510,30 @@ public void setBulkThreshold(int bulkThreshold) throws EamDbException {
         }
     }
 
+    /**
+     * Get the number of read-only connections kept open alongside the single
+     * writer connection. A size of zero, the default, disables the
+     * reader/writer split and all work shares one connection pool behind a
+     * read/write lock. The split puts the database in WAL mode, which does not
+     * work for a database on a network share.
+     *
+     * @return the readPoolSize
+     */
+    public int getReadPoolSize() {
+        return readPoolSize;
+    }
+
+    /**
+     * @param readPoolSize the readPoolSize to set
+     */
+    public void setReadPoolSize(int readPoolSize) throws EamDbException {
+        if (readPoolSize >= 0) {
+            this.readPoolSize = readPoolSize;
+        } else {
+            throw new EamDbException("Invalid read pool size."); // NON-NLS
+        }
+    }
+
 
 
     /**
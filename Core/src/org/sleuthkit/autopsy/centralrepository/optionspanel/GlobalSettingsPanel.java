@@ -19,11 +19,16 @@
 package org.sleuthkit.autopsy.centralrepository.optionspanel;
 
 import java.awt.Cursor;
+import java.awt.Frame;
+import java.awt.event.ActionEvent;
 import org.sleuthkit.autopsy.coreutils.Logger;
 import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
+import java.util.concurrent.ExecutionException;
+import java.util.logging.Level;
 import javax.swing.JOptionPane;
 import javax.swing.SwingUtilities;
+import javax.swing.SwingWorker;
 import org.netbeans.spi.options.OptionsPanelController;
 import org.openide.util.NbBundle;
 import org.openide.util.NbBundle.Messages;
@@ -31,10 +36,13 @@
 import org.sleuthkit.autopsy.events.AutopsyEvent;
 import org.sleuthkit.autopsy.ingest.IngestManager;
 import org.sleuthkit.autopsy.ingest.IngestModuleGlobalSettingsPanel;
+import org.sleuthkit.autopsy.progress.ModalDialogProgressIndicator;
+import org.sleuthkit.autopsy.centralrepository.datamodel.EamDbException;
 import org.sleuthkit.autopsy.centralrepository.datamodel.EamDbPlatformEnum;
 import static org.sleuthkit.autopsy.centralrepository.datamodel.EamDbPlatformEnum.DISABLED;
 import org.sleuthkit.autopsy.centralrepository.datamodel.EamDbUtil;
 import org.sleuthkit.autopsy.centralrepository.datamodel.PostgresEamDbSettings;
+import org.sleuthkit.autopsy.centralrepository.datamodel.PostgresInstanceTablePartitioner;
 import org.sleuthkit.autopsy.centralrepository.datamodel.SqliteEamDbSettings;
 
 /**
@@ -121,6 +129,7 @@ private void initComponents() {
         lbDbNameLabel = new javax.swing.JLabel();
         lbDbLocationLabel = new javax.swing.JLabel();
         bnDbConfigure = new javax.swing.JButton();
+        bnOptimizeInstanceTables = new javax.swing.JButton();
         lbDbPlatformValue = new javax.swing.JLabel();
         lbDbNameValue = new javax.swing.JLabel();
         lbDbLocationValue = new javax.swing.JLabel();
@@ -153,6 +162,13 @@ public void actionPerformed(java.awt.event.ActionEvent evt) {
             }
         });
 
+        org.openide.awt.Mnemonics.setLocalizedText(bnOptimizeInstanceTables, org.openide.util.NbBundle.getMessage(GlobalSettingsPanel.class, "GlobalSettingsPanel.bnOptimizeInstanceTables.text")); // NOI18N
+        bnOptimizeInstanceTables.addActionListener(new java.awt.event.ActionListener() {
+            public void actionPerformed(java.awt.event.ActionEvent evt) {
+                bnOptimizeInstanceTablesActionPerformed(evt);
+            }
+        });
+
         javax.swing.GroupLayout pnDatabaseConfigurationLayout = new javax.swing.GroupLayout(pnDatabaseConfiguration);
         pnDatabaseConfiguration.setLayout(pnDatabaseConfigurationLayout);
         pnDatabaseConfigurationLayout.setHorizontalGroup(
@@ -162,6 +178,8 @@ public void actionPerformed(java.awt.event.ActionEvent evt) {
                 .addGroup(pnDatabaseConfigurationLayout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
                     .addGroup(pnDatabaseConfigurationLayout.createSequentialGroup()
                         .addComponent(bnDbConfigure)
+                        .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                        .addComponent(bnOptimizeInstanceTables)
                         .addContainerGap())
                     .addGroup(pnDatabaseConfigurationLayout.createSequentialGroup()
                         .addGroup(pnDatabaseConfigurationLayout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING, false)
@@ -190,7 +208,9 @@ public void actionPerformed(java.awt.event.ActionEvent evt) {
                     .addComponent(lbDbLocationLabel, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, Short.MAX_VALUE)
                     .addComponent(lbDbLocationValue, javax.swing.GroupLayout.PREFERRED_SIZE, 14, javax.swing.GroupLayout.PREFERRED_SIZE))
                 .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED, javax.swing.GroupLayout.DEFAULT_SIZE, Short.MAX_VALUE)
-                .addComponent(bnDbConfigure)
+                .addGroup(pnDatabaseConfigurationLayout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
+                    .addComponent(bnDbConfigure)
+                    .addComponent(bnOptimizeInstanceTables))
                 .addGap(8, 8, 8))
         );
 
@@ -351,6 +371,63 @@ private void bnDbConfigureActionPerformed(java.awt.event.ActionEvent evt) {//GEN
         }
     }//GEN-LAST:event_bnDbConfigureActionPerformed
 
+    @Messages({"GlobalSettingsPanel.optimize.confirm.title=Optimize Instance Tables",
+        "GlobalSettingsPanel.optimize.confirm.message=The correlation instance tables will be indexed and, on PostgreSQL 11 or later, partitioned by value. "
+        + "The central repository stays in use, but this can take a long time for large databases. Continue?",
+        "GlobalSettingsPanel.optimize.progress.title=Optimizing Instance Tables",
+        "GlobalSettingsPanel.optimize.cancel=Cancel",
+        "GlobalSettingsPanel.optimize.done.message=The correlation instance tables have been optimized.",
+        "GlobalSettingsPanel.optimize.cancelled.message=Optimization was cancelled. Tables already optimized were kept.",
+        "GlobalSettingsPanel.optimize.failed.message=Failed to optimize the correlation instance tables. See the log for details."})
+    private void bnOptimizeInstanceTablesActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_bnOptimizeInstanceTablesActionPerformed
+        if (JOptionPane.YES_OPTION != JOptionPane.showConfirmDialog(this,
+                Bundle.GlobalSettingsPanel_optimize_confirm_message(),
+                Bundle.GlobalSettingsPanel_optimize_confirm_title(),
+                JOptionPane.YES_NO_OPTION, JOptionPane.QUESTION_MESSAGE)) {
+            return;
+        }
+
+        final PostgresInstanceTablePartitioner partitioner;
+        try {
+            partitioner = new PostgresInstanceTablePartitioner();
+        } catch (EamDbException ex) {
+            LOGGER.log(Level.SEVERE, "Error creating instance table partitioner", ex); // NON-NLS
+            JOptionPane.showMessageDialog(this, Bundle.GlobalSettingsPanel_optimize_failed_message(),
+                    Bundle.GlobalSettingsPanel_optimize_confirm_title(), JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        final ModalDialogProgressIndicator progress = new ModalDialogProgressIndicator(
+                (Frame) SwingUtilities.getWindowAncestor(this),
+                Bundle.GlobalSettingsPanel_optimize_progress_title(),
+                new Object[]{Bundle.GlobalSettingsPanel_optimize_cancel()},
+                Bundle.GlobalSettingsPanel_optimize_cancel(),
+                (ActionEvent e) -> partitioner.cancel());
+        bnOptimizeInstanceTables.setEnabled(false);
+        new SwingWorker<Boolean, Void>() {
+            @Override
+            protected Boolean doInBackground() throws Exception {
+                return partitioner.migrate(progress);
+            }
+
+            @Override
+            protected void done() {
+                String message;
+                int messageType = JOptionPane.INFORMATION_MESSAGE;
+                try {
+                    message = get() ? Bundle.GlobalSettingsPanel_optimize_done_message() : Bundle.GlobalSettingsPanel_optimize_cancelled_message();
+                } catch (InterruptedException | ExecutionException ex) {
+                    LOGGER.log(Level.SEVERE, "Error optimizing correlation instance tables", ex); // NON-NLS
+                    message = Bundle.GlobalSettingsPanel_optimize_failed_message();
+                    messageType = JOptionPane.ERROR_MESSAGE;
+                }
+                progress.finish();
+                JOptionPane.showMessageDialog(GlobalSettingsPanel.this, message,
+                        Bundle.GlobalSettingsPanel_optimize_confirm_title(), messageType);
+                load();
+            }
+        }.execute();
+    }//GEN-LAST:event_bnOptimizeInstanceTablesActionPerformed
+
     private void cbUseCentralRepoActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_cbUseCentralRepoActionPerformed
         //if saved setting is disabled checkbox should be disabled already 
         store();
@@ -489,6 +566,8 @@ private void enableDatabaseConfigureButton(Boolean enable) {
         boolean ingestRunning = IngestManager.getInstance().isIngestRunning();
         pnDatabaseConfiguration.setEnabled(enable && !ingestRunning);
         bnDbConfigure.setEnabled(enable && !ingestRunning);
+        bnOptimizeInstanceTables.setEnabled(enable && !ingestRunning
+                && EamDbPlatformEnum.getSelectedPlatform() == EamDbPlatformEnum.POSTGRESQL);
         lbDbLocationLabel.setEnabled(enable && !ingestRunning);
         lbDbLocationValue.setEnabled(enable && !ingestRunning);
         lbDbNameLabel.setEnabled(enable && !ingestRunning);
@@ -519,6 +598,7 @@ private boolean enableButtonSubComponents(Boolean enable) {
 
     // Variables declaration - do not modify//GEN-BEGIN:variables
     private javax.swing.JButton bnDbConfigure;
+    private javax.swing.JButton bnOptimizeInstanceTables;
     private javax.swing.JButton bnManageTypes;
     private javax.swing.JCheckBox cbUseCentralRepo;
     private javax.swing.JScrollPane correlationPropertiesScrollPane;
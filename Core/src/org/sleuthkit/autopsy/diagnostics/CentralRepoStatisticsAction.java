@@ -0,0 +1,111 @@
+/*
+ * Autopsy Forensic Browser
+ *
+ * Copyright 2017 Basis Technology Corp.
+ * Contact: carrier <at> sleuthkit <dot> org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sleuthkit.autopsy.diagnostics;
+
+import java.awt.BorderLayout;
+import java.awt.Dimension;
+import java.awt.FlowLayout;
+import java.awt.Font;
+import javax.swing.JButton;
+import javax.swing.JDialog;
+import javax.swing.JFrame;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.JTextArea;
+import org.openide.awt.ActionID;
+import org.openide.awt.ActionReference;
+import org.openide.awt.ActionRegistration;
+import org.openide.util.HelpCtx;
+import org.openide.util.NbBundle;
+import org.openide.util.actions.CallableSystemAction;
+import org.openide.windows.WindowManager;
+import org.sleuthkit.autopsy.centralrepository.datamodel.EamDb;
+import org.sleuthkit.autopsy.centralrepository.datamodel.EamDbStatistics;
+
+/**
+ * Shows central repository connection pool usage and statement latency
+ * histograms collected by EamDbStatistics.
+ */
+@ActionID(category = "Help", id = "org.sleuthkit.autopsy.diagnostics.CentralRepoStatisticsAction")
+@ActionRegistration(displayName = "#CTL_CentralRepoStatisticsAction", lazy = true)
+@ActionReference(path = "Menu/Help", position = 1438)
+@NbBundle.Messages({
+    "CTL_CentralRepoStatisticsAction=Central Repository Diagnostics",
+    "CentralRepoStatisticsAction.refreshButton.text=Refresh",
+    "CentralRepoStatisticsAction.resetButton.text=Reset",
+    "CentralRepoStatisticsAction.closeButton.text=Close"
+})
+public final class CentralRepoStatisticsAction extends CallableSystemAction {
+
+    private static final long serialVersionUID = 1L;
+
+    @Override
+    public void performAction() {
+        JDialog dialog = new JDialog((JFrame) WindowManager.getDefault().getMainWindow(),
+                Bundle.CTL_CentralRepoStatisticsAction(), false);
+
+        JTextArea reportArea = new JTextArea(EamDbStatistics.getReport());
+        reportArea.setEditable(false);
+        reportArea.setFont(new Font(Font.MONOSPACED, Font.PLAIN, reportArea.getFont().getSize()));
+        JScrollPane scrollPane = new JScrollPane(reportArea);
+        scrollPane.setPreferredSize(new Dimension(800, 500));
+
+        JButton refreshButton = new JButton(Bundle.CentralRepoStatisticsAction_refreshButton_text());
+        refreshButton.addActionListener(evt -> reportArea.setText(EamDbStatistics.getReport()));
+        JButton resetButton = new JButton(Bundle.CentralRepoStatisticsAction_resetButton_text());
+        resetButton.addActionListener(evt -> {
+            EamDbStatistics.reset();
+            reportArea.setText(EamDbStatistics.getReport());
+        });
+        JButton closeButton = new JButton(Bundle.CentralRepoStatisticsAction_closeButton_text());
+        closeButton.addActionListener(evt -> dialog.dispose());
+
+        JPanel buttonPanel = new JPanel(new FlowLayout(FlowLayout.RIGHT));
+        buttonPanel.add(refreshButton);
+        buttonPanel.add(resetButton);
+        buttonPanel.add(closeButton);
+
+        dialog.getContentPane().add(scrollPane, BorderLayout.CENTER);
+        dialog.getContentPane().add(buttonPanel, BorderLayout.SOUTH);
+        dialog.setDefaultCloseOperation(JDialog.DISPOSE_ON_CLOSE);
+        dialog.pack();
+        dialog.setLocationRelativeTo(WindowManager.getDefault().getMainWindow());
+        dialog.setVisible(true);
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return EamDb.isEnabled();
+    }
+
+    @Override
+    public HelpCtx getHelpCtx() {
+        return HelpCtx.DEFAULT_HELP;
+    }
+
+    @Override
+    public boolean asynchronous() {
+        return false;
+    }
+
+    @Override
+    public String getName() {
+        return Bundle.CTL_CentralRepoStatisticsAction();
+    }
+}
@@ -24,12 +24,9 @@
 import java.util.SortedSet;
 import java.util.TreeSet;
 import java.util.stream.Collectors;
-import org.apache.tika.Tika;
-import org.apache.tika.io.TikaInputStream;
 import org.apache.tika.mime.MimeTypes;
 import org.sleuthkit.autopsy.coreutils.Logger;
 import org.sleuthkit.datamodel.AbstractFile;
-import org.sleuthkit.datamodel.ReadContentInputStream;
 import org.sleuthkit.datamodel.TskCoreException;
 import org.sleuthkit.datamodel.TskData;
 
@@ -43,10 +40,11 @@
 public class FileTypeDetector {
 
     private static final Logger logger = Logger.getLogger(FileTypeDetector.class.getName());
-    private static final Tika tika = new Tika();
     private static final int SLACK_FILE_THRESHOLD = 4096;
     private final List<FileType> userDefinedFileTypes;
     private final List<FileType> autopsyDefinedFileTypes;
+    private final SignatureMatcher userDefinedMatcher;
+    private final SignatureMatcher autopsyDefinedMatcher;
     private static SortedSet<String> tikaDetectedTypes;
 
     /**
@@ -119,6 +117,8 @@ public FileTypeDetector() throws FileTypeDetectorInitException {
         } catch (CustomFileTypesManager.CustomFileTypesException ex) {
             throw new FileTypeDetectorInitException("Error loading custom file types", ex); //NON-NLS
         }
+        userDefinedMatcher = new SignatureMatcher(userDefinedFileTypes);
+        autopsyDefinedMatcher = new SignatureMatcher(autopsyDefinedFileTypes);
     }
 
     /**
@@ -202,10 +202,12 @@ public String getMIMEType(AbstractFile file) {
 
         /*
          * If the file is a regular file, give precedence to user-defined custom
-         * file types.
+         * file types. The start and end of the file are read once for matching
+         * the signatures of both kinds of custom file types.
          */
+        SignatureMatcher.FileBytes fileBytes = new SignatureMatcher.FileBytes(file);
         if (null == mimeType) {
-            mimeType = detectUserDefinedType(file);
+            mimeType = detectUserDefinedType(fileBytes);
         }
 
         /*
@@ -213,18 +215,16 @@ public String getMIMEType(AbstractFile file) {
          * custom file types defined by Autopsy.
          */
         if (null == mimeType) {
-            mimeType = detectAutopsyDefinedType(file);
+            mimeType = detectAutopsyDefinedType(fileBytes);
         }
 
         /*
          * If the file does not match a user-defined type, send the initial
-         * bytes to Tika.
+         * bytes to Tika, starting with the header read for the custom types.
          */
         if (null == mimeType) {
-            ReadContentInputStream stream = new ReadContentInputStream(file);
-
-            try (TikaInputStream tikaInputStream = TikaInputStream.get(stream)) {
-                String tikaType = tika.detect(tikaInputStream, file.getName());
+            try {
+                String tikaType = TikaDetector.detect(fileBytes);
 
                 /*
                  * Remove the Tika suffix from the MIME type name.
@@ -274,36 +274,36 @@ private String removeOptionalParameter(String mimeType) {
     /**
      * Determines whether or not a file matches a user-defined custom file type.
      *
-     * @param file The file to test.
+     * @param fileBytes The start and end of the file to test.
      *
      * @return The MIME type as a string if a match is found; otherwise null.
      */
-    private String detectUserDefinedType(AbstractFile file) {
-        String retValue = null;
-        
-        for (FileType fileType : userDefinedFileTypes) {
-            if (fileType.matches(file)) {
-                retValue = fileType.getMimeType();
-                break;
-            }
-        }
-        return retValue;
+    private String detectUserDefinedType(SignatureMatcher.FileBytes fileBytes) {
+        FileType fileType = userDefinedMatcher.match(fileBytes);
+        return fileType == null ? null : fileType.getMimeType();
     }
 
     /**
-     * Determines whether or not a file matches a custom file type defined by Autopsy.
+     * Gets the user-defined custom file type that a file matches.
      *
      * @param file The file to test.
      *
+     * @return The file type if a match is found; otherwise null.
+     */
+    FileType getUserDefinedFileType(AbstractFile file) {
+        return userDefinedMatcher.match(new SignatureMatcher.FileBytes(file));
+    }
+
+    /**
+     * Determines whether or not a file matches a custom file type defined by Autopsy.
+     *
+     * @param fileBytes The start and end of the file to test.
+     *
      * @return The MIME type as a string if a match is found; otherwise null.
      */
-    private String detectAutopsyDefinedType(AbstractFile file) {
-        for (FileType fileType : autopsyDefinedFileTypes) {
-            if (fileType.matches(file)) {
-                return fileType.getMimeType();
-            }
-        }
-        return null;
+    private String detectAutopsyDefinedType(SignatureMatcher.FileBytes fileBytes) {
+        FileType fileType = autopsyDefinedMatcher.match(fileBytes);
+        return fileType == null ? null : fileType.getMimeType();
     }
 
     /*
@@ -21,7 +21,6 @@
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
-import java.util.List;
 import java.util.logging.Level;
 import org.openide.util.NbBundle;
 import org.sleuthkit.autopsy.casemodule.Case;
@@ -101,7 +100,7 @@ public ProcessResult process(AbstractFile file) {
             long startTime = System.currentTimeMillis();
             String mimeType = fileTypeDetector.getMIMEType(file);
             file.setMIMEType(mimeType);
-            FileType fileType = detectUserDefinedFileType(file);
+            FileType fileType = fileTypeDetector.getUserDefinedFileType(file);
             if (fileType != null && fileType.createInterestingFileHit()) {
                 createInterestingFileHit(file, fileType);
             }
@@ -113,31 +112,6 @@ public ProcessResult process(AbstractFile file) {
         }
     }
 
-    /**
-     * Determines whether or not a file matches a user-defined custom file type.
-     *
-     * @param file The file to test.
-     *
-     * @return The file type if a match is found; otherwise null.
-     *
-     * @throws CustomFileTypesException If there is an issue getting an instance
-     *                                  of CustomFileTypesManager.
-     */
-    private FileType detectUserDefinedFileType(AbstractFile file) throws CustomFileTypesManager.CustomFileTypesException {
-        FileType retValue = null;
-
-        CustomFileTypesManager customFileTypesManager = CustomFileTypesManager.getInstance();
-        List<FileType> fileTypesList = customFileTypesManager.getUserDefinedFileTypes();
-        for (FileType fileType : fileTypesList) {
-            if (fileType.matches(file)) {
-                retValue = fileType;
-                break;
-            }
-        }
-
-        return retValue;
-    }
-
     /**
      * Create an Interesting File hit using the specified file type rule.
      *
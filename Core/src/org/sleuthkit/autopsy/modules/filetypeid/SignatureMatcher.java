@@ -0,0 +1,332 @@
+/*
+ * Autopsy Forensic Browser
+ *
+ * Copyright 2018 Basis Technology Corp.
+ * Contact: carrier <at> sleuthkit <dot> org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sleuthkit.autopsy.modules.filetypeid;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.logging.Level;
+import org.sleuthkit.autopsy.coreutils.Logger;
+import org.sleuthkit.autopsy.modules.filetypeid.FileType.Signature;
+import org.sleuthkit.datamodel.AbstractFile;
+import org.sleuthkit.datamodel.TskCoreException;
+
+/**
+ * Matches files against a list of custom file types using one read of the
+ * start and one read of the end of each file, instead of one read for each
+ * signature of each file type.
+ *
+ * The signatures that lie within the first HEADER_BYTES bytes of a file are
+ * put in byte tries, one for each signature offset, so that all of the
+ * signatures at an offset are matched with one walk of the header. Signatures
+ * relative to the end of a file that lie within the last TRAILER_BYTES bytes
+ * are compared with the trailer. Only signatures at other offsets are read
+ * from the file, and only for file types whose other signatures all match.
+ * <p>
+ * Thread-safe (immutable).
+ */
+final class SignatureMatcher {
+
+    static final int HEADER_BYTES = 4096;
+    static final int TRAILER_BYTES = 512;
+    private static final Logger logger = Logger.getLogger(SignatureMatcher.class.getName());
+
+    private final List<FileType> fileTypes;
+    private final List<Signature> signatures = new ArrayList<>();
+    private final List<byte[]> signatureBytes = new ArrayList<>();
+    /*
+     * The ids of the signatures of each file type, with the signatures in the
+     * header or trailer first so that they are checked before any signature
+     * that must be read from the file.
+     */
+    private final int[][] typeSignatureIds;
+    private final BitSet headerSignatureIds = new BitSet();
+    private final BitSet trailerSignatureIds = new BitSet();
+    private final long[] trieOffsets;
+    private final TrieNode[] tries;
+
+    /**
+     * Compile the signatures of a list of file types.
+     *
+     * @param fileTypes The file types, in order of precedence
+     */
+    SignatureMatcher(List<FileType> fileTypes) {
+        this.fileTypes = new ArrayList<>(fileTypes);
+        typeSignatureIds = new int[fileTypes.size()][];
+        Map<Long, TrieNode> triesByOffset = new TreeMap<>();
+        for (int typeIndex = 0; typeIndex < fileTypes.size(); typeIndex++) {
+            List<Signature> typeSignatures = fileTypes.get(typeIndex).getSignatures();
+            List<Integer> bufferedIds = new ArrayList<>();
+            List<Integer> unbufferedIds = new ArrayList<>();
+            for (Signature signature : typeSignatures) {
+                int id = signatures.size();
+                signatures.add(signature);
+                byte[] bytes = signature.getSignatureBytes();
+                signatureBytes.add(bytes);
+                if (signature.isRelativeToStart() && signature.getOffset() + bytes.length <= HEADER_BYTES) {
+                    triesByOffset.computeIfAbsent(signature.getOffset(), offset -> new TrieNode()).add(bytes, id);
+                    headerSignatureIds.set(id);
+                    bufferedIds.add(id);
+                } else if (!signature.isRelativeToStart() && signature.getOffset() < TRAILER_BYTES) {
+                    trailerSignatureIds.set(id);
+                    bufferedIds.add(id);
+                } else {
+                    unbufferedIds.add(id);
+                }
+            }
+            bufferedIds.addAll(unbufferedIds);
+            typeSignatureIds[typeIndex] = bufferedIds.stream().mapToInt(Integer::intValue).toArray();
+        }
+        trieOffsets = new long[triesByOffset.size()];
+        tries = new TrieNode[triesByOffset.size()];
+        int trieIndex = 0;
+        for (Map.Entry<Long, TrieNode> entry : triesByOffset.entrySet()) {
+            trieOffsets[trieIndex] = entry.getKey();
+            tries[trieIndex] = entry.getValue();
+            trieIndex++;
+        }
+    }
+
+    /**
+     * Find the first file type that a file matches.
+     *
+     * @param fileBytes The start and end of the file
+     *
+     * @return The file type, or null if the file matches none of them
+     */
+    FileType match(FileBytes fileBytes) {
+        if (fileTypes.isEmpty()) {
+            return null;
+        }
+        BitSet matched = matchBuffered(fileBytes);
+        for (int typeIndex = 0; typeIndex < fileTypes.size(); typeIndex++) {
+            if (matchesAll(typeSignatureIds[typeIndex], matched, fileBytes)) {
+                return fileTypes.get(typeIndex);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Find the signatures in the header and trailer that a file contains.
+     */
+    private BitSet matchBuffered(FileBytes fileBytes) {
+        BitSet matched = new BitSet(signatures.size());
+        byte[] header = fileBytes.getHeader();
+        int headerLength = fileBytes.getHeaderLength();
+        for (int trieIndex = 0; trieIndex < tries.length; trieIndex++) {
+            if (trieOffsets[trieIndex] < headerLength) {
+                tries[trieIndex].match(header, (int) trieOffsets[trieIndex], headerLength, matched);
+            }
+        }
+        if (!trailerSignatureIds.isEmpty()) {
+            long size = fileBytes.getFile().getSize();
+            byte[] trailer = fileBytes.getTrailer();
+            long trailerStart = fileBytes.getTrailerStart();
+            for (int id = trailerSignatureIds.nextSetBit(0); id >= 0; id = trailerSignatureIds.nextSetBit(id + 1)) {
+                Signature signature = signatures.get(id);
+                byte[] bytes = signatureBytes.get(id);
+                long actualOffset = size - 1 - signature.getOffset();
+                if (signature.getOffset() >= size || actualOffset + bytes.length > size
+                        || actualOffset - trailerStart + bytes.length > fileBytes.getTrailerLength()) {
+                    continue;
+                }
+                if (regionEquals(trailer, (int) (actualOffset - trailerStart), bytes)) {
+                    matched.set(id);
+                }
+            }
+        }
+        return matched;
+    }
+
+    /**
+     * Does a file contain all of the signatures of a file type?
+     */
+    private boolean matchesAll(int[] signatureIds, BitSet matched, FileBytes fileBytes) {
+        for (int id : signatureIds) {
+            if (matched.get(id)) {
+                continue;
+            }
+            Signature signature = signatures.get(id);
+            if ((headerSignatureIds.get(id) && !fileBytes.isHeaderShort(signature.getOffset() + signatureBytes.get(id).length))
+                    || (trailerSignatureIds.get(id) && !fileBytes.isTrailerShort(signature))) {
+                return false;
+            }
+            // not in the bytes read, or they could not all be read
+            if (!signature.containedIn(fileBytes.getFile())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean regionEquals(byte[] buffer, int start, byte[] bytes) {
+        for (int i = 0; i < bytes.length; i++) {
+            if (buffer[start + i] != bytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * A node of a trie of the signatures at one offset.
+     */
+    private static final class TrieNode {
+
+        private final Map<Byte, TrieNode> children = new HashMap<>(4);
+        private int[] signatureIds = new int[0];
+
+        private void add(byte[] bytes, int id) {
+            TrieNode node = this;
+            for (byte b : bytes) {
+                node = node.children.computeIfAbsent(b, key -> new TrieNode());
+            }
+            int[] ids = new int[node.signatureIds.length + 1];
+            System.arraycopy(node.signatureIds, 0, ids, 0, node.signatureIds.length);
+            ids[node.signatureIds.length] = id;
+            node.signatureIds = ids;
+        }
+
+        /**
+         * Walk the trie along the buffer from an offset, marking the
+         * signatures that end at each node reached as matched.
+         */
+        private void match(byte[] buffer, int offset, int length, BitSet matched) {
+            TrieNode node = this;
+            for (int i = offset; i < length; i++) {
+                node = node.children.get(buffer[i]);
+                if (node == null) {
+                    return;
+                }
+                for (int id : node.signatureIds) {
+                    matched.set(id);
+                }
+            }
+        }
+    }
+
+    /**
+     * The first and last bytes of a file, read once and shared by all of the
+     * matchers that a file is tested with.
+     */
+    static final class FileBytes {
+
+        private final AbstractFile file;
+        private byte[] header;
+        private int headerLength;
+        private byte[] trailer;
+        private int trailerLength;
+        private long trailerStart;
+
+        FileBytes(AbstractFile file) {
+            this.file = file;
+        }
+
+        AbstractFile getFile() {
+            return file;
+        }
+
+        /**
+         * @return the first HEADER_BYTES bytes of the file, or as many as
+         *         could be read
+         */
+        byte[] getHeader() {
+            if (header == null) {
+                int length = (int) Math.min(HEADER_BYTES, file.getSize());
+                header = new byte[Math.max(length, 0)];
+                headerLength = read(header, 0, length);
+            }
+            return header;
+        }
+
+        /**
+         * @return the number of bytes of the header that were read
+         */
+        int getHeaderLength() {
+            getHeader();
+            return headerLength;
+        }
+
+        /**
+         * Were fewer bytes read for the header than the file has before the
+         * end of a signature?
+         */
+        private boolean isHeaderShort(long end) {
+            return end > getHeaderLength() && end <= file.getSize();
+        }
+
+        private byte[] getTrailer() {
+            if (trailer == null) {
+                long size = file.getSize();
+                if (size <= HEADER_BYTES) {
+                    // the header is the whole file
+                    trailer = getHeader();
+                    trailerLength = headerLength;
+                    trailerStart = 0;
+                } else {
+                    int length = (int) Math.min(TRAILER_BYTES, size);
+                    trailer = new byte[length];
+                    trailerStart = size - length;
+                    trailerLength = read(trailer, trailerStart, length) == length ? length : 0;
+                }
+            }
+            return trailer;
+        }
+
+        private int getTrailerLength() {
+            getTrailer();
+            return trailerLength;
+        }
+
+        private long getTrailerStart() {
+            getTrailer();
+            return trailerStart;
+        }
+
+        /**
+         * Were fewer bytes read for the trailer than the file has in the range
+         * of a signature?
+         */
+        private boolean isTrailerShort(Signature signature) {
+            long size = file.getSize();
+            return getTrailerLength() < size - getTrailerStart() && signature.getOffset() < size;
+        }
+
+        private int read(byte[] buffer, long offset, int length) {
+            if (length <= 0) {
+                return 0;
+            }
+            try {
+                return Math.max(file.read(buffer, offset, length), 0);
+            } catch (TskCoreException ex) {
+                /*
+                 * This exception is swallowed rather than propagated because
+                 * files in images are not always consistent with their file
+                 * system meta data making for read errors.
+                 */
+                logger.log(Level.WARNING, "Error reading from file with objId = " + file.getId(), ex); //NON-NLS
+                return 0;
+            }
+        }
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ * Autopsy Forensic Browser
+ *
+ * Copyright 2018 Basis Technology Corp.
+ * Contact: carrier <at> sleuthkit <dot> org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sleuthkit.autopsy.modules.filetypeid;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.Hashing;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.util.logging.Level;
+import org.apache.commons.io.input.BoundedInputStream;
+import org.apache.commons.io.input.CountingInputStream;
+import org.apache.tika.Tika;
+import org.apache.tika.io.TikaInputStream;
+import org.apache.tika.mime.MimeTypes;
+import org.sleuthkit.autopsy.coreutils.Logger;
+import org.sleuthkit.autopsy.coreutils.ModuleSettings;
+import org.sleuthkit.datamodel.AbstractFile;
+import org.sleuthkit.datamodel.ReadContentInputStream;
+import org.sleuthkit.datamodel.TskCoreException;
+
+/**
+ * Detects the MIME type of a file with Tika, reading at most a fixed number of
+ * bytes of the file and remembering the results for files that Tika cannot
+ * tell apart.
+ *
+ * Tika's magic detection looks at a prefix of the file of a fixed length, and
+ * its container detectors copy the whole file to a temporary file to look
+ * inside it. The prefix is read once, starting with the header already read
+ * for matching custom file type signatures, and Tika is given at most
+ * TikaDetectionMaxBytes bytes of the file in all.
+ *
+ * Results are kept in a cache shared by all threads. A result is kept by the
+ * hash of the prefix and the file name extension only if Tika did not read
+ * past the prefix, since then any file with the same prefix and extension is
+ * detected the same way. Results for files whose MD5 hash is known, which
+ * includes files that needed the container detectors, are also kept by the
+ * hash.
+ */
+final class TikaDetector {
+
+    private static final Logger logger = Logger.getLogger(TikaDetector.class.getName());
+    private static final String SETTINGS_NAME = "FileTypeId"; //NON-NLS
+    private static final Tika tika = new Tika();
+    static final int PREFIX_BYTES = Math.max(MimeTypes.getDefaultMimeTypes().getMinLength(), SignatureMatcher.HEADER_BYTES);
+    static final long MAX_BYTES = Math.max(getLongSetting("TikaDetectionMaxBytes", 64L * 1024 * 1024), PREFIX_BYTES); //NON-NLS
+    private static final Cache<String, String> detectedTypes = CacheBuilder.newBuilder()
+            .maximumSize(getLongSetting("TikaDetectionCacheSize", 10000)) //NON-NLS
+            .build();
+
+    private TikaDetector() {
+    }
+
+    /**
+     * Detect the MIME type of a file with Tika.
+     *
+     * @param fileBytes The file, with its header
+     *
+     * @return The MIME type detected by Tika, which may have a "tika-" prefix
+     *         and optional parameters
+     *
+     * @throws IOException      If the file cannot be read
+     * @throws TskCoreException If the file cannot be read
+     */
+    static String detect(SignatureMatcher.FileBytes fileBytes) throws IOException, TskCoreException {
+        AbstractFile file = fileBytes.getFile();
+        String extension = getExtension(file.getName());
+        byte[] prefix = readPrefix(fileBytes);
+
+        String prefixKey = "prefix:" + Hashing.murmur3_128().hashBytes(prefix) //NON-NLS
+                + ":" + prefix.length + ":" + (file.getSize() <= prefix.length) + ":" + extension;
+        String md5 = file.getMd5Hash();
+        String md5Key = (md5 == null || md5.isEmpty()) ? null
+                : "md5:" + md5 + ":" + file.getSize() + ":" + extension; //NON-NLS
+        String mimeType = detectedTypes.getIfPresent(prefixKey);
+        if (mimeType == null && md5Key != null) {
+            mimeType = detectedTypes.getIfPresent(md5Key);
+        }
+        if (mimeType != null) {
+            return mimeType;
+        }
+
+        ReadContentInputStream rest = new ReadContentInputStream(file);
+        rest.seek(prefix.length);
+        CountingInputStream countedRest = new CountingInputStream(rest);
+        InputStream stream = new BoundedInputStream(new SequenceInputStream(new ByteArrayInputStream(prefix), countedRest), MAX_BYTES);
+        try (TikaInputStream tikaInputStream = TikaInputStream.get(stream)) {
+            mimeType = tika.detect(tikaInputStream, file.getName());
+        }
+
+        if (countedRest.getByteCount() == 0) {
+            detectedTypes.put(prefixKey, mimeType);
+        }
+        if (md5Key != null) {
+            detectedTypes.put(md5Key, mimeType);
+        }
+        return mimeType;
+    }
+
+    /**
+     * Read the bytes of a file that Tika's magic detection looks at, using the
+     * header that has already been read.
+     */
+    private static byte[] readPrefix(SignatureMatcher.FileBytes fileBytes) throws TskCoreException {
+        AbstractFile file = fileBytes.getFile();
+        int headerLength = fileBytes.getHeaderLength();
+        int length = (int) Math.min(PREFIX_BYTES, file.getSize());
+        if (headerLength < SignatureMatcher.HEADER_BYTES || length <= headerLength) {
+            // the header is the whole file, or the rest could not be read
+            byte[] prefix = new byte[headerLength];
+            System.arraycopy(fileBytes.getHeader(), 0, prefix, 0, headerLength);
+            return prefix;
+        }
+        byte[] rest = new byte[length - headerLength];
+        int bytesRead = Math.max(file.read(rest, headerLength, rest.length), 0);
+        byte[] prefix = new byte[headerLength + bytesRead];
+        System.arraycopy(fileBytes.getHeader(), 0, prefix, 0, headerLength);
+        System.arraycopy(rest, 0, prefix, headerLength, bytesRead);
+        return prefix;
+    }
+
+    /**
+     * Get the part of a file name that Tika's name patterns look at: the part
+     * after the first dot, or the whole name if it has no dot.
+     */
+    private static String getExtension(String name) {
+        int dot = name.indexOf('.');
+        // not lower cased, since some name patterns are case sensitive
+        return dot == -1 ? name : name.substring(dot + 1);
+    }
+
+    private static long getLongSetting(String key, long defaultValue) {
+        String value = ModuleSettings.getConfigSetting(SETTINGS_NAME, key);
+        if (value != null) {
+            try {
+                long longValue = Long.parseLong(value.trim());
+                if (longValue > 0) {
+                    return longValue;
+                }
+            } catch (NumberFormatException ex) {
+                logger.log(Level.WARNING, "Invalid value {0} for property {1}, using default.", new Object[]{value, key}); //NON-NLS
+            }
+        }
+        return defaultValue;
+    }
+}
@@ -55,7 +55,7 @@ final class FilesIdentifierIngestModule implements FileIngestModule {
     private static final Object sharedResourcesLock = new Object();
     private static final Logger logger = Logger.getLogger(FilesIdentifierIngestModule.class.getName());
     private static final IngestModuleReferenceCounter refCounter = new IngestModuleReferenceCounter();
-    private static final Map<Long, List<FilesSet>> interestingFileSetsByJob = new ConcurrentHashMap<>();
+    private static final Map<Long, FilesSetMatcher> filesSetMatchersByJob = new ConcurrentHashMap<>();
     private final FilesIdentifierIngestJobSettings settings;
     private final IngestServices services = IngestServices.getInstance();
     private IngestJobContext context;
@@ -84,6 +84,7 @@ public void startUp(IngestJobContext context) throws IngestModuleException {
                 // for the job. Note that getting this snapshot atomically via a 
                 // synchronized definitions manager method eliminates the need 
                 // to disable the interesting files set definition UI during ingest.
+                // The enabled sets are compiled into one matcher for the job.
                 List<FilesSet> filesSets = new ArrayList<>();
                 try {
                     for (FilesSet set : FilesSetsManager.getInstance().getInterestingFilesSets().values()) {
@@ -94,7 +95,7 @@ public void startUp(IngestJobContext context) throws IngestModuleException {
                 } catch (FilesSetsManager.FilesSetsManagerException ex) {
                     throw new IngestModuleException(Bundle.FilesIdentifierIngestModule_getFilesError(), ex);
                 }
-                FilesIdentifierIngestModule.interestingFileSetsByJob.put(context.getJobId(), filesSets);
+                FilesIdentifierIngestModule.filesSetMatchersByJob.put(context.getJobId(), new FilesSetMatcher(filesSets));
             }
         }
     }
@@ -113,55 +114,54 @@ public ProcessResult process(AbstractFile file) {
         }
 
         // See if the file belongs to any defined interesting files set.
-        List<FilesSet> filesSets = FilesIdentifierIngestModule.interestingFileSetsByJob.get(this.context.getJobId());
-        for (FilesSet filesSet : filesSets) {
-            String ruleSatisfied = filesSet.fileIsMemberOf(file);
-            if (ruleSatisfied != null) {
+        FilesSetMatcher filesSetMatcher = FilesIdentifierIngestModule.filesSetMatchersByJob.get(this.context.getJobId());
+        for (FilesSetMatcher.Match match : filesSetMatcher.match(file)) {
+            FilesSet filesSet = match.getFilesSet();
+            String ruleSatisfied = match.getRuleName();
+            try {
+                // Post an interesting files set hit artifact to the 
+                // blackboard.
+                String moduleName = InterestingItemsIngestModuleFactory.getModuleName();
+                BlackboardArtifact artifact = file.newArtifact(BlackboardArtifact.ARTIFACT_TYPE.TSK_INTERESTING_FILE_HIT);
+                Collection<BlackboardAttribute> attributes = new ArrayList<>();
+
+                // Add a set name attribute to the artifact. This adds a 
+                // fair amount of redundant data to the attributes table 
+                // (i.e., rows that differ only in artifact id), but doing
+                // otherwise would requires reworking the interesting files
+                // set hit artifact.
+                BlackboardAttribute setNameAttribute = new BlackboardAttribute(BlackboardAttribute.ATTRIBUTE_TYPE.TSK_SET_NAME, moduleName, filesSet.getName());
+                attributes.add(setNameAttribute);
+
+                // Add a category attribute to the artifact to record the 
+                // interesting files set membership rule that was satisfied.
+                BlackboardAttribute ruleNameAttribute = new BlackboardAttribute(BlackboardAttribute.ATTRIBUTE_TYPE.TSK_CATEGORY, moduleName, ruleSatisfied);
+                attributes.add(ruleNameAttribute);
+
+                artifact.addAttributes(attributes);
                 try {
-                    // Post an interesting files set hit artifact to the 
-                    // blackboard.
-                    String moduleName = InterestingItemsIngestModuleFactory.getModuleName();
-                    BlackboardArtifact artifact = file.newArtifact(BlackboardArtifact.ARTIFACT_TYPE.TSK_INTERESTING_FILE_HIT);
-                    Collection<BlackboardAttribute> attributes = new ArrayList<>();
-
-                    // Add a set name attribute to the artifact. This adds a 
-                    // fair amount of redundant data to the attributes table 
-                    // (i.e., rows that differ only in artifact id), but doing
-                    // otherwise would requires reworking the interesting files
-                    // set hit artifact.
-                    BlackboardAttribute setNameAttribute = new BlackboardAttribute(BlackboardAttribute.ATTRIBUTE_TYPE.TSK_SET_NAME, moduleName, filesSet.getName());
-                    attributes.add(setNameAttribute);
-
-                    // Add a category attribute to the artifact to record the 
-                    // interesting files set membership rule that was satisfied.
-                    BlackboardAttribute ruleNameAttribute = new BlackboardAttribute(BlackboardAttribute.ATTRIBUTE_TYPE.TSK_CATEGORY, moduleName, ruleSatisfied);
-                    attributes.add(ruleNameAttribute);
-
-                    artifact.addAttributes(attributes);
-                    try {
-                        // index the artifact for keyword search
-                        blackboard.indexArtifact(artifact);
-                    } catch (Blackboard.BlackboardException ex) {
-                        logger.log(Level.SEVERE, "Unable to index blackboard artifact " + artifact.getArtifactID(), ex); //NON-NLS
-                        MessageNotifyUtil.Notify.error(Bundle.FilesIdentifierIngestModule_indexError_message(), artifact.getDisplayName());
-                    }
+                    // index the artifact for keyword search
+                    blackboard.indexArtifact(artifact);
+                } catch (Blackboard.BlackboardException ex) {
+                    logger.log(Level.SEVERE, "Unable to index blackboard artifact " + artifact.getArtifactID(), ex); //NON-NLS
+                    MessageNotifyUtil.Notify.error(Bundle.FilesIdentifierIngestModule_indexError_message(), artifact.getDisplayName());
+                }
 
-                    services.fireModuleDataEvent(new ModuleDataEvent(moduleName, BlackboardArtifact.ARTIFACT_TYPE.TSK_INTERESTING_FILE_HIT, Collections.singletonList(artifact)));
+                services.fireModuleDataEvent(new ModuleDataEvent(moduleName, BlackboardArtifact.ARTIFACT_TYPE.TSK_INTERESTING_FILE_HIT, Collections.singletonList(artifact)));
 
-                    // make an ingest inbox message
-                    StringBuilder detailsSb = new StringBuilder();
-                    detailsSb.append("File: " + file.getParentPath() + file.getName() + "<br/>\n");
-                    detailsSb.append("Rule Set: " + filesSet.getName());
+                // make an ingest inbox message
+                StringBuilder detailsSb = new StringBuilder();
+                detailsSb.append("File: " + file.getParentPath() + file.getName() + "<br/>\n");
+                detailsSb.append("Rule Set: " + filesSet.getName());
 
-                    services.postMessage(IngestMessage.createDataMessage(InterestingItemsIngestModuleFactory.getModuleName(),
-                            "Interesting File Match: " + filesSet.getName() + "(" + file.getName() +")",
-                            detailsSb.toString(),
-                            file.getName(),
-                            artifact));
+                services.postMessage(IngestMessage.createDataMessage(InterestingItemsIngestModuleFactory.getModuleName(),
+                        "Interesting File Match: " + filesSet.getName() + "(" + file.getName() +")",
+                        detailsSb.toString(),
+                        file.getName(),
+                        artifact));
 
-                } catch (TskCoreException ex) {
-                    FilesIdentifierIngestModule.logger.log(Level.SEVERE, "Error posting to the blackboard", ex); //NOI18N NON-NLS
-                }
+            } catch (TskCoreException ex) {
+                FilesIdentifierIngestModule.logger.log(Level.SEVERE, "Error posting to the blackboard", ex); //NOI18N NON-NLS
             }
         }
         return ProcessResult.OK;
@@ -177,7 +177,7 @@ public void shutDown() {
                 // Shutting down the last instance of this module for this ingest 
                 // job, so discard the interesting file sets definitions snapshot 
                 // for the job.
-                FilesIdentifierIngestModule.interestingFileSetsByJob.remove(this.context.getJobId());
+                FilesIdentifierIngestModule.filesSetMatchersByJob.remove(this.context.getJobId());
             }
         }
     }
@@ -121,6 +121,16 @@ Map<String, Rule> getRules() {
         return new HashMap<>(this.rules);
     }
 
+    /**
+     * Gets a copy of the set membership rules of this interesting files set,
+     * in the order in which fileIsMemberOf tests them.
+     *
+     * @return A list of set membership rules, possibly empty.
+     */
+    List<Rule> getRulesInOrder() {
+        return new ArrayList<>(this.rules.values());
+    }
+
     /**
      * Determines whether a file is a member of this interesting files set.
      *
@@ -0,0 +1,426 @@
+/*
+ * Autopsy Forensic Browser
+ *
+ * Copyright 2018 Basis Technology Corp.
+ * Contact: carrier <at> sleuthkit <dot> org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sleuthkit.autopsy.modules.interestingitems;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import org.sleuthkit.autopsy.modules.interestingitems.FilesSet.Rule;
+import org.sleuthkit.autopsy.modules.interestingitems.FilesSet.Rule.DateCondition;
+import org.sleuthkit.autopsy.modules.interestingitems.FilesSet.Rule.ExtensionCondition;
+import org.sleuthkit.autopsy.modules.interestingitems.FilesSet.Rule.FileNameCondition;
+import org.sleuthkit.autopsy.modules.interestingitems.FilesSet.Rule.FileSizeCondition;
+import org.sleuthkit.autopsy.modules.interestingitems.FilesSet.Rule.MetaTypeCondition;
+import org.sleuthkit.autopsy.modules.interestingitems.FilesSet.Rule.MimeTypeCondition;
+import org.sleuthkit.autopsy.modules.interestingitems.FilesSet.Rule.ParentPathCondition;
+import org.sleuthkit.datamodel.AbstractFile;
+import org.sleuthkit.datamodel.TskData;
+
+/**
+ * The rules of a list of interesting files sets compiled into one structure,
+ * so that a file is tested against all of them in one pass instead of rule by
+ * rule and condition by condition.
+ *
+ * Rules with a plain (not regex) extension or full name condition are found by
+ * looking up the extension and name of the file in hash maps. Plain parent
+ * path conditions are substring matches, so all of them are found with one
+ * pass of an Aho-Corasick automaton over the path of the file. The meta type,
+ * size, MIME type and date conditions are kept in columns indexed by rule, and
+ * are checked before the regex conditions, which are the only conditions
+ * evaluated one by one.
+ *
+ * A file gets the same results as from FilesSet.fileIsMemberOf for each set:
+ * at most one satisfied rule per set, the first one in the order of the rules
+ * of the set.
+ * <p>
+ * Thread-safe (immutable).
+ */
+final class FilesSetMatcher {
+
+    private static final long SECS_PER_DAY = 60 * 60 * 24;
+
+    private final List<FilesSet> filesSets;
+    // the rules of all the sets, the rules of each set together and in order
+    private final List<Rule> rules = new ArrayList<>();
+    private final int[] ruleSets;
+    private final MetaTypeCondition.Type[] metaTypes;
+    private final long[] sizeLimits;
+    private final FileSizeCondition.COMPARATOR[] sizeComparators;
+    private final String[] mimeTypes;
+    // the age in seconds of the date conditions, null for rules without one
+    private final Long[] dateSecs;
+    private final FileNameCondition[] regexNameConditions;
+    private final ParentPathCondition[] regexPathConditions;
+    private final BitSet plainNameRules = new BitSet();
+    private final BitSet plainPathRules = new BitSet();
+    // rules that cannot be ruled out by a hash map lookup or the path automaton
+    private final BitSet unindexedRules = new BitSet();
+    private final Map<String, BitSet> extensionRules = new HashMap<>();
+    private final Map<String, BitSet> fullNameRules = new HashMap<>();
+    private final PathAutomaton pathAutomaton = new PathAutomaton();
+
+    /**
+     * Compile the rules of interesting files sets.
+     *
+     * @param filesSets The sets, in the order their hits are reported
+     */
+    FilesSetMatcher(List<FilesSet> filesSets) {
+        this.filesSets = new ArrayList<>(filesSets);
+        List<Integer> ruleSetList = new ArrayList<>();
+        for (int setIndex = 0; setIndex < filesSets.size(); setIndex++) {
+            for (Rule rule : filesSets.get(setIndex).getRulesInOrder()) {
+                rules.add(rule);
+                ruleSetList.add(setIndex);
+            }
+        }
+        int ruleCount = rules.size();
+        ruleSets = ruleSetList.stream().mapToInt(Integer::intValue).toArray();
+        metaTypes = new MetaTypeCondition.Type[ruleCount];
+        sizeLimits = new long[ruleCount];
+        sizeComparators = new FileSizeCondition.COMPARATOR[ruleCount];
+        mimeTypes = new String[ruleCount];
+        dateSecs = new Long[ruleCount];
+        regexNameConditions = new FileNameCondition[ruleCount];
+        regexPathConditions = new ParentPathCondition[ruleCount];
+
+        for (int ruleIndex = 0; ruleIndex < ruleCount; ruleIndex++) {
+            Rule rule = rules.get(ruleIndex);
+            metaTypes[ruleIndex] = rule.getMetaTypeCondition().getMetaType();
+            FileSizeCondition sizeCondition = rule.getFileSizeCondition();
+            if (sizeCondition != null) {
+                sizeComparators[ruleIndex] = sizeCondition.getComparator();
+                sizeLimits[ruleIndex] = sizeCondition.getUnit().getSize() * sizeCondition.getSizeValue();
+            }
+            MimeTypeCondition mimeTypeCondition = rule.getMimeTypeCondition();
+            if (mimeTypeCondition != null) {
+                mimeTypes[ruleIndex] = mimeTypeCondition.getMimeType();
+            }
+            DateCondition dateCondition = rule.getDateCondition();
+            if (dateCondition != null) {
+                dateSecs[ruleIndex] = dateCondition.getDaysIncluded() * SECS_PER_DAY;
+            }
+
+            FileNameCondition nameCondition = rule.getFileNameCondition();
+            if (nameCondition != null && !nameCondition.isRegex()) {
+                Map<String, BitSet> nameMap = nameCondition instanceof ExtensionCondition ? extensionRules : fullNameRules;
+                nameMap.computeIfAbsent(foldCase(nameCondition.getTextToMatch()), key -> new BitSet()).set(ruleIndex);
+                plainNameRules.set(ruleIndex);
+            } else {
+                regexNameConditions[ruleIndex] = nameCondition;
+            }
+            ParentPathCondition pathCondition = rule.getPathCondition();
+            if (pathCondition != null && !pathCondition.isRegex()) {
+                pathAutomaton.add(pathCondition.getTextToMatch(), ruleIndex);
+                plainPathRules.set(ruleIndex);
+            } else {
+                regexPathConditions[ruleIndex] = pathCondition;
+            }
+            if (!plainNameRules.get(ruleIndex) && !plainPathRules.get(ruleIndex)) {
+                unindexedRules.set(ruleIndex);
+            }
+        }
+        pathAutomaton.build();
+    }
+
+    /**
+     * A rule of an interesting files set that a file satisfies.
+     */
+    static final class Match {
+
+        private final FilesSet filesSet;
+        private final String ruleName;
+
+        private Match(FilesSet filesSet, String ruleName) {
+            this.filesSet = filesSet;
+            this.ruleName = ruleName;
+        }
+
+        FilesSet getFilesSet() {
+            return filesSet;
+        }
+
+        String getRuleName() {
+            return ruleName;
+        }
+    }
+
+    /**
+     * Find the interesting files sets that a file belongs to.
+     *
+     * @param file The file
+     *
+     * @return The first satisfied rule of each set the file belongs to, in
+     *         the order of the sets
+     */
+    List<Match> match(AbstractFile file) {
+        if (rules.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        // the rules whose plain name and path conditions are satisfied
+        BitSet nameMatches = new BitSet();
+        String extension = file.getNameExtension();
+        BitSet extensionMatches = extensionRules.get(foldCase(extension == null ? "" : extension));
+        if (extensionMatches != null) {
+            nameMatches.or(extensionMatches);
+        }
+        BitSet fullNameMatches = fullNameRules.get(foldCase(file.getName()));
+        if (fullNameMatches != null) {
+            nameMatches.or(fullNameMatches);
+        }
+        String parentPath = file.getParentPath() + "/";
+        BitSet pathMatches = pathAutomaton.match(parentPath);
+
+        BitSet candidates = (BitSet) unindexedRules.clone();
+        candidates.or(nameMatches);
+        BitSet pathOnlyMatches = (BitSet) pathMatches.clone();
+        pathOnlyMatches.andNot(plainNameRules);
+        candidates.or(pathOnlyMatches);
+
+        boolean isKnown = file.getKnown() == TskData.FileKnown.KNOWN;
+        boolean isUnallocated = file.getType().equals(TskData.TSK_DB_FILES_TYPE_ENUM.UNALLOC_BLOCKS)
+                || file.getType().equals(TskData.TSK_DB_FILES_TYPE_ENUM.SLACK)
+                || file.getType().equals(TskData.TSK_DB_FILES_TYPE_ENUM.UNUSED_BLOCKS);
+        FileProperties properties = new FileProperties(file);
+
+        List<Match> matches = new ArrayList<>();
+        int matchedSet = -1;
+        for (int ruleIndex = candidates.nextSetBit(0); ruleIndex >= 0; ruleIndex = candidates.nextSetBit(ruleIndex + 1)) {
+            int setIndex = ruleSets[ruleIndex];
+            if (setIndex == matchedSet) {
+                continue;
+            }
+            FilesSet filesSet = filesSets.get(setIndex);
+            if ((filesSet.ignoresKnownFiles() && isKnown) || (filesSet.ingoresUnallocatedSpace() && isUnallocated)) {
+                continue;
+            }
+            if ((plainNameRules.get(ruleIndex) && !nameMatches.get(ruleIndex))
+                    || (plainPathRules.get(ruleIndex) && !pathMatches.get(ruleIndex))
+                    || !passesColumns(ruleIndex, properties)) {
+                continue;
+            }
+            if ((regexNameConditions[ruleIndex] != null && !regexNameConditions[ruleIndex].passes(file))
+                    || (regexPathConditions[ruleIndex] != null && !regexPathConditions[ruleIndex].textMatches(parentPath))) {
+                continue;
+            }
+            matches.add(new Match(filesSet, rules.get(ruleIndex).getName()));
+            matchedSet = setIndex;
+        }
+        return matches;
+    }
+
+    /**
+     * Check the meta type, size, MIME type and date conditions of a rule.
+     */
+    private boolean passesColumns(int ruleIndex, FileProperties properties) {
+        switch (metaTypes[ruleIndex]) {
+            case FILES:
+                if (!properties.isFile) {
+                    return false;
+                }
+                break;
+            case DIRECTORIES:
+                if (!properties.isDirectory) {
+                    return false;
+                }
+                break;
+            case FILES_AND_DIRECTORIES:
+                if (!properties.isRegularFileOrDirectory) {
+                    return false;
+                }
+                break;
+            default:
+                break;
+        }
+        if (sizeComparators[ruleIndex] != null) {
+            long limit = sizeLimits[ruleIndex];
+            long size = properties.size;
+            boolean passes;
+            switch (sizeComparators[ruleIndex]) {
+                case GREATER_THAN:
+                    passes = size > limit;
+                    break;
+                case GREATER_THAN_EQUAL:
+                    passes = size >= limit;
+                    break;
+                case LESS_THAN_EQUAL:
+                    passes = size <= limit;
+                    break;
+                case LESS_THAN:
+                    passes = size < limit;
+                    break;
+                default:
+                    passes = size == limit;
+                    break;
+            }
+            if (!passes) {
+                return false;
+            }
+        }
+        if (mimeTypes[ruleIndex] != null && !mimeTypes[ruleIndex].equals(properties.mimeType)) {
+            return false;
+        }
+        if (dateSecs[ruleIndex] != null) {
+            long threshold = properties.nowSecs - dateSecs[ruleIndex];
+            if (properties.crtime <= threshold && properties.mtime <= threshold) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Fold the case of text the way String.equalsIgnoreCase compares it, so
+     * that two strings are equal ignoring case exactly when their folded
+     * forms are equal.
+     */
+    private static String foldCase(String text) {
+        StringBuilder folded = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            folded.append(Character.toLowerCase(Character.toUpperCase(text.charAt(i))));
+        }
+        return folded.toString();
+    }
+
+    /**
+     * The properties of a file that the column conditions test, read once.
+     */
+    private static final class FileProperties {
+
+        private final boolean isFile;
+        private final boolean isDirectory;
+        private final boolean isRegularFileOrDirectory;
+        private final long size;
+        private final String mimeType;
+        private final long crtime;
+        private final long mtime;
+        private final long nowSecs;
+
+        private FileProperties(AbstractFile file) {
+            TskData.TSK_FS_META_TYPE_ENUM metaType = file.getMetaType();
+            isFile = file.isFile();
+            isDirectory = metaType == TskData.TSK_FS_META_TYPE_ENUM.TSK_FS_META_TYPE_DIR
+                    || metaType == TskData.TSK_FS_META_TYPE_ENUM.TSK_FS_META_TYPE_VIRT_DIR;
+            isRegularFileOrDirectory = isDirectory || metaType == TskData.TSK_FS_META_TYPE_ENUM.TSK_FS_META_TYPE_REG;
+            size = file.getSize();
+            mimeType = file.getMIMEType();
+            crtime = file.getCrtime();
+            mtime = file.getMtime();
+            nowSecs = System.currentTimeMillis() / 1000;
+        }
+    }
+
+    /**
+     * An Aho-Corasick automaton that finds which of a set of strings occur in
+     * a path. Like the plain parent path conditions, which match with a case
+     * insensitive regex, only ASCII letters are matched ignoring case.
+     */
+    private static final class PathAutomaton {
+
+        private final Node root = new Node();
+        private final BitSet emptyStringRules = new BitSet();
+
+        private static final class Node {
+
+            private final Map<Character, Node> children = new HashMap<>(4);
+            private Node failure;
+            // the rules of the strings that end here, including through failure links
+            private BitSet rules;
+        }
+
+        private void add(String text, int ruleIndex) {
+            if (text.isEmpty()) {
+                emptyStringRules.set(ruleIndex);
+                return;
+            }
+            Node node = root;
+            for (int i = 0; i < text.length(); i++) {
+                node = node.children.computeIfAbsent(foldAsciiCase(text.charAt(i)), key -> new Node());
+            }
+            if (node.rules == null) {
+                node.rules = new BitSet();
+            }
+            node.rules.set(ruleIndex);
+        }
+
+        /**
+         * Set the failure links, breadth first, and merge the rules of the
+         * strings that end at each node's failure node into its own.
+         */
+        private void build() {
+            Queue<Node> queue = new ArrayDeque<>();
+            for (Node child : root.children.values()) {
+                child.failure = root;
+                queue.add(child);
+            }
+            while (!queue.isEmpty()) {
+                Node node = queue.remove();
+                for (Map.Entry<Character, Node> entry : node.children.entrySet()) {
+                    Node child = entry.getValue();
+                    Node failure = node.failure;
+                    while (failure != null && !failure.children.containsKey(entry.getKey())) {
+                        failure = failure.failure;
+                    }
+                    child.failure = failure == null ? root : failure.children.get(entry.getKey());
+                    if (child.failure.rules != null) {
+                        if (child.rules == null) {
+                            child.rules = new BitSet();
+                        }
+                        child.rules.or(child.failure.rules);
+                    }
+                    queue.add(child);
+                }
+            }
+        }
+
+        /**
+         * @return the rules whose strings occur in the path
+         */
+        private BitSet match(String path) {
+            BitSet matches = (BitSet) emptyStringRules.clone();
+            if (root.children.isEmpty()) {
+                return matches;
+            }
+            Node node = root;
+            for (int i = 0; i < path.length(); i++) {
+                char c = foldAsciiCase(path.charAt(i));
+                while (node != root && !node.children.containsKey(c)) {
+                    node = node.failure;
+                }
+                Node next = node.children.get(c);
+                if (next != null) {
+                    node = next;
+                    if (node.rules != null) {
+                        matches.or(node.rules);
+                    }
+                }
+            }
+            return matches;
+        }
+
+        private static char foldAsciiCase(char c) {
+            return (c >= 'A' && c <= 'Z') ? (char) (c + ('a' - 'A')) : c;
+        }
+    }
+}
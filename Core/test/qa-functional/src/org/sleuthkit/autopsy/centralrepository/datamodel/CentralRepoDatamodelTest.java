@@ -27,6 +27,11 @@
 import java.util.HashSet;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.stream.Collectors;
 import junit.framework.Test;
 import junit.framework.TestCase;
@@ -94,6 +99,8 @@ public void setUp() {
         try {
             dbSettingsSqlite.setDbName(CR_DB_NAME);
             dbSettingsSqlite.setDbDirectory(testDirectory.toString());
+            // Split readers and writers, which is off by default
+            dbSettingsSqlite.setReadPoolSize(4);
             if (!dbSettingsSqlite.dbDirectoryExists()) {
                 dbSettingsSqlite.createDbDirectory();
             }
@@ -436,6 +443,59 @@ public void testNotableArtifactStatus() {
         }
     }
 
+    /**
+     * Test tagging an item as notable when it is not yet in the central
+     * repository while readers and writers are split. The instance, and its
+     * data source, are added by writes nested inside the write that sets the
+     * status, which must reuse the writer connection rather than wait for it.
+     */
+    public void testNotableStatusOfNewArtifact() {
+        String newHash = "4b5a6e4f2f1e8c3f9d3a0e7b6c5d4e3f";
+        CorrelationDataSource newDataSource = new CorrelationDataSource(case1.getID(), "dataSource4_deviceID", "dataSource4");
+        CorrelationAttribute attr;
+        try {
+            attr = new CorrelationAttribute(fileType, newHash);
+        } catch (EamDbException ex) {
+            Exceptions.printStackTrace(ex);
+            Assert.fail(ex);
+            return;
+        }
+        attr.addInstance(new CorrelationAttributeInstance(case1, newDataSource, "path6",
+                "", TskData.FileKnown.UNKNOWN));
+
+        // Run it on another thread so that a deadlock fails the test instead of hanging it
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<?> future = executor.submit(() -> {
+                EamDb.getInstance().setArtifactInstanceKnownStatus(attr, TskData.FileKnown.BAD);
+                return null;
+            });
+            future.get(60, TimeUnit.SECONDS);
+        } catch (TimeoutException ex) {
+            Assert.fail("setArtifactInstanceKnownStatus did not finish for an item not in the central repository");
+        } catch (Exception ex) {
+            Exceptions.printStackTrace(ex);
+            Assert.fail(ex);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        try {
+            assertTrue("New data source was not added", EamDb.getInstance().getDataSource(case1, newDataSource.getDeviceID()) != null);
+            List<CorrelationAttributeInstance> attrs = EamDb.getInstance().getArtifactInstancesByTypeValue(fileType, newHash);
+            assertTrue("getArtifactInstancesByTypeValue returned " + attrs.size() + " values - expected 1", attrs.size() == 1);
+            assertTrue("Artifact did not have expected BAD status", attrs.get(0).getKnownStatus().equals(TskData.FileKnown.BAD));
+
+            // The writer connection must have been released, so a later write still works
+            EamDb.getInstance().setArtifactInstanceKnownStatus(attr, TskData.FileKnown.KNOWN);
+            attrs = EamDb.getInstance().getArtifactInstancesByTypeValue(fileType, newHash);
+            assertTrue("Artifact status did not change to KNOWN", attrs.get(0).getKnownStatus().equals(TskData.FileKnown.KNOWN));
+        } catch (EamDbException ex) {
+            Exceptions.printStackTrace(ex);
+            Assert.fail(ex);
+        }
+    }
+
     /**
      * Test the methods associated with bulk artifacts (prepareBulkArtifact and
      * bulkInsertArtifacts).
@@ -0,0 +1,243 @@
+/*
+ * Autopsy Forensic Browser
+ *
+ * Copyright 2017 Basis Technology Corp.
+ * Contact: carrier <at> sleuthkit <dot> org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sleuthkit.autopsy.modules.filetypeid;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import org.apache.commons.io.FileUtils;
+import org.netbeans.junit.NbModuleSuite;
+import org.openide.util.Exceptions;
+import org.sleuthkit.autopsy.casemodule.Case;
+import org.sleuthkit.autopsy.casemodule.CaseActionException;
+import org.sleuthkit.autopsy.casemodule.CaseDetails;
+import org.sleuthkit.autopsy.casemodule.services.FileManager;
+import org.sleuthkit.autopsy.modules.filetypeid.FileType.Signature;
+import org.sleuthkit.datamodel.AbstractFile;
+import org.sleuthkit.datamodel.LocalFilesDataSource;
+import org.sleuthkit.datamodel.TskCoreException;
+import org.sleuthkit.datamodel.TskDataException;
+
+/**
+ * Checks that SignatureMatcher finds the same file type as testing the
+ * signatures of each file type in turn with Signature.containedIn, for
+ * signatures in and out of the header and trailer that it reads.
+ */
+public class SignatureMatcherTest extends TestCase {
+
+    private static final Path caseDirectoryPath = Paths.get(System.getProperty("java.io.tmpdir"), "SignatureMatcherTest");
+    private static final File CASE_DIR = new File(caseDirectoryPath.toString());
+    private static final Path filesPath = caseDirectoryPath.resolve("files");
+
+    private static final FileType AUTOPSY = fileType("test/autopsy", new Signature("AUTOPSY", 0));
+    private static final FileType AUTO = fileType("test/auto", new Signature("AUTO", 0));
+    private static final FileType CAFE_END = fileType("test/cafe-end",
+            new Signature(new byte[]{(byte) 0xCA, (byte) 0xFE}, 100),
+            new Signature("END!", 3, false));
+    private static final FileType MIDDLE = fileType("test/middle", new Signature("MID", 5000));
+    private static final FileType EDGE = fileType("test/edge", new Signature("EDGE", SignatureMatcher.HEADER_BYTES - 2));
+    private static final FileType LAST_HEADER_BYTE = fileType("test/last-header-byte",
+            new Signature("X", SignatureMatcher.HEADER_BYTES - 1),
+            new Signature("HEAD", 10));
+    private static final FileType FAR_TAIL = fileType("test/far-tail", new Signature("TAIL", 1000, false));
+    private static final FileType TAIL = fileType("test/tail", new Signature("LAST", 3, false));
+    private static final FileType TRAILER_EDGE = fileType("test/trailer-edge",
+            new Signature("EDGE", SignatureMatcher.TRAILER_BYTES - 1, false));
+    private static final List<FileType> FILE_TYPES = Arrays.asList(
+            AUTOPSY, AUTO, CAFE_END, MIDDLE, EDGE, LAST_HEADER_BYTE, FAR_TAIL, TAIL, TRAILER_EDGE);
+
+    public static Test suite() {
+        NbModuleSuite.Configuration conf = NbModuleSuite.createConfiguration(SignatureMatcherTest.class).
+                clusters(".*").
+                enableModules(".*");
+        return conf.suite();
+    }
+
+    @Override
+    public void setUp() {
+        try {
+            Case.createAsCurrentCase(Case.CaseType.SINGLE_USER_CASE, caseDirectoryPath.toString(), new CaseDetails("SignatureMatcherTest"));
+        } catch (CaseActionException ex) {
+            Exceptions.printStackTrace(ex);
+        }
+        assertTrue(CASE_DIR.exists());
+        assertTrue(filesPath.toFile().mkdirs());
+    }
+
+    @Override
+    public void tearDown() {
+        try {
+            Case.closeCurrentCase();
+            FileUtils.deleteDirectory(CASE_DIR);
+        } catch (CaseActionException | IOException ex) {
+            Exceptions.printStackTrace(ex);
+        }
+        assertFalse(CASE_DIR.exists());
+    }
+
+    public void testHeaderSignatures() {
+        assertMatch(AUTOPSY, with(filler(100), 0, "AUTOPSY"));
+        assertMatch(AUTO, with(filler(100), 0, "AUTOPS"));
+        // shorter than the signature that would have taken precedence
+        assertMatch(AUTO, with(filler(6), 0, "AUTOPS"));
+        assertMatch(null, with(filler(3), 0, "AUT"));
+        assertMatch(null, filler(0));
+    }
+
+    public void testSignaturesAtOffsets() {
+        byte[] cafe = withFromEnd(filler(200), 3, "END!");
+        cafe[100] = (byte) 0xCA;
+        cafe[101] = (byte) 0xFE;
+        assertMatch(CAFE_END, cafe);
+        cafe[101] = 0;
+        assertMatch(null, cafe);
+
+        // past the header, so read from the file
+        assertMatch(MIDDLE, with(filler(6000), 5000, "MID"));
+        assertMatch(null, with(filler(5002), 4999, "MID"));
+        assertMatch(null, with(filler(5002), 5000, "MI"));
+
+        // across the end of the header
+        assertMatch(EDGE, with(filler(5000), SignatureMatcher.HEADER_BYTES - 2, "EDGE"));
+        assertMatch(EDGE, with(filler(SignatureMatcher.HEADER_BYTES + 2), SignatureMatcher.HEADER_BYTES - 2, "EDGE"));
+        assertMatch(null, with(filler(SignatureMatcher.HEADER_BYTES + 1), SignatureMatcher.HEADER_BYTES - 2, "EDG"));
+
+        // the last byte of the header
+        byte[] lastByte = with(filler(SignatureMatcher.HEADER_BYTES), 10, "HEAD");
+        assertMatch(null, lastByte);
+        assertMatch(LAST_HEADER_BYTE, with(lastByte, SignatureMatcher.HEADER_BYTES - 1, "X"));
+        assertMatch(LAST_HEADER_BYTE, with(with(filler(10000), 10, "HEAD"), SignatureMatcher.HEADER_BYTES - 1, "X"));
+    }
+
+    public void testTrailerSignatures() {
+        assertMatch(TAIL, withFromEnd(filler(50), 3, "LAST"));
+        assertMatch(TAIL, withFromEnd(filler(10000), 3, "LAST"));
+        assertMatch(TAIL, withFromEnd(filler(SignatureMatcher.HEADER_BYTES + 1), 3, "LAST"));
+        assertMatch(TAIL, "LAST".getBytes(StandardCharsets.US_ASCII));
+        assertMatch(null, "AST".getBytes(StandardCharsets.US_ASCII));
+        // not at the end
+        assertMatch(null, withFromEnd(filler(10000), 4, "LAST"));
+
+        // the first byte of the trailer, and beyond it
+        assertMatch(TRAILER_EDGE, withFromEnd(filler(10000), SignatureMatcher.TRAILER_BYTES - 1, "EDGE"));
+        assertMatch(TRAILER_EDGE, withFromEnd(filler(SignatureMatcher.TRAILER_BYTES), SignatureMatcher.TRAILER_BYTES - 1, "EDGE"));
+        assertMatch(FAR_TAIL, withFromEnd(filler(10000), 1000, "TAIL"));
+        assertMatch(FAR_TAIL, withFromEnd(filler(1004), 1000, "TAIL"));
+        assertMatch(null, withFromEnd(filler(1000), 999, "TAIL"));
+
+        // a header and a trailer signature
+        assertMatch(null, withFromEnd(filler(300), 3, "END!"));
+        byte[] cafe = withFromEnd(filler(10000), 3, "END!");
+        cafe[100] = (byte) 0xCA;
+        cafe[101] = (byte) 0xFE;
+        assertMatch(CAFE_END, cafe);
+    }
+
+    public void testPrecedence() {
+        // several types match, so the first of them is found
+        byte[] all = with(filler(10000), 0, "AUTOPSY");
+        all[100] = (byte) 0xCA;
+        all[101] = (byte) 0xFE;
+        all = withFromEnd(all, 3, "END!");
+        all = with(all, 5000, "MID");
+        assertMatch(AUTOPSY, all);
+        assertEquals(AUTOPSY, new SignatureMatcher(Arrays.asList(AUTOPSY, AUTO)).match(fileBytes(all)));
+        assertEquals(AUTO, new SignatureMatcher(Arrays.asList(AUTO, AUTOPSY)).match(fileBytes(all)));
+        assertEquals(MIDDLE, new SignatureMatcher(Arrays.asList(MIDDLE, CAFE_END)).match(fileBytes(all)));
+        assertNull(new SignatureMatcher(Collections.emptyList()).match(fileBytes(all)));
+    }
+
+    /**
+     * Check that the file type found for some file content by SignatureMatcher
+     * is the one expected and the one found by testing each file type in turn.
+     */
+    private void assertMatch(FileType expected, byte[] content) {
+        AbstractFile file = addFile(content);
+        FileType oldMatch = null;
+        for (FileType fileType : FILE_TYPES) {
+            if (fileType.matches(file)) {
+                oldMatch = fileType;
+                break;
+            }
+        }
+        assertEquals(expected, oldMatch);
+        assertEquals(oldMatch, new SignatureMatcher(FILE_TYPES).match(new SignatureMatcher.FileBytes(file)));
+    }
+
+    private SignatureMatcher.FileBytes fileBytes(byte[] content) {
+        return new SignatureMatcher.FileBytes(addFile(content));
+    }
+
+    /**
+     * Add a file with some content to the case, as a local files data source.
+     */
+    private AbstractFile addFile(byte[] content) {
+        try {
+            String name = UUID.randomUUID().toString();
+            Path path = filesPath.resolve(name);
+            Files.write(path, content);
+            FileManager fileManager = Case.getCurrentCase().getServices().getFileManager();
+            LocalFilesDataSource dataSource = fileManager.addLocalFilesDataSource(name, "", "", Arrays.asList(path.toString()), addedFile -> {
+            });
+            return fileManager.findFiles(dataSource, name).get(0);
+        } catch (IOException | TskCoreException | TskDataException ex) {
+            throw new AssertionError(ex);
+        }
+    }
+
+    private static FileType fileType(String mimeType, Signature... signatures) {
+        return new FileType(mimeType, Arrays.asList(signatures));
+    }
+
+    /**
+     * Content that none of the signatures are in: bytes with the high bit set,
+     * none of them 0xFE.
+     */
+    private static byte[] filler(int size) {
+        byte[] content = new byte[size];
+        for (int i = 0; i < size; i++) {
+            content[i] = (byte) (0x80 | (i % 97));
+        }
+        return content;
+    }
+
+    private static byte[] with(byte[] content, int offset, String text) {
+        byte[] bytes = text.getBytes(StandardCharsets.US_ASCII);
+        byte[] copy = Arrays.copyOf(content, content.length);
+        System.arraycopy(bytes, 0, copy, offset, bytes.length);
+        return copy;
+    }
+
+    /**
+     * Put text at an offset relative to the end of the content, the way
+     * Signature counts it: the offset of the last byte is 0.
+     */
+    private static byte[] withFromEnd(byte[] content, int offset, String text) {
+        return with(content, content.length - 1 - offset, text);
+    }
+}
@@ -0,0 +1,253 @@
+/*
+ * Autopsy Forensic Browser
+ *
+ * Copyright 2017 Basis Technology Corp.
+ * Contact: carrier <at> sleuthkit <dot> org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sleuthkit.autopsy.modules.filetypeid;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.UUID;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.input.BoundedInputStream;
+import org.apache.tika.Tika;
+import org.apache.tika.io.TikaInputStream;
+import org.apache.tika.mime.MimeTypes;
+import org.netbeans.junit.NbModuleSuite;
+import org.openide.util.Exceptions;
+import org.sleuthkit.autopsy.casemodule.Case;
+import org.sleuthkit.autopsy.casemodule.CaseActionException;
+import org.sleuthkit.autopsy.casemodule.CaseDetails;
+import org.sleuthkit.autopsy.casemodule.services.FileManager;
+import org.sleuthkit.autopsy.coreutils.ModuleSettings;
+import org.sleuthkit.datamodel.AbstractFile;
+import org.sleuthkit.datamodel.LocalFilesDataSource;
+import org.sleuthkit.datamodel.ReadContentInputStream;
+import org.sleuthkit.datamodel.TskCoreException;
+import org.sleuthkit.datamodel.TskDataException;
+
+/**
+ * Checks that TikaDetector detects the same MIME type as giving Tika the
+ * whole file, for files no larger than the detection size limit, and the same
+ * as giving Tika the first bytes of the file up to the limit for larger files.
+ * Each file is detected twice, so that the second result comes from the cache.
+ */
+public class TikaDetectorTest extends TestCase {
+
+    private static final Path caseDirectoryPath = Paths.get(System.getProperty("java.io.tmpdir"), "TikaDetectorTest");
+    private static final File CASE_DIR = new File(caseDirectoryPath.toString());
+    private static final Path filesPath = caseDirectoryPath.resolve("files");
+    private static final String SETTINGS_NAME = "FileTypeId"; //NON-NLS
+    private static final String MAX_BYTES_SETTING = "TikaDetectionMaxBytes"; //NON-NLS
+    private static final Tika tika = new Tika();
+
+    public static Test suite() {
+        NbModuleSuite.Configuration conf = NbModuleSuite.createConfiguration(TikaDetectorTest.class).
+                clusters(".*").
+                enableModules(".*");
+        return conf.suite();
+    }
+
+    @Override
+    public void setUp() {
+        /*
+         * Lower the detection size limit so that the files larger than it are
+         * not too large. This only has an effect if TikaDetector has not been
+         * loaded yet, so the tests use whatever limit it has.
+         */
+        long limit = 4L * Math.max(MimeTypes.getDefaultMimeTypes().getMinLength(), SignatureMatcher.HEADER_BYTES);
+        ModuleSettings.setConfigSetting(SETTINGS_NAME, MAX_BYTES_SETTING, Long.toString(limit));
+        try {
+            Case.createAsCurrentCase(Case.CaseType.SINGLE_USER_CASE, caseDirectoryPath.toString(), new CaseDetails("TikaDetectorTest"));
+        } catch (CaseActionException ex) {
+            Exceptions.printStackTrace(ex);
+        }
+        assertTrue(CASE_DIR.exists());
+        assertTrue(filesPath.toFile().mkdirs());
+    }
+
+    @Override
+    public void tearDown() {
+        ModuleSettings.removeProperty(SETTINGS_NAME, MAX_BYTES_SETTING);
+        try {
+            Case.closeCurrentCase();
+            FileUtils.deleteDirectory(CASE_DIR);
+        } catch (CaseActionException | IOException ex) {
+            Exceptions.printStackTrace(ex);
+        }
+        assertFalse(CASE_DIR.exists());
+    }
+
+    public void testMagicAndNames() throws IOException, TskCoreException {
+        assertSameType(addFile("hello.txt", "hello world\n".getBytes(StandardCharsets.US_ASCII)));
+        assertSameType(addFile("report.pdf", "%PDF-1.4\n1 0 obj\n".getBytes(StandardCharsets.US_ASCII)));
+        assertSameType(addFile("page", "<html><head><title>t</title></head><body></body></html>".getBytes(StandardCharsets.US_ASCII)));
+        assertSameType(addFile("page.txt", "<html><head><title>t</title></head><body></body></html>".getBytes(StandardCharsets.US_ASCII)));
+        assertSameType(addFile("empty", new byte[0]));
+        assertSameType(addFile("data.bin", filler(10000)));
+    }
+
+    public void testMagicPastHeader() throws IOException, TskCoreException {
+        // ISO 9660 images are recognized by "CD001" at offset 32769
+        byte[] image = new byte[40000];
+        byte[] magic = "CD001".getBytes(StandardCharsets.US_ASCII);
+        System.arraycopy(magic, 0, image, 32769, magic.length);
+        byte[] notImage = new byte[40000];
+
+        // the same header, and the same name
+        assertSameType(addFile("disk.img", notImage));
+        assertSameType(addFile("disk.img", image));
+        assertSameType(addFile("disk.img", notImage));
+    }
+
+    public void testContainers() throws IOException, TskCoreException {
+        // a zip file and a jar file with the same first entry, which is
+        // larger than the prefix
+        int entrySize = TikaDetector.PREFIX_BYTES + 1000;
+        AbstractFile zip = addZipFile("archive.zip", entrySize, false);
+        AbstractFile jar = addZipFile("archive.zip", entrySize, true);
+        assertTrue(zip.getSize() <= TikaDetector.MAX_BYTES && jar.getSize() <= TikaDetector.MAX_BYTES);
+        assertFalse(detect(zip).equals(detect(jar)));
+
+        assertSameType(zip);
+        assertSameType(jar);
+        assertSameType(zip);
+    }
+
+    public void testDetectionLimit() throws IOException, TskCoreException {
+        assertTrue(TikaDetector.MAX_BYTES >= TikaDetector.PREFIX_BYTES);
+
+        // no larger than the limit
+        assertSameType(addFile("limit.bin", filler((int) TikaDetector.MAX_BYTES)));
+        assertSameType(addZipFile("limit.jar", (int) TikaDetector.MAX_BYTES - 1000, true));
+
+        // larger than the limit, with the manifest of the jar file past it
+        AbstractFile jar = addZipFile("large.jar", (int) TikaDetector.MAX_BYTES, true);
+        assertTrue(jar.getSize() > TikaDetector.MAX_BYTES);
+        for (int i = 0; i < 2; i++) {
+            assertEquals(detect(jar, TikaDetector.MAX_BYTES), TikaDetector.detect(new SignatureMatcher.FileBytes(jar)));
+        }
+    }
+
+    /**
+     * Check that TikaDetector detects the same MIME type for a file as giving
+     * Tika the whole file, as FileTypeDetector did before it, both the first
+     * time and from the cache.
+     */
+    private static void assertSameType(AbstractFile file) throws IOException, TskCoreException {
+        String mimeType = detect(file);
+        for (int i = 0; i < 2; i++) {
+            assertEquals(mimeType, TikaDetector.detect(new SignatureMatcher.FileBytes(file)));
+        }
+    }
+
+    private static String detect(AbstractFile file) throws IOException {
+        return detect(file, -1);
+    }
+
+    /**
+     * Detect the MIME type of a file with Tika, giving it at most a number of
+     * bytes of the file, or the whole file if the number is negative.
+     */
+    private static String detect(AbstractFile file, long maxBytes) throws IOException {
+        InputStream stream = new BoundedInputStream(new ReadContentInputStream(file), maxBytes);
+        try (TikaInputStream tikaInputStream = TikaInputStream.get(stream)) {
+            return tika.detect(tikaInputStream, file.getName());
+        }
+    }
+
+    private AbstractFile addFile(String name, byte[] content) {
+        try {
+            Path path = newDirectory().resolve(name);
+            Files.write(path, content);
+            return addFile(path);
+        } catch (IOException ex) {
+            throw new AssertionError(ex);
+        }
+    }
+
+    /**
+     * Add a zip file to the case whose first entry is a stored file of a
+     * given size, followed by a jar manifest if it is to be a jar file.
+     */
+    private AbstractFile addZipFile(String name, int firstEntrySize, boolean isJar) {
+        Path path = newDirectory().resolve(name);
+        try (OutputStream out = Files.newOutputStream(path);
+                ZipOutputStream zip = new ZipOutputStream(out)) {
+            byte[] data = filler(firstEntrySize);
+            CRC32 crc = new CRC32();
+            crc.update(data);
+            ZipEntry entry = new ZipEntry("data.bin");
+            entry.setMethod(ZipEntry.STORED);
+            entry.setSize(data.length);
+            entry.setCrc(crc.getValue());
+            entry.setTime(1500000000000L);
+            zip.putNextEntry(entry);
+            zip.write(data);
+            zip.closeEntry();
+            if (isJar) {
+                ZipEntry manifest = new ZipEntry("META-INF/MANIFEST.MF");
+                manifest.setTime(1500000000000L);
+                zip.putNextEntry(manifest);
+                zip.write("Manifest-Version: 1.0\r\n\r\n".getBytes(StandardCharsets.US_ASCII));
+                zip.closeEntry();
+            }
+        } catch (IOException ex) {
+            throw new AssertionError(ex);
+        }
+        return addFile(path);
+    }
+
+    /**
+     * Add a file to the case, as a local files data source.
+     */
+    private static AbstractFile addFile(Path path) {
+        try {
+            FileManager fileManager = Case.getCurrentCase().getServices().getFileManager();
+            LocalFilesDataSource dataSource = fileManager.addLocalFilesDataSource(UUID.randomUUID().toString(), "", "", Arrays.asList(path.toString()), addedFile -> {
+            });
+            return fileManager.findFiles(dataSource, path.getFileName().toString()).get(0);
+        } catch (TskCoreException | TskDataException ex) {
+            throw new AssertionError(ex);
+        }
+    }
+
+    private static Path newDirectory() {
+        Path directory = filesPath.resolve(UUID.randomUUID().toString());
+        assertTrue(directory.toFile().mkdirs());
+        return directory;
+    }
+
+    private static byte[] filler(int size) {
+        byte[] content = new byte[size];
+        for (int i = 0; i < size; i++) {
+            content[i] = (byte) (i * 31 % 251);
+        }
+        return content;
+    }
+}
@@ -0,0 +1,231 @@
+/*
+ * Autopsy Forensic Browser
+ *
+ * Copyright 2017 Basis Technology Corp.
+ * Contact: carrier <at> sleuthkit <dot> org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sleuthkit.autopsy.modules.interestingitems;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import org.apache.commons.io.FileUtils;
+import org.netbeans.junit.NbModuleSuite;
+import org.openide.util.Exceptions;
+import org.sleuthkit.autopsy.casemodule.Case;
+import org.sleuthkit.autopsy.casemodule.CaseActionException;
+import org.sleuthkit.autopsy.casemodule.CaseDetails;
+import org.sleuthkit.autopsy.modules.interestingitems.FilesSet.Rule;
+import org.sleuthkit.autopsy.modules.interestingitems.FilesSet.Rule.DateCondition;
+import org.sleuthkit.autopsy.modules.interestingitems.FilesSet.Rule.ExtensionCondition;
+import org.sleuthkit.autopsy.modules.interestingitems.FilesSet.Rule.FileNameCondition;
+import org.sleuthkit.autopsy.modules.interestingitems.FilesSet.Rule.FileSizeCondition;
+import org.sleuthkit.autopsy.modules.interestingitems.FilesSet.Rule.FullNameCondition;
+import org.sleuthkit.autopsy.modules.interestingitems.FilesSet.Rule.MetaTypeCondition;
+import org.sleuthkit.autopsy.modules.interestingitems.FilesSet.Rule.MimeTypeCondition;
+import org.sleuthkit.autopsy.modules.interestingitems.FilesSet.Rule.ParentPathCondition;
+import org.sleuthkit.datamodel.AbstractFile;
+import org.sleuthkit.datamodel.Content;
+import org.sleuthkit.datamodel.LocalFilesDataSource;
+import org.sleuthkit.datamodel.TskCoreException;
+import org.sleuthkit.datamodel.TskDataException;
+
+/**
+ * Checks that FilesSetMatcher finds the same sets and rules for each file as
+ * testing each set in turn with FilesSet.fileIsMemberOf, for sets with plain
+ * and regular expression name, extension and path conditions, alone and
+ * combined with each other and with the other conditions.
+ */
+public class FilesSetMatcherTest extends TestCase {
+
+    private static final Path caseDirectoryPath = Paths.get(System.getProperty("java.io.tmpdir"), "FilesSetMatcherTest");
+    private static final File CASE_DIR = new File(caseDirectoryPath.toString());
+    private static final Path filesPath = caseDirectoryPath.resolve("files");
+
+    private static final List<FilesSet> FILES_SETS = Arrays.asList(
+            filesSet("Documents",
+                    rule("Word documents", new ExtensionCondition("docx"), MetaTypeCondition.Type.FILES, null, null),
+                    rule("Reports", new FullNameCondition("report.txt"), MetaTypeCondition.Type.FILES, new ParentPathCondition("/Documents/"), null),
+                    rule("Large logs", new ExtensionCondition(".log"), MetaTypeCondition.Type.FILES, null,
+                            new FileSizeCondition(FileSizeCondition.COMPARATOR.GREATER_THAN, FileSizeCondition.SIZE_UNIT.BYTE, 100))),
+            filesSet("Paths",
+                    rule("Under bob", null, MetaTypeCondition.Type.FILES_AND_DIRECTORIES, new ParentPathCondition("/bob/"), null),
+                    rule("System libraries", null, MetaTypeCondition.Type.FILES, new ParentPathCondition(Pattern.compile("/Windows/.*32/")), null),
+                    rule("Documents folders", new FullNameCondition("documents"), MetaTypeCondition.Type.DIRECTORIES, null, null)),
+            filesSet("Regex",
+                    rule("Passwords", new FullNameCondition(Pattern.compile("^pass.*\\.txt$")), MetaTypeCondition.Type.ALL, null, null),
+                    rule("Executables", new ExtensionCondition(Pattern.compile("^(exe|dll)$")), MetaTypeCondition.Type.FILES, null, null)),
+            filesSet("Combined",
+                    rule("System executables", new ExtensionCondition("EXE"), MetaTypeCondition.Type.FILES, new ParentPathCondition("/system32/"), null),
+                    rule("Small text", new ExtensionCondition("txt"), MetaTypeCondition.Type.FILES, null,
+                            new FileSizeCondition(FileSizeCondition.COMPARATOR.LESS_THAN_EQUAL, FileSizeCondition.SIZE_UNIT.KILOBYTE, 1)),
+                    new Rule("Recent notes", new FullNameCondition("notes.txt"), new MetaTypeCondition(MetaTypeCondition.Type.FILES), null, null, null, new DateCondition(1)),
+                    new Rule("Plain text", null, new MetaTypeCondition(MetaTypeCondition.Type.FILES), null, new MimeTypeCondition("text/plain"), null, null)),
+            filesSet("Empty"));
+
+    public static Test suite() {
+        NbModuleSuite.Configuration conf = NbModuleSuite.createConfiguration(FilesSetMatcherTest.class).
+                clusters(".*").
+                enableModules(".*");
+        return conf.suite();
+    }
+
+    @Override
+    public void setUp() {
+        try {
+            Case.createAsCurrentCase(Case.CaseType.SINGLE_USER_CASE, caseDirectoryPath.toString(), new CaseDetails("FilesSetMatcherTest"));
+        } catch (CaseActionException ex) {
+            Exceptions.printStackTrace(ex);
+        }
+        assertTrue(CASE_DIR.exists());
+    }
+
+    @Override
+    public void tearDown() {
+        try {
+            Case.closeCurrentCase();
+            FileUtils.deleteDirectory(CASE_DIR);
+        } catch (CaseActionException | IOException ex) {
+            Exceptions.printStackTrace(ex);
+        }
+        assertFalse(CASE_DIR.exists());
+    }
+
+    public void testSameMatches() throws IOException, TskCoreException, TskDataException {
+        writeFile("Users/bob/Documents/report.txt", 10);
+        writeFile("Users/bob/Documents/plan.DOCX", 10);
+        writeFile("Users/bob/app.log", 200);
+        writeFile("Users/bob/passwords.txt", 2000);
+        writeFile("Users/alice/report.txt", 10);
+        writeFile("Users/alice/small.log", 10);
+        assertTrue(filesPath.resolve("Users/alice/Documents").toFile().mkdirs());
+        writeFile("Windows/System32/cmd.exe", 10);
+        writeFile("Windows/System32/kernel32.dll", 10);
+        writeFile("Windows/SysWOW64/cmd.EXE", 10);
+        writeFile("Windows/notes.txt", 2000);
+        writeFile("noextension", 10);
+        writeFile("archive.tar.gz", 10);
+        LocalFilesDataSource dataSource = addDataSource("Users", "Windows", "noextension", "archive.tar.gz");
+
+        FilesSetMatcher matcher = new FilesSetMatcher(FILES_SETS);
+        Map<String, List<String>> setsByPath = new HashMap<>();
+        List<AbstractFile> files = new ArrayList<>();
+        collectFiles(dataSource, files);
+        assertTrue(files.size() >= 13);
+        for (AbstractFile file : files) {
+            List<String> oldMatches = new ArrayList<>();
+            for (FilesSet filesSet : FILES_SETS) {
+                String ruleName = filesSet.fileIsMemberOf(file);
+                if (ruleName != null) {
+                    oldMatches.add(filesSet.getName() + ":" + ruleName);
+                }
+            }
+            List<String> matches = matcher.match(file).stream()
+                    .map(match -> match.getFilesSet().getName() + ":" + match.getRuleName())
+                    .collect(Collectors.toList());
+            assertEquals(file.getParentPath() + file.getName(), oldMatches, matches);
+            setsByPath.put(file.getParentPath() + file.getName(), matches.stream()
+                    .map(match -> match.substring(0, match.indexOf(':')))
+                    .collect(Collectors.toList()));
+        }
+
+        // the files match the sets expected, so that the rules are exercised
+        assertSets(setsByPath, "Users/bob/Documents/report.txt", "Documents", "Paths", "Combined");
+        assertSets(setsByPath, "Users/bob/Documents/plan.DOCX", "Documents", "Paths");
+        assertSets(setsByPath, "Users/bob/app.log", "Documents", "Paths");
+        assertSets(setsByPath, "Users/bob/passwords.txt", "Paths", "Regex");
+        assertSets(setsByPath, "Users/alice/report.txt", "Combined");
+        assertSets(setsByPath, "Users/alice/small.log");
+        assertSets(setsByPath, "Windows/System32/cmd.exe", "Paths", "Regex", "Combined");
+        assertSets(setsByPath, "Windows/System32/kernel32.dll", "Paths", "Regex");
+        assertSets(setsByPath, "Windows/notes.txt");
+        assertSets(setsByPath, "noextension");
+    }
+
+    public void testNoSets() throws IOException, TskCoreException, TskDataException {
+        writeFile("report.txt", 10);
+        LocalFilesDataSource dataSource = addDataSource("report.txt");
+        AbstractFile file = Case.getCurrentCase().getServices().getFileManager().findFiles(dataSource, "report.txt").get(0);
+        assertEquals(Collections.emptyList(), new FilesSetMatcher(Collections.emptyList()).match(file));
+        assertEquals(Collections.emptyList(), new FilesSetMatcher(Arrays.asList(filesSet("Empty"))).match(file));
+    }
+
+    /**
+     * Check the names of the sets that the file at a path under the data
+     * source matched, in order.
+     */
+    private static void assertSets(Map<String, List<String>> setsByPath, String path, String... setNames) {
+        List<String> found = null;
+        for (Map.Entry<String, List<String>> entry : setsByPath.entrySet()) {
+            if (entry.getKey().endsWith("/" + path)) {
+                assertNull(path, found);
+                found = entry.getValue();
+            }
+        }
+        assertNotNull(path, found);
+        assertEquals(path, Arrays.asList(setNames), found);
+    }
+
+    private static void collectFiles(Content content, List<AbstractFile> files) throws TskCoreException {
+        if (content instanceof AbstractFile) {
+            files.add((AbstractFile) content);
+        }
+        for (Content child : content.getChildren()) {
+            collectFiles(child, files);
+        }
+    }
+
+    /**
+     * Add files and directories under the files directory to the case, as a
+     * local files data source.
+     */
+    private static LocalFilesDataSource addDataSource(String... paths) throws TskCoreException, TskDataException {
+        List<String> localFilePaths = Arrays.stream(paths)
+                .map(path -> filesPath.resolve(path).toString())
+                .collect(Collectors.toList());
+        return Case.getCurrentCase().getServices().getFileManager().addLocalFilesDataSource("FilesSetMatcherTest", "", "", localFilePaths, addedFile -> {
+        });
+    }
+
+    private static void writeFile(String path, int size) throws IOException {
+        Path filePath = filesPath.resolve(path);
+        filePath.getParent().toFile().mkdirs();
+        Files.write(filePath, new byte[size]);
+    }
+
+    private static FilesSet filesSet(String name, Rule... rules) {
+        Map<String, Rule> rulesByUuid = new HashMap<>();
+        for (Rule rule : rules) {
+            rulesByUuid.put(rule.getUuid(), rule);
+        }
+        return new FilesSet(name, null, true, true, rulesByUuid);
+    }
+
+    private static Rule rule(String name, FileNameCondition nameCondition, MetaTypeCondition.Type metaType, ParentPathCondition pathCondition, FileSizeCondition sizeCondition) {
+        return new Rule(name, nameCondition, new MetaTypeCondition(metaType), pathCondition, null, sizeCondition, null);
+    }
+}
@@ -68,7 +68,6 @@ class AccountsText implements IndexedText {
     private static final BlackboardAttribute.Type TSK_CARD_NUMBER = new BlackboardAttribute.Type(BlackboardAttribute.ATTRIBUTE_TYPE.TSK_CARD_NUMBER);
     private static final BlackboardAttribute.Type TSK_KEYWORD = new BlackboardAttribute.Type(BlackboardAttribute.ATTRIBUTE_TYPE.TSK_KEYWORD);
 
-    private static final String FIELD = Server.Schema.CONTENT_STR.toString();
 
     private final Server solrServer = KeywordSearch.getServer();
 
@@ -295,14 +294,16 @@ public String getText() {
             final String filterQuery = Server.Schema.ID.toString() + ":" + contentIdStr;
             //set the documentID filter
             q.setQuery(filterQuery);
-            q.setFields(FIELD);
+            // the stored field with the text that regex searches match against
+            final String textField = solrServer.getIndexInfo().getStorageProfile().getRegexTextField();
+            q.setFields(textField);
 
             QueryResponse queryResponse = solrServer.query(q, METHOD.POST);
 
             String highlightedText =
                     HighlightedText.attemptManualHighlighting(
                             queryResponse.getResults(),
-                            Server.Schema.CONTENT_STR.toString(),
+                            textField,
                             accountNumbers
                     ).trim();
 
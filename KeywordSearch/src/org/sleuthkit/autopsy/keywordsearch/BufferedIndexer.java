@@ -0,0 +1,215 @@
+/*
+ * Autopsy Forensic Browser
+ *
+ * Copyright 2017 Basis Technology Corp.
+ * Contact: carrier <at> sleuthkit <dot> org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sleuthkit.autopsy.keywordsearch;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.stream.Collectors;
+import org.apache.solr.common.SolrInputDocument;
+import org.sleuthkit.autopsy.coreutils.Logger;
+
+/**
+ * Gathers Solr documents from all ingest threads and sends them to the
+ * current core in batches on background sender threads, instead of one HTTP
+ * round trip per chunk.
+ *
+ * A batch is sent when it reaches either the document count or the byte
+ * limit. When all sender threads are busy and their queue is full, the
+ * calling ingest thread sends the batch itself, which keeps memory use
+ * bounded. If a batch fails it is resent one document at a time so each
+ * failure can be reported against the file or artifact it came from. The
+ * object ids of sources with a document that could not be indexed are kept
+ * until they are taken, so that the ingest status of a file can be corrected
+ * after it was reported as indexed.
+ */
+class BufferedIndexer {
+
+    private static final Logger logger = Logger.getLogger(BufferedIndexer.class.getName());
+    private static final String SENDER_THREAD_NAME = "KWS-Solr-sender-%d"; //NON-NLS
+
+    private final Server solrServer;
+    private final int maxBatchDocs;
+    private final long maxBatchBytes;
+    private final ThreadPoolExecutor senderExecutor;
+
+    private final Object batchLock = new Object();
+    private List<PendingDocument> currentBatch = new ArrayList<>();
+    private long currentBatchBytes = 0;
+
+    private final Object inFlightLock = new Object();
+    private int batchesInFlight = 0;
+
+    private final Set<Long> failedSources = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Create a buffered indexer.
+     *
+     * @param solrServer    Server to send documents to
+     * @param maxBatchDocs  Maximum documents per batch
+     * @param maxBatchBytes Approximate maximum text bytes per batch
+     * @param senderThreads Number of background sender threads
+     */
+    BufferedIndexer(Server solrServer, int maxBatchDocs, long maxBatchBytes, int senderThreads) {
+        this.solrServer = solrServer;
+        this.maxBatchDocs = maxBatchDocs;
+        this.maxBatchBytes = maxBatchBytes;
+        this.senderExecutor = new ThreadPoolExecutor(senderThreads, senderThreads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(senderThreads * 2),
+                new ThreadFactoryBuilder().setNameFormat(SENDER_THREAD_NAME).setDaemon(true).build(),
+                new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    /**
+     * Queue a document for indexing. Errors are reported asynchronously by
+     * logging them against the source and recording the source as failed.
+     *
+     * @param doc        The document
+     * @param sourceID   Object id of the file or artifact the document is for
+     * @param sourceName Name of the file or artifact the document is for
+     * @param textBytes  Approximate size of the document text
+     */
+    void add(SolrInputDocument doc, long sourceID, String sourceName, long textBytes) {
+        List<PendingDocument> fullBatch = null;
+        synchronized (batchLock) {
+            currentBatch.add(new PendingDocument(doc, sourceID, sourceName));
+            currentBatchBytes += textBytes;
+            if (currentBatch.size() >= maxBatchDocs || currentBatchBytes >= maxBatchBytes) {
+                fullBatch = takeCurrentBatch();
+            }
+        }
+        if (fullBatch != null) {
+            submit(fullBatch);
+        }
+    }
+
+    /**
+     * Send any partial batch and wait until every batch queued so far has
+     * been sent. Call before committing so the commit includes everything
+     * indexed up to this point.
+     *
+     * @return True if every batch was sent, false if the wait was interrupted
+     */
+    boolean flush() {
+        List<PendingDocument> partialBatch;
+        synchronized (batchLock) {
+            partialBatch = takeCurrentBatch();
+        }
+        if (!partialBatch.isEmpty()) {
+            submit(partialBatch);
+        }
+        synchronized (inFlightLock) {
+            while (batchesInFlight > 0) {
+                try {
+                    inFlightLock.wait();
+                } catch (InterruptedException ex) {
+                    logger.log(Level.WARNING, "Interrupted while waiting for queued documents to be indexed"); //NON-NLS
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Check whether a document of a source failed to be indexed, and forget
+     * the failure.
+     *
+     * @param sourceID Object id of the file or artifact
+     *
+     * @return True if a document of the source failed to be indexed since the
+     *         last time this was checked
+     */
+    boolean takeFailure(long sourceID) {
+        return failedSources.remove(sourceID);
+    }
+
+    /**
+     * Forget all recorded failures, e.g., when the case they belong to is
+     * closed.
+     */
+    void clearFailures() {
+        failedSources.clear();
+    }
+
+    private List<PendingDocument> takeCurrentBatch() {
+        List<PendingDocument> batch = currentBatch;
+        currentBatch = new ArrayList<>();
+        currentBatchBytes = 0;
+        return batch;
+    }
+
+    private void submit(List<PendingDocument> batch) {
+        synchronized (inFlightLock) {
+            batchesInFlight++;
+        }
+        senderExecutor.execute(() -> {
+            try {
+                send(batch);
+            } finally {
+                synchronized (inFlightLock) {
+                    batchesInFlight--;
+                    inFlightLock.notifyAll();
+                }
+            }
+        });
+    }
+
+    private void send(List<PendingDocument> batch) {
+        try {
+            solrServer.addDocuments(batch.stream().map(pending -> pending.doc).collect(Collectors.toList()));
+            return;
+        } catch (KeywordSearchModuleException | NoOpenCoreException ex) {
+            logger.log(Level.WARNING, "Batch of " + batch.size() + " documents failed, resending individually", ex); //NON-NLS
+        }
+
+        for (PendingDocument pending : batch) {
+            try {
+                solrServer.addDocument(pending.doc);
+            } catch (KeywordSearchModuleException | NoOpenCoreException ex) {
+                failedSources.add(pending.sourceID);
+                logger.log(Level.SEVERE, "Error indexing document " + pending.doc.getFieldValue(Server.Schema.ID.toString()) //NON-NLS
+                        + " for '" + pending.sourceName + "' (id: " + pending.sourceID + ")", ex); //NON-NLS
+            }
+        }
+    }
+
+    /**
+     * A queued document and the source it was created from.
+     */
+    private static final class PendingDocument {
+
+        private final SolrInputDocument doc;
+        private final long sourceID;
+        private final String sourceName;
+
+        private PendingDocument(SolrInputDocument doc, long sourceID, String sourceName) {
+            this.doc = doc;
+            this.sourceID = sourceID;
+            this.sourceName = sourceName;
+        }
+    }
+}
@@ -19,10 +19,7 @@
 package org.sleuthkit.autopsy.keywordsearch;
 
 import java.io.IOException;
-import java.io.PushbackReader;
 import java.io.Reader;
-import java.nio.charset.Charset;
-import java.nio.charset.StandardCharsets;
 import java.util.Iterator;
 import java.util.NoSuchElementException;
 import javax.annotation.concurrent.NotThreadSafe;
@@ -35,14 +32,15 @@
  * for loop. The base chunk is the part of the chunk before the overlapping
  * window. The window will be included at the end of the current chunk as well
  * as at the beginning of the next chunk.
+ *
+ * Text is read into a single char buffer, sanitized in place, and measured in
+ * UTF-8 bytes one code point at a time, so the only allocation per chunk is
+ * the String of the chunk itself. The buffer is reused by the next Chunker
+ * created on the same thread once this one has been read to the end.
  */
 @NotThreadSafe
 class Chunker implements Iterator<Chunk>, Iterable<Chunk> {
 
-    //local references to standard encodings
-    private static final Charset UTF_16 = StandardCharsets.UTF_16;
-    private static final Charset UTF_8 = StandardCharsets.UTF_8;
-
     //Chunking algorithm paramaters-------------------------------------//
     /** the maximum size of a chunk, including the window. */
     private static final int MAX_TOTAL_CHUNK_SIZE = 32760; //bytes
@@ -57,13 +55,28 @@ class Chunker implements Iterator<Chunk>, Iterable<Chunk> {
     private static final int WHITE_SPACE_BUFFER_SIZE = 512; //bytes
     /** The number of characters to read in one go from the Reader. */
     private static final int READ_CHARS_BUFFER_SIZE = 512; //chars
+    /** Room for a whole chunk (every char is at least one byte), the read
+     * ahead, and a surrogate pair that crosses the size limit. */
+    private static final int CHUNK_BUFFER_SIZE = MAX_TOTAL_CHUNK_SIZE + READ_CHARS_BUFFER_SIZE + 4; //chars
+    /** Replacement for unpaired surrogates. */
+    private static final char REPLACEMENT_CHAR = '\uFFFD';
+    /** Replacement for characters that Solr does not accept. */
+    private static final char INVALID_SOLR_CHAR = '^';
+
+    /** Buffers released by finished Chunkers, for reuse on the same thread. */
+    private static final ThreadLocal<char[]> CHUNK_BUFFERS = ThreadLocal.withInitial(() -> new char[CHUNK_BUFFER_SIZE]);
 
     ////chunker state--------------------------------------------///
-    /** The Reader that this chunk reads from, and divides into chunks. It must
-     * be a buffered reader to ensure that mark/reset are supported. */
-    private final PushbackReader reader;
-    /** The local buffer of characters read from the Reader. */
-    private final char[] tempChunkBuf = new char[READ_CHARS_BUFFER_SIZE];
+    /** The Reader that this chunk reads from, and divides into chunks. */
+    private final Reader reader;
+    /** Sanitized text read from the Reader. The current chunk starts at index
+     * 0, the next code point to add to it is at bufferPosition, and chars up
+     * to bufferLimit have been read. */
+    private char[] buffer;
+    private int bufferPosition = 0;
+    private int bufferLimit = 0;
+    /** Has the Reader returned end of stream? */
+    private boolean readerExhausted = false;
 
     /** the size in bytes of the chunk (so far). */
     private int chunkSizeBytes = 0;
@@ -79,8 +92,11 @@ class Chunker implements Iterator<Chunk>, Iterable<Chunk> {
      * @param reader The content to chunk.
      */
     Chunker(Reader reader) {
-        //Using MAX_TOTAL_CHUNK_SIZE is safe but probably overkill.
-        this.reader = new PushbackReader(reader, MAX_TOTAL_CHUNK_SIZE);
+        this.reader = reader;
+        /* Take the buffer for this thread, so that a nested Chunker gets its
+         * own. It is handed back when chunking is done. */
+        buffer = CHUNK_BUFFERS.get();
+        CHUNK_BUFFERS.remove();
     }
 
     @Override
@@ -113,79 +129,54 @@ public boolean hasNext() {
                 && (endOfReaderReached == false);
     }
 
-    /**
-     * Sanitize the given StringBuilder by replacing non-UTF-8 characters with
-     * caret '^'
-     *
-     * @param sb the StringBuilder to sanitize
-     *
-     * //JMTODO: use Charsequence.chars() or codePoints() and then a mapping
-     * function?
-     */
-    private static StringBuilder sanitizeToUTF8(StringBuilder sb) {
-        final int length = sb.length();
-        for (int i = 0; i < length; i++) {
-            if (TextUtil.isValidSolrUTF8(sb.charAt(i)) == false) {
-                sb.replace(i, i + 1, "^");
-            }
-        }
-        return sb;
-    }
-
-    /**
-     * Cleanup invalid codepoint sequences by replacing them with the default
-     * replacement character: U+FFFD / �.
-     *
-     * @param s The string to cleanup.
-     *
-     * @return A StringBuilder with the same content as s but where all invalid
-     *         code     *         points have been replaced.
-     */
-    private static StringBuilder replaceInvalidUTF16(String s) {
-        /* encode the string to UTF-16 which does the replcement, see
-         * Charset.encode(), then decode back to a StringBuilder. */
-        return new StringBuilder(UTF_16.decode(UTF_16.encode(s)));
-    }
-
-    private static StringBuilder sanitize(String s) {
-        return sanitizeToUTF8(replaceInvalidUTF16(s));
-    }
-
     @Override
     public Chunk next() {
         if (hasNext() == false) {
             throw new NoSuchElementException("There are no more chunks.");
         }
-        //reset state for the next chunk
-
+        //reset state for the next chunk, which starts with the previous window
+        System.arraycopy(buffer, bufferPosition, buffer, 0, bufferLimit - bufferPosition);
+        bufferLimit -= bufferPosition;
+        bufferPosition = 0;
         chunkSizeBytes = 0;
         int baseChunkSizeChars = 0;
-        StringBuilder currentChunk = new StringBuilder();
-        StringBuilder currentWindow = new StringBuilder();
+        int chunkSizeChars = 0;
 
         try {
-            currentChunk.append(readBaseChunk());
-            baseChunkSizeChars = currentChunk.length(); //save the base chunk length
-            currentWindow.append(readWindow());
-                //add the window text to the current chunk.
-        currentChunk.append(currentWindow);
+            readBaseChunk();
+            baseChunkSizeChars = bufferPosition; //save the base chunk length
+            readWindow();
+            chunkSizeChars = bufferPosition;
             if (endOfReaderReached) {
                 /* if we have reached the end of the content,we won't make
                  * another overlapping chunk, so the length of the base chunk
                  * can be extended to the end. */
-                baseChunkSizeChars = currentChunk.length();
+                baseChunkSizeChars = chunkSizeChars;
             } else {
-                /* otherwise we will make another chunk, so unread the window */
-                reader.unread(currentWindow.toString().toCharArray());
+                /* otherwise we will make another chunk, so go back to the
+                 * start of the window */
+                bufferPosition = baseChunkSizeChars;
             }
         } catch (Exception ioEx) {
             /* Save the exception, which will cause hasNext() to return false,
              * and break any chunking loop in client code. */
             ex = ioEx;
+            chunkSizeChars = bufferPosition;
+        }
+
+        Chunk chunk = new Chunk(new String(buffer, 0, chunkSizeChars), baseChunkSizeChars, chunkSizeBytes);
+        if (hasNext() == false) {
+            releaseBuffer();
         }
-    
-        //sanitize the text and return a Chunk object, that includes the base chunk length.
-        return new Chunk(currentChunk, baseChunkSizeChars, chunkSizeBytes);
+        return chunk;
+    }
+
+    /**
+     * Hand the buffer back for reuse by the next Chunker on this thread.
+     */
+    private void releaseBuffer() {
+        CHUNK_BUFFERS.set(buffer);
+        buffer = null;
     }
 
     /**
@@ -193,14 +184,12 @@ public Chunk next() {
      *
      * @throws IOException if there is a problem reading from the reader.
      */
-    private StringBuilder readBaseChunk() throws IOException {
-        StringBuilder currentChunk = new StringBuilder();
+    private void readBaseChunk() throws IOException {
         //read the chunk until the minimum base chunk size
-        readHelper(MINIMUM_BASE_CHUNK_SIZE, currentChunk);
+        readHelper(MINIMUM_BASE_CHUNK_SIZE);
 
         //keep reading until the maximum base chunk size or white space is reached.
-        readToWhiteSpaceHelper(MAXIMUM_BASE_CHUNK_SIZE, currentChunk);
-        return currentChunk;
+        readToWhiteSpaceHelper(MAXIMUM_BASE_CHUNK_SIZE);
     }
 
     /**
@@ -208,59 +197,35 @@ private StringBuilder readBaseChunk() throws IOException {
      *
      * @throws IOException if there is a problem reading from the reader.
      */
-    private StringBuilder readWindow() throws IOException {
-        StringBuilder currentWindow = new StringBuilder();
+    private void readWindow() throws IOException {
         //read the window, leaving some room to look for white space to break at.
-        readHelper(MAX_TOTAL_CHUNK_SIZE - WHITE_SPACE_BUFFER_SIZE, currentWindow);
+        readHelper(MAX_TOTAL_CHUNK_SIZE - WHITE_SPACE_BUFFER_SIZE);
 
         //keep reading until the max chunk size, or until whitespace is reached.
-        readToWhiteSpaceHelper(MAX_TOTAL_CHUNK_SIZE, currentWindow);
-        return currentWindow;
+        readToWhiteSpaceHelper(MAX_TOTAL_CHUNK_SIZE);
     }
 
     /**
      * Read until the maxBytes reached, or end of reader.
      *
      * @param maxBytes
-     * @param currentSegment
      *
      * @throws IOException
      */
-    private void readHelper(int maxBytes, StringBuilder currentSegment) throws IOException {
-        int charsRead = 0;
-        //read chars up to maxBytes, or the end of the reader.
+    private void readHelper(int maxBytes) throws IOException {
         while ((chunkSizeBytes < maxBytes)
                 && (endOfReaderReached == false)) {
-            charsRead = reader.read(tempChunkBuf, 0, READ_CHARS_BUFFER_SIZE);
-            if (-1 == charsRead) {
-                //this is the last chunk
-                endOfReaderReached = true;
+            final int codePointChars = nextCodePoint();
+            if (codePointChars == 0) {
                 return;
-            } else {
-                //if the last char might be part of a surroate pair, unread it.
-                final char lastChar = tempChunkBuf[charsRead - 1];
-                if (Character.isHighSurrogate(lastChar)) {
-                    charsRead--;
-                    reader.unread(lastChar);
-                }
-
-                //cleanup any invalid utf-16 sequences
-                StringBuilder chunkSegment = sanitize(new String(tempChunkBuf, 0, charsRead));
-
-                //get the length in utf8 bytes of the read chars
-                int segmentSize = chunkSegment.toString().getBytes(UTF_8).length;
-
-                //if it will not put us past maxBytes
-                if (chunkSizeBytes + segmentSize < maxBytes) {
-                    //add it to the chunk
-                    currentSegment.append(chunkSegment);
-                    chunkSizeBytes += segmentSize;
-                } else {
-                    //unread it, and break out of read loop.
-                    reader.unread(tempChunkBuf, 0, charsRead);
-                    return;
-                }
             }
+            final int codePointBytes = utf8Length(codePointChars);
+            //stop before the code point that would put us at or past maxBytes
+            if (chunkSizeBytes + codePointBytes >= maxBytes) {
+                return;
+            }
+            bufferPosition += codePointChars;
+            chunkSizeBytes += codePointBytes;
         }
     }
 
@@ -268,50 +233,83 @@ private void readHelper(int maxBytes, StringBuilder currentSegment) throws IOExc
      * Read until the maxBytes reached, whitespace, or end of reader.
      *
      * @param maxBytes
-     * @param currentChunk
      *
      * @throws IOException
      */
-    private void readToWhiteSpaceHelper(int maxBytes, StringBuilder currentChunk) throws IOException {
-        int charsRead = 0;
-        boolean whitespaceFound = false;
-        //read 1 char at a time up to maxBytes, whitespaceFound, or we reach the end of the reader.
+    private void readToWhiteSpaceHelper(int maxBytes) throws IOException {
         while ((chunkSizeBytes < maxBytes)
-                && (whitespaceFound == false)
                 && (endOfReaderReached == false)) {
-            charsRead = reader.read(tempChunkBuf, 0, 1);
-            if (-1 == charsRead) {
-                //this is the last chunk
-                endOfReaderReached = true;
+            final int codePointChars = nextCodePoint();
+            if (codePointChars == 0) {
+                return;
+            }
+            final boolean whitespaceFound = codePointChars == 1 && Character.isWhitespace(buffer[bufferPosition]);
+            chunkSizeBytes += utf8Length(codePointChars);
+            bufferPosition += codePointChars;
+            if (whitespaceFound) {
                 return;
+            }
+        }
+    }
+
+    /**
+     * Make sure the next code point is in the buffer and sanitize it in place:
+     * unpaired surrogates are replaced with U+FFFD, and chars Solr will not
+     * accept with '^'.
+     *
+     * @return The number of chars in the code point, or 0 if the end of the
+     *         reader has been reached.
+     *
+     * @throws IOException
+     */
+    private int nextCodePoint() throws IOException {
+        //two chars are needed to tell whether a high surrogate is paired
+        while (bufferPosition + 1 >= bufferLimit && readerExhausted == false) {
+            final int charsRead = reader.read(buffer, bufferLimit, READ_CHARS_BUFFER_SIZE);
+            if (charsRead == -1) {
+                readerExhausted = true;
             } else {
-                //if the last charcter might be part of a surroate pair, read another char
-                final char ch = tempChunkBuf[0];
-                String chunkSegment;
-                if (Character.isHighSurrogate(ch)) {
-                    //read another char into the buffer.
-                    charsRead = reader.read(tempChunkBuf, 1, 1);
-                    if (charsRead == -1) {
-                        //this is the last chunk, so just drop the unpaired surrogate
-                        endOfReaderReached = true;
-                        return;
-                    } else {
-                        //try to use the pair together.
-                        chunkSegment = new String(tempChunkBuf, 0, 2);
-                    }
-                } else {
-                    //one char
-                    chunkSegment = new String(tempChunkBuf, 0, 1);
-                }
+                bufferLimit += charsRead;
+            }
+        }
+        if (bufferPosition >= bufferLimit) {
+            //this is the last chunk
+            endOfReaderReached = true;
+            return 0;
+        }
 
-                //cleanup any invalid utf-16 sequences
-                StringBuilder sanitizedChunkSegment = sanitize(chunkSegment);
-                //check for whitespace.
-                whitespaceFound = Character.isWhitespace(sanitizedChunkSegment.codePointAt(0));
-                //add read chars to the chunk and update the length.
-                currentChunk.append(sanitizedChunkSegment);
-                chunkSizeBytes += sanitizedChunkSegment.toString().getBytes(UTF_8).length;
+        final char ch = buffer[bufferPosition];
+        if (Character.isHighSurrogate(ch)) {
+            if (bufferPosition + 1 < bufferLimit && Character.isLowSurrogate(buffer[bufferPosition + 1])) {
+                return 2;
             }
+            buffer[bufferPosition] = REPLACEMENT_CHAR;
+        } else if (Character.isLowSurrogate(ch)) {
+            buffer[bufferPosition] = REPLACEMENT_CHAR;
+        } else if (TextUtil.isValidSolrUTF8(ch) == false) {
+            buffer[bufferPosition] = INVALID_SOLR_CHAR;
+        }
+        return 1;
+    }
+
+    /**
+     * Get the length in UTF-8 bytes of the code point at the buffer position.
+     *
+     * @param codePointChars The number of chars in the code point
+     *
+     * @return The UTF-8 length
+     */
+    private int utf8Length(int codePointChars) {
+        if (codePointChars == 2) {
+            return 4;
+        }
+        final char ch = buffer[bufferPosition];
+        if (ch < 0x80) {
+            return 1;
+        } else if (ch < 0x800) {
+            return 2;
+        } else {
+            return 3;
         }
     }
 
@@ -321,12 +319,12 @@ private void readToWhiteSpaceHelper(int maxBytes, StringBuilder currentChunk) th
      */
     static class Chunk {
 
-        private final StringBuilder sb;
+        private final String text;
         private final int baseChunkSizeChars;
         private final int chunkSizeBytes;
 
-        Chunk(StringBuilder sb, int baseChunkSizeChars, int chunkSizeBytes) {
-            this.sb = sb;
+        Chunk(String text, int baseChunkSizeChars, int chunkSizeBytes) {
+            this.text = text;
             this.baseChunkSizeChars = baseChunkSizeChars;
             this.chunkSizeBytes = chunkSizeBytes;
         }
@@ -338,7 +336,7 @@ static class Chunk {
          */
         @Override
         public String toString() {
-            return sb.toString();
+            return text;
         }
 
         /**
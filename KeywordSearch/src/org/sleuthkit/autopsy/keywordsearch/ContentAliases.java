@@ -0,0 +1,442 @@
+/*
+ * Autopsy Forensic Browser
+ *
+ * Copyright 2017 Basis Technology Corp.
+ * Contact: carrier <at> sleuthkit <dot> org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sleuthkit.autopsy.keywordsearch;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.logging.Level;
+import org.apache.commons.lang.StringUtils;
+import org.apache.solr.client.solrj.SolrQuery;
+import org.apache.solr.client.solrj.SolrRequest;
+import org.apache.solr.client.solrj.response.QueryResponse;
+import org.apache.solr.common.SolrDocument;
+import org.apache.solr.common.params.CursorMarkParams;
+import org.sleuthkit.autopsy.coreutils.Logger;
+
+/**
+ * Keeps track of files whose text was not indexed because a file with the same
+ * MD5 hash had already been indexed. Such a file is indexed as an alias: a
+ * metadata-only document that records the object id of the indexed file, its
+ * canonical file. Keyword hits in the content of a canonical file are copied
+ * to its aliases when the hits are written to the blackboard, but hits in its
+ * name are not.
+ *
+ * The alias records are kept in the index itself, so they are shared by all
+ * the nodes of a multi-user case and survive reopening the case.
+ */
+final class ContentAliases {
+
+    private static final Logger logger = Logger.getLogger(ContentAliases.class.getName());
+    private static final int MAX_IDS_PER_QUERY = 500;
+    private static final int ROWS_PER_PAGE = 10000;
+    private static final Cache<String, Long> canonicalIds = CacheBuilder.newBuilder()
+            .maximumSize(KeywordSearchSettings.getIntOption("ContentAliasCacheSize", 100000)) //NON-NLS
+            .build();
+    private static String cachedIndexPath; //guarded by ContentAliases.class
+
+    private ContentAliases() {
+    }
+
+    /**
+     * Whether the text of files with identical content is indexed only once.
+     *
+     * @return true if aliases are used
+     */
+    static boolean isEnabled() {
+        return KeywordSearchSettings.getIndexDuplicateContentOnce();
+    }
+
+    /**
+     * Find an indexed file whose text can stand in for the text of a file
+     * with the given MD5 hash.
+     *
+     * @param md5 The MD5 hash of the file
+     *
+     * @return The object id of the canonical file with that hash, or null if
+     *         there is none
+     *
+     * @throws KeywordSearchModuleException
+     * @throws NoOpenCoreException
+     */
+    static Long getCanonicalId(String md5) throws KeywordSearchModuleException, NoOpenCoreException {
+        checkIndex();
+        Long canonicalId = canonicalIds.getIfPresent(md5);
+        if (canonicalId != null) {
+            return canonicalId;
+        }
+        // files indexed by another node or before the case was reopened
+        SolrQuery query = new SolrQuery("*:*"); //NON-NLS
+        query.addFilterQuery(Server.Schema.CONTENT_MD5.toString() + ":" + KeywordSearchUtil.escapeLuceneQuery(md5));
+        query.addFilterQuery(Server.Schema.NUM_CHUNKS.toString() + ":[1 TO *]"); //NON-NLS
+        query.setFields(Server.Schema.ID.toString());
+        query.setRows(1);
+        QueryResponse response = query(query);
+        if (response.getResults().isEmpty()) {
+            return null;
+        }
+        canonicalId = Long.parseLong(response.getResults().get(0).getFieldValue(Server.Schema.ID.toString()).toString());
+        canonicalIds.put(md5, canonicalId);
+        return canonicalId;
+    }
+
+    /**
+     * Record that the text of a file has been indexed, so that later files
+     * with the same MD5 hash can be indexed as aliases of it.
+     *
+     * @param md5         The MD5 hash of the file
+     * @param canonicalId The object id of the file
+     */
+    static void addCanonicalId(String md5, long canonicalId) {
+        try {
+            checkIndex();
+        } catch (NoOpenCoreException ex) {
+            return;
+        }
+        canonicalIds.asMap().putIfAbsent(md5, canonicalId);
+    }
+
+    /**
+     * Get the object id of the file whose indexed text is the text of a file,
+     * for displaying the text of an alias.
+     *
+     * @param objectId The object id of a file
+     *
+     * @return The object id of the canonical file if the file is an alias, and
+     *         the given object id otherwise
+     */
+    static long getTextSourceId(long objectId) {
+        if (objectId < 0 || !KeywordSearch.getServer().coreIsOpen()) {
+            // artifacts are never aliases
+            return objectId;
+        }
+        SolrQuery query = new SolrQuery("*:*"); //NON-NLS
+        query.addFilterQuery(Server.Schema.ID.toString() + ":" + objectId);
+        query.addFilterQuery(Server.Schema.ALIAS_OF.toString() + ":[* TO *]"); //NON-NLS
+        query.setFields(Server.Schema.ALIAS_OF.toString());
+        query.setRows(1);
+        try {
+            QueryResponse response = query(query);
+            if (!response.getResults().isEmpty()) {
+                return ((Number) response.getResults().get(0).getFieldValue(Server.Schema.ALIAS_OF.toString())).longValue();
+            }
+        } catch (KeywordSearchModuleException | NoOpenCoreException ex) {
+            logger.log(Level.WARNING, "Error looking up the canonical file of " + objectId, ex); //NON-NLS
+        }
+        return objectId;
+    }
+
+    /**
+     * Get the aliases of a data source that were indexed in a range of index
+     * generations.
+     *
+     * @param dataSourceId      The object id of the data source
+     * @param afterGeneration   Exclusive lower bound of the range, or null
+     *                          for all generations up to throughGeneration
+     * @param throughGeneration Inclusive upper bound of the range
+     *
+     * @return The object ids of the aliases, keyed by the object id of their
+     *         canonical file
+     *
+     * @throws KeywordSearchModuleException
+     * @throws NoOpenCoreException
+     */
+    static Map<Long, List<Long>> getNewAliases(long dataSourceId, Long afterGeneration, long throughGeneration) throws KeywordSearchModuleException, NoOpenCoreException {
+        SolrQuery query = new SolrQuery("*:*"); //NON-NLS
+        query.addFilterQuery(Server.Schema.ALIAS_OF.toString() + ":[* TO *]"); //NON-NLS
+        query.addFilterQuery(new KeywordQueryFilter(KeywordQueryFilter.FilterType.DATA_SOURCE, dataSourceId).toString());
+        query.addFilterQuery(new KeywordQueryFilter(afterGeneration == null ? Long.MIN_VALUE : afterGeneration, throughGeneration).toString());
+        return getAliases(query);
+    }
+
+    /**
+     * Get all the aliases of some files.
+     *
+     * @param fileIds The object ids of the files
+     *
+     * @return The object ids of the aliases, keyed by the object id of their
+     *         canonical file
+     *
+     * @throws KeywordSearchModuleException
+     * @throws NoOpenCoreException
+     */
+    static Map<Long, List<Long>> getAliases(Set<Long> fileIds) throws KeywordSearchModuleException, NoOpenCoreException {
+        Map<Long, List<Long>> aliases = new HashMap<>();
+        for (List<Long> batch : batches(fileIds)) {
+            StringBuilder filter = new StringBuilder(Server.Schema.ALIAS_OF.toString()).append(":(");
+            for (int i = 0; i < batch.size(); i++) {
+                filter.append(i > 0 ? " " : "").append(batch.get(i)); //NON-NLS
+            }
+            SolrQuery query = new SolrQuery("*:*"); //NON-NLS
+            query.addFilterQuery(filter.append(")").toString());
+            aliases.putAll(getAliases(query));
+        }
+        return aliases;
+    }
+
+    /**
+     * Search the text of the canonical files of the aliases of a data source
+     * that were indexed in a range of index generations, and copy the hits to
+     * the aliases. Only the hits in the aliases are returned, as the hits in
+     * the canonical files themselves are found by the regular search.
+     *
+     * @param keyword           The keyword to search for
+     * @param keywordList       The list the keyword belongs to
+     * @param dataSourceId      The object id of the data source
+     * @param afterGeneration   Exclusive lower bound of the range, or null
+     *                          for all generations up to throughGeneration
+     * @param throughGeneration Inclusive upper bound of the range
+     *
+     * @return The hits in the aliases
+     *
+     * @throws KeywordSearchModuleException
+     * @throws NoOpenCoreException
+     */
+    static QueryResults searchNewAliases(Keyword keyword, KeywordList keywordList, long dataSourceId, Long afterGeneration, long throughGeneration) throws KeywordSearchModuleException, NoOpenCoreException {
+        QueryResults aliasResults = new QueryResults(KeywordSearchUtil.getQueryForKeyword(keyword, keywordList));
+        Map<Long, List<Long>> aliases = getNewAliases(dataSourceId, afterGeneration, throughGeneration);
+        // the canonical files can belong to any data source and generation
+        for (List<Long> batch : batches(aliases.keySet())) {
+            KeywordSearchQuery query = KeywordSearchUtil.getQueryForKeyword(keyword, keywordList);
+            query.addFilter(new KeywordQueryFilter(KeywordQueryFilter.FilterType.CHUNK, new HashSet<>(batch)));
+            QueryResults canonicalResults = query.performQuery();
+            canonicalResults.addAliasHits(aliases, false, getContentHitFilter(canonicalResults, aliases.keySet()));
+            aliasResults.addResults(canonicalResults);
+        }
+        return aliasResults;
+    }
+
+    /**
+     * Copy the hits in the text of the files in some search results to all
+     * the aliases of those files.
+     *
+     * @param queryResults The search results
+     *
+     * @throws KeywordSearchModuleException
+     * @throws NoOpenCoreException
+     */
+    static void addAliasHits(QueryResults queryResults) throws KeywordSearchModuleException, NoOpenCoreException {
+        Set<Long> fileIds = new HashSet<>();
+        for (Keyword keyword : queryResults.getKeywords()) {
+            for (KeywordHit hit : queryResults.getResults(keyword)) {
+                if (!hit.isArtifactHit() && hit.getChunkId() > 0) {
+                    fileIds.add(hit.getSolrObjectId());
+                }
+            }
+        }
+        if (fileIds.isEmpty()) {
+            return;
+        }
+        Map<Long, List<Long>> aliases = getAliases(fileIds);
+        if (!aliases.isEmpty()) {
+            queryResults.addAliasHits(aliases, true, getContentHitFilter(queryResults, aliases.keySet()));
+        }
+    }
+
+    /**
+     * Make a filter that tells whether a hit in the text of a canonical file
+     * is in its content. The text field of every chunk also holds the name of
+     * its file, so a hit may be in the name of the canonical file only, and an
+     * alias has a name of its own. A hit that is not in the name must be in
+     * the content. Otherwise the stored text of the chunk is checked.
+     *
+     * @param queryResults The search results
+     * @param canonicalIds The object ids of the files that have aliases
+     *
+     * @return The filter
+     *
+     * @throws KeywordSearchModuleException
+     * @throws NoOpenCoreException
+     */
+    private static Predicate<KeywordHit> getContentHitFilter(QueryResults queryResults, Set<Long> canonicalIds) throws KeywordSearchModuleException, NoOpenCoreException {
+        final boolean literal = queryResults.getQuery().isLiteral();
+        List<KeywordHit> canonicalHits = new ArrayList<>();
+        Set<Long> hitFileIds = new HashSet<>();
+        for (Keyword keyword : queryResults.getKeywords()) {
+            for (KeywordHit hit : queryResults.getResults(keyword)) {
+                if (!hit.isArtifactHit() && hit.getChunkId() > 0 && canonicalIds.contains(hit.getSolrObjectId())) {
+                    canonicalHits.add(hit);
+                    hitFileIds.add(hit.getSolrObjectId());
+                }
+            }
+        }
+        final Map<Long, String> fileNames = getFileNames(hitFileIds);
+        Set<String> chunksToCheck = new HashSet<>();
+        for (KeywordHit hit : canonicalHits) {
+            if (isHitInText(hit.getHit(), literal, fileNames.get(hit.getSolrObjectId()))) {
+                chunksToCheck.add(hit.getSolrDocumentId());
+            }
+        }
+        final Map<String, String> chunkContents = getChunkContents(chunksToCheck);
+        return hit -> isContentHit(hit.getHit(), literal, fileNames.get(hit.getSolrObjectId()), chunkContents.get(hit.getSolrDocumentId()));
+    }
+
+    /**
+     * Is a hit in the text of a chunk in the content of the chunk rather than
+     * only in the name of its file?
+     *
+     * @param hit      The text of the hit
+     * @param literal  Whether the hit is for a literal keyword, which matches
+     *                 whole words ignoring case
+     * @param fileName The name of the file, may be null
+     * @param content  The content of the chunk, may be null if the hit is not
+     *                 in the name
+     *
+     * @return True if the hit is in the content
+     */
+    static boolean isContentHit(String hit, boolean literal, String fileName, String content) {
+        return !isHitInText(hit, literal, fileName) || isHitInText(hit, literal, content);
+    }
+
+    private static boolean isHitInText(String hit, boolean literal, String text) {
+        if (text == null || hit == null) {
+            return false;
+        }
+        if (literal) {
+            return LiteralKeywordMatcher.containsWord(text, hit);
+        }
+        return text.toLowerCase().contains(hit.toLowerCase());
+    }
+
+    /**
+     * Get the names of some files.
+     *
+     * @param fileIds The object ids of the files
+     *
+     * @return The names, keyed by object id
+     *
+     * @throws KeywordSearchModuleException
+     * @throws NoOpenCoreException
+     */
+    private static Map<Long, String> getFileNames(Set<Long> fileIds) throws KeywordSearchModuleException, NoOpenCoreException {
+        Map<Long, String> fileNames = new HashMap<>();
+        for (List<Long> batch : batches(fileIds)) {
+            SolrQuery query = new SolrQuery("*:*"); //NON-NLS
+            query.addFilterQuery(new KeywordQueryFilter(KeywordQueryFilter.FilterType.FILE, new HashSet<>(batch)).toString());
+            query.setFields(Server.Schema.ID.toString(), Server.Schema.FILE_NAME.toString());
+            query.setRows(batch.size());
+            for (SolrDocument doc : query(query).getResults()) {
+                Object fileName = doc.getFirstValue(Server.Schema.FILE_NAME.toString());
+                if (fileName != null) {
+                    fileNames.put(Long.parseLong(doc.getFieldValue(Server.Schema.ID.toString()).toString()), fileName.toString());
+                }
+            }
+        }
+        return fileNames;
+    }
+
+    /**
+     * Get the content of some chunks, that is, their stored text without the
+     * name of their file.
+     *
+     * @param chunkIds The Solr document ids of the chunks
+     *
+     * @return The content, keyed by Solr document id
+     *
+     * @throws KeywordSearchModuleException
+     * @throws NoOpenCoreException
+     */
+    private static Map<String, String> getChunkContents(Set<String> chunkIds) throws KeywordSearchModuleException, NoOpenCoreException {
+        Map<String, String> contents = new HashMap<>();
+        for (List<String> batch : batches(chunkIds)) {
+            StringBuilder filter = new StringBuilder(Server.Schema.ID.toString()).append(":(");
+            for (int i = 0; i < batch.size(); i++) {
+                filter.append(i > 0 ? " " : "").append(KeywordSearchUtil.escapeLuceneQuery(batch.get(i))); //NON-NLS
+            }
+            SolrQuery query = new SolrQuery("*:*"); //NON-NLS
+            query.addFilterQuery(filter.append(")").toString());
+            query.setFields(Server.Schema.ID.toString(), Server.Schema.TEXT.toString(), Server.Schema.FILE_NAME.toString());
+            query.setRows(batch.size());
+            for (SolrDocument doc : query(query).getResults()) {
+                List<Object> values = new ArrayList<>();
+                Collection<Object> textValues = doc.getFieldValues(Server.Schema.TEXT.toString());
+                if (textValues != null) {
+                    values.addAll(textValues);
+                }
+                // the file name is copied to the text field along with the content
+                values.remove(doc.getFirstValue(Server.Schema.FILE_NAME.toString()));
+                contents.put(doc.getFieldValue(Server.Schema.ID.toString()).toString(), StringUtils.join(values, "\n"));
+            }
+        }
+        return contents;
+    }
+
+    private static Map<Long, List<Long>> getAliases(SolrQuery query) throws KeywordSearchModuleException, NoOpenCoreException {
+        Map<Long, List<Long>> aliases = new HashMap<>();
+        query.setFields(Server.Schema.ID.toString(), Server.Schema.ALIAS_OF.toString());
+        query.setSort(SolrQuery.SortClause.asc(Server.Schema.ID.toString()));
+        query.setRows(ROWS_PER_PAGE);
+        String cursorMark = CursorMarkParams.CURSOR_MARK_START;
+        while (true) {
+            query.set(CursorMarkParams.CURSOR_MARK_PARAM, cursorMark);
+            QueryResponse response = query(query);
+            for (SolrDocument doc : response.getResults()) {
+                long aliasId = Long.parseLong(doc.getFieldValue(Server.Schema.ID.toString()).toString());
+                long canonicalId = ((Number) doc.getFieldValue(Server.Schema.ALIAS_OF.toString())).longValue();
+                aliases.computeIfAbsent(canonicalId, id -> new ArrayList<>()).add(aliasId);
+            }
+            String nextCursorMark = response.getNextCursorMark();
+            if (cursorMark.equals(nextCursorMark)) {
+                return aliases;
+            }
+            cursorMark = nextCursorMark;
+        }
+    }
+
+    private static <T> List<List<T>> batches(Set<T> ids) {
+        List<List<T>> batches = new ArrayList<>();
+        List<T> batch = new ArrayList<>();
+        for (T id : ids) {
+            if (batch.size() == MAX_IDS_PER_QUERY) {
+                batches.add(batch);
+                batch = new ArrayList<>();
+            }
+            batch.add(id);
+        }
+        if (!batch.isEmpty()) {
+            batches.add(batch);
+        }
+        return batches;
+    }
+
+    private static QueryResponse query(SolrQuery query) throws KeywordSearchModuleException, NoOpenCoreException {
+        return KeywordSearch.getServer().query(query, SolrRequest.METHOD.POST);
+    }
+
+    /**
+     * Forget the canonical files of the previous index when another index is
+     * opened.
+     *
+     * @throws NoOpenCoreException
+     */
+    private static synchronized void checkIndex() throws NoOpenCoreException {
+        String indexPath = KeywordSearch.getServer().getIndexInfo().getIndexPath();
+        if (!indexPath.equals(cachedIndexPath)) {
+            canonicalIds.invalidateAll();
+            cachedIndexPath = indexPath;
+        }
+    }
+}
@@ -0,0 +1,287 @@
+/*
+ * Autopsy Forensic Browser
+ *
+ * Copyright 2017 Basis Technology Corp.
+ * Contact: carrier <at> sleuthkit <dot> org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sleuthkit.autopsy.keywordsearch;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.sleuthkit.datamodel.BlackboardAttribute;
+
+/**
+ * Finds credit card numbers in chunks of text as they are indexed, so that
+ * credit card accounts can be posted as soon as a file is indexed instead of
+ * by periodic Solr regex searches of the whole index.
+ *
+ * The text is scanned once, a character at a time. A candidate number is a run
+ * of 12 to 19 digits starting with 2 through 6, optionally separated by single
+ * spaces or dashes, as matched by the credit card keyword. The Luhn sums of
+ * every prefix of the run are kept as it is scanned, so only the prefixes that
+ * pass the Luhn check are given to CreditCardValidator for the IIN length and
+ * digit grouping checks. The longest valid prefix is the hit.
+ */
+final class CreditCardScanner {
+
+    private static final String SNIPPET_DELIMITER = String.valueOf(Character.toChars(171));
+    private static final int SNIPPET_CONTEXT_CHARS = 20;
+    private static final int MIN_DIGITS = 12;
+    private static final int MAX_DIGITS = 19;
+
+    private final List<ListKeyword> cardKeywords;
+    private final Set<Keyword> handledKeywords;
+
+    /**
+     * Build a scanner for the credit card number keywords in the given lists.
+     *
+     * @param keywordLists The keyword lists
+     */
+    CreditCardScanner(List<KeywordList> keywordLists) {
+        List<ListKeyword> keywords = new ArrayList<>();
+        Set<Keyword> handled = new HashSet<>();
+        for (KeywordList list : keywordLists) {
+            for (Keyword keyword : list.getKeywords()) {
+                if (keyword.getArtifactAttributeType() == BlackboardAttribute.ATTRIBUTE_TYPE.TSK_CARD_NUMBER) {
+                    keywords.add(new ListKeyword(keyword, list));
+                    handled.add(keyword);
+                }
+            }
+        }
+        cardKeywords = Collections.unmodifiableList(keywords);
+        handledKeywords = Collections.unmodifiableSet(handled);
+    }
+
+    /**
+     * Are there any credit card keywords to find?
+     *
+     * @return True if there are no credit card keywords
+     */
+    boolean isEmpty() {
+        return cardKeywords.isEmpty();
+    }
+
+    /**
+     * Is this keyword found by this scanner rather than by Solr?
+     *
+     * @param keyword The keyword
+     *
+     * @return True if this scanner finds hits for the keyword
+     */
+    boolean handles(Keyword keyword) {
+        return handledKeywords.contains(keyword);
+    }
+
+    /**
+     * Find the credit card numbers in a chunk of text. Only the first hit for
+     * each number is kept, so chunks should be scanned in order.
+     *
+     * @param chunkID The Solr document id of the chunk
+     * @param text    The chunk text
+     * @param hits    The hits found so far for the text source, added to
+     */
+    void scan(String chunkID, String text, Hits hits) {
+        if (cardKeywords.isEmpty()) {
+            return;
+        }
+        /*
+         * The Luhn sums of the digits of the run so far, with the digits at
+         * even (sumEven) or odd (sumOdd) offsets in the run doubled. The check
+         * digit of a prefix is never doubled, so a prefix with an even number
+         * of digits uses sumEven and one with an odd number uses sumOdd.
+         */
+        final int[] sumEven = new int[MAX_DIGITS + 1];
+        final int[] sumOdd = new int[MAX_DIGITS + 1];
+        final int[] digitOffsets = new int[MAX_DIGITS];
+        int digits = 0;
+        boolean inRun = false;
+        boolean skipRun = false;
+        boolean afterSeparator = false;
+
+        final int length = text.length();
+        for (int i = 0; i <= length; i++) {
+            char c = i < length ? text.charAt(i) : '\0';
+            boolean isDigit = c >= '0' && c <= '9';
+            if (inRun) {
+                if (isDigit) {
+                    digits = addDigit(c, i, digits, sumEven, sumOdd, digitOffsets);
+                    afterSeparator = false;
+                    continue;
+                }
+                if ((c == ' ' || c == '-') && !afterSeparator) {
+                    afterSeparator = true;
+                    continue;
+                }
+                addHit(chunkID, text, digitOffsets, digits, sumEven, sumOdd, hits);
+                inRun = false;
+                skipRun = false;
+            } else if (skipRun) {
+                if (isDigit) {
+                    continue;
+                }
+                skipRun = false;
+            }
+            if (isDigit) {
+                // a number starts with 2 through 6 and is not part of a longer run of digits
+                if (c >= '2' && c <= '6' && !isDigitBefore(text, i)) {
+                    inRun = true;
+                    afterSeparator = false;
+                    digits = addDigit(c, i, 0, sumEven, sumOdd, digitOffsets);
+                } else {
+                    skipRun = true;
+                }
+            }
+        }
+    }
+
+    /**
+     * Add a digit to the run of digits being scanned, updating the Luhn sums.
+     * Digits past the longest credit card number are ignored.
+     *
+     * @return The number of digits in the run
+     */
+    private static int addDigit(char c, int offset, int digits, int[] sumEven, int[] sumOdd, int[] digitOffsets) {
+        if (digits == MAX_DIGITS) {
+            return digits;
+        }
+        int digit = c - '0';
+        int doubled = digit < 5 ? digit * 2 : digit * 2 - 9;
+        sumEven[digits + 1] = sumEven[digits] + ((digits & 1) == 0 ? doubled : digit);
+        sumOdd[digits + 1] = sumOdd[digits] + ((digits & 1) == 1 ? doubled : digit);
+        digitOffsets[digits] = offset;
+        return digits + 1;
+    }
+
+    /**
+     * Add a hit for the longest prefix of a run of digits that is a valid
+     * credit card number, if any.
+     */
+    private void addHit(String chunkID, String text, int[] digitOffsets, int digits, int[] sumEven, int[] sumOdd, Hits hits) {
+        for (int count = digits; count >= MIN_DIGITS; count--) {
+            int luhnSum = (count & 1) == 0 ? sumEven[count] : sumOdd[count];
+            if (luhnSum % 10 != 0) {
+                continue;
+            }
+            int start = digitOffsets[0];
+            int end = digitOffsets[count - 1] + 1;
+            if (!CreditCardValidator.isValidCCN(text.substring(start, end))) {
+                continue;
+            }
+            /*
+             * Like the credit card keyword regex, include the track 1 start
+             * sentinel and format code and the field separator after the
+             * number, so that the track data can be parsed from the snippet.
+             */
+            if (start > 0 && text.charAt(start - 1) == 'B') {
+                start--;
+                if (start > 0 && text.charAt(start - 1) == '%') {
+                    start--;
+                }
+            } else if (start > 0 && text.charAt(start - 1) == '%') {
+                start--;
+            }
+            if (end < text.length() && text.charAt(end) == '^') {
+                end++;
+            }
+            String number = text.substring(start, end);
+            for (ListKeyword listKeyword : cardKeywords) {
+                hits.add(listKeyword, number, new KeywordHit(chunkID, makeSnippet(text, start, end), number));
+            }
+            return;
+        }
+    }
+
+    private static boolean isDigitBefore(String text, int index) {
+        if (index <= 0) {
+            return false;
+        }
+        char c = text.charAt(index - 1);
+        return c >= '0' && c <= '9';
+    }
+
+    private static String makeSnippet(String text, int start, int end) {
+        return text.substring(Integer.max(0, start - SNIPPET_CONTEXT_CHARS), start)
+                + SNIPPET_DELIMITER + text.substring(start, end) + SNIPPET_DELIMITER
+                + text.substring(end, Integer.min(text.length(), end + SNIPPET_CONTEXT_CHARS));
+    }
+
+    /**
+     * A keyword and the list it came from.
+     */
+    private static final class ListKeyword {
+
+        private final Keyword keyword;
+        private final KeywordList list;
+
+        private ListKeyword(Keyword keyword, KeywordList list) {
+            this.keyword = keyword;
+            this.list = list;
+        }
+    }
+
+    /**
+     * The credit card numbers found in the text of one file or artifact.
+     */
+    static final class Hits {
+
+        private final Map<ListKeyword, Map<String, KeywordHit>> numberHits = new LinkedHashMap<>();
+
+        private void add(ListKeyword listKeyword, String number, KeywordHit hit) {
+            numberHits.computeIfAbsent(listKeyword, k -> new LinkedHashMap<>()).putIfAbsent(number, hit);
+        }
+
+        boolean isEmpty() {
+            return numberHits.isEmpty();
+        }
+
+        /**
+         * @param number A credit card number as it appears in the text
+         *
+         * @return The first hit for the number, or null if it was not found
+         */
+        KeywordHit getHit(String number) {
+            for (Map<String, KeywordHit> hits : numberHits.values()) {
+                KeywordHit hit = hits.get(number);
+                if (hit != null) {
+                    return hit;
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Post the hits to the blackboard as credit card accounts, in the same
+         * way as the results of the Solr query for the credit card keyword.
+         */
+        void post() {
+            for (Map.Entry<ListKeyword, Map<String, KeywordHit>> entry : numberHits.entrySet()) {
+                Keyword keyword = entry.getKey().keyword;
+                KeywordList list = entry.getKey().list;
+                KeywordSearchQuery query = KeywordSearchUtil.getQueryForKeyword(keyword, list);
+                QueryResults results = new QueryResults(query);
+                for (Map.Entry<String, KeywordHit> numberHit : entry.getValue().entrySet()) {
+                    Keyword foundKeyword = new Keyword(numberHit.getKey(), true, true, keyword.getListName(), keyword.getOriginalTerm());
+                    results.addResult(foundKeyword, Collections.singletonList(numberHit.getValue()));
+                }
+                results.process(null, null, null, list.getIngestMessages());
+            }
+        }
+    }
+}
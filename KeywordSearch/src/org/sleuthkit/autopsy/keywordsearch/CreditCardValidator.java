@@ -19,10 +19,13 @@
 package org.sleuthkit.autopsy.keywordsearch;
 
 import com.google.common.base.CharMatcher;
+import com.google.common.collect.BoundType;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Range;
 import com.google.common.collect.RangeMap;
 import com.google.common.collect.TreeRangeMap;
+import java.util.Arrays;
+import java.util.Map;
 import java.util.Set;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.validator.routines.checkdigit.LuhnCheckDigit;
@@ -47,15 +50,22 @@ private CreditCardValidator() {
 
     private static final LuhnCheckDigit CREDIT_CARD_NUM_LUHN_CHECK = new LuhnCheckDigit();
 
-    /**
-     * map from ccn IIN to allowed lengths
+    /*
+     * The allowed lengths of ccns by IIN, as sorted, disjoint ranges of 8 digit
+     * IINs with a bit set for each allowed length. Kept in primitive arrays so
+     * that looking up an IIN does not box it.
      */
-    static private final RangeMap<Integer, Set<Integer>> allowedLengths = TreeRangeMap.create();
+    private static final int[] iinRangeStarts;
+    private static final int[] iinRangeEnds; // exclusive
+    private static final int[] iinRangeLengths;
     private static final ImmutableSet<Integer> Set12to19 = ImmutableSet.of(12, 13, 14, 15, 16, 17, 18, 19);
     private static final ImmutableSet<Integer> Set14to19 = ImmutableSet.of(14, 15, 16, 17, 18, 19);
     private static final ImmutableSet<Integer> Set16to19 = ImmutableSet.of(16, 17, 18, 29);
 
     static {
+        // map from ccn IIN to allowed lengths
+        RangeMap<Integer, Set<Integer>> allowedLengths = TreeRangeMap.create();
+
         //amex
         allowedLengths.put(Range.closedOpen(34000000, 35000000), ImmutableSet.of(15));
         allowedLengths.put(Range.closedOpen(37000000, 38000000), ImmutableSet.of(15));
@@ -112,6 +122,21 @@ private CreditCardValidator() {
 
         //InterPayment
         allowedLengths.put(Range.closedOpen(63600000, 63700000), Set16to19);
+
+        Map<Range<Integer>, Set<Integer>> ranges = allowedLengths.asMapOfRanges();
+        iinRangeStarts = new int[ranges.size()];
+        iinRangeEnds = new int[ranges.size()];
+        iinRangeLengths = new int[ranges.size()];
+        int i = 0;
+        for (Map.Entry<Range<Integer>, Set<Integer>> entry : ranges.entrySet()) {
+            Range<Integer> range = entry.getKey();
+            iinRangeStarts[i] = range.lowerBoundType() == BoundType.CLOSED ? range.lowerEndpoint() : range.lowerEndpoint() + 1;
+            iinRangeEnds[i] = range.upperBoundType() == BoundType.OPEN ? range.upperEndpoint() : range.upperEndpoint() + 1;
+            for (int length : entry.getValue()) {
+                iinRangeLengths[i] |= 1 << length;
+            }
+            i++;
+        }
     }
 
     /**
@@ -182,9 +207,19 @@ static public boolean isValidCCN(String rawCCN) {
     }
 
     static private boolean lengthMatchesBin(String cannonicalCCN) {
-        String BIN = cannonicalCCN.substring(0, 8);
-        final Set<Integer> lengthsForBIN = allowedLengths.get(Integer.valueOf(BIN));
-        return null == lengthsForBIN ||  lengthsForBIN.contains(cannonicalCCN.length());
+        int bin = 0;
+        for (int i = 0; i < 8; i++) {
+            bin = bin * 10 + (cannonicalCCN.charAt(i) - '0');
+        }
+        int index = Arrays.binarySearch(iinRangeStarts, bin);
+        if (index < 0) {
+            // the range that starts before the BIN, if any
+            index = -index - 2;
+        }
+        if (index < 0 || bin >= iinRangeEnds[index]) {
+            return true;
+        }
+        return (iinRangeLengths[index] & (1 << cannonicalCCN.length())) != 0;
     }
 
     static private boolean isValidOtherDigitGrouping(String[] splitCCN) {
@@ -0,0 +1,379 @@
+/*
+ * Autopsy Forensic Browser
+ *
+ * Copyright 2017 Basis Technology Corp.
+ * Contact: carrier <at> sleuthkit <dot> org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sleuthkit.autopsy.keywordsearch;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import org.apache.commons.io.FileUtils;
+import org.apache.solr.client.solrj.SolrServer;
+import org.openide.util.NbBundle;
+import org.sleuthkit.autopsy.coreutils.Logger;
+import org.sleuthkit.autopsy.coreutils.PlatformUtil;
+
+/**
+ * Runs Solr inside the application instead of in a separate Jetty process, for
+ * single-user cases. Cores are created from the same configset and use the
+ * same index directories as the local Solr server, so a case can be opened in
+ * either mode.
+ *
+ * The keyword search module is built against an older Lucene than the one the
+ * Solr server uses, so Solr and its Lucene are loaded from the libraries in
+ * the Solr war by a class loader that looks in its own jars first. The SolrJ
+ * client classes are the exception: they are always taken from the module, so
+ * the Solr server objects created here can be used like any other SolrJ
+ * server.
+ */
+final class EmbeddedSolr {
+
+    private static final Logger logger = Logger.getLogger(EmbeddedSolr.class.getName());
+    private static final String SOLR_WAR = "webapps/solr.war"; //NON-NLS
+    private static final String WAR_LIB_PREFIX = "WEB-INF/lib/"; //NON-NLS
+    private static final String LIB_FOLDER_NAME = "solr-embedded"; //NON-NLS
+    private static final String CONFIG_SET = "AutopsyConfig"; //NON-NLS
+    private static final String CORE_CONTAINER_CLASS = "org.apache.solr.core.CoreContainer"; //NON-NLS
+    private static final String CORE_DESCRIPTOR_CLASS = "org.apache.solr.core.CoreDescriptor"; //NON-NLS
+    private static final String SOLR_CORE_CLASS = "org.apache.solr.core.SolrCore"; //NON-NLS
+    private static final String EMBEDDED_SERVER_CLASS = "org.apache.solr.client.solrj.embedded.EmbeddedSolrServer"; //NON-NLS
+
+    private final URLClassLoader solrClassLoader;
+    private final Object coreContainer;
+    private final Constructor<?> coreDescriptorConstructor;
+    private final Constructor<?> embeddedServerConstructor;
+    private final Method createMethod;
+    private final Method registerMethod;
+    private final Method isLoadedMethod;
+    private final Method unloadMethod;
+    private final Method shutdownMethod;
+
+    /**
+     * Load the Solr core container.
+     *
+     * @param solrFolder The installed Solr folder, holding the Solr war, the
+     *                   logging libraries and the Solr home with the configsets
+     *
+     * @return The embedded Solr server
+     *
+     * @throws KeywordSearchModuleException if Solr cannot be loaded
+     */
+    @NbBundle.Messages({"EmbeddedSolr.start.exception.msg=Could not start the embedded Solr server."})
+    static EmbeddedSolr start(File solrFolder) throws KeywordSearchModuleException {
+        long startTime = System.nanoTime();
+        URLClassLoader classLoader = null;
+        try {
+            classLoader = new SolrClassLoader(getSolrClassPath(solrFolder), EmbeddedSolr.class.getClassLoader());
+            EmbeddedSolr embeddedSolr = new EmbeddedSolr(classLoader, Paths.get(solrFolder.getAbsolutePath(), "solr")); //NON-NLS
+            logger.log(Level.INFO, "Started embedded Solr server in {0} ms", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime)); //NON-NLS
+            return embeddedSolr;
+        } catch (IOException | ReflectiveOperationException | LinkageError ex) {
+            closeQuietly(classLoader);
+            throw new KeywordSearchModuleException(Bundle.EmbeddedSolr_start_exception_msg(), ex);
+        }
+    }
+
+    private EmbeddedSolr(URLClassLoader solrClassLoader, Path solrHome) throws ReflectiveOperationException {
+        this.solrClassLoader = solrClassLoader;
+        Class<?> coreContainerClass = solrClassLoader.loadClass(CORE_CONTAINER_CLASS);
+        Class<?> coreDescriptorClass = solrClassLoader.loadClass(CORE_DESCRIPTOR_CLASS);
+        Class<?> solrCoreClass = solrClassLoader.loadClass(SOLR_CORE_CLASS);
+        coreDescriptorConstructor = coreDescriptorClass.getConstructor(coreContainerClass, String.class, String.class, Properties.class);
+        embeddedServerConstructor = solrClassLoader.loadClass(EMBEDDED_SERVER_CLASS).getConstructor(coreContainerClass, String.class);
+        createMethod = coreContainerClass.getMethod("create", coreDescriptorClass); //NON-NLS
+        registerMethod = coreContainerClass.getMethod("register", String.class, solrCoreClass, boolean.class); //NON-NLS
+        isLoadedMethod = coreContainerClass.getMethod("isLoaded", String.class); //NON-NLS
+        unloadMethod = coreContainerClass.getMethod("unload", String.class, boolean.class, boolean.class, boolean.class); //NON-NLS
+        shutdownMethod = coreContainerClass.getMethod("shutdown"); //NON-NLS
+
+        coreContainer = callInSolr(() -> {
+            Object container = coreContainerClass.getConstructor(String.class).newInstance(solrHome.toString());
+            coreContainerClass.getMethod("load").invoke(container); //NON-NLS
+            return container;
+        });
+    }
+
+    /**
+     * Create a core if it is not loaded yet, or load it if it exists.
+     *
+     * @param coreName The name of the core
+     * @param dataDir  The data directory of the core, the parent of its index
+     *                 directory
+     *
+     * @return A SolrJ server for the core. It must not be shut down, as that
+     *         would shut down the whole embedded server.
+     *
+     * @throws KeywordSearchModuleException if the core cannot be opened
+     */
+    @NbBundle.Messages({"# {0} - core name", "EmbeddedSolr.openCore.exception.msg=Could not open core {0} in the embedded Solr server."})
+    synchronized SolrServer openCore(String coreName, File dataDir) throws KeywordSearchModuleException {
+        try {
+            if (!isCoreLoaded(coreName)) {
+                long startTime = System.nanoTime();
+                Properties coreProperties = new Properties();
+                coreProperties.setProperty("dataDir", dataDir.getAbsolutePath()); //NON-NLS
+                coreProperties.setProperty("configSet", CONFIG_SET); //NON-NLS
+                coreProperties.setProperty("loadOnStartup", Boolean.FALSE.toString()); //NON-NLS
+                callInSolr(() -> {
+                    Object coreDescriptor = coreDescriptorConstructor.newInstance(coreContainer, coreName, coreName, coreProperties);
+                    Object core = createMethod.invoke(coreContainer, coreDescriptor);
+                    return registerMethod.invoke(coreContainer, coreName, core, false);
+                });
+                logger.log(Level.INFO, "Opened core {0} in embedded Solr server in {1} ms", //NON-NLS
+                        new Object[]{coreName, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime)});
+            }
+            return (SolrServer) embeddedServerConstructor.newInstance(coreContainer, coreName);
+        } catch (ReflectiveOperationException | ClassCastException ex) {
+            throw new KeywordSearchModuleException(Bundle.EmbeddedSolr_openCore_exception_msg(coreName), unwrap(ex));
+        }
+    }
+
+    /**
+     * Determines whether a core is loaded.
+     *
+     * @param coreName The name of the core
+     *
+     * @return true if the core is loaded
+     *
+     * @throws ReflectiveOperationException if the core container fails
+     */
+    synchronized boolean isCoreLoaded(String coreName) throws ReflectiveOperationException {
+        return (Boolean) isLoadedMethod.invoke(coreContainer, coreName);
+    }
+
+    /**
+     * Unload a core, optionally deleting its index. Does nothing if the core is
+     * not loaded.
+     *
+     * @param coreName    The name of the core
+     * @param deleteIndex Whether to delete the index of the core
+     *
+     * @throws KeywordSearchModuleException if the core cannot be unloaded
+     */
+    @NbBundle.Messages({"# {0} - core name", "EmbeddedSolr.unloadCore.exception.msg=Could not unload core {0} from the embedded Solr server."})
+    synchronized void unloadCore(String coreName, boolean deleteIndex) throws KeywordSearchModuleException {
+        try {
+            if (isCoreLoaded(coreName)) {
+                unloadMethod.invoke(coreContainer, coreName, deleteIndex, false, false);
+            }
+        } catch (ReflectiveOperationException ex) {
+            throw new KeywordSearchModuleException(Bundle.EmbeddedSolr_unloadCore_exception_msg(coreName), unwrap(ex));
+        }
+    }
+
+    /**
+     * Close all cores and release the Solr libraries.
+     */
+    synchronized void shutdown() {
+        try {
+            shutdownMethod.invoke(coreContainer);
+        } catch (ReflectiveOperationException ex) {
+            logger.log(Level.WARNING, "Error shutting down embedded Solr server", unwrap(ex)); //NON-NLS
+        } finally {
+            closeQuietly(solrClassLoader);
+        }
+    }
+
+    /**
+     * Run Solr code that loads Lucene and Solr plugins with the Solr class
+     * loader as the context class loader. Lucene looks up its codecs through
+     * the context class loader, which would otherwise find the module's
+     * Lucene.
+     */
+    private <T> T callInSolr(SolrCall<T> call) throws ReflectiveOperationException {
+        Thread thread = Thread.currentThread();
+        ClassLoader contextClassLoader = thread.getContextClassLoader();
+        thread.setContextClassLoader(solrClassLoader);
+        try {
+            return call.call();
+        } finally {
+            thread.setContextClassLoader(contextClassLoader);
+        }
+    }
+
+    @FunctionalInterface
+    private interface SolrCall<T> {
+
+        T call() throws ReflectiveOperationException;
+    }
+
+    private static Throwable unwrap(Throwable ex) {
+        return (ex instanceof InvocationTargetException && ex.getCause() != null) ? ex.getCause() : ex;
+    }
+
+    private static void closeQuietly(URLClassLoader classLoader) {
+        if (classLoader != null) {
+            try {
+                classLoader.close();
+            } catch (IOException ex) {
+                logger.log(Level.WARNING, "Error closing Solr class loader", ex); //NON-NLS
+            }
+        }
+    }
+
+    /**
+     * Get the class path for Solr: the libraries in the Solr war, which are
+     * extracted to the user directory the first time a given war is used, the
+     * logging libraries the Jetty server uses and the folder with the logging
+     * configuration.
+     */
+    private static URL[] getSolrClassPath(File solrFolder) throws IOException {
+        File war = new File(solrFolder, SOLR_WAR);
+        Path libFolder = Paths.get(PlatformUtil.getUserDirectory().getAbsolutePath(), LIB_FOLDER_NAME,
+                war.length() + "-" + war.lastModified()); //NON-NLS
+        if (!Files.isDirectory(libFolder)) {
+            extractWarLibs(war, libFolder);
+        }
+
+        List<URL> classPath = new ArrayList<>();
+        addJars(libFolder, classPath);
+        addJars(Paths.get(solrFolder.getAbsolutePath(), "lib", "ext"), classPath); //NON-NLS
+        File resources = new File(solrFolder, "resources"); //NON-NLS
+        if (resources.isDirectory()) {
+            classPath.add(resources.toURI().toURL());
+        }
+        return classPath.toArray(new URL[classPath.size()]);
+    }
+
+    private static void extractWarLibs(File war, Path libFolder) throws IOException {
+        // extract to a temporary folder first, so an interrupted extraction
+        // is not mistaken for a complete one
+        Path tempFolder = Paths.get(libFolder.toString() + ".tmp"); //NON-NLS
+        FileUtils.deleteDirectory(tempFolder.toFile());
+        Files.createDirectories(tempFolder);
+        try (ZipFile warFile = new ZipFile(war)) {
+            Enumeration<? extends ZipEntry> entries = warFile.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                String name = entry.getName();
+                if (entry.isDirectory() || !name.startsWith(WAR_LIB_PREFIX) || !name.endsWith(".jar")) { //NON-NLS
+                    continue;
+                }
+                try (InputStream in = warFile.getInputStream(entry)) {
+                    Files.copy(in, tempFolder.resolve(Paths.get(name).getFileName()), StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+        }
+        Files.move(tempFolder, libFolder, StandardCopyOption.ATOMIC_MOVE);
+        logger.log(Level.INFO, "Extracted Solr libraries from {0} to {1}", new Object[]{war, libFolder}); //NON-NLS
+    }
+
+    private static void addJars(Path folder, List<URL> classPath) throws IOException {
+        if (!Files.isDirectory(folder)) {
+            return;
+        }
+        try (DirectoryStream<Path> jars = Files.newDirectoryStream(folder, "*.jar")) { //NON-NLS
+            for (Path jar : jars) {
+                classPath.add(jar.toUri().toURL());
+            }
+        } catch (MalformedURLException ex) {
+            throw new IOException(ex);
+        }
+    }
+
+    /**
+     * Looks for classes and resources in the Solr libraries before the module
+     * class loader, except for the platform classes and the SolrJ classes that
+     * are passed between the module and Solr.
+     */
+    private static final class SolrClassLoader extends URLClassLoader {
+
+        private static final String[] PARENT_FIRST_PREFIXES = {"java.", "javax.", "sun.", "org.w3c.", "org.xml.", //NON-NLS
+            "org.apache.solr.client.solrj.", "org.apache.solr.common."}; //NON-NLS
+
+        static {
+            registerAsParallelCapable();
+        }
+
+        private SolrClassLoader(URL[] urls, ClassLoader parent) {
+            super(urls, parent);
+        }
+
+        @Override
+        protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+            synchronized (getClassLoadingLock(name)) {
+                Class<?> loadedClass = findLoadedClass(name);
+                if (loadedClass == null) {
+                    if (isParentFirst(name)) {
+                        try {
+                            loadedClass = getParent().loadClass(name);
+                        } catch (ClassNotFoundException ex) {
+                            // e.g. the embedded server, which is part of Solr
+                            // rather than of SolrJ
+                            loadedClass = findClass(name);
+                        }
+                    } else {
+                        try {
+                            loadedClass = findClass(name);
+                        } catch (ClassNotFoundException ex) {
+                            loadedClass = getParent().loadClass(name);
+                        }
+                    }
+                }
+                if (resolve) {
+                    resolveClass(loadedClass);
+                }
+                return loadedClass;
+            }
+        }
+
+        @Override
+        public URL getResource(String name) {
+            URL url = findResource(name);
+            return url != null ? url : super.getResource(name);
+        }
+
+        @Override
+        public Enumeration<URL> getResources(String name) throws IOException {
+            // service files must only list the Solr Lucene's implementations
+            Enumeration<URL> urls = findResources(name);
+            if (urls.hasMoreElements()) {
+                return urls;
+            }
+            return getParent() != null ? getParent().getResources(name) : Collections.emptyEnumeration();
+        }
+
+        private static boolean isParentFirst(String name) {
+            for (String prefix : PARENT_FIRST_PREFIXES) {
+                if (name.startsWith(prefix)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,388 @@
+/*
+ * Autopsy Forensic Browser
+ *
+ * Copyright 2017 Basis Technology Corp.
+ * Contact: carrier <at> sleuthkit <dot> org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sleuthkit.autopsy.keywordsearch;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.logging.Level;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+import org.sleuthkit.autopsy.casemodule.Case;
+import org.sleuthkit.autopsy.coreutils.Logger;
+import org.sleuthkit.autopsy.keywordsearch.Chunker.Chunk;
+
+/**
+ * Stores the chunked text extracted from files and artifacts in the case
+ * directory, so that the index can be rebuilt and the text displayed without
+ * running the text extractors again.
+ *
+ * The text of each file or artifact is kept in its own zip file, named after
+ * its Solr id, with one compressed entry per chunk. Entries are named after
+ * the chunk number and the length of the base chunk is kept in the entry
+ * comment. A zip file is written under a temporary name and only renamed into
+ * place once all of its chunks have been written, so a stored text is always
+ * complete.
+ */
+final class ExtractedTextStore {
+
+    private static final Logger logger = Logger.getLogger(ExtractedTextStore.class.getName());
+    private static final String KWS_OUTPUT_FOLDER_NAME = "keywordsearch"; //NON-NLS
+    private static final String STORE_FOLDER_NAME = "extractedtext"; //NON-NLS
+    private static final String TEXT_FILE_EXTENSION = ".zip"; //NON-NLS
+    private static final String TEMP_FILE_EXTENSION = ".tmp"; //NON-NLS
+    private static final int SUBFOLDER_COUNT = 1000;
+
+    private ExtractedTextStore() {
+    }
+
+    /**
+     * Whether newly extracted text should be added to the store.
+     *
+     * @return true if extracted text is stored
+     */
+    static boolean isEnabled() {
+        return KeywordSearchSettings.getStoreExtractedText();
+    }
+
+    /**
+     * Whether any text has been added to the store of the current case.
+     *
+     * @return true if the store of the current case has text
+     */
+    static boolean hasStoredText() {
+        Case currentCase;
+        try {
+            currentCase = Case.getCurrentCase();
+        } catch (IllegalStateException ignore) {
+            // thrown by Case.getCurrentCase() if no case is open
+            return false;
+        }
+        return Files.isDirectory(Paths.get(currentCase.getModuleDirectory(), KWS_OUTPUT_FOLDER_NAME, STORE_FOLDER_NAME));
+    }
+
+    /**
+     * Get the stored text of a file or artifact.
+     *
+     * @param sourceID The Solr id of the file or artifact
+     *
+     * @return The stored text, or null if there is none. The caller must close
+     *         it.
+     */
+    static StoredText getStoredText(long sourceID) {
+        Path path = getTextPath(sourceID);
+        if (path == null || !Files.exists(path)) {
+            return null;
+        }
+        try {
+            return new StoredText(new ZipFile(path.toFile(), StandardCharsets.UTF_8));
+        } catch (IOException ex) {
+            logger.log(Level.WARNING, "Error opening stored text " + path, ex); //NON-NLS
+            return null;
+        }
+    }
+
+    /**
+     * Get the number of stored chunks of a file or artifact.
+     *
+     * @param sourceID The Solr id of the file or artifact
+     *
+     * @return The number of chunks, 0 if no text is stored
+     */
+    static int getChunkCount(long sourceID) {
+        StoredText storedText = getStoredText(sourceID);
+        if (storedText == null) {
+            return 0;
+        }
+        try {
+            return storedText.getChunkCount();
+        } finally {
+            storedText.close();
+        }
+    }
+
+    /**
+     * Get the text of one stored chunk of a file or artifact.
+     *
+     * @param sourceID    The Solr id of the file or artifact
+     * @param chunkNumber The chunk number, starting at 1
+     *
+     * @return The chunk text, or null if it is not stored
+     */
+    static String getChunkText(long sourceID, int chunkNumber) {
+        StoredText storedText = getStoredText(sourceID);
+        if (storedText == null) {
+            return null;
+        }
+        try {
+            Chunk chunk = storedText.getChunk(chunkNumber);
+            return chunk == null ? null : chunk.toString();
+        } catch (IOException ex) {
+            logger.log(Level.WARNING, "Error reading chunk " + chunkNumber + " of stored text for " + sourceID, ex); //NON-NLS
+            return null;
+        } finally {
+            storedText.close();
+        }
+    }
+
+    /**
+     * Start storing the text of a file or artifact. Any text already stored
+     * for it is replaced when the writer is committed.
+     *
+     * @param sourceID The Solr id of the file or artifact
+     *
+     * @return A writer for the text, or null if the store is disabled or no
+     *         case is open. Closing the writer without committing it discards
+     *         the text.
+     */
+    static TextWriter createWriter(long sourceID) {
+        if (!isEnabled()) {
+            return null;
+        }
+        Path path = getTextPath(sourceID);
+        if (path == null) {
+            return null;
+        }
+        Path tempPath = Paths.get(path.toString() + "." + Thread.currentThread().getId() + TEMP_FILE_EXTENSION);
+        try {
+            Files.createDirectories(path.getParent());
+            return new TextWriter(path, tempPath);
+        } catch (IOException ex) {
+            logger.log(Level.WARNING, "Error creating stored text " + tempPath, ex); //NON-NLS
+            return null;
+        }
+    }
+
+    private static Path getTextPath(long sourceID) {
+        Case currentCase;
+        try {
+            currentCase = Case.getCurrentCase();
+        } catch (IllegalStateException ignore) {
+            // thrown by Case.getCurrentCase() if no case is open
+            return null;
+        }
+        // spread the files over subfolders to keep folder sizes reasonable
+        return Paths.get(currentCase.getModuleDirectory(), KWS_OUTPUT_FOLDER_NAME, STORE_FOLDER_NAME,
+                Long.toString(Math.floorMod(sourceID, SUBFOLDER_COUNT)), Long.toString(sourceID) + TEXT_FILE_EXTENSION);
+    }
+
+    /**
+     * The stored text of one file or artifact. Iterating over it gives its
+     * chunks in order.
+     */
+    static final class StoredText implements Iterable<Chunk>, Closeable {
+
+        private final ZipFile zipFile;
+        private IOException exception = null;
+
+        private StoredText(ZipFile zipFile) {
+            this.zipFile = zipFile;
+        }
+
+        /**
+         * @return the number of stored chunks
+         */
+        int getChunkCount() {
+            return zipFile.size();
+        }
+
+        /**
+         * Get one chunk.
+         *
+         * @param chunkNumber The chunk number, starting at 1
+         *
+         * @return The chunk, or null if there is no such chunk
+         *
+         * @throws IOException if the chunk cannot be read
+         */
+        Chunk getChunk(int chunkNumber) throws IOException {
+            ZipEntry entry = zipFile.getEntry(Integer.toString(chunkNumber));
+            if (entry == null) {
+                return null;
+            }
+            byte[] bytes;
+            try (InputStream stream = zipFile.getInputStream(entry)) {
+                ByteArrayOutputStream buffer = new ByteArrayOutputStream(entry.getSize() > 0 ? (int) entry.getSize() : 8192);
+                byte[] block = new byte[8192];
+                int read;
+                while ((read = stream.read(block)) != -1) {
+                    buffer.write(block, 0, read);
+                }
+                bytes = buffer.toByteArray();
+            }
+            int baseChunkLength;
+            try {
+                baseChunkLength = Integer.parseInt(entry.getComment());
+            } catch (NumberFormatException | NullPointerException ex) {
+                throw new IOException("Missing base chunk length for chunk " + chunkNumber + " of " + zipFile.getName(), ex); //NON-NLS
+            }
+            return new Chunk(new String(bytes, StandardCharsets.UTF_8), baseChunkLength, bytes.length);
+        }
+
+        /**
+         * @return true if iteration stopped early because a chunk could not
+         *         be read
+         */
+        boolean hasException() {
+            return exception != null;
+        }
+
+        /**
+         * @return the exception that ended iteration early, or null
+         */
+        IOException getException() {
+            return exception;
+        }
+
+        @Override
+        public Iterator<Chunk> iterator() {
+            return new Iterator<Chunk>() {
+                private int nextChunkNumber = 1;
+                private Chunk nextChunk = null;
+
+                @Override
+                public boolean hasNext() {
+                    if (nextChunk == null && exception == null && nextChunkNumber <= getChunkCount()) {
+                        try {
+                            nextChunk = getChunk(nextChunkNumber);
+                            if (nextChunk == null) {
+                                exception = new IOException("Missing chunk " + nextChunkNumber + " in " + zipFile.getName()); //NON-NLS
+                            }
+                        } catch (IOException ex) {
+                            exception = ex;
+                        }
+                    }
+                    return nextChunk != null;
+                }
+
+                @Override
+                public Chunk next() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    Chunk chunk = nextChunk;
+                    nextChunk = null;
+                    nextChunkNumber++;
+                    return chunk;
+                }
+            };
+        }
+
+        @Override
+        public void close() {
+            try {
+                zipFile.close();
+            } catch (IOException ex) {
+                logger.log(Level.WARNING, "Error closing stored text " + zipFile.getName(), ex); //NON-NLS
+            }
+        }
+    }
+
+    /**
+     * Writes the chunks of one file or artifact to the store.
+     */
+    static final class TextWriter implements Closeable {
+
+        private final Path path;
+        private final Path tempPath;
+        private final ZipOutputStream zipStream;
+        private int chunkCount = 0;
+        private boolean failed = false;
+        private boolean committed = false;
+
+        private TextWriter(Path path, Path tempPath) throws IOException {
+            this.path = path;
+            this.tempPath = tempPath;
+            OutputStream fileStream = Files.newOutputStream(tempPath);
+            this.zipStream = new ZipOutputStream(fileStream, StandardCharsets.UTF_8);
+        }
+
+        /**
+         * Add the next chunk. A failure is logged and stops the text from
+         * being stored, but is not reported to the caller, as indexing can
+         * carry on without the store.
+         *
+         * @param chunkNumber The chunk number, starting at 1
+         * @param chunk       The chunk
+         */
+        void addChunk(int chunkNumber, Chunk chunk) {
+            if (failed) {
+                return;
+            }
+            try {
+                ZipEntry entry = new ZipEntry(Integer.toString(chunkNumber));
+                entry.setComment(Integer.toString(chunk.getBaseChunkLength()));
+                zipStream.putNextEntry(entry);
+                zipStream.write(chunk.toString().getBytes(StandardCharsets.UTF_8));
+                zipStream.closeEntry();
+                chunkCount++;
+            } catch (IOException ex) {
+                logger.log(Level.WARNING, "Error writing stored text " + tempPath, ex); //NON-NLS
+                failed = true;
+            }
+        }
+
+        /**
+         * Move the text into the store, replacing any text stored before. Text
+         * without any chunks is not stored.
+         */
+        void commit() {
+            if (failed || chunkCount == 0) {
+                return;
+            }
+            try {
+                zipStream.close();
+                Files.move(tempPath, path, StandardCopyOption.REPLACE_EXISTING);
+                committed = true;
+            } catch (IOException ex) {
+                logger.log(Level.WARNING, "Error saving stored text " + path, ex); //NON-NLS
+            }
+        }
+
+        /**
+         * Discard the text if it was not committed.
+         */
+        @Override
+        public void close() {
+            if (committed) {
+                return;
+            }
+            try {
+                zipStream.close();
+            } catch (IOException ignored) {
+                // the file is deleted anyway
+            }
+            try {
+                Files.deleteIfExists(tempPath);
+            } catch (IOException ex) {
+                logger.log(Level.WARNING, "Error deleting " + tempPath, ex); //NON-NLS
+            }
+        }
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Autopsy Forensic Browser
+ *
+ * Copyright 2017 Basis Technology Corp.
+ * Contact: carrier <at> sleuthkit <dot> org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sleuthkit.autopsy.keywordsearch;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.logging.Level;
+import org.sleuthkit.autopsy.coreutils.Logger;
+import org.sleuthkit.datamodel.TskCoreException;
+
+/**
+ * A least recently used cache of the highlighted text of the pages shown by
+ * the extracted content viewer, shared by all HighlightedText instances. A
+ * page that the user is likely to move to next can be loaded into the cache
+ * in the background, so that moving to it does not wait for a Solr highlight
+ * query.
+ *
+ * The cache is bounded by the total length of the pages it holds. Pages are
+ * keyed by the last committed index generation, so a commit makes the pages
+ * cached before it unreachable, and they age out of the cache.
+ */
+final class HighlightedPageCache {
+
+    private static final Logger logger = Logger.getLogger(HighlightedPageCache.class.getName());
+    private static final String PREFETCH_THREAD_NAME = "KWS-highlight-prefetch-%d"; //NON-NLS
+    private static final Cache<String, String> pages = CacheBuilder.newBuilder()
+            .maximumWeight(KeywordSearchSettings.getIntOption("HighlightCacheChars", 8 * 1024 * 1024)) //NON-NLS
+            .weigher((String key, String page) -> key.length() + page.length())
+            .build();
+    private static final ExecutorService prefetchExecutor = Executors.newSingleThreadExecutor(
+            new ThreadFactoryBuilder().setNameFormat(PREFETCH_THREAD_NAME).setDaemon(true).build());
+    private static final Map<String, Future<String>> prefetches = new ConcurrentHashMap<>();
+
+    private HighlightedPageCache() {
+    }
+
+    /**
+     * Loads the highlighted text of a page.
+     */
+    @FunctionalInterface
+    interface PageLoader {
+
+        String load() throws TskCoreException, KeywordSearchModuleException, NoOpenCoreException;
+    }
+
+    /**
+     * Get the highlighted text of a page, from the cache if it is there,
+     * waiting for it if it is being prefetched, and loading it otherwise.
+     *
+     * @param key    Identifies the page, the keywords, and the index
+     *               generation, or null if the page should not be cached
+     * @param loader Loads the page if it is not in the cache
+     *
+     * @return The highlighted text
+     *
+     * @throws TskCoreException
+     * @throws KeywordSearchModuleException
+     * @throws NoOpenCoreException
+     */
+    static String get(String key, PageLoader loader) throws TskCoreException, KeywordSearchModuleException, NoOpenCoreException {
+        if (key == null) {
+            return loader.load();
+        }
+        String page = pages.getIfPresent(key);
+        if (page != null) {
+            return page;
+        }
+        Future<String> prefetch = prefetches.get(key);
+        if (prefetch != null) {
+            try {
+                return prefetch.get();
+            } catch (ExecutionException ex) {
+                // load it here instead, to report the error
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        page = loader.load();
+        pages.put(key, page);
+        return page;
+    }
+
+    /**
+     * Load the highlighted text of a page into the cache in the background, if
+     * it is not there already.
+     *
+     * @param key    Identifies the page, the keywords, and the index
+     *               generation, or null if the page should not be cached
+     * @param loader Loads the page
+     */
+    static void prefetch(String key, PageLoader loader) {
+        if (key == null || pages.getIfPresent(key) != null || prefetches.containsKey(key)) {
+            return;
+        }
+        FutureTask<String> task = new FutureTask<>(() -> {
+            String page = loader.load();
+            pages.put(key, page);
+            return page;
+        });
+        if (prefetches.putIfAbsent(key, task) == null) {
+            prefetchExecutor.execute(() -> {
+                try {
+                    task.run();
+                    task.get();
+                } catch (ExecutionException ex) {
+                    logger.log(Level.FINE, "Error prefetching highlighted page " + key, ex.getCause()); //NON-NLS
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    prefetches.remove(key, task);
+                }
+            });
+        }
+    }
+}
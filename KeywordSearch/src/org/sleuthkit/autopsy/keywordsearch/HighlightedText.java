@@ -21,6 +21,7 @@
 import com.google.common.collect.Iterators;
 import com.google.common.collect.Range;
 import com.google.common.collect.TreeRangeSet;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
@@ -29,6 +30,7 @@
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
+import java.util.TreeSet;
 import java.util.logging.Level;
 import java.util.stream.Collectors;
 import javax.annotation.concurrent.GuardedBy;
@@ -40,6 +42,7 @@
 import org.apache.solr.client.solrj.response.QueryResponse;
 import org.apache.solr.common.SolrDocumentList;
 import org.openide.util.NbBundle;
+import org.sleuthkit.autopsy.casemodule.Case;
 import org.sleuthkit.autopsy.coreutils.Logger;
 import org.sleuthkit.autopsy.coreutils.Version;
 import org.sleuthkit.autopsy.keywordsearch.KeywordQueryFilter.FilterType;
@@ -69,6 +72,9 @@ class HighlightedText implements IndexedText {
     final private Server solrServer = KeywordSearch.getServer();
 
     private final long solrObjectId;
+    // the object id of the hits, which differs from solrObjectId for a file
+    // indexed as an alias
+    private final long hitsObjectId;
     /*
      * The keywords to highlight
      */
@@ -111,7 +117,8 @@ class HighlightedText implements IndexedText {
      *                     HighlightedText.
      */
     HighlightedText(long solrObjectId, QueryResults hits) {
-        this.solrObjectId = solrObjectId;
+        this.solrObjectId = ContentAliases.getTextSourceId(solrObjectId);
+        this.hitsObjectId = solrObjectId;
         this.hits = hits;
     }
 
@@ -129,8 +136,10 @@ class HighlightedText implements IndexedText {
         if (attribute != null) {
             this.solrObjectId = attribute.getValueLong();
         } else {
-            this.solrObjectId = artifact.getObjectID();
+            this.solrObjectId = ContentAliases.getTextSourceId(artifact.getObjectID());
         }
+        // the hits are found by searching the text of solrObjectId
+        this.hitsObjectId = this.solrObjectId;
 
     }
 
@@ -212,7 +221,7 @@ synchronized private void loadPageInfoFromHits() {
             for (KeywordHit hit : hits.getResults(k)) {
                 int chunkID = hit.getChunkId();
                 if (artifact != null) {
-                    if (chunkID != 0 && this.solrObjectId == hit.getSolrObjectId()) {
+                    if (chunkID != 0 && this.hitsObjectId == hit.getSolrObjectId()) {
                         String hit1 = hit.getHit();
                         if (keywords.stream().anyMatch(hit1::contains)) {
                             numberOfHitsPerPage.put(chunkID, 0); //unknown number of matches in the page
@@ -221,7 +230,7 @@ synchronized private void loadPageInfoFromHits() {
                         }
                     }
                 } else {
-                    if (chunkID != 0 && this.solrObjectId == hit.getSolrObjectId()) {
+                    if (chunkID != 0 && this.hitsObjectId == hit.getSolrObjectId()) {
 
                         numberOfHitsPerPage.put(chunkID, 0); //unknown number of matches in the page
                         currentHitPerPage.put(chunkID, 0); //set current hit to 0th
@@ -343,89 +352,165 @@ public int currentItem() {
 
     @Override
     public String getText() {
-        String chunkID = "";
-        String highlightField = "";
         try {
             loadPageInfo(); //inits once
-            SolrQuery q = new SolrQuery();
-            q.setShowDebugInfo(DEBUG); //debug
+            final int page = this.currentPage;
+            String highlightedContent = HighlightedPageCache.get(getPageKey(page), getPageLoader(page));
 
-            String contentIdStr = Long.toString(this.solrObjectId);
-            if (numberPages != 0) {
-                chunkID = Integer.toString(this.currentPage);
-                contentIdStr += "0".equals(chunkID) ? "" : "_" + chunkID;
+            // the user is likely to move to the next page with hits next
+            if (hasNextPage()) {
+                final int nextPage = Iterators.get(pages.iterator(), getIndexOfCurrentPage() + 1);
+                HighlightedPageCache.prefetch(getPageKey(nextPage), getPageLoader(nextPage));
             }
-            final String filterQuery = Server.Schema.ID.toString() + ":" + KeywordSearchUtil.escapeLuceneQuery(contentIdStr);
-
-            double indexSchemaVersion = NumberUtils.toDouble(solrServer.getIndexInfo().getSchemaVersion());
-            //choose field to highlight based on isLiteral and Solr index schema version.
-            highlightField = (isLiteral || (indexSchemaVersion < 2.0))
-                    ? LuceneQuery.HIGHLIGHT_FIELD
-                    : Server.Schema.CONTENT_STR.toString();
-            if (isLiteral) {
-                //if the query is literal try to get solr to do the highlighting
-                final String highlightQuery = keywords.stream()
-                        .map(HighlightedText::constructEscapedSolrQuery)
-                        .collect(Collectors.joining(" "));
-
-                q.setQuery(highlightQuery);
-                q.addField(highlightField);
-                q.addFilterQuery(filterQuery);
-                q.addHighlightField(highlightField);
-                q.setHighlightFragsize(0); // don't fragment the highlight, works with original highlighter, or needs "single" list builder with FVH
-
-                //tune the highlighter
-                q.setParam("hl.useFastVectorHighlighter", "on"); //fast highlighter scales better than standard one NON-NLS
-                q.setParam("hl.tag.pre", HIGHLIGHT_PRE); //makes sense for FastVectorHighlighter only NON-NLS
-                q.setParam("hl.tag.post", HIGHLIGHT_POST); //makes sense for FastVectorHighlighter only NON-NLS
-                q.setParam("hl.fragListBuilder", "single"); //makes sense for FastVectorHighlighter only NON-NLS
-
-                //docs says makes sense for the original Highlighter only, but not really
-                q.setParam("hl.maxAnalyzedChars", Server.HL_ANALYZE_CHARS_UNLIMITED); //NON-NLS
-            } else {
-                /*
-                 * if the query is not literal just pull back the text. We will
-                 * do the highlighting in autopsy.
-                 */
-                q.setQuery(filterQuery);
-                q.addField(highlightField);
+
+            highlightedContent = insertAnchors(highlightedContent);
+
+            return "<html><pre>" + highlightedContent + "</pre></html>"; //NON-NLS
+        } catch (TskCoreException | KeywordSearchModuleException | NoOpenCoreException ex) {
+            logger.log(Level.SEVERE, "Error getting highlighted text for Solr doc id " + solrObjectId + ", page " + currentPage, ex); //NON-NLS
+            return Bundle.IndexedText_errorMessage_errorGettingText();
+        }
+    }
+
+    /**
+     * Get the key of the highlighted text of a page in the page cache. The key
+     * includes the last committed index generation, as the text of a page can
+     * change when the file is indexed again.
+     *
+     * @param page The page
+     *
+     * @return The key, or null if the page should not be cached
+     *
+     * @throws NoOpenCoreException
+     */
+    private String getPageKey(int page) throws NoOpenCoreException {
+        try {
+            if (Case.getCurrentCase().getCaseType() == Case.CaseType.MULTI_USER_CASE) {
+                // other nodes commit to the index without this one knowing
+                return null;
             }
+        } catch (IllegalStateException ex) {
+            return null;
+        }
+        return solrServer.getIndexInfo().getIndexPath() + "|" + Ingester.getDefault().getCommittedGeneration() //NON-NLS
+                + "|" + solrObjectId + "|" + (numberPages != 0 ? page : 0) //NON-NLS
+                + "|" + isLiteral + "|" + String.join("\n", new TreeSet<>(keywords)); //NON-NLS
+    }
 
-            QueryResponse response = solrServer.query(q, METHOD.POST);
+    /**
+     * Get a loader of the highlighted text of a page. Prefetched pages are
+     * loaded on another thread, so the loader has its own copy of the state it
+     * needs.
+     *
+     * @param page The page
+     *
+     * @return The loader
+     */
+    private HighlightedPageCache.PageLoader getPageLoader(int page) {
+        final long objectId = this.solrObjectId;
+        final int chunkID = numberPages != 0 ? page : 0;
+        final boolean literal = this.isLiteral;
+        final List<String> pageKeywords = new ArrayList<>(this.keywords);
+        return () -> loadHighlightedContent(objectId, chunkID, literal, pageKeywords);
+    }
 
-            // There should never be more than one document since there will 
-            // either be a single chunk containing hits or we narrow our
-            // query down to the current page/chunk.
-            if (response.getResults().size() > 1) {
-                logger.log(Level.WARNING, "Unexpected number of results for Solr highlighting query: {0}", q); //NON-NLS
+    /**
+     * Load the text of a page with the hits highlighted.
+     *
+     * @param solrObjectId The Solr object id of the file or artifact
+     * @param chunkID      The page, or 0 if the text is not chunked
+     * @param isLiteral    Whether the keywords are literal
+     * @param keywords     The keywords to highlight
+     *
+     * @return The highlighted text, HTML-escaped
+     *
+     * @throws TskCoreException
+     * @throws KeywordSearchModuleException
+     * @throws NoOpenCoreException
+     */
+    private static String loadHighlightedContent(long solrObjectId, int chunkID, boolean isLiteral, Collection<String> keywords) throws TskCoreException, KeywordSearchModuleException, NoOpenCoreException {
+        final Server solrServer = KeywordSearch.getServer();
+
+        if (!isLiteral && chunkID != 0) {
+            // highlight the stored text, if there is any, without asking Solr
+            String storedText = ExtractedTextStore.getChunkText(solrObjectId, chunkID);
+            if (storedText != null) {
+                return highlightText(storedText, keywords);
             }
-            String highlightedContent;
-            Map<String, Map<String, List<String>>> responseHighlight = response.getHighlighting();
+        }
+
+        SolrQuery q = new SolrQuery();
+        q.setShowDebugInfo(DEBUG); //debug
+
+        String contentIdStr = Long.toString(solrObjectId);
+        if (chunkID != 0) {
+            contentIdStr += "_" + chunkID;
+        }
+        final String filterQuery = Server.Schema.ID.toString() + ":" + KeywordSearchUtil.escapeLuceneQuery(contentIdStr);
+
+        double indexSchemaVersion = NumberUtils.toDouble(solrServer.getIndexInfo().getSchemaVersion());
+        //choose field to highlight based on isLiteral and Solr index schema version.
+        String highlightField = (isLiteral || (indexSchemaVersion < 2.0))
+                ? LuceneQuery.HIGHLIGHT_FIELD
+                : solrServer.getIndexInfo().getStorageProfile().getRegexTextField();
+        if (isLiteral) {
+            //if the query is literal try to get solr to do the highlighting
+            final String highlightQuery = keywords.stream()
+                    .map(HighlightedText::constructEscapedSolrQuery)
+                    .collect(Collectors.joining(" "));
+
+            q.setQuery(highlightQuery);
+            q.addField(highlightField);
+            q.addFilterQuery(filterQuery);
+            q.addHighlightField(highlightField);
+            q.setHighlightFragsize(0); // don't fragment the highlight, works with original highlighter, or needs "single" list builder with FVH
+
+            //tune the highlighter
+            q.setParam("hl.useFastVectorHighlighter", "on"); //fast highlighter scales better than standard one NON-NLS
+            q.setParam("hl.tag.pre", HIGHLIGHT_PRE); //makes sense for FastVectorHighlighter only NON-NLS
+            q.setParam("hl.tag.post", HIGHLIGHT_POST); //makes sense for FastVectorHighlighter only NON-NLS
+            q.setParam("hl.fragListBuilder", "single"); //makes sense for FastVectorHighlighter only NON-NLS
+
+            //docs says makes sense for the original Highlighter only, but not really
+            q.setParam("hl.maxAnalyzedChars", Server.HL_ANALYZE_CHARS_UNLIMITED); //NON-NLS
+        } else {
+            /*
+             * if the query is not literal just pull back the text. We will do
+             * the highlighting in autopsy.
+             */
+            q.setQuery(filterQuery);
+            q.addField(highlightField);
+        }
+
+        QueryResponse response = solrServer.query(q, METHOD.POST);
+
+        // There should never be more than one document since there will 
+        // either be a single chunk containing hits or we narrow our
+        // query down to the current page/chunk.
+        if (response.getResults().size() > 1) {
+            logger.log(Level.WARNING, "Unexpected number of results for Solr highlighting query: {0}", q); //NON-NLS
+        }
+        String highlightedContent;
+        Map<String, Map<String, List<String>>> responseHighlight = response.getHighlighting();
+
+        if (responseHighlight == null) {
+            highlightedContent = attemptManualHighlighting(response.getResults(), highlightField, keywords);
+        } else {
+            Map<String, List<String>> responseHighlightID = responseHighlight.get(contentIdStr);
 
-            if (responseHighlight == null) {
+            if (responseHighlightID == null) {
                 highlightedContent = attemptManualHighlighting(response.getResults(), highlightField, keywords);
             } else {
-                Map<String, List<String>> responseHighlightID = responseHighlight.get(contentIdStr);
-
-                if (responseHighlightID == null) {
+                List<String> contentHighlights = responseHighlightID.get(LuceneQuery.HIGHLIGHT_FIELD);
+                if (contentHighlights == null) {
                     highlightedContent = attemptManualHighlighting(response.getResults(), highlightField, keywords);
                 } else {
-                    List<String> contentHighlights = responseHighlightID.get(LuceneQuery.HIGHLIGHT_FIELD);
-                    if (contentHighlights == null) {
-                        highlightedContent = attemptManualHighlighting(response.getResults(), highlightField, keywords);
-                    } else {
-                        // extracted content (minus highlight tags) is HTML-escaped
-                        highlightedContent = contentHighlights.get(0).trim();
-                    }
+                    // extracted content (minus highlight tags) is HTML-escaped
+                    highlightedContent = contentHighlights.get(0).trim();
                 }
             }
-            highlightedContent = insertAnchors(highlightedContent);
-
-            return "<html><pre>" + highlightedContent + "</pre></html>"; //NON-NLS
-        } catch (TskCoreException | KeywordSearchModuleException | NoOpenCoreException ex) {
-            logger.log(Level.SEVERE, "Error getting highlighted text for Solr doc id " + solrObjectId + ", chunkID " + chunkID + ", highlight query: " + highlightField, ex); //NON-NLS
-            return Bundle.IndexedText_errorMessage_errorGettingText();
         }
+        return highlightedContent;
     }
 
     @Override
@@ -475,7 +560,19 @@ static String attemptManualHighlighting(SolrDocumentList solrDocumentList, Strin
         // the list since this class presents a single page (document) of highlighted
         // content at a time.  Hence we can just use get(0).
         String text = solrDocumentList.get(0).getOrDefault(highlightField, "").toString();
+        return highlightText(text, keywords);
+    }
 
+    /**
+     * Highlight every occurrence of the keywords in a text.
+     *
+     * @param text     The text
+     * @param keywords The keywords
+     *
+     * @return The text, HTML-escaped, with the keywords highlighted via HTML
+     *         span tags
+     */
+    private static String highlightText(String text, Collection<String> keywords) {
         // Escape any HTML content that may be in the text. This is needed in
         // order to correctly display the text in the content viewer.
         // Must be done before highlighting tags are added. If we were to 
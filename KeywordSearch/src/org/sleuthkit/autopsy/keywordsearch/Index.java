@@ -18,8 +18,13 @@
  */
 package org.sleuthkit.autopsy.keywordsearch;
 
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
+import java.util.List;
 import org.sleuthkit.autopsy.coreutils.UNCPathUtilities;
 
 /**
@@ -31,7 +36,13 @@ final class Index {
     private final String schemaVersion;
     private final String solrVersion;
     private final String indexName;
+    private final int shardCount;
+    private final ShardRouting shardRouting;
+    private final List<String> shardHosts;
+    private final StorageProfile storageProfile;
     private static final String DEFAULT_CORE_NAME = "text_index"; //NON-NLS
+    private static final String SHARD_SUFFIX = "_shard"; //NON-NLS
+    private static final String SHARD_FOLDER_PREFIX = "shard"; //NON-NLS
     private final UNCPathUtilities uncPathUtilities = new UNCPathUtilities();
 
     /**
@@ -46,6 +57,65 @@ final class Index {
      *                      need to be generated.
      */
     Index(String indexPath, String solrVersion, String schemaVersion, String coreName, String caseName) {
+        this(indexPath, solrVersion, schemaVersion, coreName, caseName, 1, ShardRouting.OBJECT_ID);
+    }
+
+    /**
+     * Constructs a representation of a text index that may be split over
+     * several Solr cores.
+     *
+     * @param indexPath     The path to the index of the first shard.
+     * @param solrVersion   The Solr version of the index.
+     * @param schemaVersion The Solr schema version of the index.
+     * @param coreName      The core name, may be the empty string or null if
+     *                      the corename should be generated.
+     * @param caseName      The name of the case, ignored if coreName does not
+     *                      need to be generated.
+     * @param shardCount    The number of cores the index is split over.
+     * @param shardRouting  How documents are assigned to shards.
+     */
+    Index(String indexPath, String solrVersion, String schemaVersion, String coreName, String caseName, int shardCount, ShardRouting shardRouting) {
+        this(indexPath, solrVersion, schemaVersion, coreName, caseName, shardCount, shardRouting, StorageProfile.FULL);
+    }
+
+    /**
+     * Constructs a representation of a text index that may be split over
+     * several Solr cores and may not store all of its text.
+     *
+     * @param indexPath      The path to the index of the first shard.
+     * @param solrVersion    The Solr version of the index.
+     * @param schemaVersion  The Solr schema version of the index.
+     * @param coreName       The core name, may be the empty string or null if
+     *                       the corename should be generated.
+     * @param caseName       The name of the case, ignored if coreName does not
+     *                       need to be generated.
+     * @param shardCount     The number of cores the index is split over.
+     * @param shardRouting   How documents are assigned to shards.
+     * @param storageProfile Which fields of the index are stored.
+     */
+    Index(String indexPath, String solrVersion, String schemaVersion, String coreName, String caseName, int shardCount, ShardRouting shardRouting, StorageProfile storageProfile) {
+        this(indexPath, solrVersion, schemaVersion, coreName, caseName, shardCount, shardRouting, Collections.emptyList(), storageProfile);
+    }
+
+    /**
+     * Constructs a representation of a text index that may be split over
+     * several Solr servers and may not store all of its text.
+     *
+     * @param indexPath      The path to the index of the first shard.
+     * @param solrVersion    The Solr version of the index.
+     * @param schemaVersion  The Solr schema version of the index.
+     * @param coreName       The core name, may be the empty string or null if
+     *                       the corename should be generated.
+     * @param caseName       The name of the case, ignored if coreName does not
+     *                       need to be generated.
+     * @param shardCount     The number of cores the index is split over.
+     * @param shardRouting   How documents are assigned to shards.
+     * @param shardHosts     The Solr servers the shards after the first one
+     *                       are on, as host:port pairs, empty if they are all
+     *                       on the indexing server.
+     * @param storageProfile Which fields of the index are stored.
+     */
+    Index(String indexPath, String solrVersion, String schemaVersion, String coreName, String caseName, int shardCount, ShardRouting shardRouting, List<String> shardHosts, StorageProfile storageProfile) {
         this.indexPath = uncPathUtilities.convertPathToUNC(indexPath);
         this.solrVersion = solrVersion;
         this.schemaVersion = schemaVersion;
@@ -54,6 +124,10 @@ final class Index {
             coreName = createCoreName(caseName);
         }
         this.indexName = coreName;
+        this.shardCount = Math.max(1, shardCount);
+        this.shardRouting = shardRouting;
+        this.shardHosts = Collections.unmodifiableList(new ArrayList<>(shardHosts));
+        this.storageProfile = storageProfile;
     }
 
     /**
@@ -133,4 +207,138 @@ String getSolrVersion() {
     String getIndexName() {
         return indexName;
     }
+
+    /**
+     * @return the number of cores the index is split over
+     */
+    int getShardCount() {
+        return shardCount;
+    }
+
+    /**
+     * @return how documents are assigned to shards
+     */
+    ShardRouting getShardRouting() {
+        return shardRouting;
+    }
+
+    /**
+     * @return the Solr servers the shards after the first one are on, as
+     *         host:port pairs, empty if they are all on the indexing server
+     */
+    List<String> getShardHosts() {
+        return shardHosts;
+    }
+
+    /**
+     * @return which fields of the index are stored
+     */
+    StorageProfile getStorageProfile() {
+        return storageProfile;
+    }
+
+    /**
+     * Get the core name of a shard. The first shard uses the index name, so an
+     * index with one shard is an ordinary single core index.
+     *
+     * @param shard The shard number, starting at 0
+     *
+     * @return The core name
+     */
+    String getShardName(int shard) {
+        return shard == 0 ? indexName : indexName + SHARD_SUFFIX + shard;
+    }
+
+    /**
+     * Get the Solr server a shard is on, as a host:port pair. The first shard
+     * is always on the indexing server and the others are assigned to the
+     * shard hosts of the index in turn.
+     *
+     * @param shard The shard number, starting at 0
+     *
+     * @return The host:port pair, or null if the shard is on the indexing
+     *         server
+     */
+    String getShardHost(int shard) {
+        if (shard == 0 || shardHosts.isEmpty()) {
+            return null;
+        }
+        return shardHosts.get((shard - 1) % shardHosts.size());
+    }
+
+    /**
+     * Get the index directory of a shard. The indexes of the other shards are
+     * kept in folders under the data directory of the first one.
+     *
+     * @param shard The shard number, starting at 0
+     *
+     * @return The path of the index directory
+     */
+    String getShardIndexPath(int shard) {
+        if (shard == 0) {
+            return indexPath;
+        }
+        Path dataDir = Paths.get(indexPath).getParent();
+        return dataDir.resolve(SHARD_FOLDER_PREFIX + shard).resolve(Paths.get(indexPath).getFileName()).toString();
+    }
+
+    /**
+     * How the documents of a sharded index are assigned to shards. All chunks
+     * of a file or artifact always go to the same shard.
+     */
+    enum ShardRouting {
+
+        /**
+         * By the object id of the file or artifact.
+         */
+        OBJECT_ID,
+        /**
+         * By data source, so each data source is searched in one shard.
+         */
+        DATA_SOURCE;
+    }
+
+    /**
+     * Which fields of an index are stored, which decides where regex searches
+     * and highlighting get the text of a chunk. The text of each chunk is
+     * always stored once, in the text field, for highlighting.
+     */
+    enum StorageProfile {
+
+        /**
+         * The chunk text is also stored in the content_str field that regex
+         * searches match against, so regex hits are read from the index.
+         */
+        FULL(Server.Schema.CONTENT_STR, Server.Schema.CONTENT_STR),
+        /**
+         * The content_str_unstored field that regex searches match against is
+         * not stored, so the index holds one stored copy of the text. Regex
+         * hits are read from the extracted text store when the text was saved
+         * there, and from the stored text field otherwise.
+         */
+        REGEX_FROM_TEXT_STORE(Server.Schema.CONTENT_STR_UNSTORED, Server.Schema.TEXT);
+
+        private final Server.Schema regexField;
+        private final Server.Schema regexTextField;
+
+        private StorageProfile(Server.Schema regexField, Server.Schema regexTextField) {
+            this.regexField = regexField;
+            this.regexTextField = regexTextField;
+        }
+
+        /**
+         * @return the string field that regex searches match against
+         */
+        String getRegexField() {
+            return regexField.toString();
+        }
+
+        /**
+         * @return the stored field with the chunk text and file name, in the
+         *         same order as in the regex field
+         */
+        String getRegexTextField() {
+            return regexTextField.toString();
+        }
+    }
 }
@@ -24,6 +24,7 @@
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.logging.Level;
 import org.apache.commons.lang.math.NumberUtils;
 import org.sleuthkit.autopsy.casemodule.Case;
 import org.sleuthkit.autopsy.coreutils.Logger;
@@ -39,7 +40,13 @@ class IndexFinder {
     private static final String KWS_DATA_FOLDER_NAME = "data";
     private static final String INDEX_FOLDER_NAME = "index";
     private static final String CURRENT_SOLR_VERSION = "4";
-    private static final String CURRENT_SOLR_SCHEMA_VERSION = "2.0";
+    private static final String CURRENT_SOLR_SCHEMA_VERSION = "2.1";
+    /*
+     * Schema versions whose indexes can be used with the current schema as
+     * they are. Schema 2.1 only added fields, and an index of an upgradable
+     * version has the content_str field of the FULL storage profile.
+     */
+    private static final List<String> UPGRADABLE_SOLR_SCHEMA_VERSIONS = Collections.singletonList("2.0");
 
     static String getCurrentSolrVersion() {
         return CURRENT_SOLR_VERSION;
@@ -58,6 +65,31 @@ static Index findLatestVersionIndexDir(List<Index> allIndexes) {
         return null;
     }
 
+    /**
+     * Find an index of the current Solr version whose schema can be upgraded
+     * to the current schema without reindexing, and upgrade it. Only the
+     * schema version recorded for the index changes, the index stays in its
+     * folder and keeps storing all of its text.
+     *
+     * @param allIndexes The indexes of the case
+     *
+     * @return The upgraded index, or null if no index can be upgraded
+     */
+    static Index upgradeIndexInPlace(List<Index> allIndexes) {
+        for (int i = 0; i < allIndexes.size(); i++) {
+            Index index = allIndexes.get(i);
+            if (index.getSolrVersion().equals(CURRENT_SOLR_VERSION) && UPGRADABLE_SOLR_SCHEMA_VERSIONS.contains(index.getSchemaVersion())) {
+                Index upgradedIndex = new Index(index.getIndexPath(), CURRENT_SOLR_VERSION, CURRENT_SOLR_SCHEMA_VERSION, index.getIndexName(), "",
+                        index.getShardCount(), index.getShardRouting(), index.getShardHosts(), Index.StorageProfile.FULL);
+                allIndexes.set(i, upgradedIndex);
+                logger.log(Level.INFO, "Upgraded text index {0} from schema {1} to schema {2}", //NON-NLS
+                        new Object[]{index.getIndexPath(), index.getSchemaVersion(), CURRENT_SOLR_SCHEMA_VERSION});
+                return upgradedIndex;
+            }
+        }
+        return null;
+    }
+
     static Index createLatestVersionIndexDir(Case theCase) throws AutopsyService.AutopsyServiceException {
         String indexFolderName = "solr" + CURRENT_SOLR_VERSION + "_schema" + CURRENT_SOLR_SCHEMA_VERSION;
         // new index should be stored in "\ModuleOutput\keywordsearch\data\solrX_schemaY\index"
@@ -65,7 +97,15 @@ static Index createLatestVersionIndexDir(Case theCase) throws AutopsyService.Aut
         if (!targetDirPath.mkdirs()) {
             throw new AutopsyService.AutopsyServiceException("Unable to create text index directory " + targetDirPath.getAbsolutePath());
         }
-        return new Index(targetDirPath.getAbsolutePath(), CURRENT_SOLR_VERSION, CURRENT_SOLR_SCHEMA_VERSION, "", theCase.getName());
+        // only multi-user case indexes are sharded, their Solr servers can be
+        // scaled out
+        if (theCase.getCaseType() == Case.CaseType.MULTI_USER_CASE) {
+            return new Index(targetDirPath.getAbsolutePath(), CURRENT_SOLR_VERSION, CURRENT_SOLR_SCHEMA_VERSION, "", theCase.getName(),
+                    KeywordSearchSettings.getIndexShardCount(), KeywordSearchSettings.getIndexShardRouting(),
+                    KeywordSearchSettings.getIndexShardHosts(), KeywordSearchSettings.getIndexStorageProfile());
+        }
+        return new Index(targetDirPath.getAbsolutePath(), CURRENT_SOLR_VERSION, CURRENT_SOLR_SCHEMA_VERSION, "", theCase.getName(),
+                1, Index.ShardRouting.OBJECT_ID, KeywordSearchSettings.getIndexStorageProfile());
     }
 
     static Index identifyIndexToUse(List<Index> allIndexes) {
@@ -60,6 +60,10 @@ class IndexMetadata {
     private final static String SCHEMA_VERSION_ELEMENT_NAME = "SchemaVersion"; //NON-NLS
     private final static String SOLR_VERSION_ELEMENT_NAME = "SolrVersion"; //NON-NLS
     private final static String TEXT_INDEX_PATH_ELEMENT_NAME = "TextIndexPath"; //NON-NLS
+    private final static String SHARD_COUNT_ELEMENT_NAME = "ShardCount"; //NON-NLS
+    private final static String SHARD_ROUTING_ELEMENT_NAME = "ShardRouting"; //NON-NLS
+    private final static String SHARD_HOSTS_ELEMENT_NAME = "ShardHosts"; //NON-NLS
+    private final static String STORAGE_PROFILE_ELEMENT_NAME = "StorageProfile"; //NON-NLS
     private List<Index> indexes = new ArrayList<>();
     private final UNCPathUtilities uncPathUtilities = new UNCPathUtilities();
     
@@ -175,6 +179,16 @@ private void createXMLDOM(Document doc) {
             createChildElement(doc, coreElement, SCHEMA_VERSION_ELEMENT_NAME, index.getSchemaVersion());
             Path relativePath = caseDirectoryPath.relativize(Paths.get(index.getIndexPath()));
             createChildElement(doc, coreElement, TEXT_INDEX_PATH_ELEMENT_NAME, relativePath.toString());
+            if (index.getShardCount() > 1) {
+                createChildElement(doc, coreElement, SHARD_COUNT_ELEMENT_NAME, Integer.toString(index.getShardCount()));
+                createChildElement(doc, coreElement, SHARD_ROUTING_ELEMENT_NAME, index.getShardRouting().name());
+                if (!index.getShardHosts().isEmpty()) {
+                    createChildElement(doc, coreElement, SHARD_HOSTS_ELEMENT_NAME, String.join(",", index.getShardHosts()));
+                }
+            }
+            if (index.getStorageProfile() != Index.StorageProfile.FULL) {
+                createChildElement(doc, coreElement, STORAGE_PROFILE_ELEMENT_NAME, index.getStorageProfile().name());
+            }
         }
     }
     
@@ -228,7 +242,36 @@ private void readFromFile() throws TextIndexMetadataException {
                 String schemaVersion = getElementTextContent(coreElement, SCHEMA_VERSION_ELEMENT_NAME, true);
                 String relativeTextIndexPath = getElementTextContent(coreElement, TEXT_INDEX_PATH_ELEMENT_NAME, true);
                 Path absoluteDatabasePath = caseDirectoryPath.resolve(relativeTextIndexPath);
-                Index index = new Index(absoluteDatabasePath.toString(), solrVersion, schemaVersion, coreName, "");
+                // indexes written before sharding was added have no shard elements
+                int shardCount = 1;
+                Index.ShardRouting shardRouting = Index.ShardRouting.OBJECT_ID;
+                List<String> shardHosts = new ArrayList<>();
+                if (coreElement.getElementsByTagName(SHARD_COUNT_ELEMENT_NAME).getLength() > 0) {
+                    try {
+                        shardCount = Integer.parseInt(getElementTextContent(coreElement, SHARD_COUNT_ELEMENT_NAME, true));
+                        shardRouting = Index.ShardRouting.valueOf(getElementTextContent(coreElement, SHARD_ROUTING_ELEMENT_NAME, true));
+                    } catch (IllegalArgumentException ex) {
+                        throw new TextIndexMetadataException(String.format("Invalid shard layout in text index metadata file %s", metadataFilePath), ex);
+                    }
+                    // the shards of an index without shard hosts are all on the indexing server
+                    if (coreElement.getElementsByTagName(SHARD_HOSTS_ELEMENT_NAME).getLength() > 0) {
+                        for (String host : getElementTextContent(coreElement, SHARD_HOSTS_ELEMENT_NAME, false).split(",")) {
+                            if (!host.trim().isEmpty()) {
+                                shardHosts.add(host.trim());
+                            }
+                        }
+                    }
+                }
+                // indexes written before storage profiles were added store everything
+                Index.StorageProfile storageProfile = Index.StorageProfile.FULL;
+                if (coreElement.getElementsByTagName(STORAGE_PROFILE_ELEMENT_NAME).getLength() > 0) {
+                    try {
+                        storageProfile = Index.StorageProfile.valueOf(getElementTextContent(coreElement, STORAGE_PROFILE_ELEMENT_NAME, true));
+                    } catch (IllegalArgumentException ex) {
+                        throw new TextIndexMetadataException(String.format("Invalid storage profile in text index metadata file %s", metadataFilePath), ex);
+                    }
+                }
+                Index index = new Index(absoluteDatabasePath.toString(), solrVersion, schemaVersion, coreName, "", shardCount, shardRouting, shardHosts, storageProfile);
                 indexes.add(index);
                 coreIndx++;
             }
@@ -21,7 +21,11 @@
 import java.io.BufferedReader;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.logging.Level;
+import javax.annotation.concurrent.GuardedBy;
 import org.apache.solr.client.solrj.SolrServerException;
 import org.apache.solr.common.SolrInputDocument;
 import org.openide.util.NbBundle;
@@ -54,8 +58,53 @@ class Ingester {
     private static final SolrFieldsVisitor SOLR_FIELDS_VISITOR = new SolrFieldsVisitor();
     private static Ingester instance;
     private static final int SINGLE_READ_CHARS = 512;
+    private static final int DEFAULT_BATCH_SIZE = 100;
+    private static final int DEFAULT_BATCH_MAX_BYTES = 4 * 1024 * 1024;
+    private static final int DEFAULT_SENDER_THREADS = 2;
+    private static final int DEFAULT_HARD_COMMIT_MAX_DOCS = 15000;
+    private static final int DEFAULT_HARD_COMMIT_MAX_MINUTES = 10;
+    private final BufferedIndexer bufferedIndexer;
+
+    /*
+     * Every document is stamped with the index generation that is current when
+     * it is queued. commit() starts a new generation before flushing, so once
+     * it returns every document of the previous generation is searchable. The
+     * first generation is seeded from the clock so that generations keep
+     * increasing across application restarts. Holding the read lock while
+     * stamping and queueing a document keeps commit() from starting a new
+     * generation in between.
+     */
+    private final AtomicLong indexGeneration = new AtomicLong(System.currentTimeMillis());
+    private final ReentrantReadWriteLock generationLock = new ReentrantReadWriteLock();
+    private volatile long committedGeneration = indexGeneration.get() - 1;
+
+    /*
+     * Commits that only make documents searchable are soft commits, which do
+     * not flush the index to disk. A hard commit is done instead once enough
+     * documents or time have gone by since the last one, and whenever it is
+     * requested, e.g., at the end of an ingest job. A commit is skipped when
+     * no documents have been queued since the last one. The count of queued
+     * documents is reset under the generation write lock, so every counted
+     * document belongs to the generation being committed.
+     */
+    private final AtomicLong docsSinceCommit = new AtomicLong();
+    private final AtomicLong indexedChars = new AtomicLong();
+    private final int hardCommitMaxDocs;
+    private final long hardCommitMaxMs;
+    @GuardedBy("this")
+    private long docsSinceHardCommit = 0;
+    @GuardedBy("this")
+    private long lastHardCommitTime = System.currentTimeMillis();
+    @GuardedBy("this")
+    private CommitStats commitStats = new CommitStats(0, 0, 0, 0, 0);
 
     private Ingester() {
+        bufferedIndexer = new BufferedIndexer(solrServer,
+                KeywordSearchSettings.getIntOption("IndexingBatchSize", DEFAULT_BATCH_SIZE), //NON-NLS
+                KeywordSearchSettings.getIntOption("IndexingBatchMaxBytes", DEFAULT_BATCH_MAX_BYTES), //NON-NLS
+                KeywordSearchSettings.getIntOption("IndexingSenderThreads", DEFAULT_SENDER_THREADS)); //NON-NLS
+        hardCommitMaxDocs = KeywordSearchSettings.getIntOption("HardCommitMaxDocs", DEFAULT_HARD_COMMIT_MAX_DOCS); //NON-NLS
+        hardCommitMaxMs = TimeUnit.MINUTES.toMillis(KeywordSearchSettings.getIntOption("HardCommitMaxMinutes", DEFAULT_HARD_COMMIT_MAX_MINUTES)); //NON-NLS
     }
 
     public static synchronized Ingester getDefault() {
@@ -88,7 +137,26 @@ protected void finalize() throws Throwable {
      *                           file, but the Solr server is probably fine.
      */
     void indexMetaDataOnly(AbstractFile file) throws IngesterException {
-        indexChunk("", file.getName(), getContentFields(file));
+        indexChunk("", file.getId(), file.getName(), getContentFields(file));
+    }
+
+    /**
+     * Sends the metadata for a file whose content is identical to a file that
+     * has already been indexed, recording which file that is so that keyword
+     * hits on its text can be reported for both. commit() should be called
+     * once you're done indexing.
+     *
+     * @param file        File to index.
+     * @param canonicalID The object id of the indexed file with the same
+     *                    content.
+     *
+     * @throws IngesterException if there was an error processing a specific
+     *                           file, but the Solr server is probably fine.
+     */
+    void indexAlias(AbstractFile file, long canonicalID) throws IngesterException {
+        Map<String, String> fields = getContentFields(file);
+        fields.put(Server.Schema.ALIAS_OF.toString(), Long.toString(canonicalID));
+        indexChunk("", file.getId(), file.getName(), fields);
     }
 
     /**
@@ -102,7 +170,7 @@ void indexMetaDataOnly(AbstractFile file) throws IngesterException {
      *                           artifact, but the Solr server is probably fine.
      */
     void indexMetaDataOnly(BlackboardArtifact artifact) throws IngesterException {
-        indexChunk("", new ArtifactTextExtractor().getName(artifact), getContentFields(artifact));
+        indexChunk("", artifact.getArtifactID(), new ArtifactTextExtractor().getName(artifact), getContentFields(artifact));
     }
 
     /**
@@ -152,10 +220,36 @@ < T extends SleuthkitVisitableItem> boolean indexText(TextExtractor< T> extracto
         }
 
         Map<String, String> fields = getContentFields(source);
-        //Get a reader for the content of the given source
-        try (BufferedReader reader = new BufferedReader(extractor.getReader(source));) {
-            Chunker chunker = new Chunker(reader);
-            for (Chunk chunk : chunker) {
+
+        // Literal keywords of a running ingest job are matched as the text is indexed
+        LiteralKeywordMatcher literalMatcher = null;
+        LiteralKeywordMatcher.Hits literalHits = null;
+        // and so are credit card numbers
+        CreditCardScanner cardScanner = null;
+        CreditCardScanner.Hits cardHits = null;
+        String dataSourceId = fields.get(Server.Schema.IMAGE_ID.toString());
+        if (dataSourceId != null) {
+            literalMatcher = SearchRunner.getInstance().getLiteralMatcher(Long.parseLong(dataSourceId));
+            if (literalMatcher != null) {
+                literalHits = new LiteralKeywordMatcher.Hits();
+            }
+            cardScanner = SearchRunner.getInstance().getCreditCardScanner(Long.parseLong(dataSourceId));
+            if (cardScanner != null) {
+                cardHits = new CreditCardScanner.Hits();
+            }
+        }
+
+        /*
+         * Index from the extracted text store if the text of the source has
+         * been stored before, otherwise extract it, adding it to the store if
+         * the store is enabled.
+         */
+        try (ExtractedTextStore.StoredText storedText = ExtractedTextStore.getStoredText(sourceID);
+                BufferedReader reader = storedText != null ? null : new BufferedReader(extractor.getReader(source));
+                ExtractedTextStore.TextWriter storeWriter = storedText != null ? null : ExtractedTextStore.createWriter(sourceID)) {
+            Chunker chunker = storedText != null ? null : new Chunker(reader);
+            Iterable<Chunk> chunks = storedText != null ? storedText : chunker;
+            for (Chunk chunk : chunks) {
                 if (context != null && context.fileIngestIsCancelled()) {
                     logger.log(Level.INFO, "File ingest cancelled. Cancelling keyword search indexing of {0}", sourceName);
                     return false;
@@ -163,10 +257,20 @@ < T extends SleuthkitVisitableItem> boolean indexText(TextExtractor< T> extracto
                 String chunkId = Server.getChunkIdString(sourceID, numChunks + 1);
                 fields.put(Server.Schema.ID.toString(), chunkId);
                 fields.put(Server.Schema.CHUNK_SIZE.toString(), String.valueOf(chunk.getBaseChunkLength()));
+                String chunkText = chunk.toString();
                 try {
                     //add the chunk text to Solr index
-                    indexChunk(chunk.toString(), sourceName, fields);
+                    indexChunk(chunkText, sourceID, sourceName, fields);
                     numChunks++;
+                    if (storeWriter != null) {
+                        storeWriter.addChunk(numChunks, chunk);
+                    }
+                    if (literalMatcher != null) {
+                        literalMatcher.scan(chunkId, chunkText, literalHits);
+                    }
+                    if (cardScanner != null) {
+                        cardScanner.scan(chunkId, chunkText, cardHits);
+                    }
                 } catch (Ingester.IngesterException ingEx) {
                     extractor.logWarning("Ingester had a problem with extracted string from file '" //NON-NLS
                             + sourceName + "' (id: " + sourceID + ").", ingEx);//NON-NLS
@@ -174,10 +278,23 @@ < T extends SleuthkitVisitableItem> boolean indexText(TextExtractor< T> extracto
                     throw ingEx; //need to rethrow to signal error and move on
                 }
             }
-            if (chunker.hasException()) {
+            if (literalHits != null && !literalHits.isEmpty()) {
+                literalMatcher.post(literalHits);
+            }
+            if (cardHits != null && !cardHits.isEmpty()) {
+                cardHits.post();
+            }
+            if (storedText != null && storedText.hasException()) {
+                logger.log(Level.WARNING, "Error reading stored text of " + sourceID + ": " + sourceName, storedText.getException()); //NON-NLS
+                return false;
+            }
+            if (chunker != null && chunker.hasException()) {
                 extractor.logWarning("Error chunking content from " + sourceID + ": " + sourceName, chunker.getException());
                 return false;
             }
+            if (storeWriter != null) {
+                storeWriter.commit();
+            }
         } catch (Exception ex) {
             extractor.logWarning("Unexpected error, can't read content stream from " + sourceID + ": " + sourceName, ex);//NON-NLS
             return false;
@@ -191,26 +308,26 @@ < T extends SleuthkitVisitableItem> boolean indexText(TextExtractor< T> extracto
                 fields.put(Server.Schema.ID.toString(), Long.toString(sourceID));
                 //"parent" docs don't have chunk_size
                 fields.remove(Server.Schema.CHUNK_SIZE.toString());
-                indexChunk(null, sourceName, fields);
+                indexChunk(null, sourceID, sourceName, fields);
             }
         }
         return true;
     }
 
     /**
-     * Add one chunk as to the Solr index as a separate Solr document.
+     * Add one chunk as to the Solr index as a separate Solr document. The
+     * document is queued and sent to Solr as part of a batch; errors sending
+     * it are logged and recorded against the source rather than thrown, see
+     * takeIndexingFailure().
      *
-     * TODO see if can use a byte or string streaming way to add content to
-     * /update handler e.g. with XMLUpdateRequestHandler (deprecated in SOlr
-     * 4.0.0), see if possible to stream with UpdateRequestHandler
-     *
-     * @param chunk  The chunk content as a string
+     * @param chunk      The chunk content as a string
+     * @param sourceID   The object id of the file or artifact
+     * @param sourceName The name of the file or artifact
      * @param fields
-     * @param size
      *
      * @throws org.sleuthkit.autopsy.keywordsearch.Ingester.IngesterException
      */
-    private void indexChunk(String chunk, String sourceName, Map<String, String> fields) throws IngesterException {
+    private void indexChunk(String chunk, long sourceID, String sourceName, Map<String, String> fields) throws IngesterException {
         if (fields.get(Server.Schema.IMAGE_ID.toString()) == null) {
             //JMTODO: actually if the we couldn't get the image id it is set to -1,
             // but does this really mean we don't want to index it?
@@ -222,6 +339,13 @@ private void indexChunk(String chunk, String sourceName, Map<String, String> fie
             throw new IngesterException(msg);
         }
 
+        String regexField;
+        try {
+            regexField = solrServer.getIndexInfo().getStorageProfile().getRegexField();
+        } catch (NoOpenCoreException ex) {
+            throw new IngesterException(NbBundle.getMessage(Ingester.class, "Ingester.ingest.exception.err.msg", sourceName), ex);
+        }
+
         //Make a SolrInputDocument out of the field map
         SolrInputDocument updateDoc = new SolrInputDocument();
         for (String key : fields.keySet()) {
@@ -231,32 +355,157 @@ private void indexChunk(String chunk, String sourceName, Map<String, String> fie
         //JMTODO: can we just add it to the field map before passing that in?
         updateDoc.addField(Server.Schema.CONTENT.toString(), chunk);
 
-        try {
-            //TODO: consider timeout thread, or vary socket timeout based on size of indexed content
-            solrServer.addDocument(updateDoc);
-            uncommitedIngests = true;
+        // the regex field of the storage profile gets the file name and content
+        // in the same order as the text field they are copied to
+        String fileName = fields.get(Server.Schema.FILE_NAME.toString());
+        if (fileName != null) {
+            updateDoc.addField(regexField, fileName);
+        }
+        if (chunk != null) {
+            updateDoc.addField(regexField, chunk);
+        }
 
-        } catch (KeywordSearchModuleException | NoOpenCoreException ex) {
-            //JMTODO: does this need to be internationalized?
-            throw new IngesterException(
-                    NbBundle.getMessage(Ingester.class, "Ingester.ingest.exception.err.msg", sourceName), ex);
+        generationLock.readLock().lock();
+        try {
+            updateDoc.addField(Server.Schema.INDEX_GENERATION.toString(), indexGeneration.get());
+            bufferedIndexer.add(updateDoc, sourceID, sourceName, chunk == null ? 0 : chunk.length());
+            docsSinceCommit.incrementAndGet();
+            indexedChars.addAndGet(chunk == null ? 0 : chunk.length());
+        } finally {
+            generationLock.readLock().unlock();
         }
+        uncommitedIngests = true;
     }
 
     /**
      * Tells Solr to commit (necessary before ingested files will appear in
-     * searches)
+     * searches). This is a soft commit unless a hard commit is due.
+     *
+     * @return True if anything was committed, false if there was nothing to
+     *         commit or the commit failed
      */
-    void commit() {
+    synchronized boolean commit() {
+        return commit(false);
+    }
+
+    /**
+     * Tells Solr to do a hard commit, so that the ingested files are both
+     * searchable and saved to disk.
+     *
+     * @return True if anything was committed, false if there was nothing to
+     *         commit or the commit failed
+     */
+    synchronized boolean hardCommit() {
+        return commit(true);
+    }
+
+    @GuardedBy("this")
+    private boolean commit(boolean hardCommitRequested) {
+        long generation;
+        long docs;
+        generationLock.writeLock().lock();
+        try {
+            docs = docsSinceCommit.getAndSet(0);
+            if (docs == 0 && (!hardCommitRequested || docsSinceHardCommit == 0)) {
+                commitStats = commitStats.add(false, false, true, 0);
+                return false;
+            }
+            generation = indexGeneration.getAndIncrement();
+        } finally {
+            generationLock.writeLock().unlock();
+        }
+        if (!bufferedIndexer.flush()) {
+            // the documents still need to be sent and committed
+            docsSinceCommit.addAndGet(docs);
+            return false;
+        }
+        final long startTime = System.currentTimeMillis();
+        final boolean hard = hardCommitRequested
+                || docsSinceHardCommit + docs >= hardCommitMaxDocs
+                || startTime - lastHardCommitTime >= hardCommitMaxMs;
         try {
-            solrServer.commit();
+            if (hard) {
+                solrServer.commit();
+                docsSinceHardCommit = 0;
+                lastHardCommitTime = System.currentTimeMillis();
+            } else {
+                solrServer.softCommit();
+                docsSinceHardCommit += docs;
+            }
+            committedGeneration = generation;
             uncommitedIngests = false;
+            commitStats = commitStats.add(hard, !hard, false, System.currentTimeMillis() - startTime);
+            return true;
         } catch (NoOpenCoreException | SolrServerException ex) {
             logger.log(Level.WARNING, "Error commiting index", ex); //NON-NLS
-
+            // the documents still need to be committed
+            docsSinceCommit.addAndGet(docs);
+            return false;
         }
     }
 
+    /**
+     * Sends and commits everything queued so far, waiting for batches that
+     * are being sent, then forgets the recorded indexing failures. Call before
+     * the core of a case is closed so no batch is left to be sent to it.
+     */
+    synchronized void closeCase() {
+        commit(true);
+        bufferedIndexer.clearFailures();
+    }
+
+    /**
+     * Checks whether a document of a file or artifact failed to be sent to
+     * Solr after it was queued, and forgets the failure. The failures of all
+     * documents queued before the last commit are known once it returns.
+     *
+     * @param sourceID The object id of the file or artifact
+     *
+     * @return True if a document of the source could not be indexed
+     */
+    boolean takeIndexingFailure(long sourceID) {
+        return bufferedIndexer.takeFailure(sourceID);
+    }
+
+    /**
+     * Gets the statistics of the commits done so far.
+     *
+     * @return The commit statistics
+     */
+    synchronized CommitStats getCommitStats() {
+        return commitStats;
+    }
+
+    /**
+     * Gets the number of characters of text queued for indexing so far.
+     *
+     * @return The number of characters
+     */
+    long getIndexedChars() {
+        return indexedChars.get();
+    }
+
+    /**
+     * Are there documents that have been queued for indexing but not
+     * committed? If so, Solr's own automatic commits may make them searchable
+     * before the index generation changes.
+     *
+     * @return True if there are uncommitted documents
+     */
+    boolean hasUncommittedDocuments() {
+        return docsSinceCommit.get() > 0;
+    }
+
+    /**
+     * Gets the newest index generation all of whose documents have been
+     * committed. Documents of this generation and older are searchable.
+     *
+     * @return The last committed index generation
+     */
+    long getCommittedGeneration() {
+        return committedGeneration;
+    }
+
     /**
      * Visitor used to create fields to send to SOLR index.
      */
@@ -339,6 +588,9 @@ private Map<String, String> getCommonFields(AbstractFile file) {
                 params.put(Server.Schema.IMAGE_ID.toString(), Long.toString(-1));
             }
             params.put(Server.Schema.FILE_NAME.toString(), file.getName());
+            if (ContentAliases.isEnabled() && file.getMd5Hash() != null) {
+                params.put(Server.Schema.CONTENT_MD5.toString(), file.getMd5Hash());
+            }
             return params;
         }
 
@@ -363,6 +615,69 @@ public Map<String, String> visit(BlackboardArtifact artifact) {
         }
     }
 
+    /**
+     * Counts and timings of index commits.
+     */
+    static final class CommitStats {
+
+        private final long hardCommits;
+        private final long softCommits;
+        private final long skippedCommits;
+        private final long totalCommitMs;
+        private final long longestCommitMs;
+
+        private CommitStats(long hardCommits, long softCommits, long skippedCommits, long totalCommitMs, long longestCommitMs) {
+            this.hardCommits = hardCommits;
+            this.softCommits = softCommits;
+            this.skippedCommits = skippedCommits;
+            this.totalCommitMs = totalCommitMs;
+            this.longestCommitMs = longestCommitMs;
+        }
+
+        private CommitStats add(boolean hard, boolean soft, boolean skipped, long commitMs) {
+            return new CommitStats(hardCommits + (hard ? 1 : 0), softCommits + (soft ? 1 : 0), skippedCommits + (skipped ? 1 : 0),
+                    totalCommitMs + commitMs, Math.max(longestCommitMs, commitMs));
+        }
+
+        /**
+         * Gets the statistics of the commits done since an earlier snapshot of
+         * the statistics. The longest commit time is the longest overall.
+         *
+         * @param earlier The earlier snapshot
+         *
+         * @return The statistics of the later commits
+         */
+        CommitStats since(CommitStats earlier) {
+            return new CommitStats(hardCommits - earlier.hardCommits, softCommits - earlier.softCommits, skippedCommits - earlier.skippedCommits,
+                    totalCommitMs - earlier.totalCommitMs, longestCommitMs);
+        }
+
+        long getHardCommits() {
+            return hardCommits;
+        }
+
+        long getSoftCommits() {
+            return softCommits;
+        }
+
+        long getSkippedCommits() {
+            return skippedCommits;
+        }
+
+        /**
+         * @return the average time of the hard and soft commits, in
+         *         milliseconds
+         */
+        long getAverageCommitMs() {
+            long commits = hardCommits + softCommits;
+            return commits == 0 ? 0 : totalCommitMs / commits;
+        }
+
+        long getLongestCommitMs() {
+            return longestCommitMs;
+        }
+    }
+
     /**
      * Indicates that there was an error with the specific ingest operation, but
      * it's still okay to continue ingesting files.
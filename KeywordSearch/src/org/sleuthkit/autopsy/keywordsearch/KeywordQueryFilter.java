@@ -31,10 +31,12 @@ class KeywordQueryFilter {
 
     public static enum FilterType {
 
-        FILE, CHUNK, DATA_SOURCE
+        FILE, CHUNK, DATA_SOURCE, INDEX_GENERATION, PARENT_DOCUMENT
     };
     private Set<Long> idFilters;
     private FilterType filterType;
+    private long afterGeneration;
+    private long throughGeneration;
 
     public KeywordQueryFilter(FilterType filterType, long id) {
         this.filterType = filterType;
@@ -47,6 +49,31 @@ public KeywordQueryFilter(FilterType filterType, Set<Long> ids) {
         this.idFilters = ids;
     }
 
+    /**
+     * Create a filter that restricts a query to documents indexed after one
+     * index generation, up to and including another.
+     *
+     * @param afterGeneration   Exclusive lower bound
+     * @param throughGeneration Inclusive upper bound
+     */
+    public KeywordQueryFilter(long afterGeneration, long throughGeneration) {
+        this.filterType = FilterType.INDEX_GENERATION;
+        this.idFilters = new HashSet<Long>();
+        this.afterGeneration = afterGeneration;
+        this.throughGeneration = throughGeneration;
+    }
+
+    /**
+     * Create a filter that restricts a query to the parent documents of files
+     * and artifacts, which hold their names and metadata but not the chunks
+     * of their text.
+     *
+     * @return The filter
+     */
+    static KeywordQueryFilter parentDocuments() {
+        return new KeywordQueryFilter(FilterType.PARENT_DOCUMENT, new HashSet<Long>());
+    }
+
     public Set<Long> getIdFilters() {
         return idFilters;
     }
@@ -58,6 +85,15 @@ public FilterType getFilterType() {
     @Override
     public String toString() {
         StringBuilder sb = new StringBuilder();
+        if (filterType == FilterType.PARENT_DOCUMENT) {
+            // only chunks have a chunk size
+            return "-" + Server.Schema.CHUNK_SIZE.toString() + ":[* TO *]";
+        }
+        if (filterType == FilterType.INDEX_GENERATION) {
+            sb.append(Server.Schema.INDEX_GENERATION.toString());
+            sb.append(":{").append(afterGeneration).append(" TO ").append(throughGeneration).append("]");
+            return sb.toString();
+        }
         String id = null;
 
         Iterator<Long> it = idFilters.iterator();
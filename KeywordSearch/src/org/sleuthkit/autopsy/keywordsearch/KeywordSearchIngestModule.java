@@ -18,12 +18,15 @@
  */
 package org.sleuthkit.autopsy.keywordsearch;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
+import org.apache.commons.io.FileUtils;
 import org.openide.util.NbBundle;
 import org.openide.util.NbBundle.Messages;
 import org.sleuthkit.autopsy.casemodule.Case;
@@ -88,7 +91,6 @@ int getTime() {
 //only search images from current ingest, not images previously ingested/indexed
     //accessed read-only by searcher thread
 
-    private boolean startedSearching = false;
     private List<FileTextExtractor> textExtractors;
     private StringsTextExtractor stringExtractor;
     private final KeywordSearchJobSettings settings;
@@ -105,11 +107,30 @@ private enum IngestStatus {
         TEXT_INGESTED, /// Text was extracted by knowing file type and text_ingested
         STRINGS_INGESTED, ///< Strings were extracted from file 
         METADATA_INGESTED, ///< No content, so we just text_ingested metadata
+        ALIAS_INGESTED, ///< Content identical to an indexed file, so we just text_ingested metadata and the alias
         SKIPPED_ERROR_INDEXING, ///< File was skipped because index engine had problems
         SKIPPED_ERROR_TEXTEXTRACT, ///< File was skipped because of text extraction issues
         SKIPPED_ERROR_IO    ///< File was skipped because of IO issues reading it
     };
     private static final Map<Long, Map<Long, IngestStatus>> ingestStatus = new HashMap<>(); //guarded by itself
+    private static final Map<Long, JobStartStats> statsAtJobStart = new ConcurrentHashMap<>();
+
+    /**
+     * The indexing statistics when an ingest job started, to report the
+     * statistics of the job when it finishes.
+     */
+    private static final class JobStartStats {
+
+        private final Ingester.CommitStats commitStats;
+        private final long indexedChars;
+        private final long startNanos;
+
+        private JobStartStats(Ingester ingester) {
+            this.commitStats = ingester.getCommitStats();
+            this.indexedChars = ingester.getIndexedChars();
+            this.startNanos = System.nanoTime();
+        }
+    }
 
     /**
      * Records the ingest status for a given file for a given ingest job. Used
@@ -228,6 +249,7 @@ public void startUp(IngestJobContext context) throws IngestModuleException {
                             NbBundle.getMessage(this.getClass(), "KeywordSearchIngestModule.init.onlyIdxKwSkipMsg")));
                 }
             }
+            statsAtJobStart.put(jobId, new JobStartStats(Ingester.getDefault()));
         }
 
         //initialize extractors
@@ -242,6 +264,11 @@ public void startUp(IngestJobContext context) throws IngestModuleException {
 
         indexer = new Indexer();
         initialized = true;
+
+        // Register with the search runner before any text is indexed, so that
+        // literal keywords are matched as the text is indexed
+        List<String> keywordListNames = settings.getNamesOfEnabledKeyWordLists();
+        SearchRunner.getInstance().startJob(context, keywordListNames);
     }
 
     @Override
@@ -273,16 +300,6 @@ public ProcessResult process(AbstractFile abstractFile) {
         }
         indexer.indexFile(abstractFile, true);
 
-        // Start searching if it hasn't started already
-        if (!startedSearching) {
-            if (context.fileIngestIsCancelled()) {
-                return ProcessResult.OK;
-            }
-            List<String> keywordListNames = settings.getNamesOfEnabledKeyWordLists();
-            SearchRunner.getInstance().startJob(context, keywordListNames);
-            startedSearching = true;
-        }
-
         return ProcessResult.OK;
     }
 
@@ -301,6 +318,7 @@ public void shutDown() {
         if (context.fileIngestIsCancelled()) {
             logger.log(Level.INFO, "Keyword search ingest module instance {0} stopping search job due to ingest cancellation", instanceNum); //NON-NLS
             SearchRunner.getInstance().stopJob(jobId);
+            statsAtJobStart.remove(jobId);
             cleanup();
             return;
         }
@@ -319,9 +337,14 @@ public void shutDown() {
                 logger.log(Level.SEVERE, "Error executing Solr queries to check number of indexed files and file chunks", ex); //NON-NLS
             }
             postIndexSummary();
+            String tikaSummary = TikaParsePool.getSummaryIfCreated();
+            if (tikaSummary != null) {
+                logger.log(Level.INFO, tikaSummary);
+            }
             synchronized (ingestStatus) {
                 ingestStatus.remove(jobId);
             }
+            statsAtJobStart.remove(jobId);
         }
 
         cleanup();
@@ -338,12 +361,47 @@ private void cleanup() {
         initialized = false;
     }
 
+    /**
+     * Adds the storage profile and size of the text index and the rate text
+     * was indexed at during the job to the index summary, so that the storage
+     * profiles can be compared.
+     *
+     * @param msg          The summary table
+     * @param statsAtStart The indexing statistics when the job started
+     */
+    private void appendIndexStorageSummary(StringBuilder msg, JobStartStats statsAtStart) {
+        Index index;
+        try {
+            index = KeywordSearch.getServer().getIndexInfo();
+        } catch (NoOpenCoreException ex) {
+            logger.log(Level.WARNING, "No open core, not reporting text index size", ex); //NON-NLS
+            return;
+        }
+        long indexBytes = 0;
+        for (int shard = 0; shard < index.getShardCount(); shard++) {
+            File shardDir = new File(index.getShardIndexPath(shard));
+            if (shardDir.isDirectory()) {
+                indexBytes += FileUtils.sizeOfDirectory(shardDir);
+            }
+        }
+        // also shared by concurrent jobs
+        long chars = Ingester.getDefault().getIndexedChars() - statsAtStart.indexedChars;
+        double seconds = Math.max(1, System.nanoTime() - statsAtStart.startNanos) / 1e9;
+        msg.append("<tr><td>").append(NbBundle.getMessage(this.getClass(), "KeywordSearchIngestModule.postIndexSummary.indexSizeLbl")).append("</td><td>") //NON-NLS
+                .append(NbBundle.getMessage(this.getClass(), "KeywordSearchIngestModule.postIndexSummary.indexSizeVal",
+                        indexBytes / (1024 * 1024), index.getStorageProfile().name())).append("</td></tr>"); //NON-NLS
+        msg.append("<tr><td>").append(NbBundle.getMessage(this.getClass(), "KeywordSearchIngestModule.postIndexSummary.indexRateLbl")).append("</td><td>") //NON-NLS
+                .append(NbBundle.getMessage(this.getClass(), "KeywordSearchIngestModule.postIndexSummary.indexRateVal",
+                        Math.round(chars / seconds / 1024))).append("</td></tr>"); //NON-NLS
+    }
+
     /**
      * Posts inbox message with summary of text_ingested files
      */
     private void postIndexSummary() {
         int text_ingested = 0;
         int metadata_ingested = 0;
+        int alias_ingested = 0;
         int strings_ingested = 0;
         int error_text = 0;
         int error_index = 0;
@@ -354,6 +412,14 @@ private void postIndexSummary() {
             if (ingestStatusForJob == null) {
                 return;
             }
+            // The final commit has sent every queued document, so files whose
+            // documents failed to be sent after they were queued are known
+            Ingester ingester = Ingester.getDefault();
+            for (Map.Entry<Long, IngestStatus> entry : ingestStatusForJob.entrySet()) {
+                if (ingester.takeIndexingFailure(entry.getKey())) {
+                    entry.setValue(IngestStatus.SKIPPED_ERROR_INDEXING);
+                }
+            }
             for (IngestStatus s : ingestStatusForJob.values()) {
                 switch (s) {
                     case TEXT_INGESTED:
@@ -365,6 +431,9 @@ private void postIndexSummary() {
                     case STRINGS_INGESTED:
                         strings_ingested++;
                         break;
+                    case ALIAS_INGESTED:
+                        alias_ingested++;
+                        break;
                     case SKIPPED_ERROR_TEXTEXTRACT:
                         error_text++;
                         break;
@@ -384,9 +453,24 @@ private void postIndexSummary() {
         msg.append("<table border=0><tr><td>").append(NbBundle.getMessage(this.getClass(), "KeywordSearchIngestModule.postIndexSummary.knowFileHeaderLbl")).append("</td><td>").append(text_ingested).append("</td></tr>"); //NON-NLS
         msg.append("<tr><td>").append(NbBundle.getMessage(this.getClass(), "KeywordSearchIngestModule.postIndexSummary.fileGenStringsHead")).append("</td><td>").append(strings_ingested).append("</td></tr>"); //NON-NLS
         msg.append("<tr><td>").append(NbBundle.getMessage(this.getClass(), "KeywordSearchIngestModule.postIndexSummary.mdOnlyLbl")).append("</td><td>").append(metadata_ingested).append("</td></tr>"); //NON-NLS
+        if (ContentAliases.isEnabled()) {
+            msg.append("<tr><td>").append(NbBundle.getMessage(this.getClass(), "KeywordSearchIngestModule.postIndexSummary.aliasLbl")).append("</td><td>").append(alias_ingested).append("</td></tr>"); //NON-NLS
+        }
         msg.append("<tr><td>").append(NbBundle.getMessage(this.getClass(), "KeywordSearchIngestModule.postIndexSummary.idxErrLbl")).append("</td><td>").append(error_index).append("</td></tr>"); //NON-NLS
         msg.append("<tr><td>").append(NbBundle.getMessage(this.getClass(), "KeywordSearchIngestModule.postIndexSummary.errTxtLbl")).append("</td><td>").append(error_text).append("</td></tr>"); //NON-NLS
         msg.append("<tr><td>").append(NbBundle.getMessage(this.getClass(), "KeywordSearchIngestModule.postIndexSummary.errIoLbl")).append("</td><td>").append(error_io).append("</td></tr>"); //NON-NLS
+        JobStartStats statsAtStart = statsAtJobStart.get(jobId);
+        if (statsAtStart != null) {
+            // commits are shared by concurrent jobs, so these include the commits done for them
+            Ingester.CommitStats commitStats = Ingester.getDefault().getCommitStats().since(statsAtStart.commitStats);
+            msg.append("<tr><td>").append(NbBundle.getMessage(this.getClass(), "KeywordSearchIngestModule.postIndexSummary.commitsLbl")).append("</td><td>") //NON-NLS
+                    .append(NbBundle.getMessage(this.getClass(), "KeywordSearchIngestModule.postIndexSummary.commitsVal",
+                            commitStats.getHardCommits(), commitStats.getSoftCommits(), commitStats.getSkippedCommits())).append("</td></tr>"); //NON-NLS
+            msg.append("<tr><td>").append(NbBundle.getMessage(this.getClass(), "KeywordSearchIngestModule.postIndexSummary.commitTimeLbl")).append("</td><td>") //NON-NLS
+                    .append(NbBundle.getMessage(this.getClass(), "KeywordSearchIngestModule.postIndexSummary.commitTimeVal",
+                            commitStats.getAverageCommitMs(), commitStats.getLongestCommitMs())).append("</td></tr>"); //NON-NLS
+            appendIndexStorageSummary(msg, statsAtStart);
+        }
         msg.append("</table>"); //NON-NLS
         String indexStats = msg.toString();
         logger.log(Level.INFO, "Keyword Indexing Completed: {0}", indexStats); //NON-NLS
@@ -457,6 +541,7 @@ private boolean extractStringsAndIndex(AbstractFile aFile) {
                 }
                 if (Ingester.getDefault().indexText(stringExtractor, aFile, KeywordSearchIngestModule.this.context)) {
                     putIngestStatus(jobId, aFile.getId(), IngestStatus.STRINGS_INGESTED);
+                    addCanonicalFile(aFile);
                     return true;
                 } else {
                     logger.log(Level.WARNING, "Failed to extract strings and ingest, file ''{0}'' (id: {1}).", new Object[]{aFile.getName(), aFile.getId()});  //NON-NLS
@@ -470,6 +555,49 @@ private boolean extractStringsAndIndex(AbstractFile aFile) {
             }
         }
 
+        /**
+         * Indexes a file as an alias of an indexed file with the same MD5 hash,
+         * if there is one, instead of extracting and indexing its text again.
+         *
+         * @param aFile File to index
+         *
+         * @return true if the file was indexed as an alias
+         */
+        private boolean indexAlias(AbstractFile aFile) {
+            String md5 = aFile.getMd5Hash();
+            if (!ContentAliases.isEnabled() || md5 == null) {
+                return false;
+            }
+            try {
+                Long canonicalId = ContentAliases.getCanonicalId(md5);
+                if (canonicalId == null || canonicalId == aFile.getId()) {
+                    return false;
+                }
+                ingester.indexAlias(aFile, canonicalId);
+                putIngestStatus(jobId, aFile.getId(), IngestStatus.ALIAS_INGESTED);
+                return true;
+            } catch (KeywordSearchModuleException | NoOpenCoreException ex) {
+                logger.log(Level.WARNING, "Unable to look up indexed files with the same content as file: " + aFile.getId(), ex); //NON-NLS
+                return false;
+            } catch (IngesterException ex) {
+                putIngestStatus(jobId, aFile.getId(), IngestStatus.SKIPPED_ERROR_INDEXING);
+                logger.log(Level.WARNING, "Unable to index alias for file: " + aFile.getId(), ex); //NON-NLS
+                return true;
+            }
+        }
+
+        /**
+         * Records that the text of a file has been indexed, so that files with
+         * the same content can be indexed as aliases of it.
+         *
+         * @param aFile The file
+         */
+        private void addCanonicalFile(AbstractFile aFile) {
+            if (ContentAliases.isEnabled() && aFile.getMd5Hash() != null) {
+                ContentAliases.addCanonicalId(aFile.getMd5Hash(), aFile.getId());
+            }
+        }
+
         /**
          * Adds the file to the index. Detects file type, calls extractors, etc.
          *
@@ -529,6 +657,10 @@ private void indexFile(AbstractFile aFile, boolean indexContent) {
                 return;
             }
 
+            if (indexAlias(aFile)) {
+                return;
+            }
+
             boolean wasTextAdded = false;
 
             //extract text with one of the extractors, divide into chunks and index with Solr
@@ -546,6 +678,7 @@ private void indexFile(AbstractFile aFile, boolean indexContent) {
                     putIngestStatus(jobId, aFile.getId(), IngestStatus.SKIPPED_ERROR_TEXTEXTRACT);
                 } else {
                     putIngestStatus(jobId, aFile.getId(), IngestStatus.TEXT_INGESTED);
+                    addCanonicalFile(aFile);
                     wasTextAdded = true;
                 }
 
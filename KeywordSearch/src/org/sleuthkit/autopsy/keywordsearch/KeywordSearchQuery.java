@@ -18,6 +18,7 @@
  */
 package org.sleuthkit.autopsy.keywordsearch;
 
+import java.util.List;
 import org.sleuthkit.datamodel.BlackboardArtifact;
 import org.sleuthkit.datamodel.Content;
 
@@ -48,6 +49,24 @@ interface KeywordSearchQuery {
      */
     QueryResults performQuery() throws KeywordSearchModuleException, NoOpenCoreException;
 
+    /**
+     * Execute the query and return the results for one page of the matching
+     * Solr documents. Queries that cannot page through their results return
+     * all of them as a single page.
+     *
+     * @param cursorMark The cursor mark of the page returned with the
+     *                   previous page, or null for the first page
+     *
+     * @throws KeywordSearchModuleException error while executing Solr query
+     * @throws NoOpenCoreException          if query failed due to server error
+     * @return The page
+     */
+    default QueryResultsPage performQueryPage(String cursorMark) throws KeywordSearchModuleException, NoOpenCoreException {
+        QueryResults results = performQuery();
+        int totalHits = results.getKeywords().stream().mapToInt(keyword -> results.getResults(keyword).size()).sum();
+        return new QueryResultsPage(results, null, totalHits, totalHits);
+    }
+
     /**
      * Set an optional filter to narrow down the search Adding multiple filters
      * ANDs them together. For OR, add multiple ids to a single filter
@@ -56,6 +75,13 @@ interface KeywordSearchQuery {
      */
     void addFilter(KeywordQueryFilter filter);
 
+    /**
+     * Get the filters that have been added to the query.
+     *
+     * @return The filters
+     */
+    List<KeywordQueryFilter> getFilters();
+
     /**
      * Set an optional SOLR field to narrow down the search
      *
@@ -23,10 +23,14 @@
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.logging.Level;
 import java.util.stream.Collectors;
@@ -80,10 +84,11 @@ class KeywordSearchResultFactory extends ChildFactory<KeyValue> {
                             .map(Object::toString))
                     .collect(Collectors.toList());
 
-    private final Collection<QueryRequest> queryRequests;
+    private final Iterator<QueryRequest> queryRequestIterator;
+    private PagedSearch currentSearch = null;
 
     KeywordSearchResultFactory(Collection<QueryRequest> queryRequests) {
-        this.queryRequests = queryRequests;
+        this.queryRequestIterator = queryRequests.iterator();
     }
 
     /**
@@ -91,18 +96,26 @@ class KeywordSearchResultFactory extends ChildFactory<KeyValue> {
      * properties are displayed as columns (since we are doing lazy child Node
      * load we need to preinitialize properties when sending parent Node)
      *
+     * The keys are created one page of search results at a time. Returning
+     * false after each page has the children of the result node updated with
+     * the keys created so far, and this method called again for the next page.
+     *
      * @param toPopulate property set map for a Node
      */
     @Override
     protected boolean createKeys(List<KeyValue> toPopulate) {
 
-        for (QueryRequest queryRequest : queryRequests) {
+        if (currentSearch == null) {
+            if (!queryRequestIterator.hasNext()) {
+                return true;
+            }
+            QueryRequest queryRequest = queryRequestIterator.next();
             /**
              * Check the validity of the requested query.
              */
             if (!queryRequest.getQuery().validate()) {
                 //TODO mark the particular query node RED
-                break;
+                return true;
             }
 
             //JMTODO: It looks like this map is not actually used for anything...
@@ -117,109 +130,265 @@ protected boolean createKeys(List<KeyValue> toPopulate) {
             map.put(TSK_KEYWORD.getDisplayName(), queryRequest.getQueryString());
             map.put(TSK_KEYWORD_REGEXP.getDisplayName(), !queryRequest.getQuery().isLiteral());
 
-            createFlatKeys(queryRequest.getQuery(), toPopulate);
+            currentSearch = new PagedSearch(queryRequest.getQuery());
         }
 
-        return true;
+        if (currentSearch.addNextPage(toPopulate)) {
+            if (Thread.interrupted()) {
+                // the result node was closed
+                currentSearch.cancel();
+                return true;
+            }
+            // more pages to come for this query
+            return false;
+        }
+        currentSearch = null;
+        return !queryRequestIterator.hasNext();
     }
 
     /**
-     *
-     * @param queryRequest
-     * @param toPopulate
-     *
-     * @return
+     * The state of an ad hoc search whose results are turned into keys one
+     * page at a time.
      */
-    @NbBundle.Messages({"KeywordSearchResultFactory.query.exception.msg=Could not perform the query "})
-    private boolean createFlatKeys(KeywordSearchQuery queryRequest, List<KeyValue> toPopulate) {
+    private final class PagedSearch {
+
+        private final KeywordSearchQuery queryRequest;
+        // the chunks with hits in every object, without snippets, keyed by
+        // object id, replaced rather than changed when more hits are found so
+        // that nodes can read them at any time
+        private final Map<Long, QueryResults> hitsByObject = new ConcurrentHashMap<>();
+        // the first hit for each keyword in each object, keyed by object id,
+        // which is all that is written to the blackboard at the end of the search
+        private final Map<Keyword, Map<Long, KeywordHit>> blackboardHits = new HashMap<>();
+        private final ProgressHandle progress;
+        private String cursorMark = null;
+        private long documentsSearched = 0;
+        private int hitNumber = 0;
+        private boolean progressStarted = false;
+
+        @NbBundle.Messages({"# {0} - keyword", "KeywordSearchResultFactory.progress.searching=Searching for {0}"})
+        private PagedSearch(KeywordSearchQuery queryRequest) {
+            this.queryRequest = queryRequest;
+            this.progress = ProgressHandle.createHandle(Bundle.KeywordSearchResultFactory_progress_searching(queryRequest.getQueryString()));
+        }
 
         /**
-         * Execute the requested query.
+         * Run the query for the next page of results and add a key for each
+         * object with hits that has not had one added yet.
+         *
+         * @param toPopulate The keys
+         *
+         * @return true if there are more pages
          */
-        QueryResults queryResults;
-        try {
-            queryResults = queryRequest.performQuery();
-        } catch (KeywordSearchModuleException | NoOpenCoreException ex) {
-            logger.log(Level.SEVERE, "Could not perform the query " + queryRequest.getQueryString(), ex); //NON-NLS
-            MessageNotifyUtil.Notify.error(Bundle.KeywordSearchResultFactory_query_exception_msg() + queryRequest.getQueryString(), ex.getCause().getMessage());
-            return false;
-        }
-        SleuthkitCase tskCase;
-        try {
-            tskCase = Case.getCurrentCase().getSleuthkitCase();
-        } catch (IllegalStateException ex) {
-            logger.log(Level.SEVERE, "There was no case open.", ex); //NON-NLS
-            return false;
-        }
-
-        int hitNumber = 0;
-        List<KeyValueQueryContent> tempList = new ArrayList<>();
-        for (KeywordHit hit : getOneHitPerObject(queryResults)) {
-
+        @NbBundle.Messages({"KeywordSearchResultFactory.query.exception.msg=Could not perform the query ",
+            "# {0} - number of documents searched", "# {1} - number of matching documents",
+            "KeywordSearchResultFactory.progress.documents={0} of {1} matching documents"})
+        private boolean addNextPage(List<KeyValue> toPopulate) {
             /**
-             * Get file properties.
+             * Execute the requested query.
              */
-            Map<String, Object> properties = new LinkedHashMap<>();
-            Content content;
-            String contentName;
+            QueryResultsPage page;
             try {
-                content = tskCase.getContentById(hit.getContentID());
-                if (content == null) {
-                    logger.log(Level.SEVERE, "There was a error getting content by id."); //NON-NLS
-                    return false;
-                }
-            } catch (TskCoreException ex) {
-                logger.log(Level.SEVERE, "There was a error getting content by id.", ex); //NON-NLS
+                // repeated searches of an unchanged index are answered from the cache
+                page = QueryResultsCache.getPage(queryRequest, cursorMark, () -> {
+                    QueryResultsPage queryPage = queryRequest.performQueryPage(cursorMark);
+                    if (ContentAliases.isEnabled()) {
+                        ContentAliases.addAliasHits(queryPage.getResults());
+                    }
+                    return queryPage;
+                });
+            } catch (KeywordSearchModuleException | NoOpenCoreException ex) {
+                logger.log(Level.SEVERE, "Could not perform the query " + queryRequest.getQueryString(), ex); //NON-NLS
+                MessageNotifyUtil.Notify.error(Bundle.KeywordSearchResultFactory_query_exception_msg() + queryRequest.getQueryString(), ex.getCause().getMessage());
+                finish(toPopulate, true);
                 return false;
             }
+            cursorMark = page.getNextCursorMark();
+
+            // the total number of matching documents is known once the first
+            // page is in
+            int totalUnits = (int) Math.min(Math.max(page.getTotalDocuments(), 1), Integer.MAX_VALUE);
+            documentsSearched += page.getPageDocuments();
+            if (!progressStarted) {
+                progress.start(totalUnits);
+                progressStarted = true;
+            }
+            progress.progress(Bundle.KeywordSearchResultFactory_progress_documents(documentsSearched, page.getTotalDocuments()),
+                    (int) Math.min(documentsSearched, totalUnits));
 
-            contentName = content.getName();
-            if (content instanceof AbstractFile) {
-                AbstractFsContentNode.fillPropertyMap(properties, (AbstractFile) content);
-            } else {
-                properties.put(LOCATION.toString(), contentName);
+            if (!addKeys(page.getResults(), toPopulate)) {
+                finish(toPopulate, true);
+                return false;
+            }
+            if (page.isLastPage()) {
+                finish(toPopulate, false);
+                return false;
             }
+            return true;
+        }
 
-            /**
-             * Add a snippet property, if available.
-             */
-            if (hit.hasSnippet()) {
-                properties.put(TSK_KEYWORD_PREVIEW.getDisplayName(), hit.getSnippet());
+        private boolean addKeys(QueryResults pageResults, List<KeyValue> toPopulate) {
+            SleuthkitCase tskCase;
+            try {
+                tskCase = Case.getCurrentCase().getSleuthkitCase();
+            } catch (IllegalStateException ex) {
+                logger.log(Level.SEVERE, "There was no case open.", ex); //NON-NLS
+                return false;
             }
 
-            String hitName;
-            BlackboardArtifact artifact = null;
-            if (hit.isArtifactHit()) {
+            addBlackboardHits(pageResults);
+            Set<Long> newObjectIds = addObjectHits(pageResults);
+
+            List<KeyValueQueryContent> tempList = new ArrayList<>();
+            for (KeywordHit hit : getOneHitPerObject(pageResults)) {
+                if (!newObjectIds.contains(hit.getSolrObjectId())) {
+                    // a key was added for the object with an earlier page
+                    continue;
+                }
+
+                /**
+                 * Get file properties.
+                 */
+                Map<String, Object> properties = new LinkedHashMap<>();
+                Content content;
+                String contentName;
                 try {
-                    artifact = tskCase.getBlackboardArtifact(hit.getArtifactID().get());
-                    hitName = artifact.getDisplayName() + " Artifact"; //NON-NLS
+                    content = tskCase.getContentById(hit.getContentID());
+                    if (content == null) {
+                        logger.log(Level.SEVERE, "There was a error getting content by id."); //NON-NLS
+                        return false;
+                    }
                 } catch (TskCoreException ex) {
-                    logger.log(Level.SEVERE, "Error getting blckboard artifact by id", ex);
+                    logger.log(Level.SEVERE, "There was a error getting content by id.", ex); //NON-NLS
                     return false;
                 }
-            } else {
-                hitName = contentName;
+
+                contentName = content.getName();
+                if (content instanceof AbstractFile) {
+                    AbstractFsContentNode.fillPropertyMap(properties, (AbstractFile) content);
+                } else {
+                    properties.put(LOCATION.toString(), contentName);
+                }
+
+                /**
+                 * Add a snippet property, if available.
+                 */
+                if (hit.hasSnippet()) {
+                    properties.put(TSK_KEYWORD_PREVIEW.getDisplayName(), hit.getSnippet());
+                }
+
+                String hitName;
+                BlackboardArtifact artifact = null;
+                if (hit.isArtifactHit()) {
+                    try {
+                        artifact = tskCase.getBlackboardArtifact(hit.getArtifactID().get());
+                        hitName = artifact.getDisplayName() + " Artifact"; //NON-NLS
+                    } catch (TskCoreException ex) {
+                        logger.log(Level.SEVERE, "Error getting blckboard artifact by id", ex);
+                        return false;
+                    }
+                } else {
+                    hitName = contentName;
+                }
+                hitNumber++;
+                tempList.add(new KeyValueQueryContent(hitName, properties, hitNumber, hit.getSolrObjectId(), content, artifact, queryRequest, hitsByObject));
             }
-            hitNumber++;
-            tempList.add(new KeyValueQueryContent(hitName, properties, hitNumber, hit.getSolrObjectId(), content, artifact, queryRequest, queryResults));
 
+            // Add all the nodes of the page to toPopulate at once. Minimizes
+            // node creation EDT threads, which can slow and/or hang the UI on
+            // large queries.
+            toPopulate.addAll(tempList);
+            return true;
         }
 
-        if (hitNumber == 0) {
-            toPopulate.add(new KeyValue("This KeyValue Is Empty", 0));
-        } else {
-            // Add all the nodes to toPopulate at once. Minimizes node creation
-            // EDT threads, which can slow and/or hang the UI on large queries.
-            toPopulate.addAll(tempList);
+        /**
+         * Keep the first hit for each keyword in each object in a page, as
+         * only one hit per keyword per object is written to the blackboard.
+         *
+         * @param pageResults The hits in the page
+         */
+        private void addBlackboardHits(QueryResults pageResults) {
+            for (Keyword keyword : pageResults.getKeywords()) {
+                Map<Long, KeywordHit> keywordHits = blackboardHits.computeIfAbsent(keyword, k -> new HashMap<>());
+                for (KeywordHit hit : pageResults.getResults(keyword)) {
+                    KeywordHit firstHit = keywordHits.get(hit.getSolrObjectId());
+                    if (firstHit == null || hit.getChunkId() < firstHit.getChunkId()) {
+                        keywordHits.put(hit.getSolrObjectId(), hit);
+                    }
+                }
+            }
         }
 
-        //write to bb
-        //cannot reuse snippet in BlackboardResultWriter
-        //because for regex searches in UI we compress results by showing a content per regex once (even if multiple term hits)
-        //whereas in bb we write every hit per content separately
-        new BlackboardResultWriter(queryResults, queryRequest.getKeywordList().getName()).execute();
+        /**
+         * Add the hits in a page to the hits of each object. The content
+         * viewer only needs to know which chunks have hits for which terms, so
+         * the snippets are dropped and each chunk is kept once per keyword.
+         *
+         * @param pageResults The hits in the page
+         *
+         * @return The ids of the objects that had no hits before
+         */
+        private Set<Long> addObjectHits(QueryResults pageResults) {
+            Map<Long, QueryResults> pageHitsByObject = new HashMap<>();
+            for (Keyword keyword : pageResults.getKeywords()) {
+                Set<String> keywordChunks = new HashSet<>();
+                for (KeywordHit hit : pageResults.getResults(keyword)) {
+                    if (!keywordChunks.add(hit.getSolrDocumentId())) {
+                        continue;
+                    }
+                    QueryResults objectHits = pageHitsByObject.computeIfAbsent(hit.getSolrObjectId(), id -> new QueryResults(queryRequest));
+                    if (objectHits.getResults(keyword) == null) {
+                        objectHits.addResult(keyword, new ArrayList<>());
+                    }
+                    objectHits.getResults(keyword).add(new KeywordHit(hit.getSolrDocumentId(), null, hit.getHit()));
+                }
+            }
+            Set<Long> newObjectIds = new HashSet<>();
+            for (Map.Entry<Long, QueryResults> entry : pageHitsByObject.entrySet()) {
+                QueryResults previousHits = hitsByObject.get(entry.getKey());
+                if (previousHits == null) {
+                    newObjectIds.add(entry.getKey());
+                    hitsByObject.put(entry.getKey(), entry.getValue());
+                } else {
+                    QueryResults objectHits = new QueryResults(queryRequest);
+                    objectHits.addResults(previousHits);
+                    objectHits.addResults(entry.getValue());
+                    hitsByObject.put(entry.getKey(), objectHits);
+                }
+            }
+            return newObjectIds;
+        }
+
+        /**
+         * Stop the search early.
+         */
+        private void cancel() {
+            progress.finish();
+        }
+
+        private void finish(List<KeyValue> toPopulate, boolean failed) {
+            if (progressStarted) {
+                progress.finish();
+            }
+            if (failed) {
+                return;
+            }
+            if (hitNumber == 0) {
+                toPopulate.add(new KeyValue("This KeyValue Is Empty", 0));
+                return;
+            }
 
-        return true;
+            //write to bb
+            //cannot reuse snippet in BlackboardResultWriter
+            //because for regex searches in UI we compress results by showing a content per regex once (even if multiple term hits)
+            //whereas in bb we write every hit per content separately
+            QueryResults results = new QueryResults(queryRequest);
+            for (Map.Entry<Keyword, Map<Long, KeywordHit>> entry : blackboardHits.entrySet()) {
+                results.addResult(entry.getKey(), new ArrayList<>(entry.getValue().values()));
+            }
+            blackboardHits.clear();
+            new BlackboardResultWriter(results, queryRequest.getKeywordList().getName()).execute();
+        }
     }
 
     /**
@@ -276,7 +445,7 @@ final class AdHocQueryResult {
         private final long solrObjectId;
         private final Content content;
         private final BlackboardArtifact artifact;
-        private final QueryResults results;
+        private final KeyValueQueryContent key;
 
         /**
          * Instantiate a AdHocQueryResult object.
@@ -291,7 +460,7 @@ final class AdHocQueryResult {
             this.solrObjectId = key.getSolrObjectId();
             this.content = key.getContent();
             this.artifact = key.getArtifact();
-            this.results = key.getHits();
+            this.key = key;
         }
 
         /**
@@ -327,12 +496,13 @@ BlackboardArtifact getArtifact() {
         }
 
         /**
-         * Get the query results.
+         * Get the query results for the object in which the hit was found.
+         * More results for the object may be added while the search goes on.
          *
          * @return The query results.
          */
         QueryResults getResults() {
-            return results;
+            return key.getHits();
         }
     }
 
@@ -346,7 +516,7 @@ class KeyValueQueryContent extends KeyValue {
 
         private final Content content;
         private final BlackboardArtifact artifact;
-        private final QueryResults hits;
+        private final Map<Long, QueryResults> hitsByObject;
         private final KeywordSearchQuery query;
 
         /**
@@ -361,15 +531,16 @@ class KeyValueQueryContent extends KeyValue {
          * @param content      The content object.
          * @param artifact     The blackboard artifact.
          * @param query        Query used in search
-         * @param hits         Full set of search results (for all files! @@@)
+         * @param hitsByObject The search results found so far, keyed by object
+         *                     id
          */
-        KeyValueQueryContent(String name, Map<String, Object> map, int id, long solrObjectId, Content content, BlackboardArtifact artifact, KeywordSearchQuery query, QueryResults hits) {
+        KeyValueQueryContent(String name, Map<String, Object> map, int id, long solrObjectId, Content content, BlackboardArtifact artifact, KeywordSearchQuery query, Map<Long, QueryResults> hitsByObject) {
             super(name, map, id);
             this.solrObjectId = solrObjectId;
             this.content = content;
             this.artifact = artifact;
 
-            this.hits = hits;
+            this.hitsByObject = hitsByObject;
             this.query = query;
         }
 
@@ -385,8 +556,11 @@ long getSolrObjectId() {
             return solrObjectId;
         }
 
+        /**
+         * @return the search results for the object found so far
+         */
         QueryResults getHits() {
-            return hits;
+            return hitsByObject.get(solrObjectId);
         }
 
         KeywordSearchQuery getQuery() {
@@ -39,6 +39,16 @@ class KeywordSearchSettings {
     static final String PROPERTIES_SCRIPTS = NbBundle.getMessage(KeywordSearchSettings.class, "KeywordSearchSettings.propertiesScripts.text", MODULE_NAME);
     static final String SHOW_SNIPPETS = "showSnippets"; //NON-NLS
     static final boolean DEFAULT_SHOW_SNIPPETS = true;
+    static final String STORE_EXTRACTED_TEXT = "StoreExtractedText"; //NON-NLS
+    static final boolean DEFAULT_STORE_EXTRACTED_TEXT = false;
+    static final String EMBEDDED_SOLR = "EmbeddedSolr"; //NON-NLS
+    static final boolean DEFAULT_EMBEDDED_SOLR = false;
+    static final String INDEX_DUPLICATE_CONTENT_ONCE = "IndexDuplicateContentOnce"; //NON-NLS
+    static final boolean DEFAULT_INDEX_DUPLICATE_CONTENT_ONCE = false;
+    static final String INDEX_SHARDS = "IndexShards"; //NON-NLS
+    static final String INDEX_SHARD_ROUTING = "IndexShardRouting"; //NON-NLS
+    static final String INDEX_SHARD_HOSTS = "IndexShardHosts"; //NON-NLS
+    static final String INDEX_STORAGE_PROFILE = "IndexStorageProfile"; //NON-NLS
     private static boolean skipKnown = true;
     private static final Logger logger = Logger.getLogger(KeywordSearchSettings.class.getName());
     private static UpdateFrequency UpdateFreq = UpdateFrequency.DEFAULT;
@@ -140,6 +150,151 @@ static boolean getShowSnippets() {
         }
     }
 
+    static void setStoreExtractedText(boolean storeExtractedText) {
+        ModuleSettings.setConfigSetting(PROPERTIES_OPTIONS, STORE_EXTRACTED_TEXT, Boolean.toString(storeExtractedText));
+    }
+
+    /**
+     * Gets whether extracted text is saved in the case directory so that it
+     * can be re-indexed and displayed without extracting it again.
+     *
+     * @return true if extracted text is stored
+     */
+    static boolean getStoreExtractedText() {
+        if (ModuleSettings.settingExists(PROPERTIES_OPTIONS, STORE_EXTRACTED_TEXT)) {
+            return Boolean.parseBoolean(ModuleSettings.getConfigSetting(PROPERTIES_OPTIONS, STORE_EXTRACTED_TEXT));
+        } else {
+            return DEFAULT_STORE_EXTRACTED_TEXT;
+        }
+    }
+
+    static void setEmbeddedSolr(boolean embeddedSolr) {
+        ModuleSettings.setConfigSetting(PROPERTIES_OPTIONS, EMBEDDED_SOLR, Boolean.toString(embeddedSolr));
+    }
+
+    /**
+     * Gets whether single-user cases are indexed by a Solr server running
+     * inside the application instead of a separate Solr process. Takes effect
+     * when the application is restarted.
+     *
+     * @return true if the embedded Solr server is used
+     */
+    static boolean getEmbeddedSolr() {
+        if (ModuleSettings.settingExists(PROPERTIES_OPTIONS, EMBEDDED_SOLR)) {
+            return Boolean.parseBoolean(ModuleSettings.getConfigSetting(PROPERTIES_OPTIONS, EMBEDDED_SOLR));
+        } else {
+            return DEFAULT_EMBEDDED_SOLR;
+        }
+    }
+
+    static void setIndexDuplicateContentOnce(boolean indexDuplicateContentOnce) {
+        ModuleSettings.setConfigSetting(PROPERTIES_OPTIONS, INDEX_DUPLICATE_CONTENT_ONCE, Boolean.toString(indexDuplicateContentOnce));
+    }
+
+    /**
+     * Gets whether the text of files with the same MD5 hash is indexed only
+     * once, with the other files recorded as aliases of the indexed one.
+     *
+     * @return true if duplicate content is indexed once
+     */
+    static boolean getIndexDuplicateContentOnce() {
+        if (ModuleSettings.settingExists(PROPERTIES_OPTIONS, INDEX_DUPLICATE_CONTENT_ONCE)) {
+            return Boolean.parseBoolean(ModuleSettings.getConfigSetting(PROPERTIES_OPTIONS, INDEX_DUPLICATE_CONTENT_ONCE));
+        } else {
+            return DEFAULT_INDEX_DUPLICATE_CONTENT_ONCE;
+        }
+    }
+
+    /**
+     * Gets a positive integer tuning option from
+     * KeywordSearch_Options.properties.
+     *
+     * @param key          Option name
+     * @param defaultValue Value returned if the option is missing or invalid
+     *
+     * @return The option value
+     */
+    static int getIntOption(String key, int defaultValue) {
+        String value = ModuleSettings.getConfigSetting(PROPERTIES_OPTIONS, key);
+        if (value != null) {
+            try {
+                int intValue = Integer.parseInt(value.trim());
+                if (intValue > 0) {
+                    return intValue;
+                }
+            } catch (NumberFormatException ex) {
+                logger.log(Level.WARNING, "Invalid value {0} for property {1}, using default.", new Object[]{value, key}); //NON-NLS
+            }
+        }
+        return defaultValue;
+    }
+
+    /**
+     * Gets the number of Solr cores the text index of a new multi-user case is
+     * split over.
+     *
+     * @return The number of shards, 1 for an index that is not split
+     */
+    static int getIndexShardCount() {
+        return getIntOption(INDEX_SHARDS, 1);
+    }
+
+    /**
+     * Gets how the documents of a new sharded index are assigned to shards.
+     *
+     * @return The shard routing
+     */
+    static Index.ShardRouting getIndexShardRouting() {
+        String value = ModuleSettings.getConfigSetting(PROPERTIES_OPTIONS, INDEX_SHARD_ROUTING);
+        if (value != null) {
+            try {
+                return Index.ShardRouting.valueOf(value.trim().toUpperCase());
+            } catch (IllegalArgumentException ex) {
+                logger.log(Level.WARNING, "Invalid value {0} for property {1}, using default.", new Object[]{value, INDEX_SHARD_ROUTING}); //NON-NLS
+            }
+        }
+        return Index.ShardRouting.OBJECT_ID;
+    }
+
+    /**
+     * Gets which fields of the text index of a new case are stored.
+     *
+     * @return The storage profile
+     */
+    static Index.StorageProfile getIndexStorageProfile() {
+        String value = ModuleSettings.getConfigSetting(PROPERTIES_OPTIONS, INDEX_STORAGE_PROFILE);
+        if (value != null) {
+            try {
+                return Index.StorageProfile.valueOf(value.trim().toUpperCase());
+            } catch (IllegalArgumentException ex) {
+                logger.log(Level.WARNING, "Invalid value {0} for property {1}, using default.", new Object[]{value, INDEX_STORAGE_PROFILE}); //NON-NLS
+            }
+        }
+        return Index.StorageProfile.FULL;
+    }
+
+    /**
+     * Gets the Solr servers the shards of new multi-user case indexes are
+     * spread over, as host:port pairs. The first shard is always on the
+     * indexing server and the others are assigned to these servers in turn.
+     * The list is saved in the metadata of each index when it is created, so
+     * changing it does not move the shards of existing indexes.
+     *
+     * @return The servers, empty if all shards are on the indexing server
+     */
+    static List<String> getIndexShardHosts() {
+        List<String> hosts = new ArrayList<>();
+        String value = ModuleSettings.getConfigSetting(PROPERTIES_OPTIONS, INDEX_SHARD_HOSTS);
+        if (value != null) {
+            for (String host : value.split(",")) {
+                if (!host.trim().isEmpty()) {
+                    hosts.add(host.trim());
+                }
+            }
+        }
+        return hosts;
+    }
+
     /**
      * gets the currently set scripts to use
      *
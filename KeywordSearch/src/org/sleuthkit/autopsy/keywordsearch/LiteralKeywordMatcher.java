@@ -0,0 +1,493 @@
+/*
+ * Autopsy Forensic Browser
+ *
+ * Copyright 2017 Basis Technology Corp.
+ * Contact: carrier <at> sleuthkit <dot> org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sleuthkit.autopsy.keywordsearch;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import org.openide.modules.InstalledFileLocator;
+import org.sleuthkit.autopsy.coreutils.Logger;
+import org.sleuthkit.datamodel.BlackboardAttribute;
+
+/**
+ * Matches literal keywords against chunks of text as they are indexed, using
+ * an Aho-Corasick automaton built from the keyword lists of an ingest job. This
+ * lets hits for those keywords be posted as soon as a file is indexed, without
+ * waiting for a commit and a periodic Solr search.
+ *
+ * Only exact match literal keywords made up of a single token of letters and
+ * digits, other than stop words, are handled. For these, case-insensitive
+ * matching on word boundaries finds the same chunks as the Solr query.
+ * Substring keywords are left to Solr, because its terms query reports every
+ * distinct word containing the term, and so are stop words, which the index
+ * drops. The matcher only sees the content of chunks, so hits in file names
+ * and in documents without content are still searched for in Solr, see
+ * SearchRunner.
+ */
+final class LiteralKeywordMatcher {
+
+    private static final String SNIPPET_DELIMITER = String.valueOf(Character.toChars(171));
+    private static final int SNIPPET_CONTEXT_CHARS = 20;
+
+    private static final Logger logger = Logger.getLogger(LiteralKeywordMatcher.class.getName());
+    private static final String STOP_WORDS_FILE = "solr/solr/configsets/AutopsyConfig/conf/stopwords_en.txt"; //NON-NLS
+
+    /*
+     * The automaton. Node 0 is the root. The children of a node are kept in
+     * parallel arrays sorted by character.
+     */
+    private final char[][] childChars;
+    private final int[][] childNodes;
+    private final int[] failureLinks;
+    private final int[][] nodeOutputs; // indexes into patternTerms of terms ending at a node
+    private final String[] patternTerms;
+    private final List<List<ListKeyword>> patternKeywords;
+    private final Set<Keyword> handledKeywords;
+    // object ids with a posted hit, by keyword, so Solr hits are not posted again
+    private final Map<Keyword, Set<Long>> postedObjects = new ConcurrentHashMap<>();
+
+    /**
+     * Build a matcher for the literal keywords in the given lists.
+     *
+     * @param keywordLists The keyword lists
+     */
+    LiteralKeywordMatcher(List<KeywordList> keywordLists) {
+        this(keywordLists, StopWords.get());
+    }
+
+    /**
+     * Build a matcher for the literal keywords in the given lists.
+     *
+     * @param keywordLists The keyword lists
+     * @param stopWords    The stop words of the text field, lower cased, or
+     *                     null if they are not known, in which case no
+     *                     keywords are handled
+     */
+    LiteralKeywordMatcher(List<KeywordList> keywordLists, Set<String> stopWords) {
+        Map<String, List<ListKeyword>> termToKeywords = new LinkedHashMap<>();
+        Set<Keyword> handled = new HashSet<>();
+        for (KeywordList list : keywordLists) {
+            for (Keyword keyword : list.getKeywords()) {
+                if (stopWords != null && canMatch(keyword, stopWords)) {
+                    termToKeywords.computeIfAbsent(toLowerCase(keyword.getSearchTerm()), term -> new ArrayList<>()).add(new ListKeyword(keyword, list));
+                    handled.add(keyword);
+                }
+            }
+        }
+        handledKeywords = Collections.unmodifiableSet(handled);
+        patternTerms = termToKeywords.keySet().toArray(new String[termToKeywords.size()]);
+        patternKeywords = new ArrayList<>(termToKeywords.values());
+
+        // Build the trie
+        List<TreeMap<Character, Integer>> trie = new ArrayList<>();
+        List<List<Integer>> outputs = new ArrayList<>();
+        trie.add(new TreeMap<>());
+        outputs.add(new ArrayList<>());
+        for (int pattern = 0; pattern < patternTerms.length; pattern++) {
+            int node = 0;
+            for (char c : patternTerms[pattern].toCharArray()) {
+                Integer next = trie.get(node).get(c);
+                if (next == null) {
+                    next = trie.size();
+                    trie.add(new TreeMap<>());
+                    outputs.add(new ArrayList<>());
+                    trie.get(node).put(c, next);
+                }
+                node = next;
+            }
+            outputs.get(node).add(pattern);
+        }
+
+        int nodeCount = trie.size();
+        childChars = new char[nodeCount][];
+        childNodes = new int[nodeCount][];
+        for (int node = 0; node < nodeCount; node++) {
+            TreeMap<Character, Integer> children = trie.get(node);
+            childChars[node] = new char[children.size()];
+            childNodes[node] = new int[children.size()];
+            int i = 0;
+            for (Map.Entry<Character, Integer> child : children.entrySet()) {
+                childChars[node][i] = child.getKey();
+                childNodes[node][i] = child.getValue();
+                i++;
+            }
+        }
+
+        // Compute failure links breadth first, merging in the outputs of the
+        // failure target so that every match ending at a node is reported
+        failureLinks = new int[nodeCount];
+        Queue<Integer> queue = new ArrayDeque<>();
+        for (int child : childNodes[0]) {
+            queue.add(child);
+        }
+        while (!queue.isEmpty()) {
+            int node = queue.remove();
+            for (int i = 0; i < childChars[node].length; i++) {
+                int child = childNodes[node][i];
+                int failure = failureLinks[node];
+                while (failure != 0 && findChild(failure, childChars[node][i]) < 0) {
+                    failure = failureLinks[failure];
+                }
+                int target = findChild(failure, childChars[node][i]);
+                failureLinks[child] = (target >= 0 && target != child) ? target : 0;
+                outputs.get(child).addAll(outputs.get(failureLinks[child]));
+                queue.add(child);
+            }
+        }
+        nodeOutputs = new int[nodeCount][];
+        for (int node = 0; node < nodeCount; node++) {
+            nodeOutputs[node] = outputs.get(node).stream().mapToInt(Integer::intValue).toArray();
+        }
+    }
+
+    /**
+     * Can the given keyword be matched in memory with the same results as the
+     * Solr query for it?
+     *
+     * @param keyword   The keyword
+     * @param stopWords The stop words of the text field, lower cased
+     *
+     * @return True if the keyword is an exact match literal single token that
+     *         is not a stop word
+     */
+    private static boolean canMatch(Keyword keyword, Set<String> stopWords) {
+        if (!keyword.searchTermIsLiteral() || !keyword.searchTermIsWholeWord() || keyword.getSearchTerm().isEmpty()
+                || keyword.getArtifactAttributeType() == BlackboardAttribute.ATTRIBUTE_TYPE.TSK_CARD_NUMBER
+                || stopWords.contains(toLowerCase(keyword.getSearchTerm()))) {
+            return false;
+        }
+        String term = keyword.getSearchTerm();
+        for (int i = 0; i < term.length(); i++) {
+            if (!Character.isLetterOrDigit(term.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Are there any keywords to match?
+     *
+     * @return True if no keywords can be matched
+     */
+    boolean isEmpty() {
+        return patternTerms.length == 0;
+    }
+
+    /**
+     * Is this keyword found by this matcher rather than by Solr?
+     *
+     * @param keyword The keyword
+     *
+     * @return True if this matcher finds hits for the keyword
+     */
+    boolean handles(Keyword keyword) {
+        return handledKeywords.contains(keyword);
+    }
+
+    /**
+     * Post the hits found in the text of a file or artifact to the blackboard,
+     * and remember the objects they were posted for.
+     *
+     * @param hits The hits
+     */
+    void post(Hits hits) {
+        for (Map.Entry<Keyword, KeywordHit> entry : hits.keywordHits.entrySet()) {
+            postedObjects.computeIfAbsent(entry.getKey(), k -> ConcurrentHashMap.newKeySet()).add(entry.getValue().getSolrObjectId());
+        }
+        hits.post();
+    }
+
+    /**
+     * Has a hit for the keyword in the given object been posted by this
+     * matcher?
+     *
+     * @param keyword  The keyword
+     * @param objectID The object id of the file or artifact
+     *
+     * @return True if the hit has been posted
+     */
+    boolean wasPosted(Keyword keyword, long objectID) {
+        Set<Long> objects = postedObjects.get(keyword);
+        return objects != null && objects.contains(objectID);
+    }
+
+    /**
+     * Find the keywords in a chunk of text. Only the first hit for each
+     * keyword is kept, so chunks should be scanned in order.
+     *
+     * @param chunkID The Solr document id of the chunk
+     * @param text    The chunk text
+     * @param hits    The hits found so far for the text source, added to
+     */
+    void scan(String chunkID, String text, Hits hits) {
+        int node = 0;
+        final int length = text.length();
+        for (int i = 0; i < length; i++) {
+            char c = Character.toLowerCase(text.charAt(i));
+            int next = findChild(node, c);
+            while (next < 0 && node != 0) {
+                node = failureLinks[node];
+                next = findChild(node, c);
+            }
+            node = next < 0 ? 0 : next;
+
+            for (int pattern : nodeOutputs[node]) {
+                int start = i + 1 - patternTerms[pattern].length();
+                int end = i + 1;
+                boolean onWordBoundaries = !isWordCharBefore(text, start) && !isWordCharAfter(text, end);
+                if (!onWordBoundaries) {
+                    continue;
+                }
+                for (ListKeyword listKeyword : patternKeywords.get(pattern)) {
+                    if (!hits.contains(listKeyword.keyword)) {
+                        hits.add(listKeyword, new KeywordHit(chunkID, makeSnippet(text, start, end), text.substring(start, end)));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Read a stop words file the way Solr's StopFilterFactory does with
+     * ignoreCase set: a byte order mark at the start is skipped, lines
+     * starting with # are comments, the other lines are trimmed, blank lines
+     * are skipped, and the words are lower cased.
+     *
+     * @param reader The stop words file
+     *
+     * @return The stop words
+     *
+     * @throws IOException If the file cannot be read
+     */
+    static Set<String> readStopWords(Reader reader) throws IOException {
+        Set<String> stopWords = new HashSet<>();
+        BufferedReader lines = new BufferedReader(reader);
+        boolean first = true;
+        String line;
+        while ((line = lines.readLine()) != null) {
+            if (first && !line.isEmpty() && line.charAt(0) == '\uFEFF') {
+                line = line.substring(1);
+            }
+            first = false;
+            if (line.startsWith("#")) { //NON-NLS
+                continue;
+            }
+            line = line.trim();
+            if (!line.isEmpty()) {
+                stopWords.add(toLowerCase(line));
+            }
+        }
+        return Collections.unmodifiableSet(stopWords);
+    }
+
+    /**
+     * The stop words of the text field, read once from stopwords_en.txt in
+     * the installed Solr config set, which is the file that the
+     * StopFilterFactory of the text field in schema.xml reads.
+     */
+    private static final class StopWords {
+
+        private static final Set<String> STOP_WORDS = load();
+
+        private static Set<String> get() {
+            return STOP_WORDS;
+        }
+
+        private static Set<String> load() {
+            File file = InstalledFileLocator.getDefault().locate(STOP_WORDS_FILE, LiteralKeywordMatcher.class.getPackage().getName(), false);
+            if (file == null) {
+                logger.log(Level.WARNING, "Could not locate {0}, literal keywords will only be searched for in Solr", STOP_WORDS_FILE); //NON-NLS
+                return null;
+            }
+            try (Reader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+                return readStopWords(reader);
+            } catch (IOException ex) {
+                logger.log(Level.WARNING, "Could not read " + file + ", literal keywords will only be searched for in Solr", ex); //NON-NLS
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Does a text contain a term as a whole word, ignoring case, with the word
+     * boundaries used for matching keywords?
+     *
+     * @param text The text
+     * @param term The term
+     *
+     * @return True if the term is in the text
+     */
+    static boolean containsWord(String text, String term) {
+        if (term.isEmpty()) {
+            return false;
+        }
+        String lowerText = toLowerCase(text);
+        String lowerTerm = toLowerCase(term);
+        for (int start = lowerText.indexOf(lowerTerm); start != -1; start = lowerText.indexOf(lowerTerm, start + 1)) {
+            if (!isWordCharBefore(text, start) && !isWordCharAfter(text, start + term.length())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private int findChild(int node, char c) {
+        int index = Arrays.binarySearch(childChars[node], c);
+        return index < 0 ? -1 : childNodes[node][index];
+    }
+
+    /*
+     * Approximates the word boundaries of the index tokenizer (Unicode UAX#29,
+     * as in StandardTokenizer): letters, digits and underscores are word
+     * characters. Periods and apostrophes join two letters or two digits,
+     * colons join two letters, and commas and semicolons join two digits.
+     */
+    private static boolean isWordCharBefore(String text, int index) {
+        if (index <= 0) {
+            return false;
+        }
+        char c = text.charAt(index - 1);
+        if (isWordChar(c)) {
+            return true;
+        }
+        return index >= 2 && index < text.length() && joins(text.charAt(index - 2), c, text.charAt(index));
+    }
+
+    private static boolean isWordCharAfter(String text, int index) {
+        if (index >= text.length()) {
+            return false;
+        }
+        char c = text.charAt(index);
+        if (isWordChar(c)) {
+            return true;
+        }
+        return index > 0 && index + 1 < text.length() && joins(text.charAt(index - 1), c, text.charAt(index + 1));
+    }
+
+    private static boolean isWordChar(char c) {
+        return Character.isLetterOrDigit(c) || c == '_';
+    }
+
+    private static boolean joins(char before, char c, char after) {
+        boolean letters = Character.isLetter(before) && Character.isLetter(after);
+        boolean digits = Character.isDigit(before) && Character.isDigit(after);
+        switch (c) {
+            case '.':
+            case '\'':
+                return letters || digits;
+            case ':':
+                return letters;
+            case ',':
+            case ';':
+                return digits;
+            default:
+                return false;
+        }
+    }
+
+    private static String toLowerCase(String term) {
+        char[] chars = term.toCharArray();
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = Character.toLowerCase(chars[i]);
+        }
+        return new String(chars);
+    }
+
+    private static String makeSnippet(String text, int start, int end) {
+        return text.substring(Integer.max(0, start - SNIPPET_CONTEXT_CHARS), start)
+                + SNIPPET_DELIMITER + text.substring(start, end) + SNIPPET_DELIMITER
+                + text.substring(end, Integer.min(text.length(), end + SNIPPET_CONTEXT_CHARS));
+    }
+
+    /**
+     * A keyword and the list it came from.
+     */
+    private static final class ListKeyword {
+
+        private final Keyword keyword;
+        private final KeywordList list;
+
+        private ListKeyword(Keyword keyword, KeywordList list) {
+            this.keyword = keyword;
+            this.list = list;
+        }
+    }
+
+    /**
+     * The hits found in the text of one file or artifact.
+     */
+    static final class Hits {
+
+        private final Map<Keyword, ListKeyword> searchedKeywords = new LinkedHashMap<>();
+        private final Map<Keyword, KeywordHit> keywordHits = new HashMap<>();
+
+        private boolean contains(Keyword keyword) {
+            return searchedKeywords.containsKey(keyword);
+        }
+
+        private void add(ListKeyword listKeyword, KeywordHit hit) {
+            searchedKeywords.put(listKeyword.keyword, listKeyword);
+            keywordHits.put(listKeyword.keyword, hit);
+        }
+
+        boolean isEmpty() {
+            return searchedKeywords.isEmpty();
+        }
+
+        /**
+         * @param keyword A searched keyword
+         *
+         * @return The first hit for the keyword, or null if it was not found
+         */
+        KeywordHit getHit(Keyword keyword) {
+            return keywordHits.get(keyword);
+        }
+
+        /**
+         * Post the hits to the blackboard in the same way as the results of
+         * the Solr query for each keyword.
+         */
+        private void post() {
+            for (ListKeyword listKeyword : searchedKeywords.values()) {
+                KeywordSearchQuery query = KeywordSearchUtil.getQueryForKeyword(listKeyword.keyword, listKeyword.list);
+                QueryResults results = new QueryResults(query);
+                results.addResult(listKeyword.keyword, Collections.singletonList(keywordHits.get(listKeyword.keyword)));
+                results.process(null, null, null, listKeyword.list.getIngestMessages());
+            }
+        }
+    }
+}
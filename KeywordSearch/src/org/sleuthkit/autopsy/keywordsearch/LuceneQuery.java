@@ -20,6 +20,7 @@
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.logging.Level;
@@ -78,6 +79,11 @@ public void addFilter(KeywordQueryFilter filter) {
         this.filters.add(filter);
     }
 
+    @Override
+    public List<KeywordQueryFilter> getFilters() {
+        return Collections.unmodifiableList(filters);
+    }
+
     @Override
     public void setField(String field) {
         this.field = field;
@@ -123,67 +129,75 @@ public KeywordList getKeywordList() {
 
     @Override
     public QueryResults performQuery() throws KeywordSearchModuleException, NoOpenCoreException {
+        QueryResults results = new QueryResults(this);
+        String cursorMark = null;
+        do {
+            QueryResultsPage page = performQueryPage(cursorMark);
+            results.addResults(page.getResults());
+            cursorMark = page.getNextCursorMark();
+        } while (cursorMark != null);
+        return results;
+    }
+
+    @Override
+    public QueryResultsPage performQueryPage(String cursorMark) throws KeywordSearchModuleException, NoOpenCoreException {
 
         final Server solrServer = KeywordSearch.getServer();
         double indexSchemaVersion = NumberUtils.toDouble(solrServer.getIndexInfo().getSchemaVersion());
+        final String textField = solrServer.getIndexInfo().getStorageProfile().getRegexTextField();
 
-        SolrQuery solrQuery = createAndConfigureSolrQuery(KeywordSearchSettings.getShowSnippets());
+        SolrQuery solrQuery = createAndConfigureSolrQuery(textField, KeywordSearchSettings.getShowSnippets());
 
         final String strippedQueryString = StringUtils.strip(getQueryString(), "\"");
 
-        String cursorMark = CursorMarkParams.CURSOR_MARK_START;
-        boolean allResultsProcessed = false;
         List<KeywordHit> matches = new ArrayList<>();
-        while (!allResultsProcessed) {
-            solrQuery.set(CursorMarkParams.CURSOR_MARK_PARAM, cursorMark);
-            QueryResponse response = solrServer.query(solrQuery, SolrRequest.METHOD.POST);
-            SolrDocumentList resultList = response.getResults();
-            // objectId_chunk -> "text" -> List of previews
-            Map<String, Map<String, List<String>>> highlightResponse = response.getHighlighting();
-
-            for (SolrDocument resultDoc : resultList) {
-                try {
-                    /*
-                     * for each result doc, check that the first occurence of
-                     * that term is before the window. if all the ocurences
-                     * start within the window, don't record them for this
-                     * chunk, they will get picked up in the next one.
-                     */
-                    final String docId = resultDoc.getFieldValue(Server.Schema.ID.toString()).toString();
-                    final Integer chunkSize = (Integer) resultDoc.getFieldValue(Server.Schema.CHUNK_SIZE.toString());
-                    final Collection<Object> content = resultDoc.getFieldValues(Server.Schema.CONTENT_STR.toString());
-
-                    if (indexSchemaVersion < 2.0) {
-                        //old schema versions don't support chunk_size or the content_str fields, so just accept hits
-                        matches.add(createKeywordtHit(highlightResponse, docId));
-                    } else {
-                        //check against file name and actual content seperately.
-                        for (Object content_obj : content) {
-                            String content_str = (String) content_obj;
-                            //for new schemas, check that the hit is before the chunk/window boundary.
-                            int firstOccurence = StringUtils.indexOfIgnoreCase(content_str, strippedQueryString);
-                            //there is no chunksize field for "parent" entries in the index
-                            if (chunkSize == null || chunkSize == 0 || (firstOccurence > -1 && firstOccurence < chunkSize)) {
-                                matches.add(createKeywordtHit(highlightResponse, docId));
-                            }
+        if (cursorMark == null) {
+            cursorMark = CursorMarkParams.CURSOR_MARK_START;
+        }
+        solrQuery.set(CursorMarkParams.CURSOR_MARK_PARAM, cursorMark);
+        QueryResponse response = solrServer.query(solrQuery, SolrRequest.METHOD.POST);
+        SolrDocumentList resultList = response.getResults();
+        // objectId_chunk -> "text" -> List of previews
+        Map<String, Map<String, List<String>>> highlightResponse = response.getHighlighting();
+
+        for (SolrDocument resultDoc : resultList) {
+            try {
+                /*
+                 * for each result doc, check that the first occurence of
+                 * that term is before the window. if all the ocurences
+                 * start within the window, don't record them for this
+                 * chunk, they will get picked up in the next one.
+                 */
+                final String docId = resultDoc.getFieldValue(Server.Schema.ID.toString()).toString();
+                final Integer chunkSize = (Integer) resultDoc.getFieldValue(Server.Schema.CHUNK_SIZE.toString());
+                final Collection<Object> content = resultDoc.getFieldValues(textField);
+
+                if (indexSchemaVersion < 2.0) {
+                    //old schema versions don't support chunk_size or the content_str fields, so just accept hits
+                    matches.add(createKeywordtHit(highlightResponse, docId));
+                } else {
+                    //check against file name and actual content seperately.
+                    for (Object content_obj : content) {
+                        String content_str = (String) content_obj;
+                        //for new schemas, check that the hit is before the chunk/window boundary.
+                        int firstOccurence = StringUtils.indexOfIgnoreCase(content_str, strippedQueryString);
+                        //there is no chunksize field for "parent" entries in the index
+                        if (chunkSize == null || chunkSize == 0 || (firstOccurence > -1 && firstOccurence < chunkSize)) {
+                            matches.add(createKeywordtHit(highlightResponse, docId));
                         }
                     }
-                } catch (TskException ex) {
-                    throw new KeywordSearchModuleException(ex);
                 }
+            } catch (TskException ex) {
+                throw new KeywordSearchModuleException(ex);
             }
-            String nextCursorMark = response.getNextCursorMark();
-            if (cursorMark.equals(nextCursorMark)) {
-                allResultsProcessed = true;
-            }
-            cursorMark = nextCursorMark;
         }
+        String nextCursorMark = response.getNextCursorMark();
 
         QueryResults results = new QueryResults(this);
         //in case of single term literal query there is only 1 term
         results.addResult(new Keyword(originalKeyword.getSearchTerm(), true, true, originalKeyword.getListName(), originalKeyword.getOriginalTerm()), matches);
 
-        return results;
+        return new QueryResultsPage(results, cursorMark.equals(nextCursorMark) ? null : nextCursorMark, resultList.size(), resultList.getNumFound());
     }
 
     @Override
@@ -258,11 +272,13 @@ public BlackboardArtifact postKeywordHitToBlackboard(Content content, Keyword fo
     /*
      * Create the query object for the stored keyword
      *
-     * @param snippets True if query should request snippets
+     * @param textField The stored field with the chunk text, to check hits
+     *                  against the chunk boundary
+     * @param snippets  True if query should request snippets
      *
      * @return
      */
-    private SolrQuery createAndConfigureSolrQuery(boolean snippets) {
+    private SolrQuery createAndConfigureSolrQuery(String textField, boolean snippets) {
         SolrQuery q = new SolrQuery();
         q.setShowDebugInfo(DEBUG); //debug
         // Wrap the query string in quotes if this is a literal search term.
@@ -281,7 +297,7 @@ private SolrQuery createAndConfigureSolrQuery(boolean snippets) {
 
         q.setFields(Server.Schema.ID.toString(),
                 Server.Schema.CHUNK_SIZE.toString(),
-                Server.Schema.CONTENT_STR.toString());
+                textField);
 
         for (KeywordQueryFilter filter : filters) {
             q.addFilterQuery(filter.toString());
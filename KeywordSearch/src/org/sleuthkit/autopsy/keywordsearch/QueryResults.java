@@ -24,6 +24,7 @@
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.function.Predicate;
 import java.util.logging.Level;
 import java.util.stream.Collectors;
 import javax.swing.SwingWorker;
@@ -93,6 +94,57 @@ void addResult(Keyword keyword, List<KeywordHit> hits) {
         results.put(keyword, hits);
     }
 
+    /**
+     * Adds the keyword hits stored in another QueryResults object to the hits
+     * stored in this object. All calls to this method MUST be completed before
+     * calling the process method.
+     *
+     * @param other The other results.
+     */
+    void addResults(QueryResults other) {
+        for (Keyword keyword : other.getKeywords()) {
+            results.computeIfAbsent(keyword, k -> new ArrayList<>()).addAll(other.getResults(keyword));
+        }
+    }
+
+    /**
+     * Adds a copy of each keyword hit in the text of a file to every file that
+     * is an alias of it, that is, a file with identical content whose text was
+     * not indexed again. Hits in file metadata and artifacts are not copied,
+     * and neither are hits in the name of the file, which the aliases do not
+     * share. All calls to this method MUST be completed before calling the
+     * process method.
+     *
+     * @param aliases           The object ids of the aliases of each file,
+     *                          keyed by the object id of the file.
+     * @param keepCanonicalHits Whether to keep the hits in the files
+     *                          themselves, or only those in their aliases.
+     * @param isContentHit      Tells whether a hit in the text of a file is in
+     *                          its content rather than only in its name.
+     */
+    void addAliasHits(Map<Long, List<Long>> aliases, boolean keepCanonicalHits, Predicate<KeywordHit> isContentHit) {
+        for (Map.Entry<Keyword, List<KeywordHit>> entry : results.entrySet()) {
+            List<KeywordHit> hits = new ArrayList<>();
+            for (KeywordHit hit : entry.getValue()) {
+                List<Long> aliasIds = hit.isArtifactHit() || hit.getChunkId() == 0 ? null : aliases.get(hit.getSolrObjectId());
+                if (aliasIds == null) {
+                    hits.add(hit);
+                    continue;
+                }
+                if (keepCanonicalHits) {
+                    hits.add(hit);
+                }
+                if (!isContentHit.test(hit)) {
+                    continue;
+                }
+                for (Long aliasId : aliasIds) {
+                    hits.add(new KeywordHit(aliasId + Server.CHUNK_ID_SEPARATOR + hit.getChunkId(), hit.getSnippet(), hit.getHit()));
+                }
+            }
+            entry.setValue(hits);
+        }
+    }
+
     /**
      * Gets the keyword hits stored in this object for a given keyword.
      *
@@ -124,8 +176,8 @@ Set<Keyword> getKeywords() {
      * artifact), i.e., if a keyword is found several times in the text
      * extracted from the source object, only one artifact is created.
      *
-     * This method ASSUMES that the processing is being done using a SwingWorker
-     * that should be checked for task cancellation.
+     * If the processing is being done using a SwingWorker, it is checked for
+     * task cancellation.
      *
      * All calls to the addResult method MUST be completed before calling this
      * method.
@@ -136,7 +188,7 @@ Set<Keyword> getKeywords() {
      *                    currently being processed. Can be null.
      * @param worker      The SwingWorker that is being used to do the
      *                    processing, will be checked for task cancellation
-     *                    before processing each keyword.
+     *                    before processing each keyword. Can be null.
      * @param notifyInbox Whether or not to write a message to the ingest
      *                    messages inbox if there is a keyword hit in the text
      *                    exrtacted from the text source object.
@@ -160,7 +212,7 @@ void process(ProgressHandle progress, ProgressContributor subProgress, SwingWork
             /*
              * Cancellation check.
              */
-            if (worker.isCancelled()) {
+            if (worker != null && worker.isCancelled()) {
                 logger.log(Level.INFO, "Processing cancelled, exiting before processing search term {0}", keyword.getSearchTerm()); //NON-NLS
                 break;
             }
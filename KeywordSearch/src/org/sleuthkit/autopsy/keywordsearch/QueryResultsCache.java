@@ -0,0 +1,148 @@
+/*
+ * Autopsy Forensic Browser
+ *
+ * Copyright 2017 Basis Technology Corp.
+ * Contact: carrier <at> sleuthkit <dot> org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sleuthkit.autopsy.keywordsearch;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import java.util.logging.Level;
+import org.sleuthkit.autopsy.casemodule.Case;
+import org.sleuthkit.autopsy.coreutils.Logger;
+
+/**
+ * A least recently used cache of the pages of results of ad hoc keyword
+ * searches, so that running a search again returns at once when the index has
+ * not changed since it was last run.
+ *
+ * A page is keyed by the index, the committed index generation, and the query
+ * type, keyword list, search term and filters. The cache is cleared when the
+ * committed generation changes. Nothing is cached while there are uncommitted
+ * documents, since Solr's own automatic commits can make them searchable
+ * without changing the generation, nor for multi-user cases, whose indexes are
+ * also changed by other nodes. The cache is bounded by an estimate of the size
+ * of the hits it holds.
+ */
+final class QueryResultsCache {
+
+    private static final Logger logger = Logger.getLogger(QueryResultsCache.class.getName());
+    private static final int HIT_OVERHEAD_CHARS = 64;
+    private static final Cache<String, QueryResultsPage> pages = CacheBuilder.newBuilder()
+            .maximumWeight(KeywordSearchSettings.getIntOption("QueryResultsCacheChars", 16 * 1024 * 1024)) //NON-NLS
+            .weigher((String key, QueryResultsPage page) -> key.length() + getWeight(page.getResults()))
+            .build();
+    private static volatile long cachedGeneration;
+
+    private QueryResultsCache() {
+    }
+
+    /**
+     * Runs the query for a page of results.
+     */
+    @FunctionalInterface
+    interface PageQuery {
+
+        QueryResultsPage run() throws KeywordSearchModuleException, NoOpenCoreException;
+    }
+
+    /**
+     * Get a page of the results of a query, from the cache if it is there, and
+     * by running the query otherwise. The results in the page are shared with
+     * later searches and must not be changed.
+     *
+     * @param query      The query
+     * @param cursorMark The cursor mark of the page, or null for the first
+     *                   page
+     * @param pageQuery  Runs the query for the page if it is not in the cache
+     *
+     * @return The page
+     *
+     * @throws KeywordSearchModuleException
+     * @throws NoOpenCoreException
+     */
+    static QueryResultsPage getPage(KeywordSearchQuery query, String cursorMark, PageQuery pageQuery) throws KeywordSearchModuleException, NoOpenCoreException {
+        String key = getKey(query, cursorMark);
+        if (key == null) {
+            return pageQuery.run();
+        }
+        QueryResultsPage page = pages.getIfPresent(key);
+        if (page != null) {
+            return page;
+        }
+        page = pageQuery.run();
+        // the index may have changed while the query ran
+        if (key.equals(getKey(query, cursorMark))) {
+            pages.put(key, page);
+        }
+        return page;
+    }
+
+    /**
+     * Get the cache key of a page of the results of a query.
+     *
+     * @param query      The query
+     * @param cursorMark The cursor mark of the page, or null for the first
+     *                   page
+     *
+     * @return The key, or null if the results should not be cached
+     */
+    private static String getKey(KeywordSearchQuery query, String cursorMark) {
+        String indexPath;
+        try {
+            if (Case.getCurrentCase().getCaseType() == Case.CaseType.MULTI_USER_CASE) {
+                return null;
+            }
+            indexPath = KeywordSearch.getServer().getIndexInfo().getIndexPath();
+        } catch (IllegalStateException | NoOpenCoreException ex) {
+            logger.log(Level.FINE, "No open case or index, not caching search results", ex); //NON-NLS
+            return null;
+        }
+        Ingester ingester = Ingester.getDefault();
+        if (ingester.hasUncommittedDocuments()) {
+            return null;
+        }
+        long generation = ingester.getCommittedGeneration();
+        if (generation != cachedGeneration) {
+            pages.invalidateAll();
+            cachedGeneration = generation;
+        }
+
+        StringBuilder key = new StringBuilder();
+        key.append(indexPath).append('\n').append(generation).append('\n')
+                .append(query.getClass().getSimpleName()).append('\n')
+                .append(query.getKeywordList().getName()).append('\n')
+                .append(query.isLiteral()).append('\n')
+                .append(query.getEscapedQueryString()).append('\n');
+        for (KeywordQueryFilter filter : query.getFilters()) {
+            key.append(filter.toString()).append('\n');
+        }
+        key.append(cursorMark == null ? "" : cursorMark);
+        return key.toString();
+    }
+
+    private static int getWeight(QueryResults results) {
+        long weight = 0;
+        for (Keyword keyword : results.getKeywords()) {
+            weight += keyword.getSearchTerm().length();
+            for (KeywordHit hit : results.getResults(keyword)) {
+                weight += HIT_OVERHEAD_CHARS + hit.getSolrDocumentId().length() + (hit.getHit() == null ? 0 : hit.getHit().length())
+                        + (hit.hasSnippet() ? hit.getSnippet().length() : 0);
+            }
+        }
+        return (int) Math.min(weight, Integer.MAX_VALUE);
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Autopsy Forensic Browser
+ *
+ * Copyright 2017 Basis Technology Corp.
+ * Contact: carrier <at> sleuthkit <dot> org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sleuthkit.autopsy.keywordsearch;
+
+/**
+ * The keyword hits in one page of the Solr documents matched by a keyword
+ * search query, with the cursor mark for the next page.
+ */
+final class QueryResultsPage {
+
+    private final QueryResults results;
+    private final String nextCursorMark;
+    private final int pageDocuments;
+    private final long totalDocuments;
+
+    /**
+     * Constructs a page of query results.
+     *
+     * @param results        The keyword hits in the page
+     * @param nextCursorMark The cursor mark for the next page, or null if this
+     *                       is the last page
+     * @param pageDocuments  The number of Solr documents in the page
+     * @param totalDocuments The number of Solr documents matched by the query,
+     *                       over all the pages
+     */
+    QueryResultsPage(QueryResults results, String nextCursorMark, int pageDocuments, long totalDocuments) {
+        this.results = results;
+        this.nextCursorMark = nextCursorMark;
+        this.pageDocuments = pageDocuments;
+        this.totalDocuments = totalDocuments;
+    }
+
+    /**
+     * @return the keyword hits in the page
+     */
+    QueryResults getResults() {
+        return results;
+    }
+
+    /**
+     * @return the cursor mark for the next page, or null if this is the last
+     *         page
+     */
+    String getNextCursorMark() {
+        return nextCursorMark;
+    }
+
+    /**
+     * @return true if this is the last page
+     */
+    boolean isLastPage() {
+        return nextCursorMark == null;
+    }
+
+    /**
+     * @return the number of Solr documents in the page
+     */
+    int getPageDocuments() {
+        return pageDocuments;
+    }
+
+    /**
+     * @return the number of Solr documents matched by the query, over all the
+     *         pages
+     */
+    long getTotalDocuments() {
+        return totalDocuments;
+    }
+}
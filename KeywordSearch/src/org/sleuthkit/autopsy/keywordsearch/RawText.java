@@ -59,7 +59,8 @@ class RawText implements IndexedText {
     RawText(Content content, long objectId) {
         this.content = content;
         this.blackboardArtifact = null;
-        this.objectId = objectId;
+        // a file indexed as an alias shows the text of its canonical file
+        this.objectId = ContentAliases.getTextSourceId(objectId);
         initialize();
     }
 
@@ -194,6 +195,14 @@ public int getNumberPages() {
      * Set the internal values, such as pages and chunks
      */
     private void initialize() {
+        // text in the extracted text store can be paged without asking Solr
+        int storedChunks = ExtractedTextStore.getChunkCount(this.objectId);
+        if (storedChunks > 0) {
+            numPages = storedChunks;
+            hasChunks = true;
+            return;
+        }
+
         final Server solrServer = KeywordSearch.getServer();
 
         try {
@@ -257,8 +266,11 @@ private String getContentText(int currentPage, boolean hasChunks) throws NoOpenC
             }
         }
 
-        //not cached
-        String indexedText = solrServer.getSolrContent(this.objectId, chunkId);
+        //not cached, read it from the extracted text store or else from Solr
+        String indexedText = ExtractedTextStore.getChunkText(this.objectId, chunkId);
+        if (indexedText == null) {
+            indexedText = solrServer.getSolrContent(this.objectId, chunkId);
+        }
         if (indexedText == null) {
             if (content instanceof AbstractFile) {
                 return Bundle.IndexedText_errorMessage_errorGettingText();
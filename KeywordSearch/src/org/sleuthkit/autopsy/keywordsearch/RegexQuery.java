@@ -19,14 +19,19 @@
 package org.sleuthkit.autopsy.keywordsearch;
 
 import com.google.common.base.CharMatcher;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.logging.Level;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.stream.Collectors;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.validator.routines.DomainValidator;
 import org.apache.solr.client.solrj.SolrQuery;
@@ -42,6 +47,7 @@
 import org.sleuthkit.autopsy.coreutils.Logger;
 import org.sleuthkit.autopsy.coreutils.MessageNotifyUtil;
 import org.sleuthkit.autopsy.datamodel.CreditCards;
+import org.sleuthkit.autopsy.keywordsearch.Chunker.Chunk;
 import static org.sleuthkit.autopsy.keywordsearch.KeywordSearchSettings.MODULE_NAME;
 import static org.sleuthkit.autopsy.keywordsearch.TermsComponentQuery.CREDIT_CARD_NUM_PATTERN;
 import static org.sleuthkit.autopsy.keywordsearch.TermsComponentQuery.CREDIT_CARD_TRACK2_PATTERN;
@@ -59,8 +65,10 @@
 
 /**
  * The RegexQuery class supports issuing regular expression queries against a
- * Lucene index. It relies on the fact that content is stored in it's original
- * form in a "string" field (Server.Schema.CONTENT_STR). To indicate to Lucene
+ * Lucene index. It relies on the fact that content is indexed in it's original
+ * form in a "string" field (Server.Schema.CONTENT_STR, or
+ * Server.Schema.CONTENT_STR_UNSTORED for indexes that do not store it, see
+ * Index.StorageProfile). To indicate to Lucene
  * that these are regular expression queries, the query string must be
  * surrounded by '/' characters. Additionally, the characters ".*" need to be
  * added both before and after the search term to get hits in the middle of
@@ -91,6 +99,9 @@ final class RegexQuery implements KeywordSearchQuery {
     private static final int MAX_RESULTS_PER_CURSOR_MARK = 512;
     private static final int MIN_EMAIL_ADDR_LENGTH = 8;
     private static final String SNIPPET_DELIMITER = String.valueOf(Character.toChars(171));
+    private static final Cache<String, Pattern> compiledPatterns = CacheBuilder.newBuilder()
+            .maximumSize(KeywordSearchSettings.getIntOption("CompiledRegexCacheSize", 256)) //NON-NLS
+            .build();
 
     private final List<KeywordQueryFilter> filters = new ArrayList<>();
     private final KeywordList keywordList;
@@ -101,7 +112,7 @@ final class RegexQuery implements KeywordSearchQuery {
 
     private boolean escaped;
     private String escapedQuery;
-    private String field = Server.Schema.CONTENT_STR.toString();
+    private String field = null;
 
     /**
      * Constructor with query to process.
@@ -149,8 +160,22 @@ public boolean validate() {
 
     @Override
     public QueryResults performQuery() throws NoOpenCoreException {
+        QueryResults results = new QueryResults(this);
+        String cursorMark = null;
+        do {
+            QueryResultsPage page = performQueryPage(cursorMark);
+            results.addResults(page.getResults());
+            cursorMark = page.getNextCursorMark();
+        } while (cursorMark != null);
+        return results;
+    }
+
+    @Override
+    public QueryResultsPage performQueryPage(String cursorMark) throws NoOpenCoreException {
 
         final Server solrServer = KeywordSearch.getServer();
+        final Index.StorageProfile storageProfile = solrServer.getIndexInfo().getStorageProfile();
+        final String textField = storageProfile.getRegexTextField();
         SolrQuery solrQuery = new SolrQuery();
 
         /*
@@ -170,12 +195,24 @@ public QueryResults performQuery() throws NoOpenCoreException {
         // We construct the query by surrounding it with slashes (to indicate it is
         // a regular expression search) and .* as anchors (if the query doesn't
         // already have them).
-        solrQuery.setQuery((field == null ? Server.Schema.CONTENT_STR.toString() : field) + ":/"
+        solrQuery.setQuery((field == null ? storageProfile.getRegexField() : field) + ":/"
                 + (queryStringContainsWildcardPrefix ? "" : ".*") + getQueryString()
                 + (queryStringContainsWildcardSuffix ? "" : ".*") + "/");
 
+        /*
+         * When the text of the matching chunks is in the extracted text store,
+         * the chunks are scanned for hits locally and only their ids are
+         * returned by the query, instead of their full text. The text of any
+         * chunk that is not in the store is fetched afterwards.
+         */
+        final boolean scanStoredText = ExtractedTextStore.hasStoredText();
+
         // Set the fields we want to have returned by the query.
-        solrQuery.setFields(Server.Schema.CONTENT_STR.toString(), Server.Schema.ID.toString(), Server.Schema.CHUNK_SIZE.toString());
+        if (scanStoredText) {
+            solrQuery.setFields(Server.Schema.ID.toString(), Server.Schema.CHUNK_SIZE.toString(), Server.Schema.FILE_NAME.toString());
+        } else {
+            solrQuery.setFields(textField, Server.Schema.ID.toString(), Server.Schema.CHUNK_SIZE.toString());
+        }
 
         filters.stream()
                 .map(KeywordQueryFilter::toString)
@@ -185,59 +222,186 @@ public QueryResults performQuery() throws NoOpenCoreException {
         // Setting the sort order is necessary for cursor based paging to work.
         solrQuery.setSort(SortClause.asc(Server.Schema.ID.toString()));
 
-        String cursorMark = CursorMarkParams.CURSOR_MARK_START;
-        SolrDocumentList resultList;
-        boolean allResultsProcessed = false;
+        if (cursorMark == null) {
+            cursorMark = CursorMarkParams.CURSOR_MARK_START;
+        }
         QueryResults results = new QueryResults(this);
+        final Pattern pattern = getPattern();
+        StoredTextReader storedTextReader = scanStoredText ? new StoredTextReader() : null;
 
-        while (!allResultsProcessed) {
-            try {
-                solrQuery.set(CursorMarkParams.CURSOR_MARK_PARAM, cursorMark);
-                QueryResponse response = solrServer.query(solrQuery, SolrRequest.METHOD.POST);
-                resultList = response.getResults();
-
-                for (SolrDocument resultDoc : resultList) {
-                    try {
-                        List<KeywordHit> keywordHits = createKeywordHits(resultDoc);
-                        for (KeywordHit hit : keywordHits) {
-                            Keyword keywordInstance = new Keyword(hit.getHit(), true, true, originalKeyword.getListName(), originalKeyword.getOriginalTerm());
-                            List<KeywordHit> hitsForKeyword = results.getResults(keywordInstance);
-                            if (hitsForKeyword == null) {
-                                hitsForKeyword = new ArrayList<>();
-                                results.addResult(keywordInstance, hitsForKeyword);
-                            }
-                            hitsForKeyword.add(hit);
-                        }
-                    } catch (TskCoreException ex) {
-                        LOGGER.log(Level.SEVERE, "Error creating keyword hits", ex); //NON-NLS
+        try {
+            solrQuery.set(CursorMarkParams.CURSOR_MARK_PARAM, cursorMark);
+            QueryResponse response = solrServer.query(solrQuery, SolrRequest.METHOD.POST);
+            SolrDocumentList resultList = response.getResults();
+
+            List<String> unstoredDocIds = new ArrayList<>();
+            for (SolrDocument resultDoc : resultList) {
+                final String docId = resultDoc.getFieldValue(Server.Schema.ID.toString()).toString();
+                Collection<Object> content;
+                if (storedTextReader == null) {
+                    content = resultDoc.getFieldValues(textField);
+                } else {
+                    content = storedTextReader.getContent(docId, resultDoc.getFieldValues(Server.Schema.FILE_NAME.toString()));
+                    if (content == null) {
+                        unstoredDocIds.add(docId);
+                        continue;
                     }
                 }
+                addKeywordHits(results, pattern, docId, (Integer) resultDoc.getFieldValue(Server.Schema.CHUNK_SIZE.toString()), content);
+            }
+            if (!unstoredDocIds.isEmpty()) {
+                for (SolrDocument resultDoc : queryContent(solrServer, textField, unstoredDocIds)) {
+                    addKeywordHits(results, pattern, resultDoc.getFieldValue(Server.Schema.ID.toString()).toString(),
+                            (Integer) resultDoc.getFieldValue(Server.Schema.CHUNK_SIZE.toString()),
+                            resultDoc.getFieldValues(textField));
+                }
+            }
 
-                String nextCursorMark = response.getNextCursorMark();
-                if (cursorMark.equals(nextCursorMark)) {
-                    allResultsProcessed = true;
+            String nextCursorMark = response.getNextCursorMark();
+            return new QueryResultsPage(results, cursorMark.equals(nextCursorMark) ? null : nextCursorMark, resultList.size(), resultList.getNumFound());
+        } catch (KeywordSearchModuleException ex) {
+            LOGGER.log(Level.SEVERE, "Error executing Regex Solr Query: " + keywordString, ex); //NON-NLS
+            MessageNotifyUtil.Notify.error(NbBundle.getMessage(Server.class, "Server.query.exception.msg", keywordString), ex.getCause().getMessage());
+            // end the search with the hits found so far
+            return new QueryResultsPage(results, null, 0, 0);
+        } finally {
+            if (storedTextReader != null) {
+                storedTextReader.close();
+            }
+        }
+    }
+
+    /**
+     * Get the compiled pattern for the regular expression. Compiled patterns
+     * are shared by all the queries for the same expression.
+     *
+     * @return The pattern
+     */
+    private Pattern getPattern() {
+        Pattern pattern = compiledPatterns.getIfPresent(keywordString);
+        if (pattern == null) {
+            pattern = Pattern.compile(keywordString);
+            compiledPatterns.put(keywordString, pattern);
+        }
+        return pattern;
+    }
+
+    /**
+     * Reads the text of chunks from the extracted text store. Query results
+     * are sorted by id, so the chunks of a file or artifact come one after the
+     * other and its stored text is kept open until the next one is reached.
+     */
+    private static final class StoredTextReader {
+
+        private long sourceID;
+        private ExtractedTextStore.StoredText storedText = null;
+        private boolean opened = false;
+
+        /**
+         * Get the values of the regex text field of a chunk: the text of the
+         * chunk and its file name.
+         *
+         * @param docId     The Solr id of the chunk
+         * @param fileNames The file name values of the chunk, may be null
+         *
+         * @return The values, or null if the text of the chunk is not stored
+         */
+        private Collection<Object> getContent(String docId, Collection<Object> fileNames) {
+            List<Object> content = new ArrayList<>();
+            int separator = docId.indexOf(Server.CHUNK_ID_SEPARATOR);
+            if (separator != -1) {
+                long chunkSourceID;
+                int chunkNumber;
+                try {
+                    chunkSourceID = Long.parseLong(docId.substring(0, separator));
+                    chunkNumber = Integer.parseInt(docId.substring(separator + 1));
+                } catch (NumberFormatException ex) {
+                    return null;
+                }
+                if (!opened || chunkSourceID != sourceID) {
+                    close();
+                    storedText = ExtractedTextStore.getStoredText(chunkSourceID);
+                    sourceID = chunkSourceID;
+                    opened = true;
+                }
+                if (storedText == null) {
+                    return null;
+                }
+                try {
+                    Chunk chunk = storedText.getChunk(chunkNumber);
+                    if (chunk == null) {
+                        return null;
+                    }
+                    content.add(chunk.toString());
+                } catch (IOException ex) {
+                    LOGGER.log(Level.WARNING, "Error reading stored text for Solr document id " + docId, ex); //NON-NLS
+                    return null;
                 }
-                cursorMark = nextCursorMark;
-            } catch (KeywordSearchModuleException ex) {
-                LOGGER.log(Level.SEVERE, "Error executing Regex Solr Query: " + keywordString, ex); //NON-NLS
-                MessageNotifyUtil.Notify.error(NbBundle.getMessage(Server.class, "Server.query.exception.msg", keywordString), ex.getCause().getMessage());
             }
+            // the metadata document of a file has no text, only its name
+            if (fileNames != null) {
+                content.addAll(fileNames);
+            }
+            return content;
         }
 
-        return results;
+        private void close() {
+            if (storedText != null) {
+                storedText.close();
+                storedText = null;
+            }
+            opened = false;
+        }
     }
 
-    private List<KeywordHit> createKeywordHits(SolrDocument solrDoc) throws TskCoreException {
+    /**
+     * Fetch the text of chunks whose text is not in the extracted text store.
+     *
+     * @param solrServer The server
+     * @param textField  The stored field with the text of the chunks
+     * @param docIds     The Solr ids of the chunks
+     *
+     * @return The Solr documents of the chunks
+     *
+     * @throws KeywordSearchModuleException
+     * @throws NoOpenCoreException
+     */
+    private SolrDocumentList queryContent(Server solrServer, String textField, List<String> docIds) throws KeywordSearchModuleException, NoOpenCoreException {
+        SolrQuery contentQuery = new SolrQuery("*:*"); //NON-NLS
+        contentQuery.addFilterQuery(docIds.stream()
+                .map(KeywordSearchUtil::escapeLuceneQuery)
+                .collect(Collectors.joining(" ", Server.Schema.ID.toString() + ":(", ")"))); //NON-NLS
+        contentQuery.setFields(textField, Server.Schema.ID.toString(), Server.Schema.CHUNK_SIZE.toString());
+        contentQuery.setRows(docIds.size());
+        return solrServer.query(contentQuery, SolrRequest.METHOD.POST).getResults();
+    }
+
+    private void addKeywordHits(QueryResults results, Pattern pattern, String docId, Integer chunkSize, Collection<Object> content) {
+        try {
+            List<KeywordHit> keywordHits = createKeywordHits(pattern, docId, chunkSize, content);
+            for (KeywordHit hit : keywordHits) {
+                Keyword keywordInstance = new Keyword(hit.getHit(), true, true, originalKeyword.getListName(), originalKeyword.getOriginalTerm());
+                List<KeywordHit> hitsForKeyword = results.getResults(keywordInstance);
+                if (hitsForKeyword == null) {
+                    hitsForKeyword = new ArrayList<>();
+                    results.addResult(keywordInstance, hitsForKeyword);
+                }
+                hitsForKeyword.add(hit);
+            }
+        } catch (TskCoreException ex) {
+            LOGGER.log(Level.SEVERE, "Error creating keyword hits", ex); //NON-NLS
+        }
+    }
+
+    private List<KeywordHit> createKeywordHits(Pattern pattern, String docId, Integer chunkSize, Collection<Object> content_str) throws TskCoreException {
 
         final HashMap<String, String> keywordsFoundInThisDocument = new HashMap<>();
 
         List<KeywordHit> hits = new ArrayList<>();
-        final String docId = solrDoc.getFieldValue(Server.Schema.ID.toString()).toString();
-        final Integer chunkSize = (Integer) solrDoc.getFieldValue(Server.Schema.CHUNK_SIZE.toString());
-
-        final Collection<Object> content_str = solrDoc.getFieldValues(Server.Schema.CONTENT_STR.toString());
+        if (content_str == null) {
+            return hits;
+        }
 
-        final Pattern pattern = Pattern.compile(keywordString);
         try {
             for (Object content_obj : content_str) {
                 String content = (String) content_obj;
@@ -381,6 +545,11 @@ public void addFilter(KeywordQueryFilter filter) {
         this.filters.add(filter);
     }
 
+    @Override
+    public List<KeywordQueryFilter> getFilters() {
+        return Collections.unmodifiableList(filters);
+    }
+
     @Override
     public void setField(String field) {
         this.field = field;
@@ -31,6 +31,8 @@
 import java.util.concurrent.CancellationException;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 import static java.util.concurrent.TimeUnit.MILLISECONDS;
@@ -67,6 +69,9 @@ final class SearchRunner {
     private final ScheduledThreadPoolExecutor jobProcessingExecutor;
     private static final int NUM_SEARCH_SCHEDULING_THREADS = 1;
     private static final String SEARCH_SCHEDULER_THREAD_NAME = "periodic-search-scheduler-%d";
+    private static final String SEARCH_THREAD_NAME = "keyword-search-query-%d"; //NON-NLS
+    private final int numSearchThreads;
+    private final ExecutorService searchExecutor;
 
     // maps a jobID to the search
     private Map<Long, SearchJobInfo> jobs = new ConcurrentHashMap<>();
@@ -75,6 +80,8 @@ final class SearchRunner {
         currentUpdateIntervalMs = ((long) KeywordSearchSettings.getUpdateFrequency().getTime()) * 60 * 1000;
         ingester = Ingester.getDefault();
         jobProcessingExecutor = new ScheduledThreadPoolExecutor(NUM_SEARCH_SCHEDULING_THREADS, new ThreadFactoryBuilder().setNameFormat(SEARCH_SCHEDULER_THREAD_NAME).build());
+        numSearchThreads = KeywordSearchSettings.getIntOption("SearchThreads", Math.min(4, Runtime.getRuntime().availableProcessors())); //NON-NLS
+        searchExecutor = Executors.newFixedThreadPool(numSearchThreads, new ThreadFactoryBuilder().setNameFormat(SEARCH_THREAD_NAME).setDaemon(true).build());
     }
 
     /**
@@ -136,7 +143,7 @@ public synchronized void endJob(long jobId) {
 
         if (readyForFinalSearch) {
             logger.log(Level.INFO, "Commiting search index before final search for search job {0}", job.getJobId()); //NON-NLS
-            commit();
+            commit(true);
             doFinalSearch(job); //this will block until it's done
 
             // new jobs could have been added while we were doing final search
@@ -158,7 +165,7 @@ public synchronized void endJob(long jobId) {
      */
     public synchronized void stopJob(long jobId) {
         logger.log(Level.INFO, "Stopping search job {0}", jobId); //NON-NLS
-        commit();
+        commit(true);
 
         SearchJobInfo job;
         job = jobs.get(jobId);
@@ -200,10 +207,54 @@ public synchronized void addKeywordListsToAllJobs(List<String> keywordListNames)
     }
 
     /**
-     * Commits index and notifies listeners of index update
+     * Gets the matcher for literal keywords of the running job, if any, that
+     * is ingesting the given data source.
+     *
+     * @param dataSourceId The object id of the data source
+     *
+     * @return The matcher, or null if the data source is not being ingested or
+     *         its job has no keywords that can be matched at index time
+     */
+    LiteralKeywordMatcher getLiteralMatcher(long dataSourceId) {
+        for (SearchJobInfo job : jobs.values()) {
+            if (job.getDataSourceId() == dataSourceId && !job.getLiteralMatcher().isEmpty()) {
+                return job.getLiteralMatcher();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Gets the credit card number scanner of the running job, if any, that is
+     * ingesting the given data source.
+     *
+     * @param dataSourceId The object id of the data source
+     *
+     * @return The scanner, or null if the data source is not being ingested or
+     *         its job has no credit card number keywords
+     */
+    CreditCardScanner getCreditCardScanner(long dataSourceId) {
+        for (SearchJobInfo job : jobs.values()) {
+            if (job.getDataSourceId() == dataSourceId && !job.getCreditCardScanner().isEmpty()) {
+                return job.getCreditCardScanner();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Commits index and notifies listeners of index update. Periodic commits
+     * are soft commits unless a hard commit is due, and are skipped if nothing
+     * was indexed since the last one.
+     *
+     * @param hardCommit True if the index should also be saved to disk, e.g.,
+     *                   at the end of a job
      */
-    private void commit() {
-        ingester.commit();
+    private void commit(boolean hardCommit) {
+        boolean committed = hardCommit ? ingester.hardCommit() : ingester.commit();
+        if (!committed) {
+            return;
+        }
 
         // Signal a potential change in number of text_ingested files
         try {
@@ -263,7 +314,7 @@ public void run() {
                 return;
             }
 
-            commit();
+            commit(false);
 
             logger.log(Level.INFO, "Starting periodic searches");
             final StopWatch stopWatch = new StopWatch();
@@ -335,12 +386,18 @@ private class SearchJobInfo {
         private final IngestJobContext jobContext;
         private final long jobId;
         private final long dataSourceId;
+        // finds the literal keywords of the initial lists as text is indexed
+        private final LiteralKeywordMatcher literalMatcher;
+        // finds the credit card numbers of the initial lists as text is indexed
+        private final CreditCardScanner creditCardScanner;
         // mutable state:
         private volatile boolean workerRunning;
         private List<String> keywordListNames; //guarded by SearchJobInfo.this
 
         // Map of keyword to the object ids that contain a hit
         private Map<Keyword, Set<Long>> currentResults; //guarded by SearchJobInfo.this
+        // Map of keyword to the index generation it has been searched through
+        private Map<Keyword, Long> searchedGenerations; //guarded by SearchJobInfo.this
         private SearchRunner.Searcher currentSearcher;
         private AtomicLong moduleReferenceCount = new AtomicLong(0);
         private final Object finalSearchLock = new Object(); //used for a condition wait
@@ -350,7 +407,18 @@ private SearchJobInfo(IngestJobContext jobContext, List<String> keywordListNames
             this.jobId = jobContext.getJobId();
             this.dataSourceId = jobContext.getDataSource().getId();
             this.keywordListNames = new ArrayList<>(keywordListNames);
+            XmlKeywordSearchList loader = XmlKeywordSearchList.getCurrent();
+            List<KeywordList> keywordLists = new ArrayList<>();
+            for (String name : keywordListNames) {
+                KeywordList list = loader.getList(name);
+                if (list != null) {
+                    keywordLists.add(list);
+                }
+            }
+            literalMatcher = new LiteralKeywordMatcher(keywordLists);
+            creditCardScanner = new CreditCardScanner(keywordLists);
             currentResults = new HashMap<>();
+            searchedGenerations = new HashMap<>();
             workerRunning = false;
             currentSearcher = null;
         }
@@ -367,6 +435,14 @@ private long getDataSourceId() {
             return dataSourceId;
         }
 
+        private LiteralKeywordMatcher getLiteralMatcher() {
+            return literalMatcher;
+        }
+
+        private CreditCardScanner getCreditCardScanner() {
+            return creditCardScanner;
+        }
+
         private synchronized List<String> getKeywordListNames() {
             return new ArrayList<>(keywordListNames);
         }
@@ -385,6 +461,22 @@ private synchronized void addKeywordResults(Keyword k, Set<Long> resultsIDs) {
             currentResults.put(k, resultsIDs);
         }
 
+        /**
+         * Gets the index generation through which a keyword has already been
+         * searched for this job.
+         *
+         * @param k The keyword
+         *
+         * @return The generation, or null if the keyword has not been searched
+         */
+        private synchronized Long getSearchedGeneration(Keyword k) {
+            return searchedGenerations.get(k);
+        }
+
+        private synchronized void setSearchedGeneration(Keyword k, long generation) {
+            searchedGenerations.put(k, generation);
+        }
+
         private boolean isWorkerRunning() {
             return workerRunning;
         }
@@ -439,8 +531,9 @@ private void searchNotify() {
     /**
      * Searcher responsible for searching the current index and writing results
      * to blackboard and the inbox. Also, posts results to listeners as Ingest
-     * data events. Searches entire index, and keeps track of only new results
-     * to report and save. Runs as a background thread.
+     * data events. Each keyword is searched only against documents committed
+     * since the last search for it, and only new results are reported and
+     * saved. Runs as a background thread.
      */
     private final class Searcher extends SwingWorker<Object, Void> {
 
@@ -499,14 +592,30 @@ public boolean cancel() {
 
             progressGroup.start();
 
+            // Everything up to this generation was committed before the search began
+            final long throughGeneration = ingester.getCommittedGeneration();
+
+            // Queries run concurrently, but results are written to the
+            // blackboard one keyword at a time in list order
+            final List<Future<QueryResults>> queryFutures = new ArrayList<>(keywords.size());
+            final int maxQueriesAhead = 2 * numSearchThreads;
+
             final StopWatch stopWatch = new StopWatch();
             stopWatch.start();
             try {
                 progressGroup.setDisplayName(displayName);
 
                 int keywordsSearched = 0;
+                int keywordsSubmitted = 0;
 
                 for (Keyword keyword : keywords) {
+                    // Keep a bounded number of queries running ahead of the
+                    // keyword whose results are being written to the blackboard
+                    while (keywordsSubmitted < keywords.size() && keywordsSubmitted < keywordsSearched + maxQueriesAhead) {
+                        queryFutures.add(submitQuery(keywords.get(keywordsSubmitted), throughGeneration));
+                        ++keywordsSubmitted;
+                    }
+
                     if (this.isCancelled() || this.job.getJobContext().fileIngestIsCancelled()) {
                         logger.log(Level.INFO, "Cancel detected, bailing before new keyword processed: {0}", keyword.getSearchTerm()); //NON-NLS
                         return null;
@@ -520,27 +629,33 @@ public boolean cancel() {
                         subProgresses[keywordsSearched - 1].finish();
                     }
 
-                    KeywordSearchQuery keywordSearchQuery = KeywordSearchUtil.getQueryForKeyword(keyword, keywordList);
-
-                    // Filtering
-                    //limit search to currently ingested data sources
-                    //set up a filter with 1 or more image ids OR'ed
-                    final KeywordQueryFilter dataSourceFilter = new KeywordQueryFilter(KeywordQueryFilter.FilterType.DATA_SOURCE, job.getDataSourceId());
-                    keywordSearchQuery.addFilter(dataSourceFilter);
+                    Future<QueryResults> queryFuture = queryFutures.get(keywordsSearched);
+                    if (queryFuture == null) {
+                        // hits for this keyword are found at index time, or
+                        // nothing new has been indexed since it was last searched
+                        subProgresses[keywordsSearched].progress("");
+                        ++keywordsSearched;
+                        continue;
+                    }
 
                     QueryResults queryResults;
 
-                    // Do the actual search
+                    // Wait for the search to complete
                     try {
-                        queryResults = keywordSearchQuery.performQuery();
-                    } catch (KeywordSearchModuleException | NoOpenCoreException ex) {
-                        logger.log(Level.SEVERE, "Error performing query: " + keyword.getSearchTerm(), ex); //NON-NLS
-                        MessageNotifyUtil.Notify.error(Bundle.SearchRunner_query_exception_msg() + keyword.getSearchTerm(), ex.getCause().getMessage());
+                        queryResults = queryFuture.get();
+                    } catch (ExecutionException ex) {
+                        logger.log(Level.SEVERE, "Error performing query: " + keyword.getSearchTerm(), ex.getCause()); //NON-NLS
+                        MessageNotifyUtil.Notify.error(Bundle.SearchRunner_query_exception_msg() + keyword.getSearchTerm(),
+                                ex.getCause().getCause() != null ? ex.getCause().getCause().getMessage() : ex.getCause().getMessage());
                         //no reason to continue with next query if recovery failed
                         //or wait for recovery to kick in and run again later
                         //likely case has closed and threads are being interrupted
                         return null;
-                    } catch (CancellationException e) {
+                    } catch (CancellationException | InterruptedException e) {
+                        logger.log(Level.INFO, "Cancel detected, bailing during keyword query: {0}", keyword.getSearchTerm()); //NON-NLS
+                        return null;
+                    }
+                    if (queryResults == null) {
                         logger.log(Level.INFO, "Cancel detected, bailing during keyword query: {0}", keyword.getSearchTerm()); //NON-NLS
                         return null;
                     }
@@ -567,6 +682,8 @@ public boolean cancel() {
 
                     } //if has results
 
+                    job.setSearchedGeneration(keyword, throughGeneration);
+
                     //reset the status text before it goes away
                     subProgresses[keywordsSearched].progress("");
 
@@ -579,6 +696,12 @@ public boolean cancel() {
                 logger.log(Level.WARNING, "searcher exception occurred", ex); //NON-NLS
             } finally {
                 try {
+                    // stop any queries still running if the search was cancelled
+                    for (Future<QueryResults> queryFuture : queryFutures) {
+                        if (queryFuture != null) {
+                            queryFuture.cancel(true);
+                        }
+                    }
                     finalizeSearcher();
                     stopWatch.stop();
                     logger.log(Level.INFO, "Searcher took {0} secs to run (final = {1})", new Object[]{stopWatch.getElapsedTimeSecs(), this.finalRun}); //NON-NLS
@@ -591,6 +714,63 @@ public boolean cancel() {
             return null;
         }
 
+        /**
+         * Start the search for a keyword on the shared search thread pool.
+         *
+         * @param keyword           The keyword to search for
+         * @param throughGeneration The last index generation to search
+         *
+         * @return The pending results, or null if the keyword does not need
+         *         to be searched, because nothing has been indexed since it was
+         *         last searched. The results are null if the search was
+         *         cancelled before the query ran.
+         */
+        private Future<QueryResults> submitQuery(Keyword keyword, long throughGeneration) {
+            KeywordSearchQuery keywordSearchQuery = KeywordSearchUtil.getQueryForKeyword(keyword, keywordToList.get(keyword));
+
+            // Hits in the text of chunks are found at index time for some
+            // keywords. Solr is still searched for the hits that are not, in
+            // file names and in documents without text, which are all in the
+            // parent documents. Hits in the text of files indexed as aliases
+            // are not found at index time either, so aliases are searched for
+            // every keyword.
+            final boolean searchAliases = ContentAliases.isEnabled();
+            if (job.getLiteralMatcher().handles(keyword) || job.getCreditCardScanner().handles(keyword)) {
+                keywordSearchQuery.addFilter(KeywordQueryFilter.parentDocuments());
+            }
+
+            // Filtering
+            //limit search to currently ingested data sources
+            //set up a filter with 1 or more image ids OR'ed
+            final KeywordQueryFilter dataSourceFilter = new KeywordQueryFilter(KeywordQueryFilter.FilterType.DATA_SOURCE, job.getDataSourceId());
+            keywordSearchQuery.addFilter(dataSourceFilter);
+
+            //limit search to documents indexed since this keyword was last searched
+            final Long searchedGeneration = job.getSearchedGeneration(keyword);
+            if (searchedGeneration != null) {
+                if (searchedGeneration >= throughGeneration) {
+                    return null;
+                }
+                keywordSearchQuery.addFilter(new KeywordQueryFilter(searchedGeneration, throughGeneration));
+            }
+
+            return searchExecutor.submit(() -> {
+                if (this.isCancelled() || job.getJobContext().fileIngestIsCancelled()) {
+                    return null;
+                }
+                final StopWatch queryStopWatch = new StopWatch();
+                queryStopWatch.start();
+                QueryResults queryResults = keywordSearchQuery.performQuery();
+                if (searchAliases) {
+                    queryResults.addResults(ContentAliases.searchNewAliases(keyword, keywordToList.get(keyword),
+                            job.getDataSourceId(), searchedGeneration, throughGeneration));
+                }
+                queryStopWatch.stop();
+                logger.log(Level.FINE, "Query for {0} took {1} ms", new Object[]{keyword.getSearchTerm(), queryStopWatch.getElapsedTime()}); //NON-NLS
+                return queryResults;
+            });
+        }
+
         /**
          * Sync-up the updated keywords from the currently used lists in the XML
          */
@@ -671,9 +851,11 @@ private QueryResults filterResults(QueryResults queryResult) {
 
                 // For each hit for this keyword.
                 for (KeywordHit hit : queryTermResults) {
-                    if (curTermResults.contains(hit.getSolrObjectId())) {
+                    if (curTermResults.contains(hit.getSolrObjectId())
+                            || job.getLiteralMatcher().wasPosted(keyword, hit.getSolrObjectId())) {
                         // Skip the hit if we've already seen a hit for
-                        // this keyword in the object.
+                        // this keyword in the object, or one was posted
+                        // when the object was indexed.
                         continue;
                     }
 
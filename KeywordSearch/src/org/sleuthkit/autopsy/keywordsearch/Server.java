@@ -18,6 +18,7 @@
  */
 package org.sleuthkit.autopsy.keywordsearch;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import java.awt.event.ActionEvent;
 import java.beans.PropertyChangeListener;
 import java.io.BufferedReader;
@@ -39,12 +40,18 @@
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.logging.Level;
 import javax.swing.AbstractAction;
 import org.apache.solr.client.solrj.SolrQuery;
 import org.apache.solr.client.solrj.SolrRequest;
+import org.apache.solr.client.solrj.SolrServer;
 import org.apache.solr.client.solrj.SolrServerException;
 import org.apache.solr.client.solrj.impl.HttpSolrServer;
 import org.apache.solr.client.solrj.impl.XMLResponseParser;
@@ -57,6 +64,7 @@
 import org.apache.solr.common.SolrException;
 import org.apache.solr.common.SolrInputDocument;
 import org.apache.solr.common.params.CoreAdminParams;
+import org.apache.solr.common.params.ShardParams;
 import org.apache.solr.common.util.NamedList;
 import org.openide.modules.InstalledFileLocator;
 import org.openide.modules.Places;
@@ -106,6 +114,13 @@ public String toString() {
                 return "content_str"; //NON-NLS
             }
         },
+        // indexed but not stored, for indexes that read regex hits from the extracted text store
+        CONTENT_STR_UNSTORED {
+            @Override
+            public String toString() {
+                return "content_str_unstored"; //NON-NLS
+            }
+        },
         TEXT {
             @Override
             public String toString() {
@@ -163,6 +178,27 @@ public String toString() {
             public String toString() {
                 return "chunk_size"; //NON-NLS
             }
+        },
+        // the commit generation of a chunk, in schema 2.1 and later
+        INDEX_GENERATION {
+            @Override
+            public String toString() {
+                return "index_gen_tl"; //NON-NLS
+            }
+        },
+        // the MD5 hash of the file, in schema 2.1 and later
+        CONTENT_MD5 {
+            @Override
+            public String toString() {
+                return "md5_s"; //NON-NLS
+            }
+        },
+        // the object id of the file whose text an alias shares
+        ALIAS_OF {
+            @Override
+            public String toString() {
+                return "alias_of_tl"; //NON-NLS
+            }
         }
     };
 
@@ -190,6 +226,10 @@ public String toString() {
     private static final boolean DEBUG = false;//(Version.getBuildType() == Version.Type.DEVELOPMENT);
     private static final String SOLR = "solr";
     private static final String CORE_PROPERTIES = "core.properties";
+    private static final String SHARD_THREAD_NAME = "KWS-shard-commit-%d"; //NON-NLS
+    // commits the shards of a sharded index in parallel
+    private static final ExecutorService SHARD_EXECUTOR = Executors.newCachedThreadPool(
+            new ThreadFactoryBuilder().setNameFormat(SHARD_THREAD_NAME).setDaemon(true).build());
 
     public enum CORE_EVT_STATES {
 
@@ -203,6 +243,10 @@ public enum CORE_EVT_STATES {
     // This could be a local or remote server.
     private HttpSolrServer currentSolrServer;
 
+    // The Solr server running inside the application, used instead of the
+    // local Solr process for single-user cases when that option is set.
+    private volatile EmbeddedSolr embeddedSolr;
+
     private Core currentCore;
     private final ReentrantReadWriteLock currentCoreLock;
 
@@ -419,9 +463,9 @@ void killSolr() {
     }
 
     /**
-     * Tries to start a local Solr instance in a separate process. Returns
-     * immediately (probably before the server is ready) and doesn't check
-     * whether it was successful.
+     * Tries to start a local Solr instance in a separate process, or in this
+     * process if the embedded server is enabled. Returns immediately (probably
+     * before the server is ready) and doesn't check whether it was successful.
      */
     void start() throws KeywordSearchModuleException, SolrServerNoPortException {
         if (isRunning()) {
@@ -429,6 +473,14 @@ void start() throws KeywordSearchModuleException, SolrServerNoPortException {
             stop();
         }
 
+        if (KeywordSearchSettings.getEmbeddedSolr()) {
+            // The embedded server does not listen on any port, and a Solr
+            // process left by an earlier run is left alone.
+            logger.log(Level.INFO, "Starting embedded Solr server from: {0}", solrFolder.getAbsolutePath()); //NON-NLS
+            embeddedSolr = EmbeddedSolr.start(solrFolder);
+            return;
+        }
+
         if (!isPortAvailable(currentSolrServerPort)) {
             // There is something already listening on our port. Let's see if
             // this is from an earlier run that didn't successfully shut down
@@ -551,6 +603,13 @@ synchronized void stop() {
             logger.log(Level.WARNING, "Failed to close core: ", e); //NON-NLS
         }
 
+        if (embeddedSolr != null) {
+            logger.log(Level.INFO, "Stopping embedded Solr server"); //NON-NLS
+            embeddedSolr.shutdown();
+            embeddedSolr = null;
+            return;
+        }
+
         try {
             logger.log(Level.INFO, "Stopping Solr server from: {0}", solrFolder.getAbsolutePath()); //NON-NLS
 
@@ -592,6 +651,9 @@ synchronized void stop() {
      *         true
      */
     synchronized boolean isRunning() throws KeywordSearchModuleException {
+        if (embeddedSolr != null) {
+            return true;
+        }
         try {
 
             if (isPortAvailable(currentSolrServerPort)) {
@@ -711,6 +773,26 @@ void addDocument(SolrInputDocument doc) throws KeywordSearchModuleException, NoO
         }
     }
 
+    /**
+     * Adds a batch of documents to the current core in one update request.
+     *
+     * @param docs The documents to add
+     *
+     * @throws KeywordSearchModuleException
+     * @throws NoOpenCoreException
+     */
+    void addDocuments(Collection<SolrInputDocument> docs) throws KeywordSearchModuleException, NoOpenCoreException {
+        currentCoreLock.readLock().lock();
+        try {
+            if (null == currentCore) {
+                throw new NoOpenCoreException();
+            }
+            currentCore.addDocuments(docs);
+        } finally {
+            currentCoreLock.readLock().unlock();
+        }
+    }
+
     /**
      * ** end single-case specific methods ***
      */
@@ -722,6 +804,14 @@ void addDocument(SolrInputDocument doc) throws KeywordSearchModuleException, NoO
     @NbBundle.Messages({
         "# {0} - core name", "Server.deleteCore.exception.msg=Failed to delete Solr core {0}",})
     void deleteCore(String coreName, Case.CaseType caseType) throws KeywordSearchServiceException {
+        if (caseType == CaseType.SINGLE_USER_CASE && embeddedSolr != null) {
+            try {
+                embeddedSolr.unloadCore(coreName, true);
+            } catch (KeywordSearchModuleException ex) {
+                throw new KeywordSearchServiceException(Bundle.Server_deleteCore_exception_msg(coreName), ex);
+            }
+            return;
+        }
         try {
             HttpSolrServer solrServer;
             if (caseType == CaseType.SINGLE_USER_CASE) {
@@ -732,25 +822,71 @@ void deleteCore(String coreName, Case.CaseType caseType) throws KeywordSearchSer
                 String port = UserPreferences.getIndexingServerPort();
                 solrServer = new HttpSolrServer("http://" + host + ":" + port + "/solr"); //NON-NLS
             }
-            connectToSolrServer(solrServer);
-            CoreAdminResponse response = CoreAdminRequest.getStatus(coreName, solrServer);
-            if (null != response.getCoreStatus(coreName).get("instanceDir")) {             //NON-NLS
-                /*
-                 * Send a core unload request to the Solr server, with the
-                 * parameter set that request deleting the index and the
-                 * instance directory (deleteInstanceDir = true). Note that this
-                 * removes everything related to the core on the server (the
-                 * index directory, the configuration files, etc.), but does not
-                 * delete the actual Solr text index because it is currently
-                 * stored in the case directory.
-                 */
-                org.apache.solr.client.solrj.request.CoreAdminRequest.unloadCore(coreName, true, true, solrServer);
-            }
+            unloadCore(solrServer, coreName);
         } catch (SolrServerException | HttpSolrServer.RemoteSolrException | IOException ex) {
             throw new KeywordSearchServiceException(Bundle.Server_deleteCore_exception_msg(coreName), ex);
         }
     }
 
+    /**
+     * Deletes the keyword search cores of all shards of a case index.
+     *
+     * @param index    The text index.
+     * @param caseType The type of the case the index belongs to.
+     */
+    void deleteCore(Index index, Case.CaseType caseType) throws KeywordSearchServiceException {
+        deleteCore(index.getIndexName(), caseType);
+        for (int shard = 1; shard < index.getShardCount(); shard++) {
+            String shardName = index.getShardName(shard);
+            try {
+                unloadCore(getShardServer(index, shard), shardName);
+            } catch (SolrServerException | HttpSolrServer.RemoteSolrException | IOException ex) {
+                throw new KeywordSearchServiceException(Bundle.Server_deleteCore_exception_msg(shardName), ex);
+            }
+        }
+    }
+
+    /**
+     * Unloads a core from a Solr server and deletes its instance directory, if
+     * the core is loaded.
+     *
+     * @param solrServer The Solr server.
+     * @param coreName   The core name.
+     */
+    private void unloadCore(HttpSolrServer solrServer, String coreName) throws SolrServerException, IOException {
+        connectToSolrServer(solrServer);
+        CoreAdminResponse response = CoreAdminRequest.getStatus(coreName, solrServer);
+        if (null != response.getCoreStatus(coreName).get("instanceDir")) {             //NON-NLS
+            /*
+             * Send a core unload request to the Solr server, with the
+             * parameter set that request deleting the index and the
+             * instance directory (deleteInstanceDir = true). Note that this
+             * removes everything related to the core on the server (the
+             * index directory, the configuration files, etc.), but does not
+             * delete the actual Solr text index because it is currently
+             * stored in the case directory.
+             */
+            org.apache.solr.client.solrj.request.CoreAdminRequest.unloadCore(coreName, true, true, solrServer);
+        }
+    }
+
+    /**
+     * Get the Solr server a shard of a multi-user case index is on, from the
+     * shard hosts recorded in the index metadata when the index was created.
+     *
+     * @param index The text index.
+     * @param shard The shard number, starting at 1
+     *
+     * @return The Solr server
+     */
+    private HttpSolrServer getShardServer(Index index, int shard) {
+        String host = index.getShardHost(shard);
+        if (host == null) {
+            return new HttpSolrServer("http://" + UserPreferences.getIndexingServerHost() + ":" + UserPreferences.getIndexingServerPort() + "/solr"); //NON-NLS
+        }
+        return new HttpSolrServer("http://" + host + "/solr"); //NON-NLS
+    }
+
     /**
      * Creates/opens a Solr core (index) for a case.
      *
@@ -763,6 +899,9 @@ void deleteCore(String coreName, Case.CaseType caseType) throws KeywordSearchSer
      *                                      creating/opening the core.
      */
     private Core openCore(Case theCase, Index index) throws KeywordSearchModuleException {
+        if (theCase.getCaseType() == CaseType.SINGLE_USER_CASE && embeddedSolr != null) {
+            return openEmbeddedCore(theCase, index);
+        }
 
         try {
             if (theCase.getCaseType() == CaseType.SINGLE_USER_CASE) {
@@ -790,46 +929,101 @@ private Core openCore(Case theCase, Index index) throws KeywordSearchModuleExcep
             }
 
             String coreName = index.getIndexName();
-            if (!coreIsLoaded(coreName)) {
-                /*
-                 * The core either does not exist or it is not loaded. Make a
-                 * request that will cause the core to be created if it does not
-                 * exist or loaded if it already exists.
-                 */
-
-                // In single user mode, if there is a core.properties file already,
-                // we've hit a solr bug. Compensate by deleting it.
-                if (theCase.getCaseType() == CaseType.SINGLE_USER_CASE) {
-                    Path corePropertiesFile = Paths.get(solrFolder.toString(), SOLR, coreName, CORE_PROPERTIES);
-                    if (corePropertiesFile.toFile().exists()) {
-                        try {
-                            corePropertiesFile.toFile().delete();
-                        } catch (Exception ex) {
-                            logger.log(Level.INFO, "Could not delete pre-existing core.properties prior to opening the core."); //NON-NLS
-                        }
-                    }
+            openHttpCore(currentSolrServer, coreName, dataDir, theCase.getCaseType());
+            List<String> shardUrls = new ArrayList<>();
+            shardUrls.add(currentSolrServer.getBaseURL() + "/" + coreName); //NON-NLS
+            for (int shard = 1; shard < index.getShardCount(); shard++) {
+                HttpSolrServer shardServer = getShardServer(index, shard);
+                connectToSolrServer(shardServer);
+                String shardName = index.getShardName(shard);
+                File shardDataDir = new File(index.getShardIndexPath(shard)).getParentFile();
+                if (!shardDataDir.exists()) {
+                    shardDataDir.mkdirs();
                 }
-
-                CoreAdminRequest.Create createCoreRequest = new CoreAdminRequest.Create();
-                createCoreRequest.setDataDir(dataDir.getAbsolutePath());
-                createCoreRequest.setCoreName(coreName);
-                createCoreRequest.setConfigSet("AutopsyConfig"); //NON-NLS
-                createCoreRequest.setIsLoadOnStartup(false);
-                createCoreRequest.setIsTransient(true);
-                currentSolrServer.request(createCoreRequest);
-            }
-
-            if (!coreIndexFolderExists(coreName)) {
-                throw new KeywordSearchModuleException(NbBundle.getMessage(this.getClass(), "Server.openCore.exception.noIndexDir.msg"));
+                openHttpCore(shardServer, shardName, shardDataDir, theCase.getCaseType());
+                shardUrls.add(shardServer.getBaseURL() + "/" + shardName); //NON-NLS
             }
 
-            return new Core(coreName, theCase.getCaseType(), index);
+            return new Core(coreName, theCase.getCaseType(), index, shardUrls);
 
         } catch (Exception ex) {
             throw new KeywordSearchModuleException(NbBundle.getMessage(this.getClass(), "Server.openCore.exception.cantOpen.msg"), ex);
         }
     }
 
+    /**
+     * Creates a core on a Solr server if it does not exist, or loads it if it
+     * is not loaded.
+     *
+     * @param solrServer The Solr server.
+     * @param coreName   The core name.
+     * @param dataDir    The data directory of the core.
+     * @param caseType   The type of the case the core is for.
+     *
+     * @throws KeywordSearchModuleException If the index directory of the core
+     *                                      does not exist afterwards.
+     */
+    private void openHttpCore(HttpSolrServer solrServer, String coreName, File dataDir, CaseType caseType) throws SolrServerException, IOException, KeywordSearchModuleException {
+        if (!coreIsLoaded(solrServer, coreName)) {
+            /*
+             * The core either does not exist or it is not loaded. Make a
+             * request that will cause the core to be created if it does not
+             * exist or loaded if it already exists.
+             */
+
+            // In single user mode, if there is a core.properties file already,
+            // we've hit a solr bug. Compensate by deleting it.
+            if (caseType == CaseType.SINGLE_USER_CASE) {
+                Path corePropertiesFile = Paths.get(solrFolder.toString(), SOLR, coreName, CORE_PROPERTIES);
+                if (corePropertiesFile.toFile().exists()) {
+                    try {
+                        corePropertiesFile.toFile().delete();
+                    } catch (Exception ex) {
+                        logger.log(Level.INFO, "Could not delete pre-existing core.properties prior to opening the core."); //NON-NLS
+                    }
+                }
+            }
+
+            CoreAdminRequest.Create createCoreRequest = new CoreAdminRequest.Create();
+            createCoreRequest.setDataDir(dataDir.getAbsolutePath());
+            createCoreRequest.setCoreName(coreName);
+            createCoreRequest.setConfigSet("AutopsyConfig"); //NON-NLS
+            createCoreRequest.setIsLoadOnStartup(false);
+            createCoreRequest.setIsTransient(true);
+            solrServer.request(createCoreRequest);
+        }
+
+        if (!coreIndexFolderExists(solrServer, coreName)) {
+            throw new KeywordSearchModuleException(NbBundle.getMessage(this.getClass(), "Server.openCore.exception.noIndexDir.msg"));
+        }
+    }
+
+    /**
+     * Creates/opens a Solr core (index) for a single-user case in the embedded
+     * Solr server.
+     *
+     * @param theCase The case for which the core is to be created/opened.
+     * @param index   The text index that the Solr core should be using.
+     *
+     * @return An object representing the created/opened core.
+     *
+     * @throws KeywordSearchModuleException If an error occurs while
+     *                                      creating/opening the core.
+     */
+    private Core openEmbeddedCore(Case theCase, Index index) throws KeywordSearchModuleException {
+        File dataDir = new File(new File(index.getIndexPath()).getParent()); // "data dir" is the parent of the index directory
+        if (!dataDir.exists()) {
+            dataDir.mkdirs();
+        }
+
+        String coreName = index.getIndexName();
+        SolrServer coreServer = embeddedSolr.openCore(coreName, dataDir);
+        if (!new File(dataDir, "index").exists()) { //NON-NLS
+            throw new KeywordSearchModuleException(NbBundle.getMessage(this.getClass(), "Server.openCore.exception.noIndexDir.msg"));
+        }
+        return new Core(coreName, theCase.getCaseType(), index, coreServer);
+    }
+
     /**
      * Commits current core if it exists
      *
@@ -841,7 +1035,27 @@ void commit() throws SolrServerException, NoOpenCoreException {
             if (null == currentCore) {
                 throw new NoOpenCoreException();
             }
-            currentCore.commit();
+            currentCore.commit(false);
+        } finally {
+            currentCoreLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Soft commits current core if it exists. A soft commit makes the indexed
+     * documents searchable without flushing the index to disk, so it is much
+     * faster than a hard commit, but the documents are only saved by the next
+     * hard commit.
+     *
+     * @throws SolrServerException, NoOpenCoreException
+     */
+    void softCommit() throws SolrServerException, NoOpenCoreException {
+        currentCoreLock.readLock().lock();
+        try {
+            if (null == currentCore) {
+                throw new NoOpenCoreException();
+            }
+            currentCore.commit(true);
         } finally {
             currentCoreLock.readLock().unlock();
         }
@@ -1201,8 +1415,8 @@ void connectToSolrServer(HttpSolrServer solrServer) throws SolrServerException,
      * @throws IOException         If there is a problem communicating with the
      *                             Solr server.
      */
-    private boolean coreIsLoaded(String coreName) throws SolrServerException, IOException {
-        CoreAdminResponse response = CoreAdminRequest.getStatus(coreName, currentSolrServer);
+    private boolean coreIsLoaded(HttpSolrServer solrServer, String coreName) throws SolrServerException, IOException {
+        CoreAdminResponse response = CoreAdminRequest.getStatus(coreName, solrServer);
         return response.getCoreStatus(coreName).get("instanceDir") != null; //NON-NLS
     }
 
@@ -1216,8 +1430,8 @@ private boolean coreIsLoaded(String coreName) throws SolrServerException, IOExce
      * @throws SolrServerException
      * @throws IOException
      */
-    private boolean coreIndexFolderExists(String coreName) throws SolrServerException, IOException {
-        CoreAdminResponse response = CoreAdminRequest.getStatus(coreName, currentSolrServer);
+    private boolean coreIndexFolderExists(HttpSolrServer solrServer, String coreName) throws SolrServerException, IOException {
+        CoreAdminResponse response = CoreAdminRequest.getStatus(coreName, solrServer);
         Object dataDirPath = response.getCoreStatus(coreName).get("dataDir"); //NON-NLS
         if (null != dataDirPath) {
             File indexDir = Paths.get((String) dataDirPath, "index").toFile();  //NON-NLS
@@ -1238,16 +1452,48 @@ class Core {
 
         // the server to access a core needs to be built from a URL with the
         // core in it, and is only good for core-specific operations
-        private final HttpSolrServer solrCore;
+        private final SolrServer solrCore;
+
+        // true if the core is in the embedded Solr server
+        private final boolean embedded;
+
+        // the cores of all shards of a sharded index, starting with solrCore,
+        // which also takes the queries and has Solr fan them out
+        private final List<SolrServer> shardCores;
+
+        // the Solr shards parameter listing the shard cores, null if the
+        // index is not sharded
+        private final String shardsParam;
         
         private final int QUERY_TIMEOUT_MILLISECONDS = 86400000; // 24 Hours = 86,400,000 Milliseconds
 
-        private Core(String name, CaseType caseType, Index index) {
+        private Core(String name, CaseType caseType, Index index, List<String> shardUrls) {
             this.name = name;
             this.caseType = caseType;
             this.textIndex = index;
+            this.embedded = false;
+
+            List<SolrServer> cores = new ArrayList<>();
+            for (String shardUrl : shardUrls) {
+                cores.add(createHttpCore(shardUrl));
+            }
+            this.shardCores = cores;
+            this.solrCore = cores.get(0);
+            this.shardsParam = shardUrls.size() > 1 ? String.join(",", shardUrls) : null;
+        }
 
-            this.solrCore = new HttpSolrServer(currentSolrServer.getBaseURL() + "/" + name); //NON-NLS
+        private Core(String name, CaseType caseType, Index index, SolrServer embeddedCore) {
+            this.name = name;
+            this.caseType = caseType;
+            this.textIndex = index;
+            this.embedded = true;
+            this.solrCore = embeddedCore;
+            this.shardCores = Collections.singletonList(embeddedCore);
+            this.shardsParam = null;
+        }
+
+        private HttpSolrServer createHttpCore(String coreUrl) {
+            HttpSolrServer solrCore = new HttpSolrServer(coreUrl);
 
             //TODO test these settings
             // socket read timeout, make large enough so can index larger files
@@ -1260,7 +1506,55 @@ private Core(String name, CaseType caseType, Index index) {
             // Server side must support gzip or deflate for this to have any effect.
             solrCore.setAllowCompression(true);
             solrCore.setParser(new XMLResponseParser()); // binary parser is used by default
+            return solrCore;
+        }
+
+        /**
+         * Make a query to the first shard of a sharded index search all of
+         * them. Solr queries the shards in parallel and merges their results,
+         * including highlighting, terms and cursor paging.
+         *
+         * @param sq The query
+         *
+         * @return The same query
+         */
+        private SolrQuery distribute(SolrQuery sq) {
+            if (shardsParam != null) {
+                sq.set(ShardParams.SHARDS, shardsParam);
+                if (sq.getRequestHandler() != null) {
+                    // e.g. the terms handler
+                    sq.set(ShardParams.SHARDS_QT, sq.getRequestHandler());
+                }
+            }
+            return sq;
+        }
 
+        /**
+         * Get the shard a document belongs to. All chunks of a file or
+         * artifact go to the same shard.
+         *
+         * @param doc The document
+         *
+         * @return The shard number
+         */
+        private int getShard(SolrInputDocument doc) {
+            if (shardCores.size() == 1) {
+                return 0;
+            }
+            try {
+                long key;
+                if (textIndex.getShardRouting() == Index.ShardRouting.DATA_SOURCE) {
+                    key = Long.parseLong(doc.getFieldValue(Schema.IMAGE_ID.toString()).toString());
+                } else {
+                    String id = doc.getFieldValue(Schema.ID.toString()).toString();
+                    int separator = id.indexOf(CHUNK_ID_SEPARATOR);
+                    key = Long.parseLong(separator == -1 ? id : id.substring(0, separator));
+                }
+                return (int) Math.floorMod(key, (long) shardCores.size());
+            } catch (NumberFormatException | NullPointerException ex) {
+                // documents that are not for a file or artifact
+                return 0;
+            }
         }
 
         /**
@@ -1277,7 +1571,7 @@ private Index getIndexInfo() {
         }
 
         private QueryResponse query(SolrQuery sq) throws SolrServerException, IOException {
-            return solrCore.query(sq);
+            return solrCore.query(distribute(sq));
         }
 
         private NamedList<Object> request(SolrRequest request) throws SolrServerException {
@@ -1292,18 +1586,43 @@ private NamedList<Object> request(SolrRequest request) throws SolrServerExceptio
         }
 
         private QueryResponse query(SolrQuery sq, SolrRequest.METHOD method) throws SolrServerException, IOException {
-            return solrCore.query(sq, method);
+            return solrCore.query(distribute(sq), method);
         }
 
         private TermsResponse queryTerms(SolrQuery sq) throws SolrServerException, IOException {
-            QueryResponse qres = solrCore.query(sq);
+            QueryResponse qres = solrCore.query(distribute(sq));
             return qres.getTermsResponse();
         }
 
-        private void commit() throws SolrServerException {
+        private void commit(boolean softCommit) throws SolrServerException {
+            // commit the other shards in parallel with the first
+            List<Future<Void>> shardCommits = new ArrayList<>();
+            for (SolrServer shardCore : shardCores.subList(1, shardCores.size())) {
+                shardCommits.add(SHARD_EXECUTOR.submit(() -> {
+                    commit(shardCore, softCommit);
+                    return null;
+                }));
+            }
+            commit(solrCore, softCommit);
+            for (Future<Void> shardCommit : shardCommits) {
+                try {
+                    shardCommit.get();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    throw new SolrServerException(NbBundle.getMessage(this.getClass(), "Server.commit.exception.msg"), ex);
+                } catch (ExecutionException ex) {
+                    if (ex.getCause() instanceof SolrServerException) {
+                        throw (SolrServerException) ex.getCause();
+                    }
+                    throw new SolrServerException(NbBundle.getMessage(this.getClass(), "Server.commit.exception.msg"), ex.getCause());
+                }
+            }
+        }
+
+        private void commit(SolrServer core, boolean softCommit) throws SolrServerException {
             try {
                 //commit and block
-                solrCore.commit(true, true);
+                core.commit(true, true, softCommit);
             } catch (IOException e) {
                 logger.log(Level.WARNING, "Could not commit index. ", e); //NON-NLS
                 throw new SolrServerException(NbBundle.getMessage(this.getClass(), "Server.commit.exception.msg"), e);
@@ -1312,7 +1631,7 @@ private void commit() throws SolrServerException {
 
         void addDocument(SolrInputDocument doc) throws KeywordSearchModuleException {
             try {
-                solrCore.add(doc);
+                shardCores.get(getShard(doc)).add(doc);
             } catch (SolrServerException ex) {
                 logger.log(Level.SEVERE, "Could not add document to index via update handler: " + doc.getField("id"), ex); //NON-NLS
                 throw new KeywordSearchModuleException(
@@ -1324,6 +1643,31 @@ void addDocument(SolrInputDocument doc) throws KeywordSearchModuleException {
             }
         }
 
+        void addDocuments(Collection<SolrInputDocument> docs) throws KeywordSearchModuleException {
+            try {
+                if (shardCores.size() == 1) {
+                    solrCore.add(docs);
+                    return;
+                }
+                List<List<SolrInputDocument>> shardDocs = new ArrayList<>();
+                for (int shard = 0; shard < shardCores.size(); shard++) {
+                    shardDocs.add(new ArrayList<>());
+                }
+                for (SolrInputDocument doc : docs) {
+                    shardDocs.get(getShard(doc)).add(doc);
+                }
+                for (int shard = 0; shard < shardCores.size(); shard++) {
+                    if (!shardDocs.get(shard).isEmpty()) {
+                        shardCores.get(shard).add(shardDocs.get(shard));
+                    }
+                }
+            } catch (SolrServerException | IOException ex) {
+                logger.log(Level.WARNING, "Could not add batch of " + docs.size() + " documents to index via update handler", ex); //NON-NLS
+                throw new KeywordSearchModuleException(
+                        NbBundle.getMessage(this.getClass(), "Server.addDocBatch.exception.msg", docs.size()), ex); //NON-NLS
+            }
+        }
+
         /**
          * get the text from the content field for the given file
          *
@@ -1344,7 +1688,7 @@ private String getSolrContent(long contentID, int chunkID) {
             q.setFields(Schema.TEXT.toString());
             try {
                 // Get the first result. 
-                SolrDocumentList solrDocuments = solrCore.query(q).getResults();
+                SolrDocumentList solrDocuments = solrCore.query(distribute(q)).getResults();
 
                 if (!solrDocuments.isEmpty()) {
                     SolrDocument solrDocument = solrDocuments.get(0);
@@ -1374,6 +1718,11 @@ synchronized void close() throws KeywordSearchModuleException {
                 return;
             }
 
+            if (embedded) {
+                embeddedSolr.unloadCore(this.name, false);
+                return;
+            }
+
             try {
                 CoreAdminRequest.unloadCore(this.name, currentSolrServer);
             } catch (SolrServerException ex) {
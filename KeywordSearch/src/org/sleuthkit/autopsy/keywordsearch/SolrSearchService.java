@@ -173,7 +173,7 @@ public void deleteTextIndex(CaseMetadata metadata) throws KeywordSearchServiceEx
                  * Unload/delete the core on the server and then delete the text
                  * index files.
                  */
-                KeywordSearch.getServer().deleteCore(index.getIndexName(), metadata.getCaseType());
+                KeywordSearch.getServer().deleteCore(index, metadata.getCaseType());
                 if (!FileUtil.deleteDir(new File(index.getIndexPath()).getParentFile())) {
                     throw new KeywordSearchServiceException(Bundle.SolrSearchService_exceptionMessage_failedToDeleteIndexFiles(index.getIndexPath()));                    
                 }
@@ -270,6 +270,10 @@ public void openCaseResources(CaseContext context) throws AutopsyServiceExceptio
             progressUnitsCompleted++;
             progress.progress(Bundle.SolrSearch_checkingForLatestIndex_msg(), progressUnitsCompleted);
             currentVersionIndex = IndexFinder.findLatestVersionIndexDir(indexes);
+            if (currentVersionIndex == null) {
+                // an index of an older schema may only need its schema version updated
+                currentVersionIndex = IndexFinder.upgradeIndexInPlace(indexes);
+            }
             if (currentVersionIndex == null) {
                 // found existing index(es) but none were for latest Solr version and schema version
                 progressUnitsCompleted++;
@@ -367,6 +371,9 @@ public void closeCaseResources(CaseContext context) throws AutopsyServiceExcepti
             logger.log(Level.SEVERE, "Unexpected interrupt while waiting for BlackboardResultWriters to terminate", ex);
         }
 
+        // Send or fail every queued document before the core goes away
+        Ingester.getDefault().closeCase();
+
         try {
             KeywordSearch.getServer().closeCore();
         } catch (KeywordSearchModuleException ex) {
@@ -0,0 +1,458 @@
+/*
+ * Autopsy Forensic Browser
+ *
+ * Copyright 2017 Basis Technology Corp.
+ * Contact: carrier <at> sleuthkit <dot> org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sleuthkit.autopsy.keywordsearch;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import org.sleuthkit.autopsy.coreutils.StringExtract;
+import org.sleuthkit.autopsy.coreutils.StringExtract.StringExtractUnicodeTable;
+import org.sleuthkit.autopsy.coreutils.StringExtract.StringExtractUnicodeTable.SCRIPT;
+
+/**
+ * Finds the strings in a buffer of bytes, looking for UTF-8 (including
+ * ASCII), UTF-16LE and UTF-16BE strings in a single pass.
+ *
+ * The three decoders run side by side over the bytes, each building up its
+ * current run of characters. Whether a character may be part of a string, and
+ * which script it belongs to, is looked up in a table built once for the
+ * enabled scripts. As with StringExtract, a string is a run of at least
+ * StringExtract.MIN_CHARS_STRING characters from the common script and at
+ * most one other enabled script, and UTF-16 strings start at even offsets.
+ * When runs of different encodings overlap, the one with the most characters
+ * wins. Each string found is followed by a new line in the output.
+ *
+ * A UTF-16 unit at an even offset that cannot be part of a string in either
+ * byte order, and whose second byte cannot be part of a UTF-8 string, ends
+ * every run whatever came before it (two zero bytes, for example). Scanning
+ * can therefore be split just past such a unit (see findSplitPoint()) with
+ * the same output as scanning the bytes in one go, which allows large files
+ * to be scanned in parallel.
+ *
+ * A scanner has no mutable state and can be shared between threads.
+ */
+final class StringsScanner {
+
+    /**
+     * Runs are cut into strings of at most this many characters.
+     */
+    static final int MAX_STRING_CHARS = 4096;
+
+    private static final byte BREAK = -1;
+    private static final byte COMMON = 0;
+
+    /*
+     * Lead byte tables for UTF-8, following "well-formed UTF-8 byte sequences"
+     * in the Unicode standard: the length of the sequence (0 if the byte
+     * cannot start one) and the range of the second byte.
+     */
+    private static final byte[] UTF8_LENGTH = new byte[256];
+    private static final int[] UTF8_SECOND_LOW = new int[256];
+    private static final int[] UTF8_SECOND_HIGH = new int[256];
+
+    static {
+        for (int b = 0; b < 256; b++) {
+            UTF8_SECOND_LOW[b] = 0x80;
+            UTF8_SECOND_HIGH[b] = 0xBF;
+            if (b <= 0x7F) {
+                UTF8_LENGTH[b] = 1;
+            } else if (b >= 0xC2 && b <= 0xDF) {
+                UTF8_LENGTH[b] = 2;
+            } else if (b >= 0xE0 && b <= 0xEF) {
+                UTF8_LENGTH[b] = 3;
+            } else if (b >= 0xF0 && b <= 0xF4) {
+                UTF8_LENGTH[b] = 4;
+            }
+        }
+        UTF8_SECOND_LOW[0xE0] = 0xA0;
+        UTF8_SECOND_HIGH[0xED] = 0x9F;
+        UTF8_SECOND_LOW[0xF0] = 0x90;
+        UTF8_SECOND_HIGH[0xF4] = 0x8F;
+    }
+
+    private final byte[] charClasses;
+    private final boolean scanUTF8;
+    private final boolean scanUTF16;
+
+    /**
+     * Create a scanner.
+     *
+     * @param scripts   The scripts to extract. LATIN_2 also enables LATIN_1.
+     * @param scanUTF8  Whether to look for UTF-8 strings
+     * @param scanUTF16 Whether to look for UTF-16 strings
+     */
+    StringsScanner(List<SCRIPT> scripts, boolean scanUTF8, boolean scanUTF16) {
+        this(StringExtractUnicodeTable.getInstance(), scripts, scanUTF8, scanUTF16);
+    }
+
+    StringsScanner(StringExtractUnicodeTable unicodeTable, List<SCRIPT> scripts, boolean scanUTF8, boolean scanUTF16) {
+        if (unicodeTable == null) {
+            throw new IllegalStateException("Unicode table for string extraction is not available"); //NON-NLS
+        }
+        Set<SCRIPT> enabledScripts = scripts.isEmpty() ? EnumSet.noneOf(SCRIPT.class) : EnumSet.copyOf(scripts);
+        if (enabledScripts.contains(SCRIPT.LATIN_2)) {
+            enabledScripts.add(SCRIPT.LATIN_1);
+        }
+        charClasses = new byte[StringExtractUnicodeTable.getUnicodeTableSize()];
+        for (int ch = 0; ch < charClasses.length; ch++) {
+            SCRIPT script = unicodeTable.getScript(ch);
+            if (StringExtractUnicodeTable.isGeneric(script)) {
+                charClasses[ch] = COMMON;
+            } else if (script != SCRIPT.NONE && enabledScripts.contains(script)) {
+                charClasses[ch] = (byte) (script.ordinal() + 1);
+            } else {
+                charClasses[ch] = BREAK;
+            }
+        }
+        // NUL is never part of a string, so zero bytes are always a split point
+        charClasses[0] = BREAK;
+        this.scanUTF8 = scanUTF8;
+        this.scanUTF16 = scanUTF16;
+    }
+
+    /**
+     * Whether the scanner looks for any strings at all.
+     *
+     * @return false if neither UTF-8 nor UTF-16 strings are looked for
+     */
+    boolean isEnabled() {
+        return scanUTF8 || scanUTF16;
+    }
+
+    /**
+     * Find a point at or after the given offset where scanning can be split
+     * without changing the output: just past a UTF-16 unit at an even offset
+     * that ends every run in the encodings looked for.
+     *
+     * @param buf   The bytes
+     * @param from  The earliest split point; must be even
+     * @param limit The latest split point
+     *
+     * @return The split point, or limit if there is none before it
+     */
+    int findSplitPoint(byte[] buf, int from, int limit) {
+        for (int i = from; i + 1 < limit; i += 2) {
+            final int first = buf[i] & 0xFF;
+            final int second = buf[i + 1] & 0xFF;
+            if (scanUTF16 && (charClasses[(second << 8) | first] != BREAK || charClasses[(first << 8) | second] != BREAK)) {
+                continue;
+            }
+            // a byte below 0x80 cannot continue a UTF-8 sequence, so UTF-8 decoding resumes at the split point
+            if (scanUTF8 && (second >= 0x80 || charClasses[second] != BREAK)) {
+                continue;
+            }
+            return i + 2;
+        }
+        return limit;
+    }
+
+    /**
+     * Find the strings in part of a buffer.
+     *
+     * @param buf  The bytes
+     * @param from Offset of the first byte to scan. It is treated as an even
+     *             offset for UTF-16.
+     * @param to   Offset past the last byte to scan
+     *
+     * @return The strings found, each followed by a new line
+     */
+    String scan(byte[] buf, int from, int to) {
+        if (!isEnabled()) {
+            return "";
+        }
+        Scan scan = new Scan(buf, to - from);
+        int utf8Next = from;
+        // step through the bytes two at a time, the size of a UTF-16 unit
+        for (int i = from; i < to; i += 2) {
+            final boolean haveUnit = i + 1 < to;
+            if (haveUnit && buf[i] == 0 && buf[i + 1] == 0 && utf8Next <= i && scan.isIdle()) {
+                // skip zero bytes quickly
+                utf8Next = i + 2;
+                continue;
+            }
+            if (scanUTF16) {
+                if (haveUnit) {
+                    final int first = buf[i] & 0xFF;
+                    final int second = buf[i + 1] & 0xFF;
+                    scan.add(scan.utf16LE, (second << 8) | first, i, i + 2);
+                    scan.add(scan.utf16BE, (first << 8) | second, i, i + 2);
+                } else {
+                    scan.endRun(scan.utf16LE);
+                    scan.endRun(scan.utf16BE);
+                }
+            }
+            if (scanUTF8) {
+                final int unitEnd = haveUnit ? i + 2 : to;
+                while (utf8Next < unitEnd) {
+                    utf8Next = decodeUTF8(buf, utf8Next, to, scan);
+                }
+            }
+        }
+        return scan.finish();
+    }
+
+    /**
+     * Decode the UTF-8 character at an offset and add it to the UTF-8 run.
+     *
+     * @return the offset of the next character
+     */
+    private int decodeUTF8(byte[] buf, int offset, int to, Scan scan) {
+        final int lead = buf[offset] & 0xFF;
+        final int length = UTF8_LENGTH[lead];
+        if (length == 1) {
+            scan.add(scan.utf8, lead, offset, offset + 1);
+            return offset + 1;
+        }
+        if (length == 0 || offset + length > to) {
+            scan.endRun(scan.utf8);
+            return offset + 1;
+        }
+        final int second = buf[offset + 1] & 0xFF;
+        if (second < UTF8_SECOND_LOW[lead] || second > UTF8_SECOND_HIGH[lead]) {
+            scan.endRun(scan.utf8);
+            return offset + 1;
+        }
+        int ch = ((lead & (0xFF >> (length + 1))) << 6) | (second & 0x3F);
+        for (int k = 2; k < length; k++) {
+            final int next = buf[offset + k] & 0xFF;
+            if (next < 0x80 || next > 0xBF) {
+                scan.endRun(scan.utf8);
+                return offset + 1;
+            }
+            ch = (ch << 6) | (next & 0x3F);
+        }
+        if (ch >= charClasses.length) {
+            // beyond the unicode table, as with StringExtract
+            scan.endRun(scan.utf8);
+            return offset + length;
+        }
+        scan.add(scan.utf8, ch, offset, offset + length);
+        return offset + length;
+    }
+
+    /**
+     * The state of one call to scan().
+     */
+    private final class Scan {
+
+        private final byte[] buf;
+        private final Run utf8 = new Run(StandardCharsets.UTF_8);
+        private final Run utf16LE = new Run(StandardCharsets.UTF_16LE);
+        private final Run utf16BE = new Run(StandardCharsets.UTF_16BE);
+        // strings that may still lose to an overlapping run, in offset order
+        private final List<Candidate> held = new ArrayList<>();
+        private final StringBuilder output;
+
+        private Scan(byte[] buf, int numBytes) {
+            this.buf = buf;
+            output = new StringBuilder(Math.min(numBytes, 1024 * 1024));
+        }
+
+        private boolean isIdle() {
+            return utf8.numChars == 0 && utf16LE.numChars == 0 && utf16BE.numChars == 0;
+        }
+
+        private void add(Run run, int ch, int start, int end) {
+            final byte charClass = charClasses[ch];
+            if (charClass == BREAK) {
+                endRun(run);
+                return;
+            }
+            if (run.numChars > 0
+                    && ((charClass != COMMON && run.script != COMMON && charClass != run.script) || run.numChars == MAX_STRING_CHARS)) {
+                // a change of script or a long run starts a new string
+                endRun(run);
+            }
+            if (run.numChars == 0) {
+                run.start = start;
+                run.script = COMMON;
+            }
+            if (run.script == COMMON) {
+                run.script = charClass;
+            }
+            run.numChars++;
+            run.end = end;
+        }
+
+        private void endRun(Run run) {
+            if (run.numChars == 0) {
+                return;
+            }
+            if (run.numChars >= StringExtract.MIN_CHARS_STRING) {
+                offer(new Candidate(run.start, run.end, run.numChars, run.charset));
+            }
+            run.numChars = 0;
+            releaseFinished();
+        }
+
+        /**
+         * Add a string to the held strings. Where it overlaps held strings
+         * the one with the most characters wins, and what is left of the
+         * others outside the overlap is kept if it is still long enough.
+         */
+        private void offer(Candidate candidate) {
+            int firstOverlap = -1;
+            int lastOverlap = -1;
+            boolean candidateWins = true;
+            for (int k = 0; k < held.size(); k++) {
+                Candidate other = held.get(k);
+                if (other.start < candidate.end && candidate.start < other.end) {
+                    if (firstOverlap == -1) {
+                        firstOverlap = k;
+                    }
+                    lastOverlap = k;
+                    if (other.numChars >= candidate.numChars) {
+                        candidateWins = false;
+                    }
+                }
+            }
+            if (firstOverlap == -1) {
+                insert(candidate);
+                return;
+            }
+            List<Candidate> overlapping = new ArrayList<>(held.subList(firstOverlap, lastOverlap + 1));
+            if (candidateWins) {
+                held.subList(firstOverlap, lastOverlap + 1).clear();
+                insert(candidate);
+                for (Candidate other : overlapping) {
+                    insert(slice(other, other.start, candidate.start));
+                    insert(slice(other, candidate.end, other.end));
+                }
+            } else {
+                int gapStart = candidate.start;
+                for (Candidate other : overlapping) {
+                    insert(slice(candidate, gapStart, other.start));
+                    gapStart = other.end;
+                }
+                insert(slice(candidate, gapStart, candidate.end));
+            }
+        }
+
+        /**
+         * Add a string that overlaps no held string, keeping them in order.
+         *
+         * @param candidate The string, or null to do nothing
+         */
+        private void insert(Candidate candidate) {
+            if (candidate == null) {
+                return;
+            }
+            int k = held.size();
+            while (k > 0 && held.get(k - 1).start > candidate.start) {
+                k--;
+            }
+            held.add(k, candidate);
+        }
+
+        /**
+         * Get the part of a string made of the characters whose bytes lie
+         * within a range.
+         *
+         * @return The part, or null if it is too short to be a string
+         */
+        private Candidate slice(Candidate candidate, int from, int to) {
+            final boolean utf16 = candidate.charset != StandardCharsets.UTF_8;
+            int sliceStart = -1;
+            int sliceEnd = -1;
+            int numChars = 0;
+            int offset = candidate.start;
+            while (offset < candidate.end) {
+                int charEnd = offset + (utf16 ? 2 : UTF8_LENGTH[buf[offset] & 0xFF]);
+                if (offset >= from && charEnd <= to) {
+                    if (sliceStart == -1) {
+                        sliceStart = offset;
+                    }
+                    sliceEnd = charEnd;
+                    numChars++;
+                }
+                offset = charEnd;
+            }
+            if (numChars < StringExtract.MIN_CHARS_STRING) {
+                return null;
+            }
+            return new Candidate(sliceStart, sliceEnd, numChars, candidate.charset);
+        }
+
+        /**
+         * Output the held strings that no run still in progress can overlap.
+         */
+        private void releaseFinished() {
+            int earliestRunStart = Integer.MAX_VALUE;
+            if (utf8.numChars > 0) {
+                earliestRunStart = utf8.start;
+            }
+            if (utf16LE.numChars > 0) {
+                earliestRunStart = Math.min(earliestRunStart, utf16LE.start);
+            }
+            if (utf16BE.numChars > 0) {
+                earliestRunStart = Math.min(earliestRunStart, utf16BE.start);
+            }
+            while (!held.isEmpty() && held.get(0).end <= earliestRunStart) {
+                Candidate candidate = held.remove(0);
+                output.append(new String(buf, candidate.start, candidate.end - candidate.start, candidate.charset)).append('\n');
+            }
+        }
+
+        private String finish() {
+            endRun(utf8);
+            endRun(utf16LE);
+            endRun(utf16BE);
+            releaseFinished();
+            return output.toString();
+        }
+    }
+
+    /**
+     * A run of characters one of the decoders is building up. Its text is
+     * only decoded once it turns out to be a string.
+     */
+    private static final class Run {
+
+        private final Charset charset;
+        private int start;
+        private int end;
+        private int numChars = 0;
+        private byte script = COMMON;
+
+        private Run(Charset charset) {
+            this.charset = charset;
+        }
+    }
+
+    /**
+     * A finished run long enough to be a string.
+     */
+    private static final class Candidate {
+
+        private final int start;
+        private final int end;
+        private final int numChars;
+        private final Charset charset;
+
+        private Candidate(int start, int end, int numChars, Charset charset) {
+            this.start = start;
+            this.end = end;
+            this.numChars = numChars;
+            this.charset = charset;
+        }
+    }
+}
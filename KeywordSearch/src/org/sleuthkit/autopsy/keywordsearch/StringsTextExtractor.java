@@ -18,20 +18,28 @@
  */
 package org.sleuthkit.autopsy.keywordsearch;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 import java.util.logging.Level;
 import org.sleuthkit.autopsy.coreutils.Logger;
-import org.sleuthkit.autopsy.coreutils.StringExtract;
 import org.sleuthkit.autopsy.coreutils.StringExtract.StringExtractUnicodeTable.SCRIPT;
 import org.sleuthkit.datamodel.AbstractFile;
 import org.sleuthkit.datamodel.TskCoreException;
-import org.sleuthkit.datamodel.TskException;
 
 /**
  * Extracts raw strings from AbstractFile content.
@@ -50,6 +58,12 @@ enum ExtractOptions {
 
     private final List<SCRIPT> extractScripts = new ArrayList<>();
     private Map<String, String> extractOptions = new HashMap<>();
+    private StringsScanner scanner;
+
+    private static final String SCAN_THREAD_NAME = "strings-scan-%d"; //NON-NLS
+    private static final int DEFAULT_MAX_SCAN_THREADS = 4;
+    private static ExecutorService scanExecutor;
+    private static int scanThreads = 1;
 
     public StringsTextExtractor() {
         //LATIN_2 is the default script
@@ -61,9 +75,10 @@ public StringsTextExtractor() {
      *
      * @param extractScripts scripts to use
      */
-    public void setScripts(List<SCRIPT> extractScripts) {
+    public synchronized void setScripts(List<SCRIPT> extractScripts) {
         this.extractScripts.clear();
         this.extractScripts.addAll(extractScripts);
+        this.scanner = null;
     }
 
     /**
@@ -90,8 +105,9 @@ public Map<String, String> getOptions() {
      *
      * @param options options to use
      */
-    public void setOptions(Map<String, String> options) {
+    public synchronized void setOptions(Map<String, String> options) {
         this.extractOptions = options;
+        this.scanner = null;
     }
 
     @Override
@@ -108,21 +124,36 @@ public boolean isDisabled() {
     }
 
     @Override
-    public InputStreamReader getReader(AbstractFile sourceFile) throws TextExtractorException {
-        InputStream stringStream = getInputStream(sourceFile);
-        return new InputStreamReader(stringStream, Server.DEFAULT_INDEXED_TEXT_CHARSET);
+    public Reader getReader(AbstractFile sourceFile) throws TextExtractorException {
+        return new StringsReader(sourceFile, getScanner());
     }
 
-    InputStream getInputStream(AbstractFile sourceFile) {
-        //check which extract stream to use
-        if (extractScripts.size() == 1 && extractScripts.get(0).equals(SCRIPT.LATIN_1)) {
-            return new EnglishOnlyStream(sourceFile);//optimal for english, english only
-        } else {
-            boolean extractUTF8 = Boolean.parseBoolean(extractOptions.get(ExtractOptions.EXTRACT_UTF8.toString()));
-            boolean extractUTF16 = Boolean.parseBoolean(extractOptions.get(ExtractOptions.EXTRACT_UTF16.toString()));
+    /**
+     * Get the scanner for the current scripts and options, creating it if
+     * needed.
+     */
+    private synchronized StringsScanner getScanner() {
+        if (scanner == null) {
+            if (extractScripts.size() == 1 && extractScripts.get(0).equals(SCRIPT.LATIN_1)) {
+                //english only looks for both encodings, as it always has
+                scanner = new StringsScanner(extractScripts, true, true);
+            } else {
+                boolean extractUTF8 = Boolean.parseBoolean(extractOptions.get(ExtractOptions.EXTRACT_UTF8.toString()));
+                boolean extractUTF16 = Boolean.parseBoolean(extractOptions.get(ExtractOptions.EXTRACT_UTF16.toString()));
+                scanner = new StringsScanner(extractScripts, extractUTF8, extractUTF16);
+            }
+        }
+        return scanner;
+    }
 
-            return new InternationalStream(sourceFile, extractScripts, extractUTF8, extractUTF16);
+    private static synchronized ExecutorService getScanExecutor() {
+        if (scanExecutor == null) {
+            scanThreads = KeywordSearchSettings.getIntOption("StringsExtractionThreads", //NON-NLS
+                    Math.min(DEFAULT_MAX_SCAN_THREADS, Runtime.getRuntime().availableProcessors()));
+            scanExecutor = Executors.newFixedThreadPool(scanThreads,
+                    new ThreadFactoryBuilder().setNameFormat(SCAN_THREAD_NAME).setDaemon(true).build());
         }
+        return scanExecutor;
     }
 
     @Override
@@ -137,376 +168,186 @@ public boolean isSupported(AbstractFile file, String detectedFormat) {
     }
 
     /**
-     * AbstractFile input string stream reader/converter - given AbstractFile,
-     * extract strings from it and return encoded bytes via read()
-     *
-     * Note: the utility supports extraction of only LATIN script and UTF8,
-     * UTF16LE, UTF16BE encodings and uses a brute force encoding detection -
-     * it's fast but could apply multiple encodings on the same string.
-     *
-     * For other script/languages support and better encoding detection use
-     * AbstractFileStringIntStream streaming class, which wraps around
-     * StringExtract extractor.
+     * Reads the strings in a file. The file is read in segments, which are
+     * split at points where the scanner gives the same result as scanning the
+     * whole file (see StringsScanner.findSplitPoint()). The segments of large
+     * files are scanned in parallel on a shared pool while the next segments
+     * are read, and their strings are returned in file order.
      */
-    private static class EnglishOnlyStream extends InputStream {
+    private static class StringsReader extends Reader {
 
-        private static final Logger logger = Logger.getLogger(EnglishOnlyStream.class.getName());
-        private static final String NLS = Character.toString((char) 10); //new line
-        private static final int READ_BUF_SIZE = 65536;
-        private static final int MIN_PRINTABLE_CHARS = 4; //num. of chars needed to qualify as a char string
+        private static final int SEGMENT_SIZE = 4 * 1024 * 1024;
+        private static final int SPLIT_WINDOW = 64 * 1024;
+        private static final int MAX_SEGMENT_SIZE = 4 * SEGMENT_SIZE;
+        private static final int READ_BUF_SIZE = 1024 * 1024;
 
-        //args
         private final AbstractFile content;
-
-        //internal working data
-        private long contentOffset = 0; //offset in fscontent read into curReadBuf
-        private final byte[] curReadBuf = new byte[READ_BUF_SIZE];
-        private int bytesInReadBuf = 0;
-        private int readBufOffset = 0; //offset in read buf processed
-        private StringBuilder curString = new StringBuilder();
-        private int curStringLen = 0;
-        private StringBuilder tempString = new StringBuilder();
-        private int tempStringLen = 0;
-        private boolean isEOF = false;
-        private boolean stringAtTempBoundary = false; //if temp has part of string that didn't make it in previous read()
-        private boolean stringAtBufBoundary = false; //if read buffer has string being processed, continue as string from prev read() in next read()
-        private boolean inString = false; //if current temp has min chars required
-        private final byte[] oneCharBuf = new byte[1];
-
-        /**
-         * Construct new string stream from FsContent. Do not attempt to fill
-         * entire read buffer if that would break a string
-         *
-         * @param content Content object from which to extract strings.
-         */
-        private EnglishOnlyStream(AbstractFile content) {
+        private final StringsScanner scanner;
+        private final long fileSize;
+        private final ExecutorService executor;
+        private final int maxScansAhead;
+        private final Deque<Future<String>> scans = new ArrayDeque<>();
+        private byte[] readBuf;
+        private byte[] carryOver = new byte[0];
+        private long fileOffset = 0;
+        private boolean endOfFile = false;
+        private String currentText = "";
+        private int currentTextOffset = 0;
+
+        private StringsReader(AbstractFile content, StringsScanner scanner) {
             this.content = content;
+            this.scanner = scanner;
+            this.fileSize = content.getSize();
+            if (fileSize > SEGMENT_SIZE + SPLIT_WINDOW) {
+                this.executor = getScanExecutor();
+                this.maxScansAhead = scanThreads + 1;
+            } else {
+                // a single segment is scanned on the calling thread
+                this.executor = null;
+                this.maxScansAhead = 1;
+            }
+            this.endOfFile = fileSize == 0 || !scanner.isEnabled();
         }
 
         @Override
-        public int read(byte[] b, int off, int len) throws IOException {
-            if (b == null) {
-                throw new NullPointerException();
-            } else if (off < 0 || len < 0 || len > b.length - off) {
+        public int read(char[] cbuf, int off, int len) throws IOException {
+            if (off < 0 || len < 0 || len > cbuf.length - off) {
                 throw new IndexOutOfBoundsException();
             } else if (len == 0) {
                 return 0;
             }
-            long fileSize = content.getSize();
-            if (fileSize == 0) {
-                return -1;
-            }
-            if (isEOF) {
-                return -1;
-            }
-            if (stringAtTempBoundary) {
-                //append entire temp string residual from previous read()
-                //because qualified string was broken down into 2 parts
-                appendResetTemp();
-                stringAtTempBoundary = false;
-                //there could be more to this string in fscontent/buffer
-            }
-            boolean singleConsecZero = false; //preserve the current sequence of chars if 1 consecutive zero char
-            int newCurLen = curStringLen + tempStringLen;
-            while (newCurLen < len) {
-                //need to extract more strings
-                if (readBufOffset > bytesInReadBuf - 1) {
-                    //no more bytes to process into strings, read them
-                    try {
-                        bytesInReadBuf = 0;
-                        bytesInReadBuf = content.read(curReadBuf, contentOffset, READ_BUF_SIZE);
-                    } catch (TskException ex) {
-                        if (curStringLen > 0 || tempStringLen >= MIN_PRINTABLE_CHARS) {
-                            appendResetTemp();
-                            //have some extracted string, return that, and fail next time
-                            isEOF = true;
-                            int copied = copyToReturn(b, off, len);
-                            return copied;
-                        } else {
-                            return -1; //EOF
-                        }
-                    }
-                    if (bytesInReadBuf < 1) {
-                        if (curStringLen > 0 || tempStringLen >= MIN_PRINTABLE_CHARS) {
-                            appendResetTemp();
-                            //have some extracted string, return that, and fail next time
-                            isEOF = true;
-                            int copied = copyToReturn(b, off, len);
-                            return copied;
-                        } else {
-                            return -1; //EOF
-                        }
-                    }
-                    //increment content offset for next read
-                    contentOffset += bytesInReadBuf;
-                    //reset read buf position
-                    readBufOffset = 0;
-                }
-                //get char from cur read buf
-                char c = (char) curReadBuf[readBufOffset++];
-                if (c == 0 && singleConsecZero == false) {
-                    //preserve the current sequence if max consec. 1 zero char
-                    singleConsecZero = true;
-                } else {
-                    singleConsecZero = false;
-                }
-                if (StringExtract.isPrintableAscii(c)) {
-                    tempString.append(c);
-                    ++tempStringLen;
-                    if (tempStringLen >= MIN_PRINTABLE_CHARS) {
-                        inString = true;
-                    }
-                    //boundary case when temp has still chars - handled after the loop
-                } else if (!singleConsecZero) {
-                    //break the string, clear temp
-                    if (tempStringLen >= MIN_PRINTABLE_CHARS || stringAtBufBoundary) {
-                        //append entire temp string with new line
-                        tempString.append(NLS);
-                        ++tempStringLen;
-                        curString.append(tempString);
-                        curStringLen += tempStringLen;
-                        stringAtBufBoundary = false;
-                    }
-                    //reset temp
-                    tempString = new StringBuilder();
-                    tempStringLen = 0;
-                }
-                newCurLen = curStringLen + tempStringLen;
-            }
-            //check if still in string state, so that next chars in read buf bypass min chars check
-            //and qualify as string even if less < min chars required
-            if (inString) {
-                inString = false; //reset
-                stringAtBufBoundary = true; //will bypass the check
-            }
-            //check if temp still has chars to qualify as a string
-            //we might need to break up temp into 2 parts for next read() call
-            //consume as many as possible to fill entire user buffer
-            if (tempStringLen >= MIN_PRINTABLE_CHARS) {
-                if (newCurLen > len) {
-                    int appendChars = len - curStringLen;
-                    //save part for next user read(), need to break up temp string
-                    //do not append new line
-                    String toAppend = tempString.substring(0, appendChars);
-                    String newTemp = tempString.substring(appendChars);
-                    curString.append(toAppend);
-                    curStringLen += appendChars;
-                    tempString = new StringBuilder(newTemp);
-                    tempStringLen = newTemp.length();
-                    stringAtTempBoundary = true;
-                } else {
-                    //append entire temp
-                    curString.append(tempString);
-                    curStringLen += tempStringLen;
-                    //reset temp
-                    tempString = new StringBuilder();
-                    tempStringLen = 0;
+            while (currentTextOffset == currentText.length()) {
+                if (!nextText()) {
+                    return -1;
                 }
-            } else {
-                //if temp has a few chars, not qualified as string for now,
-                //will be processed during next read() call
             }
-            //copy current strings to user
-            final int copied = copyToReturn(b, off, len);
-            //there may be still chars in read buffer or  tempString, for next read()
-            return copied;
+            int numChars = Math.min(len, currentText.length() - currentTextOffset);
+            currentText.getChars(currentTextOffset, currentTextOffset + numChars, cbuf, off);
+            currentTextOffset += numChars;
+            return numChars;
         }
 
-        //append temp buffer to cur string buffer and reset temp, if enough chars
-        //does not append new line
-        private void appendResetTemp() {
-            if (tempStringLen >= MIN_PRINTABLE_CHARS) {
-                curString.append(tempString);
-                curStringLen += tempStringLen;
-                tempString = new StringBuilder();
-                tempStringLen = 0;
+        /**
+         * Move on to the strings of the next segment, reading and queueing
+         * segments to scan as needed.
+         *
+         * @return false if there are no more segments
+         */
+        private boolean nextText() throws IOException {
+            while (scans.size() < maxScansAhead && queueNextSegment()) {
+                // keep the scan threads busy
             }
-        }
-
-        //copy currently extracted string to user buffer
-        //and reset for next read() call
-        private int copyToReturn(byte[] b, int off, long len) {
-            final String curStringS = curString.toString();
-            //logger.log(Level.INFO, curStringS);
-            byte[] stringBytes = curStringS.getBytes(Server.DEFAULT_INDEXED_TEXT_CHARSET);
-            System.arraycopy(stringBytes, 0, b, off, Math.min(curStringLen, (int) len));
-            //logger.log(Level.INFO, curStringS);
-            //copied all string, reset
-            curString = new StringBuilder();
-            int ret = curStringLen;
-            curStringLen = 0;
-            return ret;
-        }
-
-        @Override
-        public int read() throws IOException {
-            final int read = read(oneCharBuf, 0, 1);
-            if (read == 1) {
-                return oneCharBuf[0];
-            } else {
-                return -1;
+            Future<String> scan = scans.poll();
+            if (scan == null) {
+                return false;
+            }
+            try {
+                currentText = scan.get();
+                currentTextOffset = 0;
+                return true;
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while extracting strings from " + content.getName()); //NON-NLS
+            } catch (ExecutionException ex) {
+                throw new IOException("Error extracting strings from " + content.getName(), ex.getCause()); //NON-NLS
             }
         }
 
-        @Override
-        public int available() throws IOException {
-            //we don't know how many bytes in curReadBuf may end up as strings
-            return 0;
-        }
-
-        @Override
-        public long skip(long n) throws IOException {
-            //use default implementation that reads into skip buffer
-            //but it could be more efficient
-            return super.skip(n);
-        }
-    }
-
-    /**
-     * Wrapper over StringExtract to provide streaming API Given AbstractFile
-     * object, extract international strings from the file and read output as a
-     * stream of UTF-8 strings as encoded bytes.
-     *
-     */
-    private static class InternationalStream extends InputStream {
-
-        private static final Logger logger = Logger.getLogger(InternationalStream.class.getName());
-        private static final int FILE_BUF_SIZE = 1024 * 1024;
-        private final AbstractFile content;
-        private final byte[] oneCharBuf = new byte[1];
-        private final StringExtract stringExtractor;
-        /**
-         * true if there is nothing to do because neither extractUTF8 nor
-         * extractUTF16 was true in constructor
-         */
-        private final boolean nothingToDo;
-        private final byte[] fileReadBuff = new byte[FILE_BUF_SIZE];
-        private long fileReadOffset = 0L;
-        private byte[] convertBuff; //stores extracted string encoded as bytes, before returned to user
-        private int convertBuffOffset = 0; //offset to start returning data to user on next read()
-        private int bytesInConvertBuff = 0; //amount of data currently in the buffer
-        private boolean fileEOF = false; //if file has more bytes to read
-        private StringExtract.StringExtractResult lastExtractResult;
-
         /**
-         * Constructs new stream object that does conversion from file, to
-         * extracted strings, then to byte stream, for specified script,
-         * auto-detected encoding (UTF8, UTF16LE, UTF16BE), and specified output
-         * byte stream encoding
+         * Read the next segment of the file and queue it to be scanned.
          *
-         * @param content      input content to process and turn into a stream
-         *                     to convert into strings
-         * @param scripts      a list of scripts to consider
-         * @param extractUTF8  whether to extract utf8 encoding
-         * @param extractUTF16 whether to extract utf16 encoding
+         * @return false if there are no more segments
          */
-        private InternationalStream(AbstractFile content, List<SCRIPT> scripts, boolean extractUTF8, boolean extractUTF16) {
-            this.content = content;
-            this.stringExtractor = new StringExtract();
-            this.stringExtractor.setEnabledScripts(scripts);
-            this.nothingToDo = extractUTF8 == false && extractUTF16 == false;
-            this.stringExtractor.setEnableUTF8(extractUTF8);
-            this.stringExtractor.setEnableUTF16(extractUTF16);
-        }
-
-        @Override
-        public int read() throws IOException {
-            if (nothingToDo) {
-                return -1;
+        private boolean queueNextSegment() {
+            if (endOfFile && carryOver.length == 0) {
+                return false;
             }
-            final int read = read(oneCharBuf, 0, 1);
-            if (read == 1) {
-                return oneCharBuf[0];
-            } else {
-                return -1;
+            if (readBuf == null) {
+                readBuf = new byte[(int) Math.min(READ_BUF_SIZE, fileSize)];
             }
-        }
-
-        @Override
-        public int read(byte[] b, int off, int len) throws IOException {
-            if (b == null) {
-                throw new NullPointerException();
-            } else if (off < 0 || len < 0 || len > b.length - off) {
-                throw new IndexOutOfBoundsException();
-            } else if (len == 0) {
-                return 0;
+            byte[] segment = Arrays.copyOf(carryOver, carryOver.length + bytesWanted(SEGMENT_SIZE + SPLIT_WINDOW - carryOver.length));
+            int filled = fill(segment, carryOver.length);
+            int segmentEnd = endOfFile ? filled : scanner.findSplitPoint(segment, SEGMENT_SIZE, filled);
+            while (segmentEnd == filled && !endOfFile && segment.length < MAX_SEGMENT_SIZE) {
+                /*
+                 * Cutting here could split a string, so carry on reading until
+                 * there is a split point. Only a run of text with no break of
+                 * the right kind for MAX_SEGMENT_SIZE bytes is cut.
+                 */
+                segment = Arrays.copyOf(segment, segment.length + bytesWanted(Math.min(SPLIT_WINDOW, MAX_SEGMENT_SIZE - segment.length)));
+                int searchFrom = (filled - 2) & ~1;
+                filled = fill(segment, filled);
+                segmentEnd = endOfFile ? filled : scanner.findSplitPoint(segment, searchFrom, filled);
             }
-            if (nothingToDo) {
-                return -1;
+            carryOver = Arrays.copyOfRange(segment, segmentEnd, filled);
+            if (segmentEnd == 0) {
+                return false;
             }
-            long fileSize = content.getSize();
-            if (fileSize == 0) {
-                return -1;
+            final byte[] bytes = segment;
+            final int bytesEnd = segmentEnd;
+            Callable<String> scanTask = () -> scanner.scan(bytes, 0, bytesEnd);
+            if (executor != null) {
+                scans.add(executor.submit(scanTask));
+            } else {
+                FutureTask<String> task = new FutureTask<>(scanTask);
+                task.run();
+                scans.add(task);
             }
-            //read and convert until user buffer full
-            //we have data if file can be read or when byteBuff has converted strings to return
-            int bytesToUser = 0; //returned to user so far
-            int offsetUser = off;
-            while (bytesToUser < len && offsetUser < len) {
-                //check if we have enough converted strings
-                int convertBuffRemain = bytesInConvertBuff - convertBuffOffset;
-                if ((convertBuff == null || convertBuffRemain == 0) && !fileEOF && fileReadOffset < fileSize) {
-                    try {
-                        //convert more strings, store in buffer
-                        long toRead = 0;
-
-                        //fill up entire fileReadBuff fresh
-                        toRead = Math.min(FILE_BUF_SIZE, fileSize - fileReadOffset);
-                        //}
-                        int read = content.read(fileReadBuff, fileReadOffset, toRead);
-                        if (read == -1 || read == 0) {
-                            fileEOF = true;
-                        } else {
-                            fileReadOffset += read;
-                            if (fileReadOffset >= fileSize) {
-                                fileEOF = true;
-                            }
-                            //put converted string in convertBuff
-                            convert(read);
-                            convertBuffRemain = bytesInConvertBuff - convertBuffOffset;
-                        }
-                    } catch (TskCoreException ex) {
-                        //Exceptions.printStackTrace(ex);
-                        fileEOF = true;
-                    }
-                }
-                //nothing more to read, and no more bytes in convertBuff
-                if (convertBuff == null || convertBuffRemain == 0) {
-                    if (fileEOF) {
-                        return bytesToUser > 0 ? bytesToUser : -1;
-                    } else {
-                        //no strings extracted, try another read
-                        continue;
-                    }
-                }
-                //return part or all of convert buff to user
-                final int toCopy = Math.min(convertBuffRemain, len - offsetUser);
-                System.arraycopy(convertBuff, convertBuffOffset, b, offsetUser, toCopy);
+            return true;
+        }
 
-                convertBuffOffset += toCopy;
-                offsetUser += toCopy;
-                bytesToUser += toCopy;
-            }
-            //if more string data in convertBuff, will be consumed on next read()
-            return bytesToUser;
+        /**
+         * How many more bytes to read for a segment, which is no more than
+         * what is left of the file.
+         *
+         * @param wanted The number of bytes the segment has room for
+         *
+         * @return The number of bytes to read
+         */
+        private int bytesWanted(int wanted) {
+            return (int) Math.max(Math.min(wanted, fileSize - fileOffset), 0);
         }
 
         /**
-         * convert bytes in file buffer to string, and encode string in
-         * convertBuffer
+         * Read from the file into a segment until it is full or the end of the
+         * file is reached.
+         *
+         * @param segment The segment
+         * @param filled  The number of bytes already in the segment
          *
-         * @param numBytes num bytes in the fileReadBuff
+         * @return The number of bytes in the segment
          */
-        private void convert(int numBytes) {
-            lastExtractResult = stringExtractor.extract(fileReadBuff, numBytes, 0);
-            convertBuff = lastExtractResult.getText().getBytes(Server.DEFAULT_INDEXED_TEXT_CHARSET);
-            //reset tracking vars
-            if (lastExtractResult.getNumBytes() == 0) {
-                bytesInConvertBuff = 0;
-            } else {
-                bytesInConvertBuff = convertBuff.length;
+        private int fill(byte[] segment, int filled) {
+            while (!endOfFile && filled < segment.length) {
+                int bytesRead;
+                try {
+                    bytesRead = content.read(readBuf, fileOffset, Math.min(readBuf.length, segment.length - filled));
+                } catch (TskCoreException ex) {
+                    logger.log(Level.WARNING, "Error reading " + content.getName() + " (id: " + content.getId() + ") at offset " + fileOffset, ex); //NON-NLS
+                    bytesRead = -1;
+                }
+                if (bytesRead <= 0) {
+                    endOfFile = true;
+                    break;
+                }
+                System.arraycopy(readBuf, 0, segment, filled, bytesRead);
+                filled += bytesRead;
+                fileOffset += bytesRead;
+                if (fileOffset >= fileSize) {
+                    endOfFile = true;
+                }
+            }
+            return filled;
+        }
+
+        @Override
+        public void close() {
+            for (Future<String> scan : scans) {
+                scan.cancel(true);
             }
-            convertBuffOffset = 0;
+            scans.clear();
+            carryOver = new byte[0];
+            endOfFile = true;
         }
     }
 }
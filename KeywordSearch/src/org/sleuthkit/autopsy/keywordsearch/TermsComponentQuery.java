@@ -21,6 +21,7 @@
 import com.google.common.base.CharMatcher;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -261,6 +262,16 @@ public void addFilter(KeywordQueryFilter filter) {
         this.filters.add(filter);
     }
 
+    /**
+     * Gets the filters that have been added to the query.
+     *
+     * @return The filters.
+     */
+    @Override
+    public List<KeywordQueryFilter> getFilters() {
+        return Collections.unmodifiableList(filters);
+    }
+
     /**
      * Executes the regex query as a two step operation. In the first step, the
      * Solr terms component is used to find any terms in the index that match
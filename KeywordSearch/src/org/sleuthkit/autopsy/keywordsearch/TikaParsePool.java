@@ -0,0 +1,400 @@
+/*
+ * Autopsy Forensic Browser
+ *
+ * Copyright 2017 Basis Technology Corp.
+ * Contact: carrier <at> sleuthkit <dot> org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sleuthkit.autopsy.keywordsearch;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PipedReader;
+import java.io.PipedWriter;
+import java.io.Writer;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.parser.ParseContext;
+import org.apache.tika.parser.Parser;
+import org.apache.tika.sax.BodyContentHandler;
+import org.sleuthkit.autopsy.core.UserPreferences;
+import org.sleuthkit.autopsy.coreutils.Logger;
+
+/**
+ * A bounded pool of threads, shared by all keyword search ingest module
+ * instances, that runs Tika parses. The text of each parse is piped to the
+ * ingest thread that asked for it, so parsing and indexing overlap.
+ *
+ * Each parse has a timeout on the time the parser itself works. Time spent
+ * blocked writing to a full pipe, waiting for the ingest thread to index
+ * earlier text, does not count. When the timeout expires the reader is
+ * closed, which fails the ingest thread's next read, and the parse thread is
+ * interrupted. A parse
+ * thread that still has not finished shortly after that is considered hung. It
+ * is abandoned and the pool grows by one thread to replace it, shrinking back
+ * if the hung parse ever finishes.
+ */
+final class TikaParsePool {
+
+    private static final Logger logger = Logger.getLogger(TikaParsePool.class.getName());
+    private static final String PARSE_THREAD_NAME = "tika-parse-%d"; //NON-NLS
+    private static final String WATCHDOG_THREAD_NAME = "tika-parse-watchdog-%d"; //NON-NLS
+    private static final int PIPE_SIZE_CHARS = 64 * 1024;
+    private static final long HUNG_GRACE_PERIOD_SECS = 30;
+    private static TikaParsePool instance;
+
+    private final ThreadPoolExecutor parseExecutor;
+    private final ScheduledExecutorService watchdog;
+    private final AtomicInteger hungWorkers = new AtomicInteger(0);
+    private final AtomicLong parsesStarted = new AtomicLong(0);
+    private final AtomicLong parsesTimedOut = new AtomicLong(0);
+    private final AtomicInteger maxQueueDepth = new AtomicInteger(0);
+
+    static synchronized TikaParsePool getInstance() {
+        if (instance == null) {
+            instance = new TikaParsePool(KeywordSearchSettings.getIntOption("TextExtractionThreads", UserPreferences.numberOfFileIngestThreads())); //NON-NLS
+        }
+        return instance;
+    }
+
+    /**
+     * Get a one line summary of the pool's activity for the log, without
+     * creating the pool if nothing has been parsed yet.
+     *
+     * @return The summary, or null if the pool has not been created
+     */
+    static synchronized String getSummaryIfCreated() {
+        return instance == null ? null : instance.getSummary();
+    }
+
+    private TikaParsePool(int numThreads) {
+        parseExecutor = new ThreadPoolExecutor(numThreads, numThreads, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                new ThreadFactoryBuilder().setNameFormat(PARSE_THREAD_NAME).setDaemon(true).build());
+        watchdog = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder().setNameFormat(WATCHDOG_THREAD_NAME).setDaemon(true).build());
+    }
+
+    /**
+     * Start parsing a stream on the pool.
+     *
+     * @param parser         The parser to use
+     * @param stream         The stream to parse
+     * @param metadata       Filled in by the parser; complete once the
+     *                       returned reader has been read to the end
+     * @param parseContext   The parse context
+     * @param description    Describes the stream in log messages
+     * @param timeoutSeconds How long the parse may run
+     *
+     * @return A reader of the text of the stream. Reads fail with an
+     *         IOException if the parse fails or times out; for a timeout the
+     *         cause is a TimeoutException.
+     *
+     * @throws IOException if the pipe for the text cannot be set up
+     */
+    ParseReader parse(Parser parser, InputStream stream, Metadata metadata, ParseContext parseContext, String description, long timeoutSeconds) throws IOException {
+        ParseReader reader = new ParseReader(description);
+        TimedPipeWriter writer = new TimedPipeWriter(new PipedWriter(reader));
+        int queueDepth = parseExecutor.getQueue().size() + 1;
+        maxQueueDepth.accumulateAndGet(queueDepth, Math::max);
+        parseExecutor.execute(() -> runParse(parser, stream, metadata, parseContext, writer, reader, timeoutSeconds));
+        return reader;
+    }
+
+    private void runParse(Parser parser, InputStream stream, Metadata metadata, ParseContext parseContext, TimedPipeWriter writer, ParseReader reader, long timeoutSeconds) {
+        parsesStarted.incrementAndGet();
+        final Thread parseThread = Thread.currentThread();
+        writer.startClock();
+        scheduleTimeoutCheck(reader, writer, parseThread, timeoutSeconds, TimeUnit.SECONDS.toNanos(timeoutSeconds));
+        try {
+            if (reader.isClosed()) {
+                return;
+            }
+            parser.parse(stream, new BodyContentHandler(writer), metadata, parseContext);
+        } catch (Throwable ex) {
+            reader.setParseError(ex);
+        } finally {
+            try {
+                writer.close();
+            } catch (IOException ignored) {
+                // the reader was closed first
+            }
+            try {
+                stream.close();
+            } catch (IOException ex) {
+                logger.log(Level.WARNING, "Error closing stream for " + reader.getDescription(), ex); //NON-NLS
+            }
+            synchronized (reader.stateLock) {
+                if (reader.abandoned) {
+                    replaceHungWorker(false);
+                    logger.log(Level.INFO, "Hung Tika parse of {0} finished", reader.getDescription()); //NON-NLS
+                }
+                reader.finished = true;
+            }
+            // clear the interrupt set by a timeout so the thread can be reused
+            Thread.interrupted();
+        }
+    }
+
+    /**
+     * Check the parse's working time once it could have used up its timeout,
+     * and check again later if part of that time was spent blocked on the
+     * pipe. A finished parse is not checked again.
+     *
+     * @param reader         The reader of the parse
+     * @param writer         The writer of the parse, which keeps its clock
+     * @param parseThread    The thread running the parse
+     * @param timeoutSeconds The timeout, for log messages
+     * @param delayNanos     How long to wait before checking
+     */
+    private void scheduleTimeoutCheck(ParseReader reader, TimedPipeWriter writer, Thread parseThread, long timeoutSeconds, long delayNanos) {
+        watchdog.schedule(() -> {
+            synchronized (reader.stateLock) {
+                if (reader.finished) {
+                    return;
+                }
+            }
+            long remainingNanos = TimeUnit.SECONDS.toNanos(timeoutSeconds) - writer.getWorkNanos();
+            if (remainingNanos > 0) {
+                scheduleTimeoutCheck(reader, writer, parseThread, timeoutSeconds, remainingNanos);
+            } else {
+                timeOut(reader, parseThread, timeoutSeconds);
+            }
+        }, delayNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private void timeOut(ParseReader reader, Thread parseThread, long timeoutSeconds) {
+        // the lock keeps the thread from moving on to another parse before it
+        // is interrupted
+        synchronized (reader.stateLock) {
+            if (reader.finished) {
+                return;
+            }
+            reader.setParseError(new TimeoutException("Tika parse timed out after " + timeoutSeconds + " seconds")); //NON-NLS
+            reader.closeQuietly();
+            parseThread.interrupt();
+        }
+        parsesTimedOut.incrementAndGet();
+        logger.log(Level.WARNING, "Tika parse of {0} timed out after {1} seconds", new Object[]{reader.getDescription(), timeoutSeconds}); //NON-NLS
+        watchdog.schedule(() -> {
+            synchronized (reader.stateLock) {
+                if (!reader.finished && !reader.abandoned) {
+                    reader.abandoned = true;
+                    replaceHungWorker(true);
+                    logger.log(Level.SEVERE, "Tika parse of {0} is hung, replacing its thread", reader.getDescription()); //NON-NLS
+                }
+            }
+        }, HUNG_GRACE_PERIOD_SECS, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Grow the pool by one thread to make up for a hung one, or shrink it
+     * again once the hung thread finishes.
+     *
+     * @param grow True to grow the pool, false to shrink it
+     */
+    private synchronized void replaceHungWorker(boolean grow) {
+        if (grow) {
+            hungWorkers.incrementAndGet();
+            parseExecutor.setMaximumPoolSize(parseExecutor.getMaximumPoolSize() + 1);
+            parseExecutor.setCorePoolSize(parseExecutor.getCorePoolSize() + 1);
+        } else {
+            hungWorkers.decrementAndGet();
+            parseExecutor.setCorePoolSize(parseExecutor.getCorePoolSize() - 1);
+            parseExecutor.setMaximumPoolSize(parseExecutor.getMaximumPoolSize() - 1);
+        }
+    }
+
+    /**
+     * @return the number of parses waiting for a thread
+     */
+    int getQueueDepth() {
+        return parseExecutor.getQueue().size();
+    }
+
+    /**
+     * @return the number of parses running
+     */
+    int getActiveCount() {
+        return parseExecutor.getActiveCount();
+    }
+
+    /**
+     * @return the number of abandoned, hung parse threads
+     */
+    int getHungWorkerCount() {
+        return hungWorkers.get();
+    }
+
+    /**
+     * Get a one line summary of the pool's activity for the log.
+     *
+     * @return The summary
+     */
+    String getSummary() {
+        return String.format("Tika parse pool: %d threads, %d parses started, %d timed out, %d hung threads, %d queued, max queue depth %d", //NON-NLS
+                parseExecutor.getCorePoolSize() - hungWorkers.get(), parsesStarted.get(), parsesTimedOut.get(), hungWorkers.get(),
+                getQueueDepth(), maxQueueDepth.get());
+    }
+
+    /**
+     * The writing end of the pipe a parse writes its text to. Keeps the clock
+     * of the parse, which runs except while a write is blocked because the
+     * pipe is full.
+     */
+    private static final class TimedPipeWriter extends Writer {
+
+        private final PipedWriter pipe;
+        // guarded by this
+        private long startNanos;
+        private long blockedNanos = 0;
+        private long writeStartNanos = 0; // 0 when not in a write
+
+        private TimedPipeWriter(PipedWriter pipe) {
+            this.pipe = pipe;
+        }
+
+        private synchronized void startClock() {
+            startNanos = System.nanoTime();
+        }
+
+        /**
+         * @return the time the parse has run, less the time spent in writes
+         */
+        private synchronized long getWorkNanos() {
+            long now = System.nanoTime();
+            long inWrite = writeStartNanos == 0 ? 0 : now - writeStartNanos;
+            return now - startNanos - blockedNanos - inWrite;
+        }
+
+        @Override
+        public void write(char[] cbuf, int off, int len) throws IOException {
+            synchronized (this) {
+                writeStartNanos = System.nanoTime();
+            }
+            try {
+                pipe.write(cbuf, off, len);
+            } finally {
+                synchronized (this) {
+                    blockedNanos += System.nanoTime() - writeStartNanos;
+                    writeStartNanos = 0;
+                }
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            pipe.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            pipe.close();
+        }
+    }
+
+    /**
+     * The reading end of the pipe a parse writes its text to. Reports parse
+     * errors and timeouts to the reader, and closing it early stops the parse
+     * at its next write.
+     */
+    static final class ParseReader extends PipedReader {
+
+        private final String description;
+        private volatile Throwable parseError;
+        private volatile boolean closed = false;
+        // the pipe synchronizes on the reader itself, so parse state has its own lock
+        private final Object stateLock = new Object();
+        // guarded by stateLock
+        private boolean finished = false;
+        private boolean abandoned = false;
+
+        private ParseReader(String description) {
+            super(PIPE_SIZE_CHARS);
+            this.description = description;
+        }
+
+        private String getDescription() {
+            return description;
+        }
+
+        private void setParseError(Throwable parseError) {
+            if (this.parseError == null) {
+                this.parseError = parseError;
+            }
+        }
+
+        private boolean isClosed() {
+            return closed;
+        }
+
+        private void closeQuietly() {
+            try {
+                close();
+            } catch (IOException ignored) {
+                // PipedReader.close() does not throw
+            }
+        }
+
+        @Override
+        public int read(char[] cbuf, int off, int len) throws IOException {
+            int charsRead;
+            try {
+                charsRead = super.read(cbuf, off, len);
+            } catch (IOException ex) {
+                throwParseError();
+                throw ex;
+            }
+            if (charsRead == -1) {
+                throwParseError();
+            }
+            return charsRead;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int ch;
+            try {
+                ch = super.read();
+            } catch (IOException ex) {
+                throwParseError();
+                throw ex;
+            }
+            if (ch == -1) {
+                throwParseError();
+            }
+            return ch;
+        }
+
+        private void throwParseError() throws IOException {
+            if (parseError != null) {
+                throw new IOException("Tika parse of " + description + " failed", parseError); //NON-NLS
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            closed = true;
+            super.close();
+        }
+    }
+}
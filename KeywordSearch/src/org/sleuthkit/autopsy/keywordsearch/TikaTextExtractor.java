@@ -23,10 +23,6 @@
 import java.io.PushbackReader;
 import java.io.Reader;
 import java.util.List;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
-import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.logging.Level;
 import java.util.stream.Collectors;
@@ -36,7 +32,6 @@
 import org.apache.tika.parser.AutoDetectParser;
 import org.apache.tika.parser.ParseContext;
 import org.apache.tika.parser.Parser;
-import org.apache.tika.parser.ParsingReader;
 import org.apache.tika.parser.microsoft.OfficeParserConfig;
 import org.openide.util.NbBundle;
 import org.sleuthkit.autopsy.coreutils.Logger;
@@ -44,13 +39,18 @@
 import org.sleuthkit.datamodel.ReadContentInputStream;
 
 /**
- * Extracts text from Tika supported AbstractFile content. Protects against Tika
- * parser hangs (for unexpected/corrupt content) using a timeout mechanism.
+ * Extracts text from Tika supported AbstractFile content. Parses run on the
+ * shared TikaParsePool, which protects against Tika parser hangs (for
+ * unexpected/corrupt content) using a timeout mechanism.
  */
 class TikaTextExtractor extends FileTextExtractor {
 
     static final private Logger logger = Logger.getLogger(TikaTextExtractor.class.getName());
-    private final ExecutorService tikaParseExecutor = Executors.newSingleThreadExecutor();
+    /**
+     * Prefix of the options that override the parse timeout, in seconds, for
+     * a MIME type, e.g. TikaTimeout.application/pdf=600
+     */
+    private static final String TIMEOUT_OPTION_PREFIX = "TikaTimeout."; //NON-NLS
 
     private final AutoDetectParser parser = new AutoDetectParser();
 
@@ -80,10 +80,11 @@ public Reader getReader(AbstractFile sourceFile) throws TextExtractorException {
         officeParserConfig.setUseSAXDocxExtractor(true);
         parseContext.set(OfficeParserConfig.class, officeParserConfig);
 
-        //Parse the file in a task, a convenient way to have a timeout...
-        final Future<Reader> future = tikaParseExecutor.submit(() -> new ParsingReader(parser, stream, metadata, parseContext));
+        //Parse the file on the shared parse pool, which enforces the timeout
+        Reader tikaReader = null;
         try {
-            final Reader tikaReader = future.get(getTimeout(sourceFile.getSize()), TimeUnit.SECONDS);
+            tikaReader = TikaParsePool.getInstance().parse(parser, stream, metadata, parseContext,
+                    sourceFile.getId() + ": " + sourceFile.getName(), getTimeout(sourceFile.getMIMEType(), sourceFile.getSize()));
 
             //check if the reader is empty
             PushbackReader pushbackReader = new PushbackReader(tikaReader);
@@ -96,19 +97,30 @@ public Reader getReader(AbstractFile sourceFile) throws TextExtractorException {
             //concatenate parsed content and meta data into a single reader.
             CharSource metaDataCharSource = getMetaDataCharSource(metadata);
             return CharSource.concat(new ReaderCharSource(pushbackReader), metaDataCharSource).openStream();
-        } catch (TimeoutException te) {
-            final String msg = NbBundle.getMessage(this.getClass(), "AbstractFileTikaTextExtract.index.tikaParseTimeout.text", sourceFile.getId(), sourceFile.getName());
-            logWarning(msg, te);
-            throw new TextExtractorException(msg, te);
         } catch (TextExtractorException ex) {
+            closeQuietly(tikaReader);
             throw ex;
         } catch (Exception ex) {
+            closeQuietly(tikaReader);
+            if (ex.getCause() instanceof TimeoutException) {
+                final String msg = NbBundle.getMessage(this.getClass(), "AbstractFileTikaTextExtract.index.tikaParseTimeout.text", sourceFile.getId(), sourceFile.getName());
+                logWarning(msg, ex);
+                throw new TextExtractorException(msg, ex);
+            }
             KeywordSearch.getTikaLogger().log(Level.WARNING, "Exception: Unable to Tika parse the content" + sourceFile.getId() + ": " + sourceFile.getName(), ex.getCause()); //NON-NLS
             final String msg = NbBundle.getMessage(this.getClass(), "AbstractFileTikaTextExtract.index.exception.tikaParse.msg", sourceFile.getId(), sourceFile.getName());
             logWarning(msg, ex);
             throw new TextExtractorException(msg, ex);
-        } finally {
-            future.cancel(true);
+        }
+    }
+
+    private static void closeQuietly(Reader reader) {
+        if (reader != null) {
+            try {
+                reader.close();
+            } catch (IOException ex) {
+                logger.log(Level.WARNING, "Error closing Tika reader", ex); //NON-NLS
+            }
         }
     }
 
@@ -151,6 +163,22 @@ public boolean isDisabled() {
         return false;
     }
 
+    /**
+     * Return timeout that should be used to index the content. The size based
+     * default can be overridden for a MIME type in the keyword search options.
+     *
+     * @param mimeType MIME type of the content, may be null
+     * @param size     size of the content
+     *
+     * @return time in seconds to use a timeout
+     */
+    private static int getTimeout(String mimeType, long size) {
+        if (mimeType != null) {
+            return KeywordSearchSettings.getIntOption(TIMEOUT_OPTION_PREFIX + mimeType, getTimeout(size));
+        }
+        return getTimeout(size);
+    }
+
     /**
      * Return timeout that should be used to index the content.
      *
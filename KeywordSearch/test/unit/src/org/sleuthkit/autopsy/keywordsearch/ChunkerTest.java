@@ -0,0 +1,84 @@
+/*
+ * Autopsy Forensic Browser
+ *
+ * Copyright 2017 Basis Technology Corp.
+ * Contact: carrier <at> sleuthkit <dot> org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sleuthkit.autopsy.keywordsearch;
+
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+import org.sleuthkit.autopsy.keywordsearch.Chunker.Chunk;
+
+public class ChunkerTest {
+
+    private static List<Chunk> chunk(String text) {
+        List<Chunk> chunks = new ArrayList<>();
+        for (Chunk chunk : new Chunker(new StringReader(text))) {
+            chunks.add(chunk);
+        }
+        return chunks;
+    }
+
+    @Test
+    public void testShortText() {
+        List<Chunk> chunks = chunk("short text");
+        assertEquals(1, chunks.size());
+        assertEquals("short text", chunks.get(0).toString());
+        assertEquals(10, chunks.get(0).getBaseChunkLength());
+        assertEquals(10, chunks.get(0).getChunkSizeBytes());
+    }
+
+    @Test
+    public void testSanitization() {
+        String text = "a\u0001b\uD800c\uDC00d\uD83D\uDE00e\u00E9";
+        List<Chunk> chunks = chunk(text);
+        assertEquals(1, chunks.size());
+        String sanitized = chunks.get(0).toString();
+        assertEquals("a^b\uFFFDc\uFFFDd\uD83D\uDE00e\u00E9", sanitized);
+        assertEquals(sanitized.getBytes(StandardCharsets.UTF_8).length, chunks.get(0).getChunkSizeBytes());
+    }
+
+    @Test
+    public void testLongTextIsChunkedWithOverlappingWindows() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; sb.length() < 200000; i++) {
+            sb.append("w\u00F6rd").append(i).append(i % 7 == 0 ? '\n' : ' ');
+        }
+        String text = sb.toString();
+
+        List<Chunk> chunks = chunk(text);
+        assertTrue(chunks.size() > 1);
+        StringBuilder rebuilt = new StringBuilder();
+        for (int i = 0; i < chunks.size(); i++) {
+            Chunk chunk = chunks.get(i);
+            String chunkText = chunk.toString();
+            assertEquals(chunkText.getBytes(StandardCharsets.UTF_8).length, chunk.getChunkSizeBytes());
+            assertTrue(chunk.getChunkSizeBytes() <= 32760);
+            if (i + 1 < chunks.size()) {
+                // the window is repeated at the start of the next chunk
+                String window = chunkText.substring(chunk.getBaseChunkLength());
+                assertTrue(chunks.get(i + 1).toString().startsWith(window));
+            }
+            rebuilt.append(chunkText, 0, chunk.getBaseChunkLength());
+        }
+        assertEquals(text, rebuilt.toString());
+    }
+}
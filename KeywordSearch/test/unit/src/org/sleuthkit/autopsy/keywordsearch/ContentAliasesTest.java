@@ -0,0 +1,84 @@
+/*
+ * Autopsy Forensic Browser
+ *
+ * Copyright 2017 Basis Technology Corp.
+ * Contact: carrier <at> sleuthkit <dot> org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sleuthkit.autopsy.keywordsearch;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * Two files with identical content and different names: "secret.txt" (object
+ * id 10), whose text is indexed, and its alias "notes.txt" (object id 20).
+ */
+public class ContentAliasesTest {
+
+    private static final long CANONICAL_ID = 10;
+    private static final String CANONICAL_NAME = "secret.txt";
+    private static final long ALIAS_ID = 20;
+    private static final Map<Long, List<Long>> ALIASES = Collections.singletonMap(CANONICAL_ID, Arrays.asList(ALIAS_ID));
+
+    /**
+     * Search results for a keyword with a hit in the first chunk of the
+     * canonical file, with the hits copied to the alias if they are in the
+     * given content of the chunk.
+     */
+    private static List<String> searchWithAliases(String keyword, boolean literal, String content) {
+        Keyword searched = new Keyword(keyword, literal, literal);
+        QueryResults results = new QueryResults(null);
+        results.addResult(searched, new ArrayList<>(Arrays.asList(
+                new KeywordHit(CANONICAL_ID + Server.CHUNK_ID_SEPARATOR + 1, "", keyword))));
+        results.addAliasHits(ALIASES, true, hit -> ContentAliases.isContentHit(hit.getHit(), literal, CANONICAL_NAME, content));
+        return results.getResults(searched).stream()
+                .map(KeywordHit::getSolrDocumentId)
+                .collect(Collectors.toList());
+    }
+
+    @Test
+    public void testHitInNameOnlyIsNotCopied() {
+        assertEquals(Arrays.asList("10_1"), searchWithAliases("secret", true, "nothing to see here"));
+        assertEquals(Arrays.asList("10_1"), searchWithAliases("secret", true, "my secretary"));
+        assertEquals(Arrays.asList("10_1"), searchWithAliases("secret.txt", false, "nothing to see here"));
+    }
+
+    @Test
+    public void testHitInContentIsCopied() {
+        assertEquals(Arrays.asList("10_1", "20_1"), searchWithAliases("secret", true, "the Secret is out"));
+        assertEquals(Arrays.asList("10_1", "20_1"), searchWithAliases("password", true, null));
+        assertEquals(Arrays.asList("10_1", "20_1"), searchWithAliases("secret.txt", false, "see secret.txt"));
+    }
+
+    @Test
+    public void testIsContentHit() {
+        // not in the name, so it can only be in the content
+        assertTrue(ContentAliases.isContentHit("password", true, CANONICAL_NAME, null));
+        assertFalse(ContentAliases.isContentHit("secret", true, CANONICAL_NAME, null));
+        assertFalse(ContentAliases.isContentHit("secret", true, CANONICAL_NAME, "secrets"));
+        assertTrue(ContentAliases.isContentHit("secret", true, CANONICAL_NAME, "top-secret plans"));
+        // substring and regex hits are matched anywhere
+        assertFalse(ContentAliases.isContentHit("cret", false, CANONICAL_NAME, "nothing"));
+        assertTrue(ContentAliases.isContentHit("cret", false, CANONICAL_NAME, "SECRETS"));
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Autopsy Forensic Browser
+ *
+ * Copyright 2017 Basis Technology Corp.
+ * Contact: carrier <at> sleuthkit <dot> org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sleuthkit.autopsy.keywordsearch;
+
+import java.util.Arrays;
+import java.util.Collections;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+import org.sleuthkit.datamodel.BlackboardAttribute;
+
+public class CreditCardScannerTest {
+
+    private static final Keyword CCN = new Keyword("(%?)(B?)([0-9][ \\-]*?){12,19}(\\^?)", false, BlackboardAttribute.ATTRIBUTE_TYPE.TSK_CARD_NUMBER);
+    private static final Keyword LITERAL = new Keyword("card", true, true, "list", "card");
+
+    private static CreditCardScanner createScanner() {
+        return new CreditCardScanner(Collections.singletonList(new KeywordList(Arrays.asList(CCN, LITERAL))));
+    }
+
+    private static CreditCardScanner.Hits scan(String text) {
+        CreditCardScanner.Hits hits = new CreditCardScanner.Hits();
+        createScanner().scan("3_1", text, hits);
+        return hits;
+    }
+
+    @Test
+    public void testHandledKeywords() {
+        CreditCardScanner scanner = createScanner();
+        assertTrue(scanner.handles(CCN));
+        assertFalse(scanner.handles(LITERAL));
+        assertTrue(new CreditCardScanner(Collections.singletonList(new KeywordList(Arrays.asList(LITERAL)))).isEmpty());
+    }
+
+    @Test
+    public void testFindsValidNumbers() {
+        CreditCardScanner.Hits hits = scan("paid with 4111111111111111, then 5500 0000 0000 0004 and 3400-000000-00009.");
+        assertNotNull(hits.getHit("4111111111111111"));
+        assertEquals(3, hits.getHit("4111111111111111").getSolrObjectId());
+        assertEquals(1, hits.getHit("4111111111111111").getChunkId());
+        assertNotNull(hits.getHit("5500 0000 0000 0004"));
+        assertNotNull(hits.getHit("3400-000000-00009"));
+    }
+
+    @Test
+    public void testRejectsInvalidNumbers() {
+        assertTrue(scan("4111111111111112").isEmpty()); // Luhn
+        assertTrue(scan("74111111111111111").isEmpty()); // part of a longer run
+        assertTrue(scan("4111-1111 1111 1111").isEmpty()); // mixed separators
+        assertTrue(scan("4111  1111  1111  1111").isEmpty()); // double separators
+        assertTrue(scan("4111 1111").isEmpty()); // too short
+    }
+
+    @Test
+    public void testIncludesTrackData() {
+        CreditCardScanner.Hits hits = scan("%B4111111111111111^DOE/JOHN^2512101");
+        assertNull(hits.getHit("4111111111111111"));
+        assertNotNull(hits.getHit("%B4111111111111111^"));
+        assertTrue(hits.getHit("%B4111111111111111^").getSnippet().contains("DOE/JOHN"));
+    }
+}
@@ -27,7 +27,7 @@
 import org.junit.runners.Suite;
 
 @RunWith(Suite.class)
-@Suite.SuiteClasses({CreditCardValidatorTest.class})
+@Suite.SuiteClasses({CreditCardValidatorTest.class, CreditCardScannerTest.class, ChunkerTest.class, LiteralKeywordMatcherTest.class, StringsScannerTest.class, ContentAliasesTest.class})
 public class KeywordSearchTestSuite {
     public KeywordSearchTestSuite() {
     }
@@ -0,0 +1,210 @@
+/*
+ * Autopsy Forensic Browser
+ *
+ * Copyright 2017 Basis Technology Corp.
+ * Contact: carrier <at> sleuthkit <dot> org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sleuthkit.autopsy.keywordsearch;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.core.LowerCaseFilter;
+import org.apache.lucene.analysis.core.StopFilter;
+import org.apache.lucene.analysis.standard.StandardTokenizer;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.util.CharArraySet;
+import org.apache.lucene.util.Version;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+public class LiteralKeywordMatcherTest {
+
+    private static final Keyword EXACT_HE = new Keyword("he", true, true, "list", "he");
+    private static final Keyword EXACT_SHE = new Keyword("She", true, true, "list", "She");
+    private static final Keyword EXACT_HERS = new Keyword("hers", true, true, "list", "hers");
+    private static final Keyword SUBSTRING_PASS = new Keyword("pass", true, false, "list", "pass");
+    private static final Keyword PHRASE = new Keyword("two words", true, true, "list", "two words");
+    private static final Keyword REGEX = new Keyword("h.s", false, false, "list", "h.s");
+    private static final Keyword STOP_WORD = new Keyword("The", true, true, "list", "The");
+    // the stop words file of the Solr config set, relative to the module
+    private static final Set<String> STOP_WORDS = readConfiguredStopWords();
+
+    private static Set<String> readConfiguredStopWords() {
+        try (Reader reader = Files.newBufferedReader(Paths.get("solr/solr/configsets/AutopsyConfig/conf/stopwords_en.txt"), StandardCharsets.UTF_8)) {
+            return LiteralKeywordMatcher.readStopWords(reader);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    private static LiteralKeywordMatcher createMatcher() {
+        return new LiteralKeywordMatcher(Collections.singletonList(new KeywordList(
+                Arrays.asList(EXACT_HE, EXACT_SHE, EXACT_HERS, SUBSTRING_PASS, PHRASE, REGEX))), STOP_WORDS);
+    }
+
+    @Test
+    public void testHandledKeywords() {
+        LiteralKeywordMatcher matcher = createMatcher();
+        assertTrue(matcher.handles(EXACT_HE));
+        assertFalse(matcher.handles(SUBSTRING_PASS));
+        assertFalse(matcher.handles(PHRASE));
+        assertFalse(matcher.handles(REGEX));
+        assertFalse(new LiteralKeywordMatcher(Collections.singletonList(new KeywordList(
+                Collections.singletonList(STOP_WORD))), STOP_WORDS).handles(STOP_WORD));
+        assertTrue(new LiteralKeywordMatcher(Collections.emptyList(), STOP_WORDS).isEmpty());
+    }
+
+    @Test
+    public void testExactMatchIsCaseInsensitiveOnWordBoundaries() {
+        LiteralKeywordMatcher.Hits hits = new LiteralKeywordMatcher.Hits();
+        createMatcher().scan("12_1", "USHERS said SHE was theirs, not hers.", hits);
+        assertNull(hits.getHit(EXACT_HE));
+        assertNotNull(hits.getHit(EXACT_SHE));
+        assertEquals("SHE", hits.getHit(EXACT_SHE).getHit());
+        assertEquals(12, hits.getHit(EXACT_SHE).getSolrObjectId());
+        assertEquals(1, hits.getHit(EXACT_SHE).getChunkId());
+        assertNotNull(hits.getHit(EXACT_HERS));
+    }
+
+    @Test
+    public void testFirstHitIsKept() {
+        LiteralKeywordMatcher matcher = createMatcher();
+        LiteralKeywordMatcher.Hits hits = new LiteralKeywordMatcher.Hits();
+        matcher.scan("5_1", "he", hits);
+        matcher.scan("5_2", "he", hits);
+        assertEquals(1, hits.getHit(EXACT_HE).getChunkId());
+    }
+
+    /*
+     * The tests below compare the matcher with the index analyzer of the Solr
+     * text field (text_general in schema.xml), which is what the Solr query
+     * for a keyword searches. The text field holds both the content of a
+     * chunk and the file name.
+     */
+    private static Set<String> indexTokens(String text) throws IOException {
+        Set<String> tokens = new HashSet<>();
+        TokenStream stream = new StandardTokenizer(Version.LUCENE_40, new StringReader(text));
+        stream = new StopFilter(Version.LUCENE_40, stream, new CharArraySet(Version.LUCENE_40, STOP_WORDS, true));
+        stream = new LowerCaseFilter(Version.LUCENE_40, stream);
+        CharTermAttribute term = stream.addAttribute(CharTermAttribute.class);
+        stream.reset();
+        while (stream.incrementToken()) {
+            tokens.add(term.toString());
+        }
+        stream.end();
+        stream.close();
+        return tokens;
+    }
+
+    private static boolean solrFinds(Keyword keyword, String content, String fileName) throws IOException {
+        Set<String> tokens = indexTokens(content);
+        tokens.addAll(indexTokens(fileName));
+        return tokens.contains(keyword.getSearchTerm().toLowerCase());
+    }
+
+    private static boolean matcherFinds(LiteralKeywordMatcher matcher, Keyword keyword, String content) {
+        LiteralKeywordMatcher.Hits hits = new LiteralKeywordMatcher.Hits();
+        matcher.scan("3_1", content, hits);
+        return hits.getHit(keyword) != null;
+    }
+
+    @Test
+    public void testExactMatchAgreesWithIndex() throws IOException {
+        String[] contents = {
+            "USHERS said SHE was theirs, not hers.",
+            "it's 10:30 and the total is 1,000 or 2.5 per item",
+            "e-mail foo_bar x.y a.1 O'Neil TCP/IP",
+            "Mixed CASE words: Alpha,Beta;Gamma"};
+        String[] terms = {"he", "she", "hers", "theirs", "10", "30", "1", "000", "2", "5",
+            "e", "mail", "foo", "bar", "x", "y", "o", "neil", "tcp", "ip", "alpha", "beta", "gamma", "words"};
+        for (String content : contents) {
+            for (String term : terms) {
+                Keyword keyword = new Keyword(term, true, true, "list", term);
+                LiteralKeywordMatcher matcher = new LiteralKeywordMatcher(Collections.singletonList(new KeywordList(
+                        Collections.singletonList(keyword))), STOP_WORDS);
+                if (matcher.handles(keyword)) {
+                    assertEquals("'" + term + "' in '" + content + "'", solrFinds(keyword, content, ""), matcherFinds(matcher, keyword, content));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testFileNameHitsAreLeftToSolr() throws IOException {
+        LiteralKeywordMatcher matcher = createMatcher();
+        String content = "nothing to see";
+        // the standard tokenizer keeps "hers.txt" as one token, so the word
+        // has to be separated from the extension to be found
+        String fileName = "hers notes.txt";
+        // the hit is only in the file name, which the matcher does not see
+        assertTrue(solrFinds(EXACT_HERS, content, fileName));
+        assertFalse(matcherFinds(matcher, EXACT_HERS, content));
+        // the parent document searched by SearchRunner has the file name and
+        // no content, so between them every hit is found
+        assertTrue(solrFinds(EXACT_HERS, "", fileName));
+        assertEquals("-chunk_size:[* TO *]", KeywordQueryFilter.parentDocuments().toString());
+    }
+
+    @Test
+    public void testSubstringKeywordsAreLeftToSolr() throws IOException {
+        // Solr reports each distinct word containing the term, the matcher
+        // could only report the first
+        assertFalse(createMatcher().handles(SUBSTRING_PASS));
+        assertTrue(solrFinds(new Keyword("passwords", true, true, "list", "passwords"), "passwords and passports", ""));
+    }
+
+    @Test
+    public void testStopWordsAreLeftToSolr() throws IOException {
+        LiteralKeywordMatcher matcher = new LiteralKeywordMatcher(Collections.singletonList(new KeywordList(
+                Collections.singletonList(STOP_WORD))), STOP_WORDS);
+        // the index drops stop words, so Solr never finds them
+        assertFalse(solrFinds(STOP_WORD, "The end of the story", ""));
+        assertFalse(matcher.handles(STOP_WORD));
+        assertFalse(matcherFinds(matcher, STOP_WORD, "The end of the story"));
+    }
+
+    @Test
+    public void testReadStopWords() throws IOException {
+        // the comment and blank line handling of Solr's StopFilterFactory
+        Set<String> stopWords = LiteralKeywordMatcher.readStopWords(new StringReader(
+                "\uFEFFfirst\n# comment\n\n   \n  The  \n  #kept\nlast"));
+        assertEquals(new HashSet<>(Arrays.asList("first", "the", "#kept", "last")), stopWords);
+
+        assertTrue(STOP_WORDS.contains("the"));
+        assertTrue(STOP_WORDS.contains("stopworda"));
+        assertFalse(STOP_WORDS.contains(""));
+        assertFalse(STOP_WORDS.stream().anyMatch(word -> word.startsWith("#")));
+    }
+
+    @Test
+    public void testNothingIsHandledWithoutStopWords() {
+        assertFalse(new LiteralKeywordMatcher(Collections.singletonList(new KeywordList(
+                Collections.singletonList(EXACT_HE))), null).handles(EXACT_HE));
+    }
+}
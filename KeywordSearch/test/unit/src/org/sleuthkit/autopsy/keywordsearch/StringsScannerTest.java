@@ -0,0 +1,164 @@
+/*
+ * Autopsy Forensic Browser
+ *
+ * Copyright 2017 Basis Technology Corp.
+ * Contact: carrier <at> sleuthkit <dot> org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sleuthkit.autopsy.keywordsearch;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+import org.sleuthkit.autopsy.coreutils.StringExtract.StringExtractUnicodeTable.SCRIPT;
+
+public class StringsScannerTest {
+
+    private static final StringsScanner LATIN_SCANNER = new StringsScanner(Arrays.asList(SCRIPT.LATIN_2), true, true);
+
+    private static byte[] bytes(Object... parts) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Charset charset = StandardCharsets.UTF_8;
+        for (Object part : parts) {
+            if (part instanceof Charset) {
+                charset = (Charset) part;
+            } else if (part instanceof String) {
+                byte[] encoded = ((String) part).getBytes(charset);
+                out.write(encoded, 0, encoded.length);
+            } else {
+                out.write((Integer) part);
+            }
+        }
+        return out.toByteArray();
+    }
+
+    private static String scan(StringsScanner scanner, byte[] buf) {
+        return scanner.scan(buf, 0, buf.length);
+    }
+
+    @Test
+    public void testASCII() {
+        assertEquals("hello world\n", scan(LATIN_SCANNER, bytes(1, 2, "hello world", 0, 0, 3, "ab", 1)));
+    }
+
+    @Test
+    public void testUTF8() {
+        assertEquals("caf\u00e9 au lait\n", scan(LATIN_SCANNER, bytes(1, 2, "caf\u00e9 au lait", 1)));
+    }
+
+    @Test
+    public void testUTF16() {
+        assertEquals("little endian\n", scan(LATIN_SCANNER, bytes(1, 2, StandardCharsets.UTF_16LE, "little endian", 1, 1)));
+        assertEquals("big endian\n", scan(LATIN_SCANNER, bytes(1, 2, StandardCharsets.UTF_16BE, "big endian", 1, 1)));
+    }
+
+    @Test
+    public void testOverlappingStringsKeepTheirRemainders() {
+        // the UTF-8 string ends with the first byte of the UTF-16 one
+        byte[] buf = bytes(0, 0, "password", StandardCharsets.UTF_16LE, "The quick brown fox", 1, 1);
+        assertEquals("password\nThe quick brown fox\n", scan(LATIN_SCANNER, buf));
+    }
+
+    @Test
+    public void testScriptsNotEnabledAreSkipped() {
+        byte[] buf = bytes(1, "\u041f\u0440\u0438\u0432\u0435\u0442", 1, "world", 1);
+        assertEquals("world\n", scan(LATIN_SCANNER, buf));
+        StringsScanner cyrillicScanner = new StringsScanner(Arrays.asList(SCRIPT.LATIN_2, SCRIPT.CYRILLIC), true, false);
+        assertEquals("\u041f\u0440\u0438\u0432\u0435\u0442\nworld\n", scan(cyrillicScanner, buf));
+    }
+
+    @Test
+    public void testDisabledEncodings() {
+        byte[] buf = bytes(1, "utf8 text", 1, 1, StandardCharsets.UTF_16LE, "utf16 text", 1, 1);
+        assertEquals("utf8 text\n", scan(new StringsScanner(Arrays.asList(SCRIPT.LATIN_2), true, false), buf));
+        assertEquals("utf16 text\n", scan(new StringsScanner(Arrays.asList(SCRIPT.LATIN_2), false, true), buf));
+        assertEquals("", scan(new StringsScanner(Arrays.asList(SCRIPT.LATIN_2), false, false), buf));
+    }
+
+    @Test
+    public void testShortRunsAreNotStrings() {
+        assertEquals("", scan(LATIN_SCANNER, bytes(1, "abc", 1, "de", 1)));
+    }
+
+    @Test
+    public void testSplitScanMatchesWholeScan() {
+        Random random = new Random(42);
+        byte[] buf = new byte[1024 * 1024];
+        int offset = 0;
+        while (offset < buf.length - 64) {
+            int kind = random.nextInt(3);
+            if (kind == 0) {
+                for (int i = random.nextInt(60); i > 0; i--) {
+                    buf[offset++] = (byte) random.nextInt(256);
+                }
+            } else if (kind == 1) {
+                offset += random.nextInt(20);
+            } else {
+                byte[] word = "some text\u00e9".getBytes(random.nextBoolean() ? StandardCharsets.UTF_8 : StandardCharsets.UTF_16LE);
+                System.arraycopy(word, 0, buf, offset, word.length);
+                offset += word.length;
+            }
+        }
+
+        String whole = scan(LATIN_SCANNER, buf);
+        assertTrue(whole.contains("some text\u00e9"));
+        assertEquals(whole, splitScan(LATIN_SCANNER, buf));
+    }
+
+    @Test
+    public void testSplitDoesNotCutStringsWithoutZeroBytes() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        while (out.size() < 64 * 1024) {
+            byte[] line = "Lorem ipsum dolor sit amet,\n".getBytes(StandardCharsets.UTF_8);
+            out.write(line, 0, line.length);
+            if (out.size() > 4000 && out.size() < 4100) {
+                // a string crossing the first split window, and then some
+                for (int i = 0; i < 6000; i++) {
+                    out.write('a' + i % 26);
+                }
+            }
+        }
+        byte[] buf = out.toByteArray();
+        assertEquals(scan(LATIN_SCANNER, buf), splitScan(LATIN_SCANNER, buf));
+        StringsScanner utf8Scanner = new StringsScanner(Arrays.asList(SCRIPT.LATIN_2), true, false);
+        assertEquals(scan(utf8Scanner, buf), splitScan(utf8Scanner, buf));
+    }
+
+    /**
+     * Scan in parts the way StringsTextExtractor does, reading on past the
+     * split window when there is no split point in it.
+     */
+    private static String splitScan(StringsScanner scanner, byte[] buf) {
+        StringBuilder split = new StringBuilder();
+        int start = 0;
+        while (start < buf.length) {
+            int limit = Math.min(buf.length, start + 8192);
+            int end = scanner.findSplitPoint(buf, start + 4096, limit);
+            while (end == limit && limit < buf.length) {
+                int searchFrom = (limit - 2) & ~1;
+                limit = Math.min(buf.length, limit + 4096);
+                end = scanner.findSplitPoint(buf, searchFrom, limit);
+            }
+            byte[] part = Arrays.copyOfRange(buf, start, end);
+            split.append(scan(scanner, part));
+            start = end;
+        }
+        return split.toString();
+    }
+}